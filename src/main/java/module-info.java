@@ -2,6 +2,9 @@ module org.example.demo3 {
     requires javafx.controls;
     requires javafx.fxml;
     requires javafx.graphics;
+    requires java.management;
+    requires jdk.management;
+    requires jdk.unsupported;
 
     // Öffnen des Hauptpakets für JavaFX FXML
     opens org.example.demo3 to javafx.fxml;
@@ -11,4 +14,13 @@ module org.example.demo3 {
 
     // Exportieren des Hauptpakets
     exports org.example.demo3;
+
+    // Headless Raft-Implementierung und Benchmarks
+    exports org.example.demo3.raft;
+    exports org.example.demo3.benchmark;
+    exports org.example.demo3.timer;
+    exports org.example.demo3.storage;
+    exports org.example.demo3.history;
+    exports org.example.demo3.simulation;
+    exports org.example.demo3.launcher;
 }
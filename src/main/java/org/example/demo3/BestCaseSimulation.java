@@ -21,8 +21,11 @@ public class BestCaseSimulation extends Application {
     private Button stopContinueButton;
     private Button restartButton;
     private Button quitButton;
+    private Button eventLogButton;
     private Slider nodeSlider;
     private Slider durationSlider;
+    private Slider speedSlider; // log10 of the speed factor
+    private Label speedLabel;
     private Button startSimulationButton;
     private Label messageLabel; // For displaying global messages
 
@@ -37,10 +40,10 @@ public class BestCaseSimulation extends Application {
         nodeSlider.setShowTickMarks(true);
         nodeSlider.setShowTickLabels(true);
 
-        Label durationSliderLabel = new Label("Simulation Duration (seconds):");
-        durationSlider = new Slider(15, 60, 20); // Default value is 20 seconds
-        durationSlider.setMajorTickUnit(5);
-        durationSlider.setMinorTickCount(4);
+        Label durationSliderLabel = new Label("Simulation Duration (simulated seconds):");
+        durationSlider = new Slider(15, 300, 20); // Default value is 20 seconds
+        durationSlider.setMajorTickUnit(45);
+        durationSlider.setMinorTickCount(8);
         durationSlider.setSnapToTicks(true);
         durationSlider.setShowTickMarks(true);
         durationSlider.setShowTickLabels(true);
@@ -72,10 +75,25 @@ public class BestCaseSimulation extends Application {
             Platform.exit();
         });
 
+        eventLogButton = new Button("Event Log");
+        eventLogButton.setOnAction(e -> {
+            if (cluster != null) {
+                new EventLogViewer(cluster.getEventLog(), cluster.getNodes().size()).show();
+            }
+        });
+
+        // Simulation speed on a logarithmic scale from 0.1x to 100x, adjustable while the simulation runs
+        speedLabel = new Label("Speed: 1.0x");
+        speedSlider = new Slider(-1, 2, 0);
+        speedSlider.setMajorTickUnit(1);
+        speedSlider.setMinorTickCount(0);
+        speedSlider.setShowTickMarks(true);
+        speedSlider.valueProperty().addListener((observable, oldValue, newValue) -> applySpeed());
+
         HBox simulationControlBox = new HBox(10);
         simulationControlBox.setAlignment(Pos.CENTER);
         simulationControlBox.setPadding(new Insets(10));
-        simulationControlBox.getChildren().addAll(stopContinueButton, restartButton, quitButton);
+        simulationControlBox.getChildren().addAll(speedLabel, speedSlider, stopContinueButton, restartButton, eventLogButton, quitButton);
         simulationControlBox.setVisible(false); // Hide until simulation starts
 
         // Create simulation pane
@@ -122,6 +140,7 @@ public class BestCaseSimulation extends Application {
             stopSimulation();
         }));
         simulationTimer.setCycleCount(1);
+        applySpeed();
         simulationTimer.play();
 
         // Update UI elements
@@ -175,6 +194,17 @@ public class BestCaseSimulation extends Application {
         Platform.runLater(() -> messageLabel.setText(""));
     }
 
+    private void applySpeed() {
+        double speed = Math.pow(10, speedSlider.getValue());
+        speedLabel.setText(String.format("Speed: %.1fx", speed));
+        if (cluster != null) {
+            cluster.setSpeed(speed);
+        }
+        if (simulationTimer != null) {
+            simulationTimer.setRate(speed); // The duration is simulated time as well
+        }
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -1,9 +1,6 @@
 package org.example.demo3;
 
-import javafx.animation.KeyFrame;
 import javafx.animation.PathTransition;
-import javafx.animation.Timeline;
-import javafx.application.Platform;
 import javafx.scene.Group;
 import javafx.scene.control.Label;
 import javafx.scene.layout.Pane;
@@ -11,27 +8,67 @@ import javafx.scene.paint.Color;
 import javafx.scene.shape.*;
 import javafx.scene.text.Text;
 import javafx.util.Duration;
-
+import org.example.demo3.raft.InvariantMonitor;
+import org.example.demo3.timer.SimulationClock;
+import org.example.demo3.timer.Timeout;
+import org.example.demo3.timer.WheelTimer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.stream.Stream;
 
 public class Cluster {
     private List<Node> nodes = new ArrayList<>();
     private Pane pane;
 
-    private Node leaderNode;
+    // Checks that no two nodes lead in the same term
+    private final InvariantMonitor monitor = new InvariantMonitor();
+
+    // Simulated time of the cluster; its speed scales every timer, message and countdown alike
+    private final SimulationClock clock = new SimulationClock();
+
+    // One timing wheel for all election timeouts, heartbeats and message deliveries of this cluster
+    private WheelTimer timer = new WheelTimer(10, clock);
+
+    // Every node keeps its term and vote in a file here, so it never votes twice in one term.
+    // Created for each run and deleted when the cluster stops, so no simulation inherits an earlier term.
+    private final Path dataDirectory;
+    private final List<Thread> nodeThreads = new ArrayList<>();
+    private boolean stopped = false; // FX thread only
+    private Timeout heartbeatTimer = timer.newTimeout(this::heartbeatRound);
+    private static final long HEARTBEAT_INTERVAL = 3000;
+    private static final long MESSAGE_LATENCY = 1000; // Simulated travel time of a message
 
-    private List<Timeline> timelines = new ArrayList<>();
+    // Message animations are skipped when they would last only a frame or two, or too many are on screen
+    private static final long MIN_ANIMATION_MILLIS = 40;
+    private static final int MAX_ANIMATIONS = 100;
+    private final List<PathTransition> animations = new ArrayList<>(); // FX thread only
 
     private boolean isSplitVote;
 
     private Label messageLabel; // For displaying global messages
 
+    // Bounded history of everything that happened in this cluster
+    private EventLog eventLog = new EventLog(EventLog.DEFAULT_CAPACITY, clock);
+
+    // Applies all pending view changes once per frame instead of one Platform.runLater per update
+    private ViewRefreshPulse pulse;
+
     public Cluster(int numNodes, Pane pane, boolean isSplitVote, Label messageLabel) {
         this.pane = pane;
         this.isSplitVote = isSplitVote;
         this.messageLabel = messageLabel;
+        try {
+            this.dataDirectory = Files.createTempDirectory("raft-cluster");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.pulse = new ViewRefreshPulse(messageLabel, clock);
 
         // Arrange nodes in a circle
         double centerX = pane.getPrefWidth() / 2;
@@ -47,6 +84,10 @@ public class Cluster {
 
             // Add node visualization to pane
             pane.getChildren().addAll(node.getCircle(), node.getLabel(), node.getDownText());
+            pulse.register(node.getView());
+
+            // Clicking a node crashes it, clicking it again restarts it from disk
+            node.getCircle().setOnMouseClicked(event -> toggleCrash(node));
         }
 
         // Draw network lines (dashed lines)
@@ -63,6 +104,8 @@ public class Cluster {
             }
         }
 
+        pulse.start();
+
         // Handle scenarios
         if (isSplitVote) {
             prepareSplitVoteScenario();
@@ -83,13 +126,13 @@ public class Cluster {
         for (Node node : nodes) {
             if (node == candidateNode) {
                 node.setElectionTimeout(candidateTimeout);
-                node.setLastHeartbeat(System.currentTimeMillis());
-                log("Node n" + node.getId() + " will become candidate first with a timeout of " + candidateTimeout + "ms.");
+                node.setLastHeartbeat(now());
+                log(node.getId(), node.getTerm(), EventType.INFO, "Node n" + node.getId() + " will become candidate first with a timeout of " + candidateTimeout + "ms.");
             } else {
                 long timeout = minOtherTimeout + rand.nextInt((int) (maxOtherTimeout - minOtherTimeout));
                 node.setElectionTimeout(timeout);
-                node.setLastHeartbeat(System.currentTimeMillis());
-                log("Node n" + node.getId() + " has an election timeout of " + timeout + "ms.");
+                node.setLastHeartbeat(now());
+                log(node.getId(), node.getTerm(), EventType.INFO, "Node n" + node.getId() + " has an election timeout of " + timeout + "ms.");
             }
         }
     }
@@ -116,53 +159,76 @@ public class Cluster {
         node.nodeTimeoutExpired(); // Delegate to node's method
     }
 
-    /**
-     * Synchronized method to attempt setting the leader.
-     * Returns true if the leader was successfully set, false if a leader already exists.
-     */
-    public synchronized boolean attemptToSetLeader(Node node) {
-        if (leaderNode == null) {
-            leaderNode = node;
-            return true;
+    public InvariantMonitor getMonitor() {
+        return monitor;
+    }
+
+    public void sendAppendEntries() {
+        // Leader sends AppendEntries messages periodically; the same timer is re-armed for every new leader
+        timer.reschedule(heartbeatTimer, HEARTBEAT_INTERVAL);
+    }
+
+    private void heartbeatRound() {
+        // Every node that believes it leads sends; a stale leader steps down once it sees a newer term
+        for (Node leader : getActiveNodes()) {
+            if (!leader.getState().equals("leader")) {
+                continue;
+            }
+            leader.log(EventType.HEARTBEAT, "Leader n" + leader.getId() + " sends AppendEntries to followers.");
+            for (Node node : getActiveNodes()) {
+                if (node != leader) {
+                    leader.sendHeartbeat(node);
+                }
+            }
         }
-        return false;
+        timer.reschedule(heartbeatTimer, HEARTBEAT_INTERVAL);
     }
 
     /**
-     * Synchronized method to get the current leader.
+     * Crashes a running node or restarts a crashed one.
      */
-    public synchronized Node getLeaderNode() {
-        return leaderNode;
+    public void toggleCrash(Node node) {
+        if (stopped) {
+            return; // The state files are deleted
+        }
+        if (node.isDown()) {
+            node.restart();
+            updateMessage("Node n" + node.getId() + " restarts from its persisted state.");
+            return;
+        }
+        node.crash();
+        updateMessage("Node n" + node.getId() + " crashed.");
+    }
+
+    public WheelTimer getTimer() {
+        return timer;
     }
 
     /**
-     * Synchronized method to set the leader node.
+     * Current simulated time in milliseconds.
      */
-    public synchronized void setLeaderNode(Node node) {
-        this.leaderNode = node;
+    public long now() {
+        return clock.getAsLong();
     }
 
-    public void sendAppendEntries() {
-        // Leader sends AppendEntries messages periodically
-        Timeline timeline = new Timeline(new KeyFrame(Duration.seconds(3), e -> {
-            Node currentLeader;
-            synchronized (this) {
-                currentLeader = leaderNode;
-            }
-            if (currentLeader != null) {
-                currentLeader.log("Leader n" + currentLeader.getId() + " sends AppendEntries to followers.");
-                for (Node node : getActiveNodes()) {
-                    if (node != currentLeader) {
-                        sendMessage(currentLeader, node, "AppendEntries", Color.PINK);
-                    }
-                }
+    public double getSpeed() {
+        return clock.getSpeed();
+    }
+
+    /**
+     * Runs the simulation at the given multiple of real time, from 0.1 to 100.
+     */
+    public void setSpeed(double speed) {
+        clock.setSpeed(speed);
+        pulse.post(() -> {
+            for (PathTransition animation : animations) {
+                animation.setRate(clock.getSpeed());
             }
-        }));
-        timeline.setCycleCount(Timeline.INDEFINITE);
-        timeline.play();
+        });
+    }
 
-        // Keep track of timelines to pause/resume
-        timelines.add(timeline);
+    public Path getDataDirectory() {
+        return dataDirectory;
     }
 
     public void start() {
@@ -170,49 +236,108 @@ public class Cluster {
             Thread t = new Thread(node);
             t.setDaemon(true); // Allow JVM to exit if main thread terminates
             t.start();
+            nodeThreads.add(t);
         }
+        timer.start();
     }
 
     public void pause() {
         for (Node node : nodes) {
             node.pause();
         }
-        for (Timeline timeline : timelines) {
-            timeline.pause();
-        }
+        timer.pause();
+        clock.pause();
+        pulse.post(() -> animations.forEach(PathTransition::pause));
     }
 
     public void resume() {
         for (Node node : nodes) {
             node.resume();
         }
-        for (Timeline timeline : timelines) {
-            timeline.play();
-        }
+        clock.resume();
+        timer.resume();
+        pulse.post(() -> animations.forEach(PathTransition::play));
     }
 
     public void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
         for (Node node : nodes) {
             node.stop();
         }
-        for (Timeline timeline : timelines) {
-            timeline.stop();
+        timer.stop();
+        pulse.flushAndStop();
+
+        // The node threads may still be syncing their state files; close them only once the threads are gone
+        for (Thread t : nodeThreads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return; // Closing a file under a running node thread could kill it; leave them in the temp directory
+            }
+        }
+        nodeThreads.clear();
+        for (Node node : nodes) {
+            node.closeHardState();
+        }
+        deleteDataDirectory();
+    }
+
+    private void deleteDataDirectory() {
+        try (Stream<Path> files = Files.list(dataDirectory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+            Files.delete(dataDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        timelines.clear();
     }
 
     public void log(String message) {
-        // Append messages to the GUI's messageLabel
-        Platform.runLater(() -> {
-            messageLabel.setText(message);
-        });
+        log(-1, 0, EventType.INFO, message);
     }
 
-    public void sendMessage(Node fromNode, Node toNode, String messageType, Color color) {
+    public void log(int nodeId, int term, EventType type, String message) {
+        // Keep the history in the event log, the GUI label only shows the latest message
+        eventLog.append(nodeId, term, type, message);
+        pulse.postMessage(message);
+    }
+
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    public long getMessageLatency() {
+        return MESSAGE_LATENCY;
+    }
+
+    public long getHeartbeatInterval() {
+        return HEARTBEAT_INTERVAL;
+    }
+
+    /**
+     * Sends a request or response of a call in the given term; see {@link RpcCalls}.
+     */
+    public void sendMessage(Node fromNode, Node toNode, String messageType, Color color, int term, long correlationId) {
         if (fromNode.isDown() || toNode.isDown()) {
             return; // Do not send messages to or from down nodes
         }
-        Platform.runLater(() -> {
+        // Messages arrive after the latency in simulated time
+        Message message = new Message(messageType, fromNode.getId(), fromNode, term, correlationId);
+        timer.schedule(() -> toNode.receiveMessage(message), MESSAGE_LATENCY);
+
+        // The animation only shows the delivery; at high speeds it is skipped rather than falling behind
+        if (MESSAGE_LATENCY / clock.getSpeed() < MIN_ANIMATION_MILLIS) {
+            return;
+        }
+        pulse.post(() -> {
+            if (animations.size() >= MAX_ANIMATIONS) {
+                return;
+            }
             // Create message representation
             Circle messageCircle = new Circle(10, color);
             Text messageLabelText = new Text(messageType);
@@ -225,30 +350,28 @@ public class Cluster {
             pane.getChildren().add(messageGroup);
 
             // Create path for message to move along
-            Path path = new Path();
+            javafx.scene.shape.Path path = new javafx.scene.shape.Path();
             MoveTo moveTo = new MoveTo(fromNode.getCircle().getCenterX(), fromNode.getCircle().getCenterY());
             LineTo lineTo = new LineTo(toNode.getCircle().getCenterX(), toNode.getCircle().getCenterY());
             path.getElements().addAll(moveTo, lineTo);
 
-            // Animate the message along the path
+            // Animate the message along the path, at the current speed of the simulation
             PathTransition pt = new PathTransition();
-            pt.setDuration(Duration.seconds(1));
+            pt.setDuration(Duration.millis(MESSAGE_LATENCY));
+            pt.setRate(clock.getSpeed());
             pt.setPath(path);
             pt.setNode(messageGroup);
             pt.setOnFinished(e -> {
                 pane.getChildren().remove(messageGroup);
-                // After the message arrives, process it
-                Message message = new Message(messageType, fromNode.getId(), fromNode, fromNode.getTerm());
-                toNode.receiveMessage(message);
+                animations.remove(pt);
             });
+            animations.add(pt);
             pt.play();
         });
     }
 
     // Method to update global messages
     public void updateMessage(String message) {
-        Platform.runLater(() -> {
-            messageLabel.setText(message);
-        });
+        pulse.postMessage(message);
     }
 }
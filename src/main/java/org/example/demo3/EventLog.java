@@ -0,0 +1,124 @@
+package org.example.demo3;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Bounded, lock-free event log shared by all nodes of a cluster.
+ * Events are stored column-wise in pre-allocated arrays that are overwritten in a ring,
+ * so memory stays constant no matter how long the simulation runs.
+ * Writers claim a slot with a single atomic increment; readers copy slots optimistically
+ * and drop the ones that were overwritten while being read.
+ */
+public class EventLog {
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private final int capacity;
+    private final int mask;
+    private final LongSupplier clock; // Source of the timestamps
+
+    private final long[] timestamps;
+    private final int[] nodeIds;
+    private final int[] terms;
+    private final EventType[] types;
+    private final String[] messages;
+
+    // Per slot: sequence + 1 of the event stored there, negative while a writer is filling it, 0 if empty
+    private final AtomicLongArray published;
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    public EventLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public EventLog(int capacity) {
+        this(capacity, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock Millisecond clock for the timestamps, e.g. the simulated time of a cluster.
+     */
+    public EventLog(int capacity, LongSupplier clock) {
+        this.clock = clock;
+        // Round up to a power of two so the slot can be computed with a mask
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        timestamps = new long[size];
+        nodeIds = new int[size];
+        terms = new int[size];
+        types = new EventType[size];
+        messages = new String[size];
+        published = new AtomicLongArray(size);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of events appended so far, including the ones that were already overwritten.
+     */
+    public long getSequence() {
+        return nextSequence.get();
+    }
+
+    public void append(int nodeId, int term, EventType type, String message) {
+        long sequence = nextSequence.getAndIncrement();
+        int slot = (int) (sequence & mask);
+
+        published.set(slot, -(sequence + 1)); // Mark slot as being written
+        timestamps[slot] = clock.getAsLong();
+        nodeIds[slot] = nodeId;
+        terms[slot] = term;
+        types[slot] = type;
+        messages[slot] = message;
+        published.set(slot, sequence + 1); // Publish
+    }
+
+    /**
+     * Copies all events still held in the ring, oldest first.
+     */
+    public List<LogEvent> snapshot() {
+        return snapshot(event -> true);
+    }
+
+    /**
+     * Copies the events still held in the ring that match the filter, oldest first.
+     */
+    public List<LogEvent> snapshot(Predicate<LogEvent> filter) {
+        long end = nextSequence.get();
+        long start = Math.max(0, end - capacity);
+        List<LogEvent> result = new ArrayList<>();
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mask);
+            if (published.get(slot) != sequence + 1) {
+                continue; // Not yet published or already overwritten
+            }
+            LogEvent event = new LogEvent(sequence, timestamps[slot], nodeIds[slot], terms[slot], types[slot], messages[slot]);
+            VarHandle.acquireFence();
+            if (published.get(slot) != sequence + 1) {
+                continue; // Overwritten while copying
+            }
+            if (filter.test(event)) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    public static void writeCsv(List<LogEvent> events, Writer out) throws IOException {
+        out.write("sequence,timestamp,node,term,type,message\n");
+        for (LogEvent event : events) {
+            out.write(event.toCsvLine());
+            out.write('\n');
+        }
+    }
+}
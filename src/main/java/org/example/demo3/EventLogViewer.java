@@ -0,0 +1,149 @@
+package org.example.demo3;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.*;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Window listing the history of an {@link EventLog}.
+ * The ListView only creates cells for visible rows, and the list is rebuilt from the ring
+ * at most twice per second and only if new events arrived or a filter changed.
+ */
+public class EventLogViewer {
+    private static final String ALL = "All";
+
+    private final EventLog eventLog;
+    private final Stage stage = new Stage();
+
+    private final ObservableList<LogEvent> items = FXCollections.observableArrayList();
+    private final ComboBox<String> nodeFilter = new ComboBox<>();
+    private final TextField termFilter = new TextField();
+    private final ComboBox<String> typeFilter = new ComboBox<>();
+    private final Label countLabel = new Label();
+
+    private final Timeline refreshTimeline;
+    private long shownSequence = -1;
+
+    public EventLogViewer(EventLog eventLog, int numNodes) {
+        this.eventLog = eventLog;
+
+        // Filters
+        nodeFilter.getItems().add(ALL);
+        for (int i = 1; i <= numNodes; i++) {
+            nodeFilter.getItems().add("n" + i);
+        }
+        nodeFilter.setValue(ALL);
+
+        termFilter.setPromptText("Term");
+        termFilter.setPrefColumnCount(4);
+
+        typeFilter.getItems().add(ALL);
+        for (EventType type : EventType.values()) {
+            typeFilter.getItems().add(type.name());
+        }
+        typeFilter.setValue(ALL);
+
+        nodeFilter.setOnAction(e -> refresh(true));
+        typeFilter.setOnAction(e -> refresh(true));
+        termFilter.textProperty().addListener((obs, oldValue, newValue) -> refresh(true));
+
+        Button exportButton = new Button("Export CSV");
+        exportButton.setOnAction(e -> exportCsv());
+
+        HBox filterBox = new HBox(10, new Label("Node:"), nodeFilter, new Label("Term:"), termFilter,
+                new Label("Type:"), typeFilter, exportButton, countLabel);
+        filterBox.setAlignment(Pos.CENTER_LEFT);
+        filterBox.setPadding(new Insets(10));
+
+        ListView<LogEvent> listView = new ListView<>(items);
+
+        BorderPane layout = new BorderPane();
+        layout.setTop(filterBox);
+        layout.setCenter(listView);
+
+        stage.setScene(new Scene(layout, 900, 500));
+        stage.setTitle("Event Log");
+
+        // Poll the ring instead of pushing every event to the FX thread
+        refreshTimeline = new Timeline(new KeyFrame(Duration.millis(500), e -> refresh(false)));
+        refreshTimeline.setCycleCount(Timeline.INDEFINITE);
+        stage.setOnHidden(e -> refreshTimeline.stop());
+    }
+
+    public void show() {
+        refresh(true);
+        refreshTimeline.play();
+        stage.show();
+        stage.toFront();
+    }
+
+    private void refresh(boolean filterChanged) {
+        long sequence = eventLog.getSequence();
+        if (!filterChanged && sequence == shownSequence) {
+            return;
+        }
+        shownSequence = sequence;
+        items.setAll(eventLog.snapshot(currentFilter()));
+        countLabel.setText(items.size() + " of " + Math.min(sequence, eventLog.getCapacity()) + " events");
+    }
+
+    private Predicate<LogEvent> currentFilter() {
+        String node = nodeFilter.getValue();
+        String type = typeFilter.getValue();
+        Integer term = null;
+        try {
+            if (!termFilter.getText().isBlank()) {
+                term = Integer.parseInt(termFilter.getText().trim());
+            }
+        } catch (NumberFormatException e) {
+            // Ignore invalid input and show all terms
+        }
+
+        int nodeId = (node == null || node.equals(ALL)) ? -1 : Integer.parseInt(node.substring(1));
+        EventType eventType = (type == null || type.equals(ALL)) ? null : EventType.valueOf(type);
+        Integer termValue = term;
+        return event -> (nodeId < 0 || event.getNodeId() == nodeId)
+                && (termValue == null || event.getTerm() == termValue)
+                && (eventType == null || event.getType() == eventType);
+    }
+
+    private void exportCsv() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Export Event Log");
+        chooser.setInitialFileName("raft-events.csv");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files", "*.csv"));
+        File file = chooser.showSaveDialog(stage);
+        if (file == null) {
+            return;
+        }
+
+        List<LogEvent> events = eventLog.snapshot(currentFilter());
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            EventLog.writeCsv(events, out);
+        } catch (IOException e) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Export failed");
+            alert.setHeaderText(null);
+            alert.setContentText("Could not write " + file + ": " + e.getMessage());
+            alert.showAndWait();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.example.demo3;
+
+/**
+ * Categories of entries in the {@link EventLog}.
+ */
+public enum EventType {
+    ELECTION,   // Node times out and starts an election
+    VOTE,       // Votes requested, granted, received or refused
+    LEADER,     // Node becomes leader
+    HEARTBEAT,  // AppendEntries sent or acknowledged
+    STATE,      // Step downs and other role changes
+    INFO        // Scenario setup and everything else
+}
@@ -0,0 +1,61 @@
+package org.example.demo3;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+/**
+ * Immutable copy of one {@link EventLog} entry, handed out to the viewer and the CSV export.
+ */
+public class LogEvent {
+    private final long sequence;
+    private final long timestamp;
+    private final int nodeId; // -1 for cluster-wide events
+    private final int term;
+    private final EventType type;
+    private final String message;
+
+    public LogEvent(long sequence, long timestamp, int nodeId, int term, EventType type, String message) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.nodeId = nodeId;
+        this.term = term;
+        this.type = type;
+        this.message = message;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public EventType getType() {
+        return type;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String toCsvLine() {
+        return sequence + "," + timestamp + "," + (nodeId < 0 ? "" : "n" + nodeId) + "," + term + ","
+                + type + ",\"" + message.replace("\"", "\"\"") + "\"";
+    }
+
+    @Override
+    public String toString() {
+        LocalTime time = LocalTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+        return time + "  " + (nodeId < 0 ? "cluster" : "n" + nodeId) + "  T" + term + "  " + type + "  " + message;
+    }
+}
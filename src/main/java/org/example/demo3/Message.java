@@ -5,12 +5,18 @@ public class Message {
     private int fromId;
     private Node fromNode;
     private int term;
+    private long correlationId; // Id of the call a request belongs to or a response answers, 0 if none
 
     public Message(String type, int fromId, Node fromNode, int term) {
+        this(type, fromId, fromNode, term, 0);
+    }
+
+    public Message(String type, int fromId, Node fromNode, int term, long correlationId) {
         this.type = type;
         this.fromId = fromId;
         this.fromNode = fromNode;
         this.term = term;
+        this.correlationId = correlationId;
     }
 
     public String getType() {
@@ -28,4 +34,8 @@ public class Message {
     public int getTerm() {
         return term;
     }
+
+    public long getCorrelationId() {
+        return correlationId;
+    }
 }
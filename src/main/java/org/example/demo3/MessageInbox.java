@@ -0,0 +1,144 @@
+package org.example.demo3;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock-free inbox of a node: any number of threads offer messages, one thread takes them.
+ * Messages live in a pre-allocated ring, so offering allocates nothing. Producers claim a slot with a
+ * compare-and-set on the tail and publish it through the slot's sequence number (Vyukov's bounded queue);
+ * the consumer owns the head and parks while the inbox is empty. Only the first producer to see it parked
+ * unparks it, so a burst of messages costs one wake-up rather than one per message.
+ */
+public class MessageInbox<E> {
+    private final int mask;
+    private final Object[] slots;
+
+    // Per slot: position + 1 once the message for that position is published, position + capacity once free again
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // Consumer thread only
+
+    // Messages offered before this position are dropped by the consumer, see clear()
+    private final AtomicLong discardBefore = new AtomicLong();
+
+    // Consumer while it is parked or about to park, cleared by the producer that wakes it
+    private final AtomicReference<Thread> waiter = new AtomicReference<>();
+
+    public MessageInbox(int capacity) {
+        // Round up to a power of two so the slot can be computed with a mask
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        slots = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Adds the message unless the inbox is full. Can be called from any thread.
+     *
+     * @return False if the inbox is full; the message is dropped like one lost in the network.
+     */
+    public boolean offer(E message) {
+        long position = tail.get();
+        int slot;
+        while (true) {
+            slot = (int) (position & mask);
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // The consumer has not freed this slot yet
+            } else {
+                position = tail.get(); // Another producer claimed it
+            }
+        }
+        slots[slot] = message;
+        sequences.set(slot, position + 1); // Volatile write, ordered before the read of the waiter below
+
+        if (waiter.get() != null) {
+            Thread consumer = waiter.getAndSet(null);
+            if (consumer != null) {
+                LockSupport.unpark(consumer);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the next message. Consumer thread only.
+     *
+     * @return The message, or null if the inbox is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        while (true) {
+            int slot = (int) (head & mask);
+            if (sequences.get(slot) != head + 1) {
+                if (head < discardBefore.get()) {
+                    Thread.onSpinWait(); // Claimed by a producer that has not published yet
+                    continue;
+                }
+                return null;
+            }
+            E message = (E) slots[slot];
+            slots[slot] = null;
+            sequences.set(slot, head + slots.length);
+            head++;
+            if (head > discardBefore.get()) {
+                return message;
+            }
+        }
+    }
+
+    /**
+     * Removes the next message, parking the calling thread while the inbox is empty. Consumer thread only.
+     */
+    public E take() throws InterruptedException {
+        E message = poll();
+        while (message == null) {
+            waiter.set(Thread.currentThread());
+            message = poll(); // A producer that published before the waiter was set did not unpark
+            if (message == null) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    waiter.set(null);
+                    throw new InterruptedException();
+                }
+                message = poll();
+            }
+            waiter.set(null); // A wake-up still pending only causes one extra loop before the next park
+        }
+        return message;
+    }
+
+    /**
+     * Drops every message offered so far. Can be called from any thread; the consumer discards them on its next poll.
+     */
+    public void clear() {
+        discardBefore.accumulateAndGet(tail.get(), Math::max);
+    }
+
+    /**
+     * Number of queued messages, approximate while producers or the consumer are active.
+     */
+    public int size() {
+        long queued = tail.get() - Math.max(head, discardBefore.get());
+        return (int) Math.max(0, Math.min(slots.length, queued));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -1,37 +1,39 @@
 package org.example.demo3;
 
-import javafx.application.Platform;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import javafx.scene.text.Text;
+import org.example.demo3.storage.HardStateStore;
+import org.example.demo3.timer.Timeout;
 
-import java.text.DecimalFormat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 public class Node implements Runnable {
+    // A RequestVote is sent again if no Vote came back within two message latencies and some slack
+    private static final long VOTE_RETRY_INTERVAL = 2500;
+    private static final int VOTE_ATTEMPTS = 3;
+
     private int id;
     private String state = "follower";
     private int term = 0;
     private Integer votedFor = null;
     private Cluster cluster;
     private long electionTimeout = 5000 + new Random().nextInt(1500); // Default timeout between 5-6.5s
-    private long lastHeartbeat = System.currentTimeMillis();
-    private boolean stopFlag = false;
+    private long lastHeartbeat; // Simulated time of the cluster
+    private volatile boolean stopFlag = false;
 
-    // Visualization components
-    private Circle circle;
-    private Text label;
-    private Text downText; // 'X' text to indicate node failure
+    // Visualization state, rendered by the cluster's refresh pulse
+    private final NodeViewModel view;
 
     private Random random = new Random();
 
-    // Message queue for incoming messages
-    private BlockingQueue<Message> messageQueue = new LinkedBlockingQueue<>();
+    // Lock-free inbox for incoming messages; a full inbox drops messages like a lossy network
+    private final MessageInbox<Message> messageQueue = new MessageInbox<>(1024);
 
     // For tracking votes
-    private Set<Integer> votesReceived = new HashSet<>();
+    private final VoteCount votesReceived = new VoteCount();
 
     private boolean isPaused = false;
 
@@ -40,44 +42,54 @@ public class Node implements Runnable {
     // Election timer control
     private boolean electionTimerRunning = true; // Indicates if the election timer is active
 
+    // Fires the election timeout through the cluster's timing wheel instead of polling
+    private final Timeout electionTimer;
+
+    // Pending RequestVote and AppendEntries calls, answered by Vote and Ack with the same correlation id
+    private final RpcCalls<Node> calls;
+
+    // Durable term and vote, forced to disk before any message sent in the new term or after the new vote
+    private HardStateStore hardState;
+    private final Object hardStateLock = new Object(); // Guards the store and the outbox, synced outside the state lock
+
+    // Messages sent while the term or vote was not on disk yet, sent by the next sync
+    private final List<Runnable> outbox = new ArrayList<>();
+
     // Synchronization lock for state transitions
     private final Object stateLock = new Object();
 
     public Node(int id, Cluster cluster, double x, double y) {
         this.id = id;
         this.cluster = cluster;
+        this.lastHeartbeat = cluster.now();
 
         // Initialize visualization components
-        circle = new Circle(30, Color.LIGHTBLUE);
-        circle.setCenterX(x);
-        circle.setCenterY(y);
-
-        label = new Text();
-        label.setX(x - 40);
-        label.setY(y + 50);
+        view = new NodeViewModel(id, x, y, "Heartbeat sent.");
+        electionTimer = cluster.getTimer().newTimeout(this::electionTimerExpired);
+        calls = new RpcCalls<>(cluster.getTimer(), cluster::now, this::sendCall);
 
-        // Text to indicate node is down
-        downText = new Text("X");
-        downText.setStyle("-fx-font-size: 40px; -fx-font-weight: bold; -fx-fill: red;");
-        downText.setX(x - 10);
-        downText.setY(y + 15);
-        downText.setVisible(false);
+        // Create the state file of this node in the directory of the run; a restart reads it back
+        openHardState();
 
-        // Initial label update
-        updateLabel(electionTimeout);
+        // Arm the election timer and show the initial label
+        updateElectionTimer();
     }
 
     // Getters for visualization
+    public NodeViewModel getView() {
+        return view;
+    }
+
     public Circle getCircle() {
-        return circle;
+        return view.getCircle();
     }
 
     public Text getLabel() {
-        return label;
+        return view.getLabel();
     }
 
     public Text getDownText() {
-        return downText;
+        return view.getDownText();
     }
 
     public int getId() {
@@ -86,13 +98,7 @@ public class Node implements Runnable {
 
     public void setDown(boolean down) {
         isDown = down;
-        Platform.runLater(() -> {
-            downText.setVisible(isDown);
-            if (isDown) {
-                circle.setFill(Color.GRAY);
-                label.setText("ID: n" + id + "\nDOWN");
-            }
-        });
+        view.setDown(down);
     }
 
     public boolean isDown() {
@@ -102,7 +108,7 @@ public class Node implements Runnable {
     public void setElectionTimeout(long timeout) {
         synchronized (stateLock) {
             this.electionTimeout = timeout;
-            updateLabel(electionTimeout);
+            updateElectionTimer();
         }
     }
 
@@ -115,6 +121,7 @@ public class Node implements Runnable {
     public void setLastHeartbeat(long time) {
         synchronized (stateLock) {
             this.lastHeartbeat = time;
+            updateElectionTimer();
         }
     }
 
@@ -124,8 +131,15 @@ public class Node implements Runnable {
 
     public void run() {
         while (!stopFlag) {
+            Message message;
+            try {
+                message = messageQueue.take(); // Wait for messages and election timeouts instead of polling
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                continue;
+            }
             synchronized (this) {
-                if (isPaused || isDown) {
+                while ((isPaused || isDown) && !stopFlag) {
                     try {
                         wait();
                     } catch (InterruptedException e) {
@@ -133,57 +147,52 @@ public class Node implements Runnable {
                     }
                 }
             }
-            if (isDown) {
-                continue; // Skip processing if node is down
-            }
-
-            if (electionTimerRunning) {
-                long elapsedTime;
-                long remainingTime;
-                synchronized (stateLock) {
-                    elapsedTime = System.currentTimeMillis() - lastHeartbeat;
-                    remainingTime = electionTimeout - elapsedTime;
-                }
-
-                if (remainingTime <= 0) {
-                    cluster.nodeTimeoutExpired(this);
-                } else if (state.equals("follower")) {
-                    updateLabel(remainingTime);
-                }
+            if (stopFlag) {
+                break;
             }
+            processMessage(message);
+            syncHardState();
+        }
+    }
 
-            // Process incoming messages
-            processIncomingMessages();
+    private void processMessage(Message message) {
+        switch (message.getType()) {
+            case "ElectionTimeout":
+                handleElectionTimeout();
+                break;
+            case "RequestVote":
+                handleRequestVote(message);
+                break;
+            case "Vote":
+                handleVote(message);
+                break;
+            case "AppendEntries":
+                handleAppendEntries(message);
+                break;
+            case "Ack":
+                handleAck(message);
+                break;
+        }
+    }
 
-            try {
-                Thread.sleep(100); // Update more frequently for smoother countdown
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+    // Runs on the timer thread. A timeout dropped by a full inbox would leave the node without one, so retry a tick later
+    private void electionTimerExpired() {
+        if (!messageQueue.offer(new Message("ElectionTimeout", id, this, 0))) {
+            cluster.getTimer().reschedule(electionTimer, 1);
         }
     }
 
-    private void processIncomingMessages() {
-        if (isDown) {
-            return; // Do not process messages if node is down
-        }
-        Message message;
-        while ((message = messageQueue.poll()) != null) {
-            switch (message.getType()) {
-                case "RequestVote":
-                    handleRequestVote(message);
-                    break;
-                case "Vote":
-                    handleVote(message);
-                    break;
-                case "AppendEntries":
-                    handleAppendEntries(message);
-                    break;
-                case "Ack":
-                    handleAck(message);
-                    break;
+    private void handleElectionTimeout() {
+        synchronized (stateLock) {
+            if (!electionTimerRunning) {
+                return; // Timer was stopped after it fired
+            }
+            if (cluster.now() - lastHeartbeat < electionTimeout) {
+                updateElectionTimer(); // Timer was re-armed after it fired, or fired a tick early
+                return;
             }
         }
+        cluster.nodeTimeoutExpired(this);
     }
 
     private void handleRequestVote(Message message) {
@@ -191,6 +200,7 @@ public class Node implements Runnable {
             if (message.getTerm() > term) {
                 term = message.getTerm();
                 votedFor = null;
+                persistHardState();
                 setState("follower");
 
                 // Restart the election timer
@@ -198,28 +208,32 @@ public class Node implements Runnable {
                 resetElectionTimeout();
 
                 updateVisualization();
-                cluster.log("Node n" + id + " steps down to follower in term " + term + ".");
+                log(EventType.STATE, "Node n" + id + " steps down to follower in term " + term + ".");
             }
 
             if ((votedFor == null || votedFor == message.getFromId()) && message.getTerm() == term) {
                 votedFor = message.getFromId();
-                lastHeartbeat = System.currentTimeMillis(); // Reset election timeout
-                updateLabel(electionTimeout);
-                cluster.sendMessage(this, message.getFromNode(), "Vote", Color.LIGHTGREEN);
-                log("Node n" + id + " votes for Node n" + message.getFromId() + " in term " + term + ".");
+                persistHardState();
+                lastHeartbeat = cluster.now(); // Reset election timeout
+                updateElectionTimer();
+                send(message.getFromNode(), "Vote", Color.LIGHTGREEN, term, message.getCorrelationId());
+                log(EventType.VOTE, "Node n" + id + " votes for Node n" + message.getFromId() + " in term " + term + ".");
             } else {
                 // Already voted in this term
-                log("Node n" + id + " has already voted in term " + term + ".");
+                log(EventType.VOTE, "Node n" + id + " has already voted in term " + term + ".");
             }
         }
     }
 
     private void handleVote(Message message) {
+        if (!calls.complete(message.getCorrelationId())) {
+            return; // Answer to a retried request that was already counted, or to a call of an earlier election
+        }
         synchronized (stateLock) {
             if (state.equals("candidate") && message.getTerm() == term) {
                 votesReceived.add(message.getFromId());
-                log("Node n" + id + " received vote from Node n" + message.getFromId() + " in term " + term + ".");
-                if (votesReceived.size() >= (cluster.getActiveNodes().size() / 2 + 1)) {
+                log(EventType.VOTE, "Node n" + id + " received vote from Node n" + message.getFromId() + " in term " + term + ".");
+                if (votesReceived.isMajority(cluster.getNodes().size())) {
                     becomeLeader();
                 }
             }
@@ -231,6 +245,7 @@ public class Node implements Runnable {
             if (message.getTerm() > term) {
                 term = message.getTerm();
                 votedFor = null;
+                persistHardState();
                 setState("follower");
 
                 // Restart the election timer
@@ -238,13 +253,14 @@ public class Node implements Runnable {
                 resetElectionTimeout();
 
                 updateVisualization();
-                cluster.log("Node n" + id + " steps down to follower in term " + term + ".");
+                log(EventType.STATE, "Node n" + id + " steps down to follower in term " + term + ".");
             }
 
             if (message.getTerm() >= term) {
                 if (message.getTerm() > term) {
                     term = message.getTerm();
                     votedFor = null;
+                    persistHardState();
                     setState("follower");
 
                     // Restart the election timer
@@ -252,17 +268,26 @@ public class Node implements Runnable {
                     resetElectionTimeout();
 
                     updateVisualization();
-                    cluster.log("Node n" + id + " steps down to follower in term " + term + ".");
+                    log(EventType.STATE, "Node n" + id + " steps down to follower in term " + term + ".");
+                }
+                if (state.equals("candidate")) {
+                    // Another node won the election of this term
+                    setState("follower");
+                    electionTimerRunning = true;
+                    updateVisualization();
+                    log(EventType.STATE, "Node n" + id + " steps down to follower in term " + term + ".");
                 }
-                lastHeartbeat = System.currentTimeMillis();
-                cluster.sendMessage(this, message.getFromNode(), "Ack", Color.PINK);
-                log("Node n" + id + " acknowledges AppendEntries from Leader n" + message.getFromId() + " in term " + term + ".");
+                lastHeartbeat = cluster.now();
+                updateElectionTimer();
+                send(message.getFromNode(), "Ack", Color.PINK, term, message.getCorrelationId());
+                log(EventType.HEARTBEAT, "Node n" + id + " acknowledges AppendEntries from Leader n" + message.getFromId() + " in term " + term + ".");
             }
         }
     }
 
     private void handleAck(Message message) {
-        // For simplicity, leader does not need to process acks in this simulation
+        // The leader does not use Acks in this simulation; matching the Ack to its call discards duplicates and stale ones
+        calls.complete(message.getCorrelationId());
     }
 
     public void receiveMessage(Message message) {
@@ -289,6 +314,8 @@ public class Node implements Runnable {
 
     public void stop() {
         stopFlag = true;
+        // Wake up the thread if it waits for messages; if the inbox is full, it does not wait and sees the flag
+        messageQueue.offer(new Message("Stop", id, this, 0));
         resume(); // Ensure thread exits if waiting
     }
 
@@ -305,11 +332,126 @@ public class Node implements Runnable {
         }
     }
 
+    private void openHardState() {
+        try {
+            HardStateStore store = new HardStateStore(cluster.getDataDirectory().resolve("node-" + id + ".state"));
+            synchronized (hardStateLock) {
+                hardState = store;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        term = hardState.getTerm();
+        votedFor = hardState.getVotedFor();
+    }
+
+    /**
+     * Simulates a crash: the node stops answering and loses everything it does not keep on disk.
+     */
+    public void crash() {
+        synchronized (stateLock) {
+            setDown(true);
+            messageQueue.clear();
+            electionTimerRunning = false;
+            updateElectionTimer();
+            state = "follower";
+            term = 0;
+            votedFor = null;
+            votesReceived.clear();
+            calls.cancelAll(term);
+            synchronized (hardStateLock) {
+                try {
+                    hardState.sync(); // Keeps the last term and vote
+                    hardState.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                outbox.clear(); // The messages that waited for the sync are lost with the node
+            }
+            updateVisualization();
+            log(EventType.STATE, "Node n" + id + " crashed and lost its volatile state.");
+        }
+    }
+
+    /**
+     * Restarts a crashed node from its persisted term and vote. It rejoins the cluster as a follower.
+     */
+    public void restart() {
+        synchronized (stateLock) {
+            closeHardState(); // Still open if the node was only set down
+            openHardState();
+            state = "follower";
+            electionTimerRunning = true;
+            setDown(false);
+            resetElectionTimeout();
+            updateVisualization();
+            log(EventType.STATE, "Node n" + id + " restarted in term " + term + (votedFor != null ? " having voted for n" + votedFor : "") + ".");
+        }
+        synchronized (this) {
+            notify(); // The message loop waits while the node is down
+        }
+    }
+
+    // Closes the state file under the store lock, so it never closes in the middle of a sync of the node
+    // thread; later syncs do nothing. The cluster calls it when it stops, once the node thread has ended.
+    public void closeHardState() {
+        synchronized (hardStateLock) {
+            try {
+                hardState.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Called with the state lock held, after every change of term or vote; syncHardState writes it to disk
+    private void persistHardState() {
+        calls.enterTerm(term); // Requests of an earlier term can no longer succeed
+        synchronized (hardStateLock) {
+            hardState.update(term, votedFor, 0);
+        }
+    }
+
+    // Forces a changed term or vote to disk without the state lock, so the view does not wait for the disk,
+    // then sends the messages that waited for it. The node thread calls it after every message.
+    private void syncHardState() {
+        List<Runnable> ready;
+        synchronized (hardStateLock) {
+            try {
+                hardState.sync();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ready = new ArrayList<>(outbox);
+            outbox.clear();
+        }
+        for (Runnable message : ready) {
+            message.run();
+        }
+    }
+
+    // Sends a message right away if the term and vote are on disk, otherwise with the next sync: a vote or
+    // a request of a new term must not leave before a crash could forget it
+    private void send(Node to, String type, Color color, int messageTerm, long correlationId) {
+        synchronized (hardStateLock) {
+            if (hardState.isClosed()) {
+                return; // Crashed: nothing leaves the node until it restarts
+            }
+            if (hardState.isDirty()) {
+                outbox.add(() -> cluster.sendMessage(this, to, type, color, messageTerm, correlationId));
+                return;
+            }
+        }
+        cluster.sendMessage(this, to, type, color, messageTerm, correlationId);
+    }
+
     public void setTerm(int newTerm) {
         synchronized (stateLock) {
             term = newTerm;
-            updateLabel(electionTimeout); // Update label with current term
+            persistHardState();
+            updateLabel(); // Update label with current term
         }
+        syncHardState();
     }
 
     public int getTerm() {
@@ -321,8 +463,10 @@ public class Node implements Runnable {
     public void setVotedFor(Integer votedForId) {
         synchronized (stateLock) {
             votedFor = votedForId;
-            updateLabel(electionTimeout); // Update label with current votedFor
+            persistHardState();
+            updateLabel(); // Update label with current votedFor
         }
+        syncHardState();
     }
 
     public Integer getVotedFor() {
@@ -340,80 +484,76 @@ public class Node implements Runnable {
     public void resetElectionTimeout() {
         synchronized (stateLock) {
             electionTimeout = 5000 + random.nextInt(1500); // Randomized timeout between 5-6.5s
-            lastHeartbeat = System.currentTimeMillis();
-            updateLabel(electionTimeout);
+            lastHeartbeat = cluster.now();
+            updateElectionTimer();
         }
     }
 
     private void updateVisualization() {
-        Platform.runLater(() -> {
-            if (isDown) {
-                return; // Do not update visualization if node is down
-            }
-            switch (state) {
-                case "follower":
-                    circle.setFill(Color.LIGHTBLUE);
-                    break;
-                case "candidate":
-                    circle.setFill(Color.LIGHTGREEN);
-                    break;
-                case "leader":
-                    circle.setFill(Color.RED);
-                    break;
-            }
-            updateLabel(electionTimeout); // Update label when state changes
-        });
+        updateLabel(); // Circle color and label are both derived from the view model
     }
 
-    private void updateLabel(long remainingTime) {
+    private void updateLabel() {
         if (isDown) {
             return; // Do not update label if node is down
         }
-        String votedForText = (votedFor != null) ? "n" + votedFor : "None";
-        String timeoutText = "";
+        // The countdown itself is computed by the view from the deadline on every frame
+        view.update(state, term, votedFor, lastHeartbeat + electionTimeout, electionTimerRunning);
+    }
+
+    private void updateElectionTimer() {
+        synchronized (stateLock) {
+            if (electionTimerRunning) {
+                long remainingTime = lastHeartbeat + electionTimeout - cluster.now();
+                cluster.getTimer().reschedule(electionTimer, Math.max(0, remainingTime));
+            } else {
+                cluster.getTimer().cancel(electionTimer);
+            }
+            updateLabel();
+        }
+    }
 
-        if (state.equals("follower") && electionTimerRunning) {
-            double remainingSeconds = remainingTime / 1000.0;
-            DecimalFormat df = new DecimalFormat("#0.0");
-            timeoutText = "\nTimeout: " + df.format(remainingSeconds) + "s";
-        } else if (state.equals("candidate")) {
-            timeoutText = "\nWaiting for votes...";
-        } else if (state.equals("leader")) {
-            timeoutText = "\nHeartbeat sent.";
+    private void becomeLeader() {
+        // A majority voted for this node in its term; no other node can have one in the same term
+        setState("leader");
+        log(EventType.LEADER, "Node n" + id + " becomes leader in term " + term + ".");
+        cluster.updateMessage("Node n" + id + " becomes leader in term " + term + ".");
+        if (!cluster.getMonitor().leaderElected(0, term, id)) {
+            log(EventType.INFO, "Invariant violated: a second leader in term " + term + ".");
         }
 
-        final String labelText = "ID: n" + id +
-                "\nTerm: " + term +
-                "\nVotedFor: " + votedForText +
-                "\nState: " + state +
-                timeoutText;
+        // Leader's election timer is not needed; heartbeats prevent timeouts
+        electionTimerRunning = false;
+        updateElectionTimer();
 
-        Platform.runLater(() -> label.setText(labelText));
+        // Start sending AppendEntries
+        cluster.sendAppendEntries();
     }
 
-    private void becomeLeader() {
-        // Attempt to set self as leader in the Cluster
-        boolean success = cluster.attemptToSetLeader(this);
-        if (success) {
-            setState("leader");
-            cluster.log("Node n" + id + " becomes leader in term " + term + ".");
-            cluster.updateMessage("Node n" + id + " becomes leader in term " + term + ".");
-
-            // Leader's election timer is not needed; heartbeats prevent timeouts
-            electionTimerRunning = false;
+    /**
+     * Sends one AppendEntries heartbeat to the follower if this node is the leader. Called by the
+     * cluster's heartbeat round; the Ack completes the call, the next round takes the place of a retry.
+     */
+    public void sendHeartbeat(Node follower) {
+        synchronized (stateLock) {
+            if (state.equals("leader")) {
+                long interval = cluster.getHeartbeatInterval();
+                calls.call(follower, "AppendEntries", term, interval, cluster.now() + interval, 1);
+            }
+        }
+    }
 
-            // Start sending AppendEntries
-            cluster.sendAppendEntries();
-        } else {
-            log("Node n" + id + " detected an existing leader. Aborting leadership.");
-            setState("follower");
-            electionTimerRunning = true;
-            resetElectionTimeout();
+    // Sends one attempt of a call; runs on the timer thread for retries, so it must not take the state lock
+    private void sendCall(Node peer, String type, int callTerm, long correlationId, int attempt) {
+        Color color = type.equals("RequestVote") ? Color.YELLOW : Color.PINK;
+        send(peer, type, color, callTerm, correlationId);
+        if (attempt > 1) {
+            cluster.log(id, callTerm, EventType.VOTE, "Node n" + id + " sends " + type + " to Node n" + peer.getId() + " again (attempt " + attempt + ").");
         }
     }
 
-    public void log(String message) {
-        cluster.log(message);
+    public void log(EventType type, String message) {
+        cluster.log(id, term, type, message);
     }
 
     public void nodeTimeoutExpired() {
@@ -426,37 +566,30 @@ public class Node implements Runnable {
                 return;
             }
 
-            // Before becoming a candidate, check if a leader already exists
-            if (cluster.getLeaderNode() != null) {
-                log("Node n" + id + " detected existing leader. Remaining follower.");
-                setState("follower");
-                electionTimerRunning = true;
-                resetElectionTimeout();
-                return;
-            }
-
             // Increment term before becoming candidate
             term += 1;
 
-            // Stop the election timer
-            electionTimerRunning = false;
+            // Keep the election timer running: if the votes split, the candidate starts another election
+            electionTimerRunning = true;
+            resetElectionTimeout();
 
             // Update the global message
             cluster.updateMessage("Node n" + id + " starts a new election in term " + term + ".");
 
             setState("candidate");
             votedFor = id;
-            resetVotesReceived();
-            log("Node n" + id + " becomes candidate for term " + term + " and requests votes.");
+            persistHardState();
+            votesReceived.startElection(id);
+            log(EventType.ELECTION, "Node n" + id + " becomes candidate for term " + term + " and requests votes.");
 
-            // Send RequestVote messages
-            for (Node otherNode : cluster.getActiveNodes()) {
+            // Ask every other node, also those that are down now: a retry reaches them if they restart in time
+            long deadline = cluster.now() + electionTimeout;
+            for (Node otherNode : cluster.getNodes()) {
                 if (otherNode != this) {
-                    cluster.sendMessage(this, otherNode, "RequestVote", Color.YELLOW);
+                    calls.call(otherNode, "RequestVote", term, VOTE_RETRY_INTERVAL, deadline, VOTE_ATTEMPTS);
                 }
             }
-
-            // Do not reset election timer here, as candidates stop their timers
         }
+        syncHardState();
     }
 }
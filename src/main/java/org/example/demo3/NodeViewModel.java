@@ -0,0 +1,163 @@
+package org.example.demo3;
+
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+import javafx.scene.text.Text;
+
+import java.util.Objects;
+
+/**
+ * Displayed state of a single node.
+ * Simulation threads only write the latest values and mark the model dirty,
+ * the {@link ViewRefreshPulse} copies dirty models into the scene graph once per frame.
+ */
+public class NodeViewModel {
+    private final int id;
+    private final String leaderText; // Status line shown while the node is leader
+
+    // Visualization components (only touched on the FX thread after construction)
+    private final Circle circle;
+    private final Text label;
+    private final Text downText; // 'X' text to indicate node failure
+
+    // Latest values written by the simulation threads
+    private String state = "follower";
+    private int term = 0;
+    private Integer votedFor = null;
+    private long electionDeadline = 0; // Countdown is derived from this on every frame
+    private boolean electionTimerRunning = false;
+    private boolean down = false;
+
+    private volatile boolean dirty = true;
+    private long renderedTenths = -1; // Countdown currently shown, FX thread only
+
+    public NodeViewModel(int id, double x, double y, String leaderText) {
+        this.id = id;
+        this.leaderText = leaderText;
+
+        circle = new Circle(30, Color.LIGHTBLUE);
+        circle.setCenterX(x);
+        circle.setCenterY(y);
+
+        label = new Text();
+        label.setX(x - 40);
+        label.setY(y + 50);
+
+        downText = new Text("X");
+        downText.setStyle("-fx-font-size: 40px; -fx-font-weight: bold; -fx-fill: red;");
+        downText.setX(x - 10);
+        downText.setY(y + 15);
+        downText.setVisible(false);
+    }
+
+    public Circle getCircle() {
+        return circle;
+    }
+
+    public Text getLabel() {
+        return label;
+    }
+
+    public Text getDownText() {
+        return downText;
+    }
+
+    /**
+     * Records the current node state. Safe to call from any thread; the model is only marked
+     * dirty if something changed. The countdown does not need updates, it is computed from the
+     * election deadline when rendering.
+     */
+    public synchronized void update(String state, int term, Integer votedFor, long electionDeadline, boolean electionTimerRunning) {
+        if (state.equals(this.state) && term == this.term && Objects.equals(votedFor, this.votedFor)
+                && electionDeadline == this.electionDeadline && electionTimerRunning == this.electionTimerRunning) {
+            return;
+        }
+        this.state = state;
+        this.term = term;
+        this.votedFor = votedFor;
+        this.electionDeadline = electionDeadline;
+        this.electionTimerRunning = electionTimerRunning;
+        dirty = true;
+    }
+
+    public synchronized void setDown(boolean down) {
+        if (this.down != down) {
+            this.down = down;
+            dirty = true;
+        }
+    }
+
+    /**
+     * True if the values changed or the displayed countdown moved to the next tenth of a second.
+     */
+    public boolean needsRender(long nowMillis) {
+        if (dirty) {
+            return true;
+        }
+        synchronized (this) {
+            return renderedTenths >= 0 && countdownTenths(nowMillis) != renderedTenths;
+        }
+    }
+
+    private long countdownTenths(long nowMillis) {
+        return Math.max(0, (electionDeadline - nowMillis + 50) / 100);
+    }
+
+    /**
+     * Copies the latest values into the scene graph. Must be called on the FX thread.
+     */
+    public void apply(long nowMillis) {
+        String state;
+        int term;
+        Integer votedFor;
+        long tenths;
+        boolean timerRunning;
+        boolean isDown;
+        synchronized (this) {
+            state = this.state;
+            term = this.term;
+            votedFor = this.votedFor;
+            tenths = countdownTenths(nowMillis);
+            timerRunning = this.electionTimerRunning;
+            isDown = this.down;
+            dirty = false;
+        }
+
+        downText.setVisible(isDown);
+        renderedTenths = -1;
+        if (isDown) {
+            circle.setFill(Color.GRAY);
+            label.setText("ID: n" + id + "\nDOWN");
+            return;
+        }
+
+        switch (state) {
+            case "follower":
+                circle.setFill(Color.LIGHTBLUE);
+                break;
+            case "candidate":
+                circle.setFill(Color.LIGHTGREEN);
+                break;
+            case "leader":
+                circle.setFill(Color.RED);
+                break;
+        }
+
+        String votedForText = (votedFor != null) ? "n" + votedFor : "None";
+        String timeoutText = "";
+        if (state.equals("follower") && timerRunning) {
+            timeoutText = "\nTimeout: " + (tenths / 10) + "." + (tenths % 10) + "s";
+            renderedTenths = tenths;
+        } else if (state.equals("candidate")) {
+            timeoutText = "\nWaiting for votes...";
+        } else if (state.equals("leader")) {
+            timeoutText = "\n" + leaderText;
+        }
+
+        label.setText("ID: n" + id +
+                "\nTerm: " + term +
+                "\nVotedFor: " + votedForText +
+                "\nState: " + state +
+                timeoutText);
+    }
+}
@@ -0,0 +1,159 @@
+package org.example.demo3;
+
+import org.example.demo3.timer.Timeout;
+import org.example.demo3.timer.WheelTimer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Outstanding requests of one node, e.g. RequestVote or AppendEntries, matched to their responses by
+ * correlation id. Every call has a deadline and a bounded number of attempts; an attempt that is not
+ * answered in time is sent again with the same id, so a duplicate answer completes the call only once.
+ * All calls belong to the term they were made in and are cancelled when the node's term changes.
+ *
+ * Ids grow monotonically, so a response to a call of an earlier term is recognized as stale by a single
+ * comparison with the first id of the current term; only responses of the current term are looked up.
+ * Thread-safe; retries are sent from the timer thread.
+ *
+ * @param <P> The peer type the messages are sent to.
+ */
+public class RpcCalls<P> {
+    /**
+     * Sends one attempt of a call. Must not wait for the node's state lock, which the caller may hold.
+     */
+    public interface Sender<P> {
+        void send(P peer, String type, int term, long correlationId, int attempt);
+    }
+
+    private static class Call<P> {
+        final long id;
+        final P peer;
+        final String type;
+        final int term;
+        final long deadline; // Simulated time after which the call is abandoned
+        final long attemptTimeout;
+        final int maxAttempts;
+        int attempts = 1;
+        Timeout retryTimer;
+
+        Call(long id, P peer, String type, int term, long deadline, long attemptTimeout, int maxAttempts) {
+            this.id = id;
+            this.peer = peer;
+            this.type = type;
+            this.term = term;
+            this.deadline = deadline;
+            this.attemptTimeout = attemptTimeout;
+            this.maxAttempts = maxAttempts;
+        }
+    }
+
+    private final WheelTimer timer;
+    private final LongSupplier clock;
+    private final Sender<P> sender;
+
+    private final Map<Long, Call<P>> pending = new HashMap<>();
+    private long nextId = 1; // 0 marks a message that is not part of a call
+    private long firstIdOfTerm = 1; // Responses to lower ids belong to an earlier term
+    private int term;
+
+    // Statistics
+    private long calls;
+    private long retries;
+    private long completed;
+    private long expired;
+    private long staleResponses;
+
+    public RpcCalls(WheelTimer timer, LongSupplier clock, Sender<P> sender) {
+        this.timer = timer;
+        this.clock = clock;
+        this.sender = sender;
+    }
+
+    /**
+     * Sends a request and keeps it pending until it is answered, the deadline passes, the attempts
+     * are used up or the term changes.
+     *
+     * @param timeout     Time to wait for an answer before the next attempt, in simulated milliseconds.
+     * @param deadline    Simulated time after which no further attempt is made.
+     * @param maxAttempts Attempts including the first one; 1 sends it once without retrying.
+     * @return The correlation id of the call.
+     */
+    public synchronized long call(P peer, String type, int term, long timeout, long deadline, int maxAttempts) {
+        enterTerm(term);
+        Call<P> call = new Call<>(nextId++, peer, type, term, deadline, timeout, maxAttempts);
+        call.retryTimer = timer.newTimeout(() -> attemptTimedOut(call));
+        pending.put(call.id, call);
+        calls++;
+        sender.send(peer, type, term, call.id, 1);
+        timer.reschedule(call.retryTimer, timeout);
+        return call.id;
+    }
+
+    /**
+     * Completes the call answered by a response.
+     *
+     * @return False if the response is stale: its call was already answered, abandoned or made in an earlier term.
+     */
+    public synchronized boolean complete(long correlationId) {
+        if (correlationId < firstIdOfTerm) {
+            staleResponses++;
+            return false;
+        }
+        Call<P> call = pending.remove(correlationId);
+        if (call == null) {
+            staleResponses++;
+            return false;
+        }
+        timer.cancel(call.retryTimer);
+        completed++;
+        return true;
+    }
+
+    /**
+     * Cancels the pending calls if the node moved on from their term.
+     */
+    public synchronized void enterTerm(int newTerm) {
+        if (newTerm != term) {
+            cancelAll(newTerm);
+        }
+    }
+
+    /**
+     * Abandons all pending calls because the node moved to the given term, or lost its state if it crashed.
+     */
+    public synchronized void cancelAll(int newTerm) {
+        for (Call<P> call : pending.values()) {
+            timer.cancel(call.retryTimer);
+        }
+        pending.clear();
+        firstIdOfTerm = nextId;
+        term = newTerm;
+    }
+
+    private synchronized void attemptTimedOut(Call<P> call) {
+        if (pending.get(call.id) != call) {
+            return; // Answered or cancelled while the timer fired
+        }
+        if (call.attempts >= call.maxAttempts || clock.getAsLong() >= call.deadline) {
+            pending.remove(call.id);
+            expired++;
+            return;
+        }
+        call.attempts++;
+        retries++;
+        sender.send(call.peer, call.type, call.term, call.id, call.attempts);
+        timer.reschedule(call.retryTimer, call.attemptTimeout);
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "calls=" + calls + ", retries=" + retries + ", completed=" + completed + ", expired=" + expired
+                + ", stale responses=" + staleResponses + ", pending=" + pending.size();
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.demo3;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.Label;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Single UI refresh pulse for a cluster.
+ * Instead of posting a Platform.runLater for every change, simulation threads mark view models dirty,
+ * replace the pending global message or queue scene graph actions. The pulse applies all of it
+ * at most once per rendered frame.
+ */
+public class ViewRefreshPulse extends AnimationTimer {
+    private final List<NodeViewModel> models = new CopyOnWriteArrayList<>();
+    private final Label messageLabel;
+
+    // Only the latest global message is shown, older ones are simply overwritten
+    private final AtomicReference<String> pendingMessage = new AtomicReference<>();
+
+    // Scene graph work that must run on the FX thread (e.g. starting message animations)
+    private final ConcurrentLinkedQueue<Runnable> pendingActions = new ConcurrentLinkedQueue<>();
+
+    // Simulated time; countdowns stand still while it is paused and run faster at higher speeds
+    private final LongSupplier clock;
+
+    public ViewRefreshPulse(Label messageLabel, LongSupplier clock) {
+        this.messageLabel = messageLabel;
+        this.clock = clock;
+    }
+
+    public void register(NodeViewModel model) {
+        models.add(model);
+    }
+
+    public void postMessage(String message) {
+        pendingMessage.set(message);
+    }
+
+    public void post(Runnable action) {
+        pendingActions.offer(action);
+    }
+
+    @Override
+    public void handle(long now) {
+        String message = pendingMessage.getAndSet(null);
+        if (message != null) {
+            messageLabel.setText(message);
+        }
+
+        long nowMillis = clock.getAsLong();
+        for (NodeViewModel model : models) {
+            if (model.needsRender(nowMillis)) {
+                model.apply(nowMillis);
+            }
+        }
+
+        // Only run what was queued before this frame so a busy simulation cannot starve rendering
+        int count = pendingActions.size();
+        Runnable action;
+        while (count-- > 0 && (action = pendingActions.poll()) != null) {
+            action.run();
+        }
+    }
+
+    /**
+     * Stops the pulse after applying everything that is still pending. Must be called on the FX thread.
+     */
+    public void flushAndStop() {
+        stop();
+        handle(System.nanoTime());
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.demo3;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Votes a candidate of the GUI cluster collected in its current term. A new election starts with the
+ * candidate's own vote, so with one of three nodes down the two live ones still form a majority.
+ * Not thread-safe: the nodes only use it under their state lock.
+ */
+public class VoteCount {
+    private final Set<Integer> voters = new HashSet<>();
+
+    // Drops the votes of the last election and votes for the candidate itself
+    public void startElection(int candidateId) {
+        voters.clear();
+        voters.add(candidateId);
+    }
+
+    public void add(int voterId) {
+        voters.add(voterId);
+    }
+
+    public void clear() {
+        voters.clear();
+    }
+
+    // Majority of all nodes, down or not
+    public boolean isMajority(int clusterSize) {
+        return voters.size() >= clusterSize / 2 + 1;
+    }
+
+    public int size() {
+        return voters.size();
+    }
+}
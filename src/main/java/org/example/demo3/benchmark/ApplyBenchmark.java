@@ -0,0 +1,159 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.raft.LocalTransport;
+import org.example.demo3.raft.LogEntry;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+import org.example.demo3.raft.RaftMetrics;
+import org.example.demo3.raft.RaftNode;
+import org.example.demo3.raft.StateMachine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Sustained load on one three-replica group whose state machine needs a fixed time per entry, with
+ * committed entries applied on the event loop and on an apply stage. Applying a large commit batch on
+ * the event loop delays heartbeats and acks, so followers start elections although the leader is alive.
+ * Reports applied entries per second, elections started after the first leader, the longest time a
+ * task waited for the leader's event loop and the leader's largest apply lag.
+ * Usage: ApplyBenchmark [seconds] [apply micros per entry]
+ */
+public class ApplyBenchmark {
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int applyMicros = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        System.out.printf("%-8s%12s%12s%16s%14s%n", "apply", "applied/s", "elections", "loop stall ms", "max lag");
+        run(false, seconds, applyMicros);
+        run(true, seconds, applyMicros);
+    }
+
+    private static void run(boolean async, int seconds, int applyMicros) throws Exception {
+        RaftConfig config = new RaftConfig();
+        config.setElectionTimeoutMin(300);
+        config.setElectionTimeoutMax(600);
+        config.setHeartbeatInterval(100);
+        config.setTickInterval(1);
+        config.setMaxEntriesPerMessage(1024);
+        config.setMaxInflightMessages(16);
+        config.setMaxUncommittedEntries(65536);
+        config.setAsyncApply(async);
+
+        LocalTransport transport = new LocalTransport();
+        RaftMetrics metrics = new RaftMetrics();
+        List<RaftHost> hosts = new ArrayList<>();
+        int[] members = {1, 2, 3};
+        for (int id : members) {
+            RaftHost host = new RaftHost(id, transport, config);
+            transport.register(host);
+            host.setMetrics(metrics);
+            host.addGroup(0, members).setStateMachine(new SlowStateMachine(applyMicros));
+            hosts.add(host);
+        }
+        for (RaftHost host : hosts) {
+            host.start();
+        }
+        RaftHost first = waitForLeader(hosts);
+        long electionsBefore = metrics.getElectionsStarted();
+        long appliedBefore = onLoop(first, RaftNode::getLastApplied);
+
+        // The load follows the leader: it stops when its host loses leadership and starts on the next one
+        byte[] payload = new byte[64];
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        AtomicBoolean loading = new AtomicBoolean();
+        long maxStall = 0;
+        long maxLag = 0;
+        while (System.nanoTime() < end) {
+            for (RaftHost host : hosts) {
+                long sent = System.nanoTime();
+                boolean leader = onLoop(host, RaftNode::isLeader);
+                long stall = (System.nanoTime() - sent) / 1_000_000;
+                if (leader) {
+                    maxStall = Math.max(maxStall, stall);
+                    maxLag = Math.max(maxLag, onLoop(host, RaftNode::getApplyLag));
+                    if (loading.compareAndSet(false, true)) {
+                        startLoad(host, payload, loading);
+                    }
+                }
+            }
+            Thread.sleep(5);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long applied = 0;
+        for (RaftHost host : hosts) {
+            applied = Math.max(applied, onLoop(host, RaftNode::getLastApplied));
+        }
+        for (RaftHost host : hosts) {
+            host.stop();
+        }
+
+        System.out.printf("%-8s%12.0f%12d%16d%14d%n", async ? "stage" : "loop", (applied - appliedBefore) / elapsed,
+                metrics.getElectionsStarted() - electionsBefore, maxStall, maxLag);
+    }
+
+    private static void startLoad(RaftHost host, byte[] payload, AtomicBoolean loading) {
+        RaftNode node = host.getGroup(0);
+        host.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (node.canPropose()) {
+                    node.propose(payload);
+                }
+                if (node.isLeader()) {
+                    host.execute(this);
+                } else {
+                    loading.set(false);
+                }
+            }
+        });
+    }
+
+    // Busy for a fixed time per command, like a state machine that updates indexes or writes to a database
+    private static class SlowStateMachine implements StateMachine {
+        private final long nanos;
+
+        SlowStateMachine(int micros) {
+            this.nanos = micros * 1000L;
+        }
+
+        @Override
+        public void apply(LogEntry entry) {
+            long until = System.nanoTime() + nanos;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+        }
+
+        @Override
+        public byte[] takeSnapshot() {
+            return new byte[0]; // It keeps no state
+        }
+
+        @Override
+        public void restoreSnapshot(byte[] snapshot) {
+        }
+    }
+
+    private static RaftHost waitForLeader(List<RaftHost> hosts) throws Exception {
+        while (true) {
+            for (RaftHost host : hosts) {
+                if (onLoop(host, RaftNode::isLeader)) {
+                    return host;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    // Group state is read on the host's event loop thread
+    private static <T> T onLoop(RaftHost host, Function<RaftNode, T> query) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        host.execute(() -> result.complete(query.apply(host.getGroup(0))));
+        return result.get();
+    }
+}
@@ -0,0 +1,130 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.raft.KeyValueStore;
+import org.example.demo3.raft.ProposalBatcher;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+import org.example.demo3.raft.TcpTransport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares one three-replica group over TCP on localhost with log and frame compression off and on.
+ * The puts carry small JSON documents that differ only in a few fields, like typical configuration
+ * or session data. Reports committed puts per second, bytes on the wire with and without compression
+ * and the size of the log files.
+ * Usage: CompressionBenchmark [puts] [port]
+ */
+public class CompressionBenchmark {
+    private static final int WINDOW = 4096; // Puts in flight
+
+    public static void main(String[] args) throws Exception {
+        int puts = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7300;
+
+        System.out.printf("%-12s%12s%16s%16s%16s%16s%n", "compression", "puts/s", "wire bytes", "raw wire bytes", "wire ratio", "log bytes");
+        run(false, puts, port);
+        run(true, puts, port + 10);
+    }
+
+    private static void run(boolean compression, int puts, int port) throws Exception {
+        RaftConfig config = new RaftConfig();
+        config.setElectionTimeoutMin(500);
+        config.setElectionTimeoutMax(1000);
+        config.setHeartbeatInterval(100);
+        config.setTickInterval(5);
+        config.setMaxEntriesPerMessage(1024);
+        config.setMaxUncommittedEntries(65536);
+        config.setLogCompression(compression);
+
+        int[] members = {1, 2, 3};
+        Map<Integer, InetSocketAddress> addresses = new HashMap<>();
+        for (int id : members) {
+            addresses.put(id, new InetSocketAddress(InetAddress.getLoopbackAddress(), port + id));
+        }
+        Path directory = Files.createTempDirectory("compression-benchmark");
+        List<RaftHost> hosts = new ArrayList<>();
+        List<TcpTransport> transports = new ArrayList<>();
+        List<ProposalBatcher> batchers = new ArrayList<>();
+        for (int id : members) {
+            TcpTransport transport = new TcpTransport(id, addresses);
+            transport.setCompression(compression);
+            RaftHost host = new RaftHost(id, transport, config);
+            Path hostDirectory = directory.resolve("host-" + id);
+            Files.createDirectories(hostDirectory);
+            host.setDataDirectory(hostDirectory);
+            ProposalBatcher batcher = new ProposalBatcher(host, host.addGroup(0, members), 65536);
+            batcher.setStateMachine(new KeyValueStore());
+            transport.start(host);
+            hosts.add(host);
+            transports.add(transport);
+            batchers.add(batcher);
+        }
+        for (RaftHost host : hosts) {
+            host.start();
+        }
+
+        ProposalBatcher leader = batchers.get(hosts.indexOf(waitForLeader(hosts)));
+        long start = System.nanoTime();
+        for (int first = 0; first < puts; first += WINDOW) {
+            int size = Math.min(WINDOW, puts - first);
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[size];
+            for (int i = 0; i < size; i++) {
+                futures[i] = leader.submit(KeyValueStore.encodePut("session" + ((first + i) % 10_000), document(first + i)));
+            }
+            CompletableFuture.allOf(futures).get(30, TimeUnit.SECONDS);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long wireBytes = 0;
+        long rawWireBytes = 0;
+        for (int i = 0; i < hosts.size(); i++) {
+            hosts.get(i).stop();
+            transports.get(i).close();
+            wireBytes += transports.get(i).getSentBytes();
+            rawWireBytes += transports.get(i).getSentRawBytes();
+        }
+        System.out.printf("%-12s%12.0f%16d%16d%16.2f%16d%n", compression ? "on" : "off", puts / elapsed,
+                wireBytes, rawWireBytes, (double) wireBytes / rawWireBytes, logBytes(directory));
+    }
+
+    private static String document(int i) {
+        return "{\"user\":\"user" + (i % 997) + "\",\"region\":\"eu-central-1\",\"theme\":\"dark\",\"language\":\"de\","
+                + "\"notifications\":{\"email\":true,\"push\":false},\"lastSeen\":" + (1_700_000_000L + i) + "}";
+    }
+
+    private static RaftHost waitForLeader(List<RaftHost> hosts) throws InterruptedException {
+        while (true) {
+            for (RaftHost host : hosts) {
+                if (host.getGroup(0).isLeader()) {
+                    return host;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static long logBytes(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(file -> file.toString().endsWith(".log")).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+        }
+    }
+}
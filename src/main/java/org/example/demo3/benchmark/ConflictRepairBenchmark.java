@@ -0,0 +1,126 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.raft.LocalTransport;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+import org.example.demo3.raft.RaftNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Time until a leader that was partitioned away while accepting proposals has its diverged log repaired
+ * after the partition heals, with and without conflict hints. The isolated leader keeps its uncommitted
+ * entries of the old term while the majority elects a new leader and commits more entries than that.
+ * Leadership then moves to the nextLeader host, which starts probing the old leader at the end of its log.
+ * Without hints it backs off one index per round trip through the diverged entries.
+ * Usage: ConflictRepairBenchmark [one-way latency ms]
+ */
+public class ConflictRepairBenchmark {
+    private static final int[] DIVERGED = {100, 1_000, 4_000};
+
+    public static void main(String[] args) throws Exception {
+        long latency = args.length > 0 ? Long.parseLong(args[0]) : 1;
+
+        System.out.printf("%-18s%20s%20s%n", "diverged entries", "repair ms (hints)", "repair ms (no hints)");
+        for (int diverged : DIVERGED) {
+            System.out.printf("%-18d%20d%20d%n", diverged, run(true, diverged, latency), run(false, diverged, latency));
+        }
+    }
+
+    /**
+     * @return Milliseconds from healing the partition until the old leader's log matches the new leader's.
+     */
+    private static long run(boolean hints, int diverged, long latency) throws Exception {
+        RaftConfig config = new RaftConfig();
+        config.setElectionTimeoutMin(300);
+        config.setElectionTimeoutMax(600);
+        config.setHeartbeatInterval(100);
+        config.setTickInterval(1);
+        config.setMaxUncommittedEntries(diverged + 64);
+        config.setSnapshotThreshold(Integer.MAX_VALUE);
+        config.setConflictHints(hints);
+
+        LocalTransport transport = new LocalTransport();
+        transport.setLatency(latency);
+        List<RaftHost> hosts = new ArrayList<>();
+        int[] members = {1, 2, 3};
+        for (int id : members) {
+            RaftHost host = new RaftHost(id, transport, config);
+            transport.register(host);
+            host.addGroup(0, members);
+            hosts.add(host);
+        }
+        for (RaftHost host : hosts) {
+            host.start();
+        }
+
+        // A common prefix, then the leader is cut off and accepts entries nobody else gets
+        RaftHost oldLeader = waitForLeader(hosts, null);
+        propose(oldLeader, 100);
+        Thread.sleep(200);
+        transport.isolate(oldLeader.getId());
+        propose(oldLeader, diverged);
+
+        // The majority moves on with more entries than the old leader has
+        RaftHost newLeader = waitForLeader(hosts, oldLeader);
+        propose(newLeader, diverged + 100);
+        while (onLoop(newLeader, node -> node.getCommitIndex() < node.getLog().lastIndex())) {
+            Thread.sleep(10);
+        }
+        RaftHost nextLeader = hosts.stream().filter(host -> host != oldLeader && host != newLeader).findFirst().orElseThrow();
+        onLoop(newLeader, node -> node.transferLeadership(nextLeader.getId()));
+        while (!onLoop(nextLeader, RaftNode::isLeader)) {
+            Thread.sleep(10);
+        }
+
+        long start = System.nanoTime();
+        transport.heal();
+        while (true) {
+            long lastIndex = onLoop(nextLeader, node -> node.getLog().lastIndex());
+            int lastTerm = onLoop(nextLeader, node -> node.getLog().lastTerm());
+            if (onLoop(oldLeader, node -> node.getLog().lastIndex() == lastIndex && node.getLog().lastTerm() == lastTerm)) {
+                break;
+            }
+            Thread.sleep(1);
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        for (RaftHost host : hosts) {
+            host.stop();
+        }
+        return millis;
+    }
+
+    private static void propose(RaftHost host, int count) throws Exception {
+        onLoop(host, node -> {
+            for (int i = 0; i < count; i++) {
+                node.propose(("entry " + i).getBytes());
+            }
+            return null;
+        });
+    }
+
+    private static RaftHost waitForLeader(List<RaftHost> hosts, RaftHost excluded) throws Exception {
+        while (true) {
+            for (RaftHost host : hosts) {
+                if (host != excluded && onLoop(host, RaftNode::isLeader)) {
+                    return host;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Query<T> {
+        T get(RaftNode node);
+    }
+
+    // Group state is read on the host's event loop thread
+    private static <T> T onLoop(RaftHost host, Query<T> query) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        host.execute(() -> result.complete(query.get(host.getGroup(0))));
+        return result.get();
+    }
+}
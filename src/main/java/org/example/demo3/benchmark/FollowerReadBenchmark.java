@@ -0,0 +1,152 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.raft.KeyValueStore;
+import org.example.demo3.raft.LocalTransport;
+import org.example.demo3.raft.ProposalBatcher;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read throughput of one five-replica key-value group under a light write load, when all reads
+ * go to the leader compared to reads spread over all replicas, linearizable (ReadIndex) or with
+ * bounded staleness. Each replica serves reads on its own event loop thread, so spreading reads
+ * should scale with the number of replicas as long as there are cores for them.
+ * Usage: FollowerReadBenchmark [seconds per run] [reader threads] [max staleness ms]
+ */
+public class FollowerReadBenchmark {
+    private static final int KEYS = 1000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long maxStaleness = args.length > 2 ? Long.parseLong(args[2]) : 200;
+
+        RaftConfig config = new RaftConfig();
+        config.setElectionTimeoutMin(1000);
+        config.setElectionTimeoutMax(2000);
+        config.setHeartbeatInterval(50);
+        config.setTickInterval(1);
+
+        LocalTransport transport = new LocalTransport();
+        List<RaftHost> hosts = new ArrayList<>();
+        List<KeyValueStore> stores = new ArrayList<>();
+        List<ProposalBatcher> batchers = new ArrayList<>();
+        int[] members = {1, 2, 3, 4, 5};
+        for (int id : members) {
+            RaftHost host = new RaftHost(id, transport, config);
+            transport.register(host);
+            KeyValueStore store = new KeyValueStore();
+            ProposalBatcher batcher = new ProposalBatcher(host, host.addGroup(0, members), 4096);
+            batcher.setStateMachine(store);
+            hosts.add(host);
+            stores.add(store);
+            batchers.add(batcher);
+        }
+        for (RaftHost host : hosts) {
+            host.start();
+        }
+        int leader = waitForLeader(hosts);
+        transport.setLatency(1);
+
+        // Load the keys, then keep writing in the background so followers have something to catch up on
+        ProposalBatcher writer = batchers.get(leader);
+        for (int key = 0; key < KEYS; key++) {
+            writer.submit(KeyValueStore.encodePut("key" + key, "value" + key)).join();
+        }
+        Thread background = new Thread(() -> {
+            long version = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                writer.submit(KeyValueStore.encodePut("key" + (version % KEYS), "version" + version)).join();
+                version++;
+            }
+        }, "writer");
+        background.setDaemon(true);
+        background.start();
+
+        List<RaftHost> leaderOnly = List.of(hosts.get(leader));
+        System.out.printf("Linearizable, leader only:       %,12.0f reads/s%n",
+                measure(leaderOnly, stores, hosts, readers, seconds, -1));
+        System.out.printf("Linearizable, all replicas:      %,12.0f reads/s%n",
+                measure(hosts, stores, hosts, readers, seconds, -1));
+        System.out.printf("Stale <= %d ms, all replicas:   %,12.0f reads/s%n",
+                maxStaleness, measure(hosts, stores, hosts, readers, seconds, maxStaleness));
+
+        background.interrupt();
+        for (RaftHost host : hosts) {
+            host.stop();
+        }
+    }
+
+    /**
+     * @param maxStaleness -1 for linearizable reads.
+     * @return Successful reads per second.
+     */
+    private static double measure(List<RaftHost> targets, List<KeyValueStore> stores, List<RaftHost> hosts,
+                                  int readers, int seconds, long maxStaleness) throws InterruptedException {
+        LongAdder completed = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            int offset = r;
+            Thread reader = new Thread(() -> {
+                Semaphore window = new Semaphore(256); // Outstanding reads per reader
+                long count = offset;
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        window.acquire();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    RaftHost host = targets.get((int) (count % targets.size()));
+                    KeyValueStore store = stores.get(hosts.indexOf(host));
+                    String key = "key" + (count % KEYS);
+                    CompletableFuture<String> read = maxStaleness < 0
+                            ? host.read(0, () -> store.get(key))
+                            : host.staleRead(0, maxStaleness, () -> store.get(key));
+                    read.whenComplete((value, error) -> {
+                        if (error == null) {
+                            completed.increment();
+                        }
+                        window.release();
+                    });
+                    count++;
+                }
+            }, "reader-" + r);
+            reader.setDaemon(true);
+            threads.add(reader);
+            reader.start();
+        }
+
+        Thread.sleep(1000); // Warm up
+        long before = completed.sum();
+        long startTime = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        long count = completed.sum() - before;
+        double elapsed = (System.nanoTime() - startTime) / 1e9;
+
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            thread.join(1000);
+        }
+        Thread.sleep(200); // Let outstanding reads drain
+        return count / elapsed;
+    }
+
+    private static int waitForLeader(List<RaftHost> hosts) throws InterruptedException {
+        while (true) {
+            for (int i = 0; i < hosts.size(); i++) {
+                if (hosts.get(i).getGroup(0).isLeader()) {
+                    return i;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+}
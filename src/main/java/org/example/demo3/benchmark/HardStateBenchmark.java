@@ -0,0 +1,104 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.raft.LocalTransport;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+import org.example.demo3.raft.RaftMetrics;
+import org.example.demo3.storage.HardStateStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cost of persisting term and vote. First the raw latency of one hard state write with fsync,
+ * then the time until a new leader is elected after a leadership transfer, with the hard state
+ * kept in memory only compared to written to disk before every vote and RequestVote.
+ * Usage: HardStateBenchmark [syncs] [transfers]
+ */
+public class HardStateBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int syncs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int transfers = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        Path directory = Files.createTempDirectory("hard-state-benchmark");
+
+        long[] latencies = new long[syncs];
+        try (HardStateStore store = new HardStateStore(directory.resolve("raw.state"))) {
+            for (int i = 0; i < syncs; i++) {
+                long start = System.nanoTime();
+                store.update(i + 1, i % 3 + 1, i);
+                store.sync();
+                latencies[i] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(latencies);
+        System.out.printf("Hard state write + fsync: avg %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                Arrays.stream(latencies).average().orElse(0) / 1000, latencies[syncs / 2] / 1000.0,
+                latencies[syncs * 99 / 100] / 1000.0, latencies[syncs - 1] / 1000.0);
+
+        System.out.printf("In memory: %.2f ms per election%n", elections(null, transfers));
+        System.out.printf("Persisted: %.2f ms per election%n", elections(directory, transfers));
+    }
+
+    /**
+     * @return Average wall time from a transfer request until the new leader is elected.
+     */
+    private static double elections(Path directory, int transfers) throws IOException, InterruptedException {
+        RaftConfig config = new RaftConfig();
+        config.setElectionTimeoutMin(1000);
+        config.setElectionTimeoutMax(2000);
+        config.setHeartbeatInterval(100);
+        config.setTickInterval(1);
+
+        RaftMetrics metrics = new RaftMetrics();
+        LocalTransport transport = new LocalTransport();
+        List<RaftHost> hosts = new ArrayList<>();
+        int[] members = {1, 2, 3};
+        for (int id : members) {
+            RaftHost host = new RaftHost(id, transport, config);
+            host.setMetrics(metrics);
+            if (directory != null) {
+                host.setDataDirectory(Files.createDirectories(directory.resolve("host-" + id)));
+            }
+            transport.register(host);
+            host.addGroup(0, members);
+            hosts.add(host);
+        }
+        for (RaftHost host : hosts) {
+            host.start();
+        }
+
+        RaftHost leader = waitForNewLeader(hosts, null);
+        long totalNanos = 0;
+        for (int i = 0; i < transfers; i++) {
+            Thread.sleep(20);
+            RaftHost target = hosts.get((hosts.indexOf(leader) + 1) % hosts.size());
+            long start = System.nanoTime();
+            leader.transferLeadership(0, target.getId());
+            leader = waitForNewLeader(hosts, leader);
+            totalNanos += System.nanoTime() - start;
+        }
+
+        for (RaftHost host : hosts) {
+            host.stop();
+        }
+        System.out.println("  " + metrics);
+        return totalNanos / 1e6 / transfers;
+    }
+
+    private static RaftHost waitForNewLeader(List<RaftHost> hosts, RaftHost oldLeader) throws InterruptedException {
+        while (true) {
+            for (RaftHost host : hosts) {
+                if (host != oldLeader && host.getGroup(0).isLeader()) {
+                    return host;
+                }
+            }
+            Thread.sleep(0, 100_000);
+        }
+    }
+}
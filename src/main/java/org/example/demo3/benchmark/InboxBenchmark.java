@@ -0,0 +1,109 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.MessageInbox;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares the lock-free node inbox against the LinkedBlockingQueue it replaces: many senders offer
+ * messages to one node thread that takes them. Reports throughput and the bytes allocated per message
+ * by all threads together; the message itself is shared, so only the queue allocates. The default capacity
+ * is the one of the nodes; with few cores the senders outrun the consumer and yield while the inbox is full.
+ * Usage: InboxBenchmark [messages] [capacity]
+ */
+public class InboxBenchmark {
+    private static final Object MESSAGE = new Object();
+    private static final int[] SENDERS = {2, 4, 8, 16, 32, 64};
+
+    // Both queues behind the same two calls, so the harness costs the same for each
+    private interface Inbox {
+        boolean offer(Object message);
+
+        Object take() throws InterruptedException;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+
+        for (int round = 0; round < 2; round++) {
+            System.out.println("Round " + (round + 1) + ":");
+            for (int senders : SENDERS) {
+                LinkedBlockingQueue<Object> linked = new LinkedBlockingQueue<>();
+                run("LinkedBlockingQueue", senders, messages, new Inbox() {
+                    public boolean offer(Object message) {
+                        return linked.offer(message);
+                    }
+
+                    public Object take() throws InterruptedException {
+                        return linked.take();
+                    }
+                });
+                MessageInbox<Object> inbox = new MessageInbox<>(capacity);
+                run("MessageInbox", senders, messages, new Inbox() {
+                    public boolean offer(Object message) {
+                        return inbox.offer(message);
+                    }
+
+                    public Object take() throws InterruptedException {
+                        return inbox.take();
+                    }
+                });
+            }
+        }
+    }
+
+    private static void run(String name, int senders, int messages, Inbox inbox) throws InterruptedException {
+        int perSender = messages / senders;
+        int total = perSender * senders;
+        LongAdder allocated = new LongAdder();
+        LongAdder retries = new LongAdder();
+
+        Thread consumer = new Thread(() -> {
+            long before = allocatedBytes();
+            try {
+                for (int i = 0; i < total; i++) {
+                    inbox.take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            allocated.add(allocatedBytes() - before);
+        });
+        List<Thread> threads = new ArrayList<>();
+        for (int s = 0; s < senders; s++) {
+            threads.add(new Thread(() -> {
+                long before = allocatedBytes();
+                for (int i = 0; i < perSender; i++) {
+                    while (!inbox.offer(MESSAGE)) {
+                        retries.increment(); // Full: the benchmark must deliver everything, a node would drop it
+                        Thread.yield();
+                    }
+                }
+                allocated.add(allocatedBytes() - before);
+            }));
+        }
+
+        long start = System.nanoTime();
+        consumer.start();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        consumer.join();
+        long nanos = System.nanoTime() - start;
+
+        System.out.printf("  %-20s %2d senders: %6.2f M messages/s, %5.1f bytes/message, %d full retries%n",
+                name, senders, total / (nanos / 1e3), allocated.sum() / (double) total, retries.sum());
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,99 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.raft.LocalTransport;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+import org.example.demo3.raft.RaftMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the leaderless gap of a planned leadership transfer with the gap after the leader's host
+ * stops without one, for a three-replica group under constant write load and the simulation's timeouts.
+ * Usage: LeadershipTransferBenchmark [transfers] [latency ms]
+ */
+public class LeadershipTransferBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int transfers = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+        RaftConfig config = new RaftConfig(); // 5-6.5 s election timeout, 3 s heartbeat
+        RaftMetrics metrics = new RaftMetrics();
+        LocalTransport transport = new LocalTransport();
+        transport.setLatency(latency);
+
+        List<RaftHost> hosts = new ArrayList<>();
+        int[] members = {1, 2, 3};
+        for (int id : members) {
+            RaftHost host = new RaftHost(id, transport, config);
+            host.setMetrics(metrics);
+            transport.register(host);
+            host.addGroup(0, members);
+            hosts.add(host);
+        }
+        for (RaftHost host : hosts) {
+            host.start();
+        }
+
+        // Every host proposes a few entries per millisecond while it is the leader
+        byte[] payload = new byte[64];
+        ScheduledExecutorService load = Executors.newSingleThreadScheduledExecutor();
+        load.scheduleAtFixedRate(() -> {
+            for (RaftHost host : hosts) {
+                host.execute(() -> {
+                    for (int i = 0; i < 10 && host.getGroup(0).canPropose(); i++) {
+                        host.getGroup(0).propose(payload);
+                    }
+                });
+            }
+        }, 0, 1, TimeUnit.MILLISECONDS);
+
+        RaftHost leader = waitForNewLeader(hosts, null);
+        System.out.println("Initial leader: host " + leader.getId());
+
+        long totalWallMicros = 0;
+        for (int i = 0; i < transfers; i++) {
+            Thread.sleep(200); // Let the followers fall behind a little
+            RaftHost target = hosts.get((hosts.indexOf(leader) + 1) % hosts.size());
+            long start = System.nanoTime();
+            leader.transferLeadership(0, target.getId());
+            leader = waitForNewLeader(hosts, leader);
+            totalWallMicros += (System.nanoTime() - start) / 1000;
+        }
+        System.out.printf("Planned transfer: %d transfers, %.2f ms average until a new leader (metrics: %s)%n",
+                transfers, totalWallMicros / 1000.0 / transfers, metrics);
+
+        // Unplanned: the leader's host stops and the followers have to time out
+        long gapsBefore = metrics.getGapCount();
+        leader.stop();
+        long start = System.nanoTime();
+        RaftHost newLeader = waitForNewLeader(hosts, leader);
+        while (metrics.getGapCount() == gapsBefore) {
+            Thread.sleep(1);
+        }
+        System.out.printf("Leader host stopped: host %d leads after %.0f ms (metrics gap %d ms)%n",
+                newLeader.getId(), (System.nanoTime() - start) / 1e6, metrics.getLastGap());
+
+        load.shutdownNow();
+        for (RaftHost host : hosts) {
+            host.stop();
+        }
+    }
+
+    private static RaftHost waitForNewLeader(List<RaftHost> hosts, RaftHost oldLeader) throws InterruptedException {
+        // Read from the benchmark thread, good enough to notice the change of leader
+        while (true) {
+            for (RaftHost host : hosts) {
+                if (host != oldLeader && host.getGroup(0).isLeader()) {
+                    return host;
+                }
+            }
+            Thread.sleep(0, 100_000);
+        }
+    }
+}
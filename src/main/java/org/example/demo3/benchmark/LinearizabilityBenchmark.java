@@ -0,0 +1,154 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.history.History;
+import org.example.demo3.history.LinearizabilityChecker;
+import org.example.demo3.history.Operation;
+import org.example.demo3.raft.InvariantMonitor;
+import org.example.demo3.raft.KeyValueStore;
+import org.example.demo3.raft.LocalTransport;
+import org.example.demo3.raft.ProposalBatcher;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records the history of clients writing and reading a five-replica key-value group while leadership
+ * moves every second, then checks it for linearizability, once on a single thread and once on all cores.
+ * Writes go to the leader, reads to a random replica: linearizable (ReadIndex) reads by default,
+ * bounded-staleness reads with "stale", which the checker is expected to reject. An invariant monitor
+ * checks election safety and log matching while the benchmark runs.
+ * Usage: LinearizabilityBenchmark [seconds] [clients] [keys] [linearizable|stale]
+ */
+public class LinearizabilityBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int keys = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        boolean stale = args.length > 3 && args[3].equals("stale");
+
+        RaftConfig config = new RaftConfig();
+        config.setElectionTimeoutMin(300);
+        config.setElectionTimeoutMax(600);
+        config.setHeartbeatInterval(50);
+        config.setTickInterval(1);
+
+        LocalTransport transport = new LocalTransport();
+        InvariantMonitor monitor = new InvariantMonitor();
+        List<RaftHost> hosts = new ArrayList<>();
+        List<KeyValueStore> stores = new ArrayList<>();
+        List<ProposalBatcher> batchers = new ArrayList<>();
+        int[] members = {1, 2, 3, 4, 5};
+        for (int id : members) {
+            RaftHost host = new RaftHost(id, transport, config);
+            host.setMonitor(monitor);
+            transport.register(host);
+            KeyValueStore store = new KeyValueStore();
+            ProposalBatcher batcher = new ProposalBatcher(host, host.addGroup(0, members), 1024);
+            batcher.setStateMachine(store);
+            hosts.add(host);
+            stores.add(store);
+            batchers.add(batcher);
+        }
+        for (RaftHost host : hosts) {
+            host.start();
+        }
+        transport.setLatency(1);
+
+        History history = new History();
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            int process = c;
+            Thread client = new Thread(() -> {
+                Random random = new Random(process);
+                long version = 0;
+                while (!Thread.currentThread().isInterrupted()) {
+                    String key = "key" + random.nextInt(keys);
+                    if (random.nextBoolean()) {
+                        write(history, hosts, batchers, process, key, process + "-" + version++);
+                    } else {
+                        int replica = random.nextInt(hosts.size());
+                        read(history, hosts.get(replica), stores.get(replica), process, key, stale);
+                    }
+                }
+            }, "client-" + c);
+            client.setDaemon(true);
+            threads.add(client);
+            client.start();
+        }
+
+        // Nemesis: hand leadership to a random replica every second
+        Random random = new Random();
+        for (int s = 0; s < seconds; s++) {
+            Thread.sleep(1000);
+            for (RaftHost host : hosts) {
+                if (host.getGroup(0).isLeader()) {
+                    host.transferLeadership(0, members[random.nextInt(members.length)]);
+                    break;
+                }
+            }
+        }
+        for (Thread client : threads) {
+            client.interrupt();
+        }
+        for (Thread client : threads) {
+            client.join(1000);
+        }
+        for (RaftHost host : hosts) {
+            host.stop();
+        }
+
+        List<Operation> operations = history.getOperations();
+        long ok = operations.stream().filter(operation -> operation.getStatus().equals("ok")).count();
+        System.out.printf("Recorded %d operations (%d ok) from %d clients on %d keys, %s reads%n",
+                operations.size(), ok, clients, keys, stale ? "stale" : "linearizable");
+        System.out.println("Single thread: " + new LinearizabilityChecker(1).check(operations));
+        System.out.println("All " + Runtime.getRuntime().availableProcessors() + " cores: "
+                + new LinearizabilityChecker().check(operations));
+        System.out.println("Safety: " + monitor);
+        monitor.getViolationMessages().forEach(System.out::println);
+    }
+
+    private static void write(History history, List<RaftHost> hosts, List<ProposalBatcher> batchers,
+                              int process, String key, String value) {
+        int leader = -1;
+        for (int i = 0; i < hosts.size(); i++) {
+            if (hosts.get(i).getGroup(0).isLeader()) {
+                leader = i;
+            }
+        }
+        if (leader < 0) {
+            LockSupport.parkNanos(1_000_000); // Election in progress
+            return;
+        }
+        Operation operation = history.invoke(process, "write", key, value);
+        try {
+            batchers.get(leader).submit(KeyValueStore.encodePut(key, value)).get();
+            history.ok(operation);
+        } catch (InterruptedException e) {
+            history.info(operation);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Lost leadership or the entry was replaced; it may still be in a snapshot, so the outcome is unknown
+            history.info(operation);
+        }
+    }
+
+    private static void read(History history, RaftHost host, KeyValueStore store, int process, String key, boolean stale) {
+        Operation operation = history.invoke(process, "read", key, null);
+        try {
+            String value = (stale ? host.staleRead(0, 500, () -> store.get(key)) : host.read(0, () -> store.get(key))).get();
+            history.ok(operation, value);
+        } catch (InterruptedException e) {
+            history.info(operation);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            history.fail(operation);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.example.demo3.benchmark;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.example.demo3.raft.LocalTransport;
+import org.example.demo3.raft.LogCache;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+import org.example.demo3.raft.RaftNode;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Sustained load on one persistent three-replica group with the log tail kept on the heap and in an
+ * off-heap {@link LogCache}. Halfway through, one follower is cut off for a second, so the leader has
+ * to serve it entries the cache may have evicted. Reports throughput, garbage collections with their
+ * total and longest pause, the heap in use at the end and the cache's hit rate and bytes.
+ * For figures not influenced by the previous run, run one mode per JVM.
+ * Usage: LogCacheBenchmark [seconds] [payload bytes] [cache MB] [heap|offheap|both]
+ */
+public class LogCacheBenchmark {
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int payloadSize = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+        int cacheBytes = (args.length > 2 ? Integer.parseInt(args[2]) : 16) * 1024 * 1024;
+        String mode = args.length > 3 ? args[3] : "both";
+
+        // Duration of every collection, reported by the JVM after it
+        AtomicLong pauses = new AtomicLong();
+        AtomicLong pauseTotal = new AtomicLong();
+        AtomicLong pauseMax = new AtomicLong();
+        NotificationListener listener = (notification, handback) -> {
+            if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                long duration = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData())
+                        .getGcInfo().getDuration();
+                pauses.incrementAndGet();
+                pauseTotal.addAndGet(duration);
+                pauseMax.accumulateAndGet(duration, Math::max);
+            }
+        };
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+        }
+
+        System.out.printf("%-9s%12s%8s%12s%12s%12s%10s%14s%n", "log tail", "entries/s", "GCs", "GC ms", "max GC ms",
+                "heap MB", "hit rate", "cache MB");
+        for (String tail : new String[] {"heap", "offheap"}) {
+            if (!mode.equals("both") && !mode.equals(tail)) {
+                continue;
+            }
+            System.gc();
+            Thread.sleep(500);
+            pauses.set(0);
+            pauseTotal.set(0);
+            pauseMax.set(0);
+            run(tail.equals("offheap") ? cacheBytes : 0, seconds, payloadSize, pauses, pauseTotal, pauseMax);
+        }
+    }
+
+    private static void run(int cacheBytes, int seconds, int payloadSize, AtomicLong pauses, AtomicLong pauseTotal,
+                            AtomicLong pauseMax) throws Exception {
+        RaftConfig config = new RaftConfig();
+        config.setElectionTimeoutMin(300);
+        config.setElectionTimeoutMax(600);
+        config.setHeartbeatInterval(100);
+        config.setTickInterval(1);
+        config.setMaxEntriesPerMessage(1024);
+        config.setMaxInflightMessages(16);
+        config.setMaxUncommittedEntries(65536);
+        config.setSnapshotThreshold(1_000_000); // A long tail between snapshots
+        config.setLogCacheBytes(cacheBytes);
+
+        LocalTransport transport = new LocalTransport();
+        Path directory = Files.createTempDirectory("log-cache-benchmark");
+        List<RaftHost> hosts = new ArrayList<>();
+        int[] members = {1, 2, 3};
+        for (int id : members) {
+            RaftHost host = new RaftHost(id, transport, config);
+            transport.register(host);
+            host.setDataDirectory(Files.createDirectories(directory.resolve("host-" + id)));
+            host.addGroup(0, members);
+            hosts.add(host);
+        }
+        for (RaftHost host : hosts) {
+            host.start();
+        }
+
+        RaftHost leaderHost = waitForLeader(hosts);
+        RaftHost follower = hosts.get((hosts.indexOf(leaderHost) + 1) % hosts.size());
+        long committedBefore = onLoop(leaderHost, RaftNode::getCommitIndex);
+        long start = System.nanoTime();
+
+        // Propose until the uncommitted limit is reached, then yield to the event loop and try again
+        byte[] payload = new byte[payloadSize];
+        RaftNode leader = leaderHost.getGroup(0);
+        long end = start + seconds * 1_000_000_000L;
+        Runnable load = new Runnable() {
+            @Override
+            public void run() {
+                while (leader.canPropose()) {
+                    leader.propose(payload);
+                }
+                if (leader.isLeader() && System.nanoTime() < end) {
+                    leaderHost.execute(this);
+                }
+            }
+        };
+        leaderHost.execute(load);
+
+        Thread.sleep(seconds * 500L);
+        transport.isolate(follower.getId());
+        Thread.sleep(1000);
+        transport.heal();
+        Thread.sleep(Math.max(0, (end - System.nanoTime()) / 1_000_000));
+        long committed = onLoop(leaderHost, RaftNode::getCommitIndex) - committedBefore;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        // Let the follower catch up before the cache is inspected
+        long target = onLoop(leaderHost, RaftNode::getCommitIndex);
+        while (onLoop(follower, RaftNode::getLastApplied) < target) {
+            Thread.sleep(10);
+        }
+        long hits = 0;
+        long misses = 0;
+        long cached = 0;
+        for (RaftHost host : hosts) {
+            LogCache cache = onLoop(host, node -> node.getLog().getCache());
+            if (cache != null) {
+                hits += cache.getHits();
+                misses += cache.getMisses();
+                cached += cache.getUsedBytes();
+            }
+        }
+        System.gc();
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        for (RaftHost host : hosts) {
+            host.stop();
+        }
+
+        System.out.printf("%-9s%12.0f%8d%12d%12d%12d%10s%14s%n", cacheBytes > 0 ? "offheap" : "heap", committed / elapsed,
+                pauses.get(), pauseTotal.get(), pauseMax.get(), heapUsed / (1024 * 1024),
+                cacheBytes > 0 ? String.format("%.3f", (double) hits / Math.max(1, hits + misses)) : "-",
+                cacheBytes > 0 ? String.valueOf(cached / (1024 * 1024)) : "-");
+    }
+
+    private static RaftHost waitForLeader(List<RaftHost> hosts) throws Exception {
+        while (true) {
+            for (RaftHost host : hosts) {
+                if (onLoop(host, RaftNode::isLeader)) {
+                    return host;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    // Group state is read on the host's event loop thread
+    private static <T> T onLoop(RaftHost host, Function<RaftNode, T> query) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        host.execute(() -> result.complete(query.apply(host.getGroup(0))));
+        return result.get();
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.storage.SegmentedLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Time a restarted replica needs to load its log from disk, depending on the length of the log: the whole
+ * log, as without a snapshot, and only the tail after a snapshot, which the index files let the log find
+ * without reading the segments before it. The tail is loaded a third time after the index files were
+ * deleted, so the segment holding the snapshot index has to be scanned. The log is written once per length
+ * and then loaded by new log instances, best of three each. The files stay in the page cache, so this
+ * measures reading and decoding, not the disk.
+ * Usage: LogLoadBenchmark [entry bytes] [tail entries]
+ */
+public class LogLoadBenchmark {
+    private static final int[] LENGTHS = {10_000, 100_000, 1_000_000};
+    private static final long SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        int entrySize = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int tail = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        System.out.printf("%-10s%14s%14s%22s%n", "entries", "full ms", "tail ms", "tail, no index ms");
+        for (int length : LENGTHS) {
+            Path directory = Files.createTempDirectory("log-load-benchmark");
+            try (SegmentedLog log = new SegmentedLog(directory, SEGMENT_SIZE)) {
+                log.load((index, term, type, data) -> { });
+                byte[] data = new byte[entrySize];
+                for (int i = 1; i <= length; i++) {
+                    log.append(i, 1, "Command", data);
+                    if (i % 1000 == 0) {
+                        log.sync();
+                    }
+                }
+            }
+            long fromIndex = Math.max(1, length - tail + 1);
+            double full = bestOfThree(directory, 0);
+            double fromSnapshot = bestOfThree(directory, fromIndex);
+            deleteIndexFiles(directory);
+            double withoutIndex = load(directory, fromIndex); // Rebuilds the index files, so only once
+            System.out.printf("%-10d%14.1f%14.1f%22.1f%n", length, full, fromSnapshot, withoutIndex);
+        }
+    }
+
+    private static double bestOfThree(Path directory, long fromIndex) throws IOException {
+        double best = Double.MAX_VALUE;
+        for (int pass = 0; pass < 3; pass++) {
+            best = Math.min(best, load(directory, fromIndex));
+        }
+        return best;
+    }
+
+    // Milliseconds until a new log passed all entries from the index on
+    private static double load(Path directory, long fromIndex) throws IOException {
+        long[] visited = {0};
+        long start = System.nanoTime();
+        try (SegmentedLog log = new SegmentedLog(directory, SEGMENT_SIZE)) {
+            log.load(fromIndex, (index, term, type, data) -> visited[0]++);
+            double millis = (System.nanoTime() - start) / 1e6;
+            if (visited[0] == 0 && log.lastIndex() >= fromIndex) {
+                throw new IllegalStateException("No entries loaded from " + fromIndex);
+            }
+            return millis;
+        }
+    }
+
+    private static void deleteIndexFiles(Path directory) throws IOException {
+        List<Path> indexFiles;
+        try (Stream<Path> list = Files.list(directory)) {
+            indexFiles = list.filter(path -> path.getFileName().toString().endsWith(".idx")).toList();
+        }
+        for (Path indexFile : indexFiles) {
+            Files.delete(indexFile);
+        }
+    }
+}
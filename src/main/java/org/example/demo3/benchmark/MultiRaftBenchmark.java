@@ -0,0 +1,122 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.raft.InvariantMonitor;
+import org.example.demo3.raft.LocalTransport;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+import org.example.demo3.raft.RaftNode;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the per-group overhead of hosting many Raft groups on a few hosts.
+ * Usage: MultiRaftBenchmark [groups] [hosts] [replicas] [seconds]
+ */
+public class MultiRaftBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int numGroups = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int numHosts = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int replicas = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        RaftConfig config = new RaftConfig();
+        config.setElectionTimeoutMin(1000);
+        config.setElectionTimeoutMax(2000);
+        config.setHeartbeatInterval(100);
+
+        long heapBefore = usedHeap();
+
+        LocalTransport transport = new LocalTransport();
+        InvariantMonitor monitor = new InvariantMonitor();
+        List<RaftHost> hosts = new ArrayList<>();
+        for (int i = 1; i <= numHosts; i++) {
+            RaftHost host = new RaftHost(i, transport, config);
+            host.setMonitor(monitor);
+            transport.register(host);
+            hosts.add(host);
+        }
+
+        // Place the replicas of each group on consecutive hosts
+        for (int group = 0; group < numGroups; group++) {
+            int[] members = new int[replicas];
+            for (int r = 0; r < replicas; r++) {
+                members[r] = (group + r) % numHosts + 1;
+            }
+            for (int member : members) {
+                hosts.get(member - 1).addGroup(group, members);
+            }
+        }
+
+        long heapAfter = usedHeap();
+
+        for (RaftHost host : hosts) {
+            host.start();
+        }
+
+        // Wait until every group elected a leader
+        long startTime = System.currentTimeMillis();
+        while (countLeaders(hosts) < numGroups && System.currentTimeMillis() - startTime < 30000) {
+            Thread.sleep(50);
+        }
+        long electionTime = System.currentTimeMillis() - startTime;
+
+        // Steady state: only heartbeats
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long cpuBefore = hostCpuTime(hosts, threads);
+        long messagesBefore = transport.getSentMessages();
+        long groupMessagesBefore = transport.getSentGroupMessages();
+        Thread.sleep(seconds * 1000L);
+        long cpuUsed = hostCpuTime(hosts, threads) - cpuBefore;
+        long messages = transport.getSentMessages() - messagesBefore;
+        long groupMessages = transport.getSentGroupMessages() - groupMessagesBefore;
+
+        for (RaftHost host : hosts) {
+            host.stop();
+        }
+
+        long replicaCount = (long) numGroups * replicas;
+        System.out.println("Groups: " + numGroups + ", hosts: " + numHosts + ", replicas per group: " + replicas);
+        System.out.println("Groups with leader: " + countLeaders(hosts) + " after " + electionTime + " ms");
+        System.out.println("Heap per replica: " + (heapAfter - heapBefore) / replicaCount + " bytes");
+        System.out.printf("CPU per group: %.3f ms/s%n", cpuUsed / 1e6 / seconds / numGroups);
+        System.out.printf("Group messages/s: %.0f, host messages/s: %.0f (%.1f group messages per host message)%n",
+                groupMessages / (double) seconds, messages / (double) seconds,
+                messages == 0 ? 0.0 : groupMessages / (double) messages);
+        System.out.println("Safety: " + monitor);
+        monitor.getViolationMessages().forEach(System.out::println);
+    }
+
+    private static int countLeaders(List<RaftHost> hosts) {
+        // Read from the benchmark thread, so the count is approximate while hosts are running
+        int leaders = 0;
+        for (RaftHost host : hosts) {
+            for (RaftNode node : host.getGroups()) {
+                if (node.isLeader()) {
+                    leaders++;
+                }
+            }
+        }
+        return leaders;
+    }
+
+    private static long hostCpuTime(List<RaftHost> hosts, ThreadMXBean threads) {
+        long total = 0;
+        for (RaftHost host : hosts) {
+            total += Math.max(0, threads.getThreadCpuTime(host.getThread().threadId()));
+        }
+        return total;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.raft.KeyValueStore;
+import org.example.demo3.raft.LogEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Apply throughput of the key-value state machine with 1 to N partitions applied in parallel, fed
+ * with committed batches the way the apply stage hands them over. One command in a thousand is a
+ * multi-key put, which acts as a barrier across all partitions. Every run has to end in the same state,
+ * checked by a hash over all keys. The best of three passes over the batches is reported.
+ * Usage: ParallelApplyBenchmark [commands] [max partitions] [batch size]
+ */
+public class ParallelApplyBenchmark {
+    private static final int KEYS = 100_000;
+
+    public static void main(String[] args) {
+        int commands = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int maxPartitions = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+
+        List<List<LogEntry>> batches = new ArrayList<>();
+        List<LogEntry> batch = new ArrayList<>();
+        for (int i = 1; i <= commands; i++) {
+            byte[] command;
+            if (i % 1000 == 0) {
+                Map<String, String> values = new HashMap<>();
+                for (int k = 0; k < 4; k++) {
+                    values.put("key" + ((i + k * 7919) % KEYS), "multi" + i);
+                }
+                command = KeyValueStore.encodePutAll(values);
+            } else {
+                command = KeyValueStore.encodePut("key" + ((i * 31L) % KEYS), "value" + i + "-0123456789abcdef");
+            }
+            batch.add(new LogEntry(i, 1, "Command", command));
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        System.out.printf("%-12s%16s%10s%14s%n", "partitions", "commands/s", "speedup", "state hash");
+        double baseline = 0;
+        for (int partitions = 1; partitions <= maxPartitions; partitions *= 2) {
+            long best = Long.MAX_VALUE;
+            int hash = 0;
+            for (int pass = 0; pass < 3; pass++) {
+                try (KeyValueStore store = new KeyValueStore(partitions)) {
+                    long start = System.nanoTime();
+                    for (List<LogEntry> committed : batches) {
+                        store.applyBatch(committed);
+                    }
+                    best = Math.min(best, System.nanoTime() - start);
+                    hash = stateHash(store);
+                }
+            }
+            double rate = commands / (best / 1e9);
+            if (partitions == 1) {
+                baseline = rate;
+            }
+            System.out.printf("%-12d%16.0f%10.2f%14x%n", partitions, rate, rate / baseline, hash);
+        }
+    }
+
+    private static int stateHash(KeyValueStore store) {
+        int hash = store.size();
+        for (int k = 0; k < KEYS; k++) {
+            hash = 31 * hash + Objects.hashCode(store.get("key" + k));
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,123 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.raft.LocalTransport;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+import org.example.demo3.raft.RaftNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures committed entries per second of one three-replica group for different in-flight
+ * windows and simulated one-way link latencies. With a window of 1 the leader waits for every
+ * acknowledgement, so throughput drops with the round trip time; larger windows keep the link busy.
+ * Usage: PipelineBenchmark [seconds per run] [entries per message]
+ */
+public class PipelineBenchmark {
+    private static final int[] WINDOWS = {1, 4, 16};
+    private static final long[] LATENCIES = {0, 1, 5, 10, 20};
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int entriesPerMessage = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+        System.out.printf("%-12s", "latency ms");
+        for (int window : WINDOWS) {
+            System.out.printf("%16s", "window " + window);
+        }
+        System.out.println();
+
+        for (long latency : LATENCIES) {
+            System.out.printf("%-12d", latency);
+            for (int window : WINDOWS) {
+                System.out.printf("%16.0f", run(window, latency, entriesPerMessage, seconds));
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * @return Committed entries per second.
+     */
+    private static double run(int window, long latency, int entriesPerMessage, int seconds) throws InterruptedException {
+        RaftConfig config = new RaftConfig();
+        config.setElectionTimeoutMin(300);
+        config.setElectionTimeoutMax(600);
+        config.setHeartbeatInterval(100);
+        config.setTickInterval(1);
+        config.setMaxInflightMessages(window);
+        config.setMaxEntriesPerMessage(entriesPerMessage);
+
+        LocalTransport transport = new LocalTransport();
+        List<RaftHost> hosts = new ArrayList<>();
+        int[] members = {1, 2, 3};
+        for (int id : members) {
+            RaftHost host = new RaftHost(id, transport, config);
+            transport.register(host);
+            host.addGroup(0, members);
+            hosts.add(host);
+        }
+        for (RaftHost host : hosts) {
+            host.start();
+        }
+
+        RaftHost leaderHost = waitForLeader(hosts);
+        transport.setLatency(latency);
+        RaftNode leader = leaderHost.getGroup(0);
+
+        // Propose until the uncommitted limit is reached, then yield to the event loop and try again
+        byte[] payload = new byte[64];
+        Runnable load = new Runnable() {
+            @Override
+            public void run() {
+                while (leader.canPropose()) {
+                    leader.propose(payload);
+                }
+                if (leader.isLeader()) {
+                    leaderHost.execute(this);
+                }
+            }
+        };
+        leaderHost.execute(load);
+
+        Thread.sleep(500); // Warm up
+        long committedBefore = committed(leaderHost, leader);
+        long startTime = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        long committed = committed(leaderHost, leader) - committedBefore;
+        double elapsed = (System.nanoTime() - startTime) / 1e9;
+
+        for (RaftHost host : hosts) {
+            host.stop();
+        }
+        return committed / elapsed;
+    }
+
+    private static RaftHost waitForLeader(List<RaftHost> hosts) throws InterruptedException {
+        while (true) {
+            for (RaftHost host : hosts) {
+                if (host.getGroup(0).isLeader()) {
+                    return host;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static long committed(RaftHost host, RaftNode node) throws InterruptedException {
+        // Read on the event loop thread
+        long[] result = new long[1];
+        Object done = new Object();
+        synchronized (done) {
+            host.execute(() -> {
+                synchronized (done) {
+                    result[0] = node.getCommitIndex();
+                    done.notify();
+                }
+            });
+            done.wait();
+        }
+        return result[0];
+    }
+}
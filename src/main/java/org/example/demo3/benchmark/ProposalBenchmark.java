@@ -0,0 +1,115 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.raft.LocalTransport;
+import org.example.demo3.raft.ProposalBatcher;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sustained throughput of small client proposals into one in-process three-replica group through
+ * the leader's {@link ProposalBatcher}, for a growing number of submitting threads. A proposal
+ * counts once its future completed, i.e. once it is committed and applied on the leader.
+ * Usage: ProposalBenchmark [seconds per run] [payload bytes] [outstanding proposals per thread]
+ */
+public class ProposalBenchmark {
+    private static final int[] THREADS = {1, 2, 4, 8};
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int payloadSize = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int outstanding = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+
+        for (int threads : THREADS) {
+            run(threads, seconds, payloadSize, outstanding);
+        }
+    }
+
+    private static void run(int numThreads, int seconds, int payloadSize, int outstanding) throws InterruptedException {
+        RaftConfig config = new RaftConfig();
+        config.setElectionTimeoutMin(300);
+        config.setElectionTimeoutMax(600);
+        config.setHeartbeatInterval(100);
+        config.setTickInterval(1);
+        config.setMaxEntriesPerMessage(1024);
+        config.setMaxInflightMessages(16);
+        config.setMaxUncommittedEntries(65536);
+        config.setSnapshotThreshold(200_000);
+
+        LocalTransport transport = new LocalTransport();
+        List<RaftHost> hosts = new ArrayList<>();
+        List<ProposalBatcher> batchers = new ArrayList<>();
+        int[] members = {1, 2, 3};
+        for (int id : members) {
+            RaftHost host = new RaftHost(id, transport, config);
+            transport.register(host);
+            batchers.add(new ProposalBatcher(host, host.addGroup(0, members), 65536));
+            hosts.add(host);
+        }
+        for (RaftHost host : hosts) {
+            host.start();
+        }
+
+        ProposalBatcher leader = null;
+        while (leader == null) {
+            Thread.sleep(10);
+            for (int i = 0; i < hosts.size(); i++) {
+                if (hosts.get(i).getGroup(0).isLeader()) {
+                    leader = batchers.get(i);
+                }
+            }
+        }
+
+        // Each submitter keeps a bounded number of proposals outstanding, like clients waiting for replies
+        LongAdder completed = new LongAdder();
+        LongAdder failed = new LongAdder();
+        ProposalBatcher target = leader;
+        List<Thread> submitters = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            Thread submitter = new Thread(() -> {
+                Semaphore window = new Semaphore(outstanding);
+                byte[] payload = new byte[payloadSize];
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        window.acquire();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    CompletableFuture<Long> future = target.submit(payload);
+                    future.whenComplete((index, error) -> {
+                        if (error == null) {
+                            completed.increment();
+                        } else {
+                            failed.increment();
+                        }
+                        window.release();
+                    });
+                }
+            }, "submitter-" + t);
+            submitter.setDaemon(true);
+            submitters.add(submitter);
+            submitter.start();
+        }
+
+        Thread.sleep(1000); // Warm up
+        long before = completed.sum();
+        long startTime = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        long count = completed.sum() - before;
+        double elapsed = (System.nanoTime() - startTime) / 1e9;
+
+        for (Thread submitter : submitters) {
+            submitter.interrupt();
+        }
+        for (RaftHost host : hosts) {
+            host.stop();
+        }
+        System.out.printf("%d submitter thread(s): %,.0f committed proposals/s (%d failed)%n",
+                numThreads, count / elapsed, failed.sum());
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.raft.KeyValueStore;
+import org.example.demo3.raft.LocalTransport;
+import org.example.demo3.raft.ProposalBatcher;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+import org.example.demo3.raft.RaftNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Time a crashed host needs to rebuild one group from disk (snapshot, log after it and state machine)
+ * depending on the snapshot threshold, i.e. on how many entries it has to replay from the log.
+ * The same number of key-value puts is written for every threshold, then the host is stopped and
+ * a new host recovers the group from the same directory.
+ * Usage: RecoveryBenchmark [entries] [keys] [value bytes]
+ */
+public class RecoveryBenchmark {
+    private static final int[] THRESHOLDS = {1_000, 10_000, 100_000, Integer.MAX_VALUE};
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 175_000;
+        int keys = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int valueSize = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        System.out.println("Snapshot threshold | log entries replayed | recovery ms | applied after recovery");
+        for (int threshold : THRESHOLDS) {
+            run(threshold, entries, keys, valueSize);
+        }
+    }
+
+    private static void run(int threshold, int entries, int keys, int valueSize) throws IOException, InterruptedException {
+        RaftConfig config = new RaftConfig();
+        config.setElectionTimeoutMin(100);
+        config.setElectionTimeoutMax(200);
+        config.setHeartbeatInterval(50);
+        config.setTickInterval(1);
+        config.setMaxEntriesPerMessage(1024);
+        config.setMaxUncommittedEntries(65536);
+        config.setSnapshotThreshold(threshold);
+
+        Path directory = Files.createTempDirectory("recovery-benchmark");
+        LocalTransport transport = new LocalTransport();
+        int[] members = {1}; // A single replica, so only the disk limits writing and recovery
+
+        RaftHost host = new RaftHost(1, transport, config);
+        host.setDataDirectory(directory);
+        transport.register(host);
+        ProposalBatcher batcher = new ProposalBatcher(host, host.addGroup(0, members), 65536);
+        batcher.setStateMachine(new KeyValueStore()); // Snapshots hold the real key-value data
+        host.start();
+        while (!host.getGroup(0).isLeader()) {
+            Thread.sleep(10);
+        }
+        String value = "x".repeat(valueSize);
+        CompletableFuture<Long> last = null;
+        for (int i = 0; i < entries; i++) {
+            if (i % 4096 == 0 && last != null) {
+                last.join(); // Keep the batcher's ring from filling up
+            }
+            last = batcher.submit(KeyValueStore.encodePut("key" + (i % keys), value));
+        }
+        last.join();
+        Thread.sleep(2 * config.getHeartbeatInterval()); // The commit index is written once per heartbeat round
+        host.stop();
+        host.getThread().join();
+        System.gc(); // Garbage of the writing phase should not be collected during recovery
+
+        long start = System.nanoTime();
+        RaftHost recovered = new RaftHost(1, transport, config);
+        recovered.setDataDirectory(directory);
+        KeyValueStore store = new KeyValueStore();
+        RaftNode node = recovered.addGroup(0, members);
+        node.setStateMachine(store);
+        long replayed = node.getLog().lastIndex() - node.getLog().getSnapshotIndex();
+        recovered.start(); // Restores the snapshot and applies the committed entries before the loop starts
+        double millis = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("%18s | %20d | %11.1f | %d (%d keys)%n",
+                threshold == Integer.MAX_VALUE ? "never" : String.valueOf(threshold), replayed, millis,
+                node.getLastApplied(), store.size());
+        recovered.stop();
+    }
+}
@@ -0,0 +1,102 @@
+package org.example.demo3.benchmark;
+
+import org.example.demo3.timer.HashedTimingWheel;
+import org.example.demo3.timer.Timeout;
+
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the hashed timing wheel against a ScheduledThreadPoolExecutor for the election timer
+ * pattern: many outstanding timers that are re-armed on every heartbeat.
+ * Usage: TimingWheelBenchmark [timers] [rearms per timer]
+ */
+public class TimingWheelBenchmark {
+    private static long fired = 0;
+
+    public static void main(String[] args) {
+        int numTimers = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rearms = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("Round " + (round + 1) + ":");
+            benchmarkWheel(numTimers, rearms);
+            benchmarkExecutor(numTimers, rearms);
+        }
+    }
+
+    private static void benchmarkWheel(int numTimers, int rearms) {
+        Random random = new Random(42);
+        long now = 0;
+        HashedTimingWheel wheel = new HashedTimingWheel(1, now);
+        Timeout[] timeouts = new Timeout[numTimers];
+        Runnable task = () -> fired++;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < numTimers; i++) {
+            timeouts[i] = wheel.schedule(task, 5000 + random.nextInt(1500));
+        }
+        long scheduled = System.nanoTime();
+
+        // Heartbeats: re-arm every timer while time advances in 10 ms ticks
+        for (int r = 0; r < rearms; r++) {
+            for (int i = 0; i < numTimers; i++) {
+                timeouts[i].reschedule(5000 + random.nextInt(1500));
+            }
+            now += 10;
+            wheel.advance(now);
+        }
+        long rearmed = System.nanoTime();
+
+        // Cancel half, let the rest expire
+        for (int i = 0; i < numTimers; i += 2) {
+            timeouts[i].cancel();
+        }
+        long cancelled = System.nanoTime();
+        fired = 0;
+        wheel.advance(now + 7000);
+        long expired = System.nanoTime();
+
+        System.out.printf("  Timing wheel:  schedule %.0f ns, re-arm %.0f ns, cancel %.0f ns, expire %.0f ns per timer (%d fired)%n",
+                (scheduled - start) / (double) numTimers,
+                (rearmed - scheduled) / (double) numTimers / rearms,
+                (cancelled - rearmed) / (numTimers / 2.0),
+                (expired - cancelled) / (numTimers / 2.0), fired);
+    }
+
+    private static void benchmarkExecutor(int numTimers, int rearms) {
+        Random random = new Random(42);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        ScheduledFuture<?>[] futures = new ScheduledFuture<?>[numTimers];
+        Runnable task = () -> { };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < numTimers; i++) {
+            futures[i] = executor.schedule(task, 5000 + random.nextInt(1500), TimeUnit.MILLISECONDS);
+        }
+        long scheduled = System.nanoTime();
+
+        // Re-arming means cancel and schedule again
+        for (int r = 0; r < rearms; r++) {
+            for (int i = 0; i < numTimers; i++) {
+                futures[i].cancel(false);
+                futures[i] = executor.schedule(task, 5000 + random.nextInt(1500), TimeUnit.MILLISECONDS);
+            }
+        }
+        long rearmed = System.nanoTime();
+
+        for (int i = 0; i < numTimers; i += 2) {
+            futures[i].cancel(false);
+        }
+        long cancelled = System.nanoTime();
+        executor.shutdownNow();
+
+        System.out.printf("  Executor:      schedule %.0f ns, re-arm %.0f ns, cancel %.0f ns per timer%n",
+                (scheduled - start) / (double) numTimers,
+                (rearmed - scheduled) / (double) numTimers / rearms,
+                (cancelled - rearmed) / (numTimers / 2.0));
+    }
+}
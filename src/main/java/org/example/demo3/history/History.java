@@ -0,0 +1,61 @@
+package org.example.demo3.history;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe recorder of client operations. Clients call {@link #invoke} right before sending a
+ * request and {@link #ok}, {@link #fail} or {@link #info} as soon as they learn the outcome, so the
+ * recorded interval contains the moment the operation took effect in the cluster.
+ */
+public class History {
+    private final ConcurrentLinkedQueue<Operation> operations = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * @param value Value to write, null for reads and deletes.
+     */
+    public Operation invoke(int process, String type, String key, String value) {
+        Operation operation = new Operation(nextId.getAndIncrement(), process, type, key, value, System.nanoTime());
+        operations.add(operation);
+        return operation;
+    }
+
+    /**
+     * @param value Value a read returned (null if the key was not found); ignored for writes and deletes.
+     */
+    public void ok(Operation operation, String value) {
+        operation.complete("ok", operation.getType().equals("read") ? value : operation.getValue(), System.nanoTime());
+    }
+
+    public void ok(Operation operation) {
+        ok(operation, null);
+    }
+
+    /**
+     * The operation certainly did not take effect, e.g. it was rejected by a replica that is not the leader.
+     */
+    public void fail(Operation operation) {
+        operation.complete("fail", operation.getValue(), System.nanoTime());
+    }
+
+    /**
+     * The outcome is unknown: the operation may take effect at any time after its invocation, or never.
+     */
+    public void info(Operation operation) {
+        operation.complete("info", operation.getValue(), Long.MAX_VALUE);
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * All operations in the order they were invoked. The checker treats operations still pending like "info".
+     */
+    public List<Operation> getOperations() {
+        return new ArrayList<>(operations);
+    }
+}
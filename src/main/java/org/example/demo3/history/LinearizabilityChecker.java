@@ -0,0 +1,250 @@
+package org.example.demo3.history;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks a recorded key-value history for linearizability. Every key is an independent register,
+ * and a history is linearizable exactly if the history of every key is, so keys are checked
+ * separately and in parallel. Each key is checked with the Wing &amp; Gong search as improved by Lowe:
+ * operations are linearized in a depth-first search over the minimal pending calls, and states
+ * (set of linearized operations, register value) that were already explored are cached.
+ *
+ * Failed operations are ignored. Reads without a known result constrain nothing and are ignored too.
+ * Writes and deletes with unknown outcome may take effect at any point after their invocation, or never.
+ */
+public class LinearizabilityChecker {
+    private final int parallelism;
+
+    public LinearizabilityChecker() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public LinearizabilityChecker(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public static class Result {
+        private final boolean linearizable;
+        private final List<String> violatingKeys;
+        private final int keys;
+        private final int operations;
+        private final long nanos;
+
+        Result(List<String> violatingKeys, int keys, int operations, long nanos) {
+            this.linearizable = violatingKeys.isEmpty();
+            this.violatingKeys = violatingKeys;
+            this.keys = keys;
+            this.operations = operations;
+            this.nanos = nanos;
+        }
+
+        public boolean isLinearizable() {
+            return linearizable;
+        }
+
+        public List<String> getViolatingKeys() {
+            return violatingKeys;
+        }
+
+        public int getKeys() {
+            return keys;
+        }
+
+        public int getOperations() {
+            return operations;
+        }
+
+        public double getMillis() {
+            return nanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d operations on %d keys checked in %.1f ms%s",
+                    linearizable ? "linearizable" : "NOT linearizable", operations, keys, getMillis(),
+                    linearizable ? "" : ", violations on " + violatingKeys);
+        }
+    }
+
+    public Result check(List<Operation> history) {
+        long start = System.nanoTime();
+        Map<String, List<Operation>> byKey = new HashMap<>();
+        int count = 0;
+        for (Operation operation : history) {
+            String status = operation.getStatus();
+            if (status.equals("fail") || (operation.getType().equals("read") && !status.equals("ok"))) {
+                continue;
+            }
+            byKey.computeIfAbsent(operation.getKey(), key -> new ArrayList<>()).add(operation);
+            count++;
+        }
+
+        // Largest keys first, so one long key does not start last and hold up the result
+        List<Map.Entry<String, List<Operation>>> keys = new ArrayList<>(byKey.entrySet());
+        keys.sort(Comparator.comparingInt((Map.Entry<String, List<Operation>> entry) -> entry.getValue().size()).reversed());
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<String> violating;
+        try {
+            violating = pool.submit(() -> keys.parallelStream()
+                    .filter(entry -> !checkKey(entry.getValue()))
+                    .map(Map.Entry::getKey)
+                    .sorted()
+                    .toList()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Check interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Check failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return new Result(violating, byKey.size(), count, System.nanoTime() - start);
+    }
+
+    // Call or return event of an operation, in a doubly linked list ordered by time
+    private static class Event {
+        final Operation operation;
+        final int index; // Position of the operation in the key's history
+        final boolean call;
+        final long time;
+        Event match; // Return event of a call, null if the outcome is unknown
+        Event prev;
+        Event next;
+
+        Event(Operation operation, int index, boolean call, long time) {
+            this.operation = operation;
+            this.index = index;
+            this.call = call;
+            this.time = time;
+        }
+    }
+
+    // Search state for the cache of explored states
+    private static class State {
+        final BitSet linearized;
+        final String value;
+
+        State(BitSet linearized, String value) {
+            this.linearized = linearized;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof State state && linearized.equals(state.linearized) && Objects.equals(value, state.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return linearized.hashCode() * 31 + Objects.hashCode(value);
+        }
+    }
+
+    /**
+     * @return True if the operations on one key are linearizable for a register that starts empty.
+     */
+    static boolean checkKey(List<Operation> operations) {
+        List<Event> events = new ArrayList<>(operations.size() * 2);
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            Event call = new Event(operation, i, true, operation.getInvokeTime());
+            events.add(call);
+            if (operation.getStatus().equals("ok")) {
+                call.match = new Event(operation, i, false, operation.getCompleteTime());
+                events.add(call.match);
+            }
+        }
+        // Calls before returns at the same time, so such operations count as concurrent
+        events.sort(Comparator.comparingLong((Event event) -> event.time).thenComparing(event -> !event.call));
+        Event head = new Event(null, -1, false, Long.MIN_VALUE);
+        Event last = head;
+        for (Event event : events) {
+            last.next = event;
+            event.prev = last;
+            last = event;
+        }
+
+        BitSet linearized = new BitSet(operations.size());
+        String value = null;
+        Set<State> explored = new HashSet<>();
+        List<Event> calls = new ArrayList<>(); // Linearized calls and the value before each
+        List<String> values = new ArrayList<>();
+
+        Event event = head.next;
+        while (event != null) {
+            if (event.call) {
+                Operation operation = event.operation;
+                String newValue = value; // Reads keep the value
+                if (operation.getType().equals("write")) {
+                    newValue = operation.getValue();
+                } else if (operation.getType().equals("delete")) {
+                    newValue = null;
+                }
+                if (!operation.getType().equals("read") || Objects.equals(operation.getValue(), value)) {
+                    linearized.set(event.index);
+                    if (explored.add(new State((BitSet) linearized.clone(), newValue))) {
+                        calls.add(event);
+                        values.add(value);
+                        value = newValue;
+                        lift(event);
+                        event = head.next;
+                        continue;
+                    }
+                    linearized.clear(event.index);
+                }
+                event = event.next;
+            } else {
+                // An operation returned before anything pending could be linearized: backtrack
+                if (calls.isEmpty()) {
+                    return false;
+                }
+                Event call = calls.remove(calls.size() - 1);
+                value = values.remove(values.size() - 1);
+                linearized.clear(call.index);
+                unlift(call);
+                event = call.next;
+            }
+        }
+        // Only calls with unknown outcome are left, and they need not take effect
+        return true;
+    }
+
+    private static void lift(Event call) {
+        remove(call);
+        if (call.match != null) {
+            remove(call.match);
+        }
+    }
+
+    private static void unlift(Event call) {
+        if (call.match != null) {
+            restore(call.match);
+        }
+        restore(call);
+    }
+
+    private static void remove(Event event) {
+        event.prev.next = event.next;
+        if (event.next != null) {
+            event.next.prev = event.prev;
+        }
+    }
+
+    private static void restore(Event event) {
+        event.prev.next = event;
+        if (event.next != null) {
+            event.next.prev = event;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.demo3.history;
+
+/**
+ * One client operation on the key-value store, from invocation to completion.
+ * Type is "read", "write" or "delete"; status is "pending" until the client learns the outcome,
+ * then "ok", "fail" (certainly did not take effect) or "info" (outcome unknown, e.g. a timeout).
+ */
+public class Operation {
+    private final long id;
+    private final int process; // Client that issued the operation
+    private final String type;
+    private final String key;
+    private volatile String value; // Written value, or the value a read returned (null = not found)
+    private final long invokeTime;
+    private volatile long completeTime = Long.MAX_VALUE;
+    private volatile String status = "pending";
+
+    Operation(long id, int process, String type, String key, String value, long invokeTime) {
+        this.id = id;
+        this.process = process;
+        this.type = type;
+        this.key = key;
+        this.value = value;
+        this.invokeTime = invokeTime;
+    }
+
+    void complete(String status, String value, long time) {
+        this.value = value;
+        this.completeTime = time;
+        this.status = status; // Written last, readers check the status first
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getProcess() {
+        return process;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getInvokeTime() {
+        return invokeTime;
+    }
+
+    /**
+     * Nanosecond timestamp of the completion, Long.MAX_VALUE while pending or if the outcome is unknown.
+     */
+    public long getCompleteTime() {
+        return completeTime;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + id + " p" + process + " " + type + "(" + key + (type.equals("delete") ? "" : ", " + value) + ") "
+                + status + " [" + invokeTime + ", " + (completeTime == Long.MAX_VALUE ? "-" : completeTime) + "]";
+    }
+}
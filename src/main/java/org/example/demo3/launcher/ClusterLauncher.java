@@ -0,0 +1,330 @@
+package org.example.demo3.launcher;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs a cluster as separate local JVMs, one {@link RaftProcess} per host with its own data directory,
+ * connected over TCP on localhost. Unlike the in-process benchmarks, every host has its own heap and
+ * garbage collector and every message is serialized, and hosts can be crashed and frozen for real.
+ *
+ * Commands are read from stdin, or taken from run=, separated by semicolons:
+ *   status                  state of every host
+ *   kill ID                 SIGKILL the host's JVM
+ *   pause ID / resume ID    SIGSTOP / SIGCONT the host's JVM
+ *   restart ID              kill if alive and start again on the same directory
+ *   load COUNT [BYTES]      proposes COUNT puts on the leader and reports the throughput
+ *   failover ROUNDS [kill|pause]   crashes or freezes the leader ROUNDS times and measures the time
+ *                           until another host is leader of a newer term; polled, so accurate to a few ms
+ *   report                  metrics of all processes and all measurements so far in one report
+ *   sleep MS, quit
+ *
+ * Usage: ClusterLauncher [key=value] ...
+ *   nodes=3 port=7100 dir=(temporary) heap=256m timeout=500-1000 heartbeat=100 compression=false partitions=1
+ *   run="load 10000;failover 5;report"
+ */
+public class ClusterLauncher {
+    private static final long POLL_TIMEOUT = 200; // Milliseconds a running host may take to answer a status request
+
+    private final List<NodeProcess> nodes = new ArrayList<>();
+    private final List<Long> failovers = new ArrayList<>();
+    private final List<String> loads = new ArrayList<>();
+
+    // A host that claims to be leader and its term
+    private static class Leader {
+        final int id;
+        final int term;
+
+        Leader(int id, int term) {
+            this.id = id;
+            this.term = term;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> spec = parse(args);
+        int count = Integer.parseInt(spec.getOrDefault("nodes", "3"));
+        Path directory = spec.containsKey("dir") ? Path.of(spec.get("dir")) : Files.createTempDirectory("raft-cluster");
+
+        ClusterLauncher launcher = new ClusterLauncher();
+        for (int id = 1; id <= count; id++) {
+            Path nodeDirectory = directory.resolve("host-" + id);
+            Files.createDirectories(nodeDirectory);
+            List<String> command = javaCommand(spec.getOrDefault("heap", "256m"));
+            command.add("id=" + id);
+            command.add("nodes=" + count);
+            command.add("port=" + spec.getOrDefault("port", "7100"));
+            command.add("dir=" + nodeDirectory);
+            command.add("timeout=" + spec.getOrDefault("timeout", "500-1000"));
+            command.add("heartbeat=" + spec.getOrDefault("heartbeat", "100"));
+            command.add("compression=" + spec.getOrDefault("compression", "false"));
+            command.add("partitions=" + spec.getOrDefault("partitions", "1"));
+            launcher.nodes.add(new NodeProcess(id, command, nodeDirectory));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(launcher::stopAll));
+
+        System.out.println("Starting " + count + " processes in " + directory);
+        for (NodeProcess node : launcher.nodes) {
+            node.start();
+        }
+        Leader leader = launcher.awaitLeader(-1, 0, 30_000);
+        System.out.println(leader == null ? "No leader after 30 s" : "Host " + leader.id + " is leader in term " + leader.term);
+
+        if (spec.containsKey("run")) {
+            for (String command : spec.get("run").split(";")) {
+                if (!launcher.execute(command.trim())) {
+                    break;
+                }
+            }
+        } else {
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null && launcher.execute(line.trim())) {
+                // Next command
+            }
+        }
+        launcher.stopAll();
+    }
+
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> spec = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            spec.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return spec;
+    }
+
+    /**
+     * Command line that starts a {@link RaftProcess} with the JVM, class path or module path of this process.
+     */
+    private static List<String> javaCommand(String heap) {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xmx" + heap);
+        String modulePath = System.getProperty("jdk.module.path");
+        if (modulePath != null) {
+            command.add("--module-path");
+            command.add(modulePath);
+            command.add("--module");
+            command.add(RaftProcess.class.getModule().getName() + "/" + RaftProcess.class.getName());
+        } else {
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(RaftProcess.class.getName());
+        }
+        return command;
+    }
+
+    private void stopAll() {
+        for (NodeProcess node : nodes) {
+            node.stop();
+        }
+    }
+
+    /**
+     * @return False if the launcher should quit.
+     */
+    private boolean execute(String line) throws IOException, InterruptedException {
+        if (line.isEmpty()) {
+            return true;
+        }
+        String[] words = line.split("\\s+");
+        String command = words[0];
+        try {
+            if (command.equals("quit")) {
+                return false;
+            } else if (command.equals("status")) {
+                printStatus();
+            } else if (command.equals("kill")) {
+                node(words[1]).kill();
+                System.out.println("Killed host " + words[1]);
+            } else if (command.equals("pause")) {
+                node(words[1]).pause();
+                System.out.println("Paused host " + words[1]);
+            } else if (command.equals("resume")) {
+                node(words[1]).resume();
+                System.out.println("Resumed host " + words[1]);
+            } else if (command.equals("restart")) {
+                node(words[1]).restart();
+                System.out.println("Restarted host " + words[1]);
+            } else if (command.equals("load")) {
+                load(Integer.parseInt(words[1]), words.length > 2 ? Integer.parseInt(words[2]) : 100);
+            } else if (command.equals("failover")) {
+                failover(Integer.parseInt(words[1]), words.length > 2 ? words[2] : "kill");
+            } else if (command.equals("report")) {
+                printReport();
+            } else if (command.equals("sleep")) {
+                Thread.sleep(Long.parseLong(words[1]));
+            } else {
+                System.out.println("Unknown command: " + line);
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            System.out.println("Invalid command: " + line);
+        }
+        return true;
+    }
+
+    private NodeProcess node(String id) {
+        return nodes.get(Integer.parseInt(id) - 1);
+    }
+
+    private void printStatus() throws InterruptedException {
+        for (NodeProcess node : nodes) {
+            String status = node.request("status", POLL_TIMEOUT);
+            System.out.printf("  host %d  pid %-7d %-8s %s%n", node.getId(), node.getPid(), node.getState(),
+                    status == null ? "" : status);
+        }
+    }
+
+    /**
+     * Polls the running hosts until one other than the excluded host is leader of at least the given term.
+     *
+     * @return The leader with the highest term, or null if none was found in time.
+     */
+    private Leader awaitLeader(int excludedId, int minTerm, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            Leader leader = null;
+            for (NodeProcess node : nodes) {
+                if (node.getId() == excludedId || !node.isRunning()) {
+                    continue;
+                }
+                Map<String, String> status = node.status(POLL_TIMEOUT);
+                if ("leader".equals(status.get("state"))) {
+                    int term = Integer.parseInt(status.get("term"));
+                    if (term >= minTerm && (leader == null || term > leader.term)) {
+                        leader = new Leader(node.getId(), term);
+                    }
+                }
+            }
+            if (leader != null) {
+                return leader;
+            }
+            Thread.sleep(2);
+        }
+        return null;
+    }
+
+    private void load(int count, int valueSize) throws InterruptedException {
+        Leader leader = awaitLeader(-1, 0, 10_000);
+        if (leader == null) {
+            System.out.println("No leader");
+            return;
+        }
+        Map<String, String> result = NodeProcess.fields(
+                nodes.get(leader.id - 1).request("load " + count + " " + valueSize, 70_000));
+        if (result.isEmpty()) {
+            System.out.println("Host " + leader.id + " did not finish the load");
+            return;
+        }
+        long millis = Math.max(1, Long.parseLong(result.get("millis")));
+        String summary = String.format(Locale.ROOT, "%d puts of %d bytes on host %d: %s committed, %s failed in %d ms = %.0f puts/s",
+                count, valueSize, leader.id, result.get("committed"), result.get("failed"), millis,
+                Long.parseLong(result.get("committed")) * 1000.0 / millis);
+        loads.add(summary);
+        System.out.println(summary);
+    }
+
+    private void failover(int rounds, String fault) throws IOException, InterruptedException {
+        for (int round = 1; round <= rounds; round++) {
+            Leader old = awaitLeader(-1, 0, 10_000);
+            if (old == null) {
+                System.out.println("No leader, failover stopped");
+                return;
+            }
+            NodeProcess victim = nodes.get(old.id - 1);
+            if (fault.equals("pause")) {
+                victim.pause();
+            } else {
+                victim.kill();
+            }
+            // From when the leader is gone; kill first asks it for its metrics, which is not part of the failover
+            long start = System.nanoTime();
+            Leader next = awaitLeader(old.id, old.term + 1, 30_000);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            if (next == null) {
+                System.out.printf("Round %d: no new leader within 30 s after the %s of host %d%n", round, fault, old.id);
+            } else {
+                failovers.add(millis);
+                System.out.printf("Round %d: %s host %d (term %d), host %d leader in term %d after %d ms%n",
+                        round, fault.equals("pause") ? "paused" : "killed", old.id, old.term, next.id, next.term, millis);
+            }
+
+            // Bring the old leader back and let it catch up before the next round
+            if (fault.equals("pause")) {
+                victim.resume();
+            } else {
+                victim.restart();
+            }
+            int term = next == null ? old.term + 1 : next.term;
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (System.currentTimeMillis() < deadline) {
+                String victimTerm = victim.status(POLL_TIMEOUT).get("term");
+                if (victimTerm != null && Integer.parseInt(victimTerm) >= term) {
+                    break;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private void printReport() throws InterruptedException {
+        String[] columns = {"elections", "leaders", "syncs", "sent", "sentBytes", "sentRawBytes", "received", "dropped",
+                "gcCount", "gcMillis", "cpuMillis", "heapBytes"};
+        System.out.println("Report:");
+        StringBuilder header = new StringBuilder(String.format("  %-6s %-8s %6s", "host", "state", "starts"));
+        for (String column : columns) {
+            header.append(String.format(" %12s", column));
+        }
+        System.out.println(header);
+
+        Map<String, Long> total = new HashMap<>();
+        for (NodeProcess node : nodes) {
+            Map<String, Long> metrics = node.metrics(1000);
+            StringBuilder row = new StringBuilder(String.format("  %-6d %-8s %6d", node.getId(), node.getState(), node.getStarts()));
+            for (String column : columns) {
+                Long value = metrics.get(column);
+                row.append(String.format(" %12s", value == null ? "-" : value));
+                if (value != null) {
+                    total.merge(column, value, Long::sum);
+                }
+            }
+            System.out.println(row);
+        }
+        StringBuilder row = new StringBuilder(String.format("  %-6s %-8s %6s", "total", "", ""));
+        for (String column : columns) {
+            row.append(String.format(" %12d", total.getOrDefault(column, 0L)));
+        }
+        System.out.println(row);
+
+        if (!failovers.isEmpty()) {
+            long[] sorted = failovers.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            System.out.printf(Locale.ROOT, "  Failovers: %d, avg %.1f ms, p50 %d ms, p99 %d ms, max %d ms%n",
+                    sorted.length, Arrays.stream(sorted).average().orElse(0), percentile(sorted, 50),
+                    percentile(sorted, 99), sorted[sorted.length - 1]);
+        }
+        for (String load : loads) {
+            System.out.println("  Load: " + load);
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
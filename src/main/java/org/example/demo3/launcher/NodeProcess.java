@@ -0,0 +1,222 @@
+package org.example.demo3.launcher;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Launcher side of one {@link RaftProcess}: starts the JVM, sends it signals and exchanges request
+ * and answer lines with it. A restart starts a new JVM on the same directory, which recovers the
+ * host's state from disk. Counters of earlier runs are kept, so metrics cover all runs of the host.
+ */
+class NodeProcess {
+    private final int id;
+    private final List<String> command;
+    private final Path directory;
+
+    private Process process;
+    private BufferedWriter requests;
+    private final BlockingQueue<String> answers = new LinkedBlockingQueue<>();
+    private long nextSequence = 1;
+    private String state = "stopped"; // "running", "paused", "killed" or "stopped"
+    private int starts = 0;
+
+    // Counters summed over the runs that ended
+    private final Map<String, Long> previousRuns = new HashMap<>();
+
+    NodeProcess(int id, List<String> command, Path directory) {
+        this.id = id;
+        this.command = command;
+        this.directory = directory;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    String getState() {
+        return state;
+    }
+
+    boolean isRunning() {
+        return state.equals("running");
+    }
+
+    int getStarts() {
+        return starts;
+    }
+
+    long getPid() {
+        return process == null ? -1 : process.pid();
+    }
+
+    void start() throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectError(ProcessBuilder.Redirect.appendTo(directory.resolve("process.log").toFile()));
+        process = builder.start();
+        requests = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        answers.clear();
+        Process started = process;
+        Thread reader = new Thread(() -> readAnswers(started), "launcher-read-" + id);
+        reader.setDaemon(true);
+        reader.start();
+        state = "running";
+        starts++;
+    }
+
+    private void readAnswers(Process started) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(started.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                answers.offer(line);
+            }
+        } catch (IOException e) {
+            // The process died
+        }
+    }
+
+    /**
+     * Kills the JVM with SIGKILL, like a crash. Its counters are collected first if it is running.
+     */
+    void kill() throws InterruptedException {
+        if (process == null || !process.isAlive()) {
+            state = "killed";
+            return;
+        }
+        if (isRunning()) {
+            for (Map.Entry<String, String> entry : fields(request("metrics", 500)).entrySet()) {
+                if (!entry.getKey().equals("heapBytes")) {
+                    previousRuns.merge(entry.getKey(), Long.parseLong(entry.getValue()), Long::sum);
+                }
+            }
+        }
+        process.destroyForcibly(); // SIGKILL, also ends a stopped process
+        process.waitFor();
+        state = "killed";
+    }
+
+    /**
+     * Freezes the JVM with SIGSTOP: its sockets stay open but it neither sends nor answers.
+     */
+    void pause() throws IOException, InterruptedException {
+        if (isRunning()) {
+            signal("STOP");
+            state = "paused";
+        }
+    }
+
+    void resume() throws IOException, InterruptedException {
+        if (state.equals("paused")) {
+            signal("CONT");
+            state = "running";
+        }
+    }
+
+    void restart() throws IOException, InterruptedException {
+        if (process != null && process.isAlive()) {
+            kill();
+        }
+        start();
+    }
+
+    /**
+     * Closes stdin, on which the process stops its host and exits, and kills it if it does not.
+     */
+    void stop() {
+        if (process == null) {
+            return;
+        }
+        try {
+            if (state.equals("paused")) {
+                signal("CONT");
+            }
+            requests.close();
+            if (!process.waitFor(2, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (IOException | InterruptedException e) {
+            process.destroyForcibly();
+        }
+        state = "stopped";
+    }
+
+    private void signal(String name) throws IOException, InterruptedException {
+        new ProcessBuilder("kill", "-" + name, String.valueOf(process.pid())).inheritIO().start().waitFor();
+    }
+
+    /**
+     * Sends a command and waits for its answer.
+     *
+     * @return The answer without its sequence number, or null if the process is not running or did not
+     *         answer in time. A late answer is discarded when the next request waits for its own.
+     */
+    String request(String commandLine, long timeoutMillis) throws InterruptedException {
+        if (!isRunning()) {
+            return null;
+        }
+        long sequence = nextSequence++;
+        try {
+            requests.write(sequence + " " + commandLine);
+            requests.newLine();
+            requests.flush();
+        } catch (IOException e) {
+            return null; // The process died
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            String answer = remaining > 0 ? answers.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (answer == null) {
+                return null;
+            }
+            int separator = answer.indexOf(' ');
+            if (separator > 0 && answer.substring(0, separator).equals(String.valueOf(sequence))) {
+                return answer.substring(separator + 1);
+            }
+        }
+    }
+
+    /**
+     * Status of the host's group as key=value pairs, empty if the process did not answer.
+     */
+    Map<String, String> status(long timeoutMillis) throws InterruptedException {
+        return fields(request("status", timeoutMillis));
+    }
+
+    /**
+     * Counters of all runs of the host; heapBytes is the current heap usage. Only the counters of
+     * earlier runs if the process does not answer.
+     */
+    Map<String, Long> metrics(long timeoutMillis) throws InterruptedException {
+        Map<String, Long> metrics = new LinkedHashMap<>(previousRuns);
+        for (Map.Entry<String, String> entry : fields(request("metrics", timeoutMillis)).entrySet()) {
+            metrics.merge(entry.getKey(), Long.parseLong(entry.getValue()), Long::sum);
+        }
+        return metrics;
+    }
+
+    static Map<String, String> fields(String answer) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        if (answer == null || answer.startsWith("error")) {
+            return fields;
+        }
+        for (String pair : answer.split(" ")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                fields.put(pair.substring(0, separator), pair.substring(separator + 1));
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,193 @@
+package org.example.demo3.launcher;
+
+import org.example.demo3.raft.KeyValueStore;
+import org.example.demo3.raft.ProposalBatcher;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+import org.example.demo3.raft.RaftMetrics;
+import org.example.demo3.raft.RaftNode;
+import org.example.demo3.raft.TcpTransport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One host of a multi-process cluster: a Raft host with one key-value group, connected to the other
+ * processes over TCP on localhost and persisting its state in its own directory. Started by
+ * {@link ClusterLauncher}, which controls it through stdin and stdout: every request is a line
+ * "sequence command [arguments]" and is answered by one line "sequence result", so the launcher can
+ * recognize answers that arrive after it stopped waiting, e.g. from a process that was paused.
+ * Diagnostics go to stderr. The process exits when stdin is closed.
+ *
+ * Commands:
+ *   status              state, term, leader, commit and applied index of the group
+ *   load count bytes    proposes count puts of the given value size and waits until they are applied
+ *   metrics             Raft, transport and JVM counters as key=value pairs
+ *
+ * Usage: RaftProcess id=1 nodes=3 port=7100 dir=... timeout=500-1000 heartbeat=100 compression=false partitions=1
+ * where partitions is the number of key-value partitions applied in parallel.
+ */
+public class RaftProcess {
+    private static final int GROUP = 0;
+    private static final int LOAD_WINDOW = 4096; // Proposals in flight during a load
+
+    private final RaftHost host;
+    private final RaftNode node;
+    private final ProposalBatcher batcher;
+    private final KeyValueStore store;
+    private final TcpTransport transport;
+
+    private RaftProcess(RaftHost host, RaftNode node, ProposalBatcher batcher, KeyValueStore store, TcpTransport transport) {
+        this.host = host;
+        this.node = node;
+        this.batcher = batcher;
+        this.store = store;
+        this.transport = transport;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> spec = ClusterLauncher.parse(args);
+        int id = Integer.parseInt(spec.get("id"));
+        int nodes = Integer.parseInt(spec.getOrDefault("nodes", "3"));
+        int port = Integer.parseInt(spec.getOrDefault("port", "7100"));
+        String[] timeout = spec.getOrDefault("timeout", "500-1000").split("-");
+
+        RaftConfig config = new RaftConfig();
+        config.setElectionTimeoutMin(Long.parseLong(timeout[0]));
+        config.setElectionTimeoutMax(Long.parseLong(timeout[1]));
+        config.setHeartbeatInterval(Long.parseLong(spec.getOrDefault("heartbeat", "100")));
+        config.setTickInterval(Math.max(1, Math.min(10, config.getHeartbeatInterval() / 10)));
+        config.setMaxEntriesPerMessage(1024);
+        config.setMaxUncommittedEntries(65536);
+        boolean compression = Boolean.parseBoolean(spec.getOrDefault("compression", "false"));
+        config.setLogCompression(compression);
+
+        Map<Integer, InetSocketAddress> addresses = new HashMap<>();
+        int[] members = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            members[i] = i + 1;
+            addresses.put(i + 1, new InetSocketAddress(InetAddress.getLoopbackAddress(), port + i + 1));
+        }
+
+        TcpTransport transport = new TcpTransport(id, addresses);
+        transport.setCompression(compression);
+        RaftHost host = new RaftHost(id, transport, config);
+        Path directory = Path.of(spec.get("dir"));
+        Files.createDirectories(directory);
+        host.setDataDirectory(directory);
+        RaftNode node = host.addGroup(GROUP, members);
+        ProposalBatcher batcher = new ProposalBatcher(host, node, 65536);
+        KeyValueStore store = new KeyValueStore(Integer.parseInt(spec.getOrDefault("partitions", "1")));
+        batcher.setStateMachine(store);
+        transport.start(host);
+        host.start();
+        System.err.println("Host " + id + " started, pid " + ProcessHandle.current().pid());
+
+        new RaftProcess(host, node, batcher, store, transport).serve();
+    }
+
+    private void serve() throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] words = line.trim().split("\\s+");
+            String result;
+            try {
+                if (words[1].equals("status")) {
+                    result = status();
+                } else if (words[1].equals("load")) {
+                    result = load(Integer.parseInt(words[2]), Integer.parseInt(words[3]));
+                } else if (words[1].equals("metrics")) {
+                    result = metrics();
+                } else {
+                    result = "error unknown command " + words[1];
+                }
+            } catch (Exception e) {
+                result = "error " + e;
+            }
+            System.out.println(words[0] + " " + result);
+            System.out.flush();
+        }
+        // The launcher is gone
+        host.stop();
+        transport.close();
+        try {
+            host.getThread().join(); // The store's workers are stopped only after the last batch was applied
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        store.close();
+    }
+
+    private String status() throws Exception {
+        // Group state is read on the event loop thread
+        CompletableFuture<String> result = new CompletableFuture<>();
+        host.execute(() -> result.complete(String.format("state=%s term=%d leader=%d commit=%d applied=%d",
+                node.getState(), node.getTerm(), node.getLeaderId(), node.getCommitIndex(), node.getLastApplied())));
+        return result.get(1, TimeUnit.SECONDS);
+    }
+
+    private String load(int count, int valueSize) throws InterruptedException {
+        String value = "x".repeat(valueSize);
+        AtomicLong committed = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long start = System.nanoTime();
+        // In windows, so a leader change stops the load after one window instead of stranding all of it
+        for (int first = 0; first < count && failed.get() == 0; first += LOAD_WINDOW) {
+            int size = Math.min(LOAD_WINDOW, count - first);
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[size];
+            for (int i = 0; i < size; i++) {
+                futures[i] = batcher.submit(KeyValueStore.encodePut("key" + ((first + i) % 1000), value))
+                        .whenComplete((index, error) -> (error == null ? committed : failed).incrementAndGet());
+            }
+            try {
+                CompletableFuture.allOf(futures).get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                // Counted per proposal
+            } catch (TimeoutException e) {
+                break; // This host lost leadership and its proposals wait for a leader that may never commit them
+            }
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        return "committed=" + committed.get() + " failed=" + failed.get() + " millis=" + millis;
+    }
+
+    private String metrics() {
+        RaftMetrics raft = host.getMetrics();
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcMillis += Math.max(0, collector.getCollectionTime());
+        }
+        long cpuNanos = ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+        return "elections=" + raft.getElectionsStarted()
+                + " leaders=" + raft.getLeadersElected()
+                + " syncs=" + raft.getHardStateSyncs()
+                + " sent=" + transport.getSentMessages()
+                + " sentBytes=" + transport.getSentBytes()
+                + " sentRawBytes=" + transport.getSentRawBytes()
+                + " received=" + transport.getReceivedMessages()
+                + " receivedBytes=" + transport.getReceivedBytes()
+                + " dropped=" + transport.getDroppedMessages()
+                + " gcCount=" + gcCount
+                + " gcMillis=" + gcMillis
+                + " cpuMillis=" + cpuNanos / 1_000_000
+                + " heapBytes=" + ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
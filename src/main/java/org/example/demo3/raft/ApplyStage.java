@@ -0,0 +1,186 @@
+package org.example.demo3.raft;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Applies the committed entries of all groups of a host on a thread of its own, so a slow state machine
+ * does not hold up heartbeats, acks and elections on the event loop. The event loop hands over the
+ * newly committed entries of a group as one batch; the stage applies everything queued in one go and
+ * then reports the applied index of each group back to the event loop, where lastApplied, waiting reads
+ * and proposals advance. Snapshots are taken and restored on the stage in order with the entries, and
+ * reads of the state machine run there too, so a state machine is only ever called by the stage's thread.
+ * If the state machine throws, the stage fails the queued reads, hands the error to the event loop,
+ * which fails the waiting reads and proposals and stops the host, and dies with the error.
+ */
+public class ApplyStage implements Runnable {
+    private final RaftHost host;
+    private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+
+    // Highest index applied per group since the last report (stage thread only)
+    private final Map<RaftNode, Long> applied = new HashMap<>();
+    private int batchEntries = 0;
+
+    // Statistics, written by the stage thread only
+    private volatile long appliedEntries = 0;
+    private volatile long batches = 0;
+    private volatile int maxBatchEntries = 0;
+
+    private volatile boolean stopFlag = false;
+    private Thread thread;
+
+    ApplyStage(RaftHost host) {
+        this.host = host;
+    }
+
+    void start() {
+        thread = new Thread(this, "raft-apply-" + host.getId());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        stopFlag = true;
+        queue.offer(() -> { }); // Wakes the stage
+    }
+
+    /**
+     * Queues committed entries of a group in index order. Only commands reach the state machine.
+     */
+    void apply(RaftNode node, StateMachine stateMachine, List<LogEntry> entries) {
+        queue.add(() -> {
+            List<LogEntry> commands = new ArrayList<>(entries.size());
+            for (LogEntry entry : entries) {
+                if (entry.getType().equals("Command")) {
+                    commands.add(entry);
+                }
+            }
+            if (!commands.isEmpty()) {
+                stateMachine.applyBatch(commands);
+            }
+            applied.put(node, entries.get(entries.size() - 1).getIndex());
+            batchEntries += entries.size();
+        });
+    }
+
+    /**
+     * Takes a snapshot once the entries up to the given index, and none after it, are applied.
+     */
+    void snapshot(RaftNode node, StateMachine stateMachine, long index, Membership membership) {
+        queue.add(() -> {
+            byte[] data = stateMachine.takeSnapshot();
+            report(); // The log is compacted only after the applied index passed the snapshot
+            host.execute(() -> node.snapshotTaken(index, membership, data));
+        });
+    }
+
+    void restore(StateMachine stateMachine, byte[] snapshot) {
+        queue.add(() -> stateMachine.restoreSnapshot(snapshot));
+    }
+
+    /**
+     * Runs a read of the state machine on the stage after everything queued so far.
+     */
+    <T> void query(Supplier<T> query, CompletableFuture<T> result) {
+        queue.add(new Query<>(query, result));
+    }
+
+    private static class Query<T> implements Runnable {
+        final Supplier<T> query;
+        final CompletableFuture<T> result;
+
+        Query(Supplier<T> query, CompletableFuture<T> result) {
+            this.query = query;
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result.complete(query.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e); // Only the read failed, the state is intact
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Runnable> tasks = new ArrayList<>();
+        while (!stopFlag) {
+            try {
+                tasks.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(tasks);
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    tasks.get(i).run();
+                } catch (RuntimeException | Error e) {
+                    failed(tasks.subList(i + 1, tasks.size()), e);
+                    throw e;
+                }
+            }
+            tasks.clear();
+            if (batchEntries > 0) {
+                appliedEntries += batchEntries;
+                batches++;
+                maxBatchEntries = Math.max(maxBatchEntries, batchEntries);
+                batchEntries = 0;
+            }
+            report();
+        }
+    }
+
+    // The state machine may be half way through a batch; nothing queued runs anymore
+    private void failed(List<Runnable> skipped, Throwable error) {
+        stopFlag = true;
+        List<Runnable> remaining = new ArrayList<>(skipped);
+        queue.drainTo(remaining);
+        for (Runnable task : remaining) {
+            if (task instanceof Query<?> query) {
+                query.result.completeExceptionally(new IllegalStateException("Apply stage failed", error));
+            }
+        }
+        host.execute(() -> host.applyFailed(error));
+    }
+
+    // One event loop task for all groups that applied entries since the last report
+    private void report() {
+        if (applied.isEmpty()) {
+            return;
+        }
+        Map<RaftNode, Long> reported = new HashMap<>(applied);
+        applied.clear();
+        host.execute(() -> reported.forEach(RaftNode::onApplied));
+    }
+
+    /**
+     * Tasks waiting for the stage, each usually a batch of entries.
+     */
+    public int getQueueLength() {
+        return queue.size();
+    }
+
+    public long getAppliedEntries() {
+        return appliedEntries;
+    }
+
+    /**
+     * Times the stage applied everything that was queued and reported it.
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    public int getMaxBatchEntries() {
+        return maxBatchEntries;
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.demo3.raft;
+
+/**
+ * Stands in until a state machine is set. It has no state, so its snapshot is empty.
+ */
+class EmptyStateMachine implements StateMachine {
+    @Override
+    public void apply(LogEntry entry) {
+    }
+
+    @Override
+    public byte[] takeSnapshot() {
+        return new byte[0];
+    }
+
+    @Override
+    public void restoreSnapshot(byte[] snapshot) {
+    }
+}
@@ -0,0 +1,112 @@
+package org.example.demo3.raft;
+
+/**
+ * Replication state the leader keeps for one follower.
+ * In probe mode at most one AppendEntries is outstanding until the follower confirms where its
+ * log matches. In replicate mode the leader sends optimistically, advancing nextIndex on send,
+ * until the window of in-flight messages is full.
+ */
+class FollowerProgress {
+    final int peerId;
+    long nextIndex;
+    long matchIndex = 0;
+    boolean probing = true;
+
+    // Last log index carried by each in-flight AppendEntries, oldest first (ring buffer)
+    private final long[] inflight;
+    private int inflightStart = 0;
+    private int inflightCount = 0;
+
+    // Latest heartbeat round the follower acknowledged and when, to confirm leadership for reads
+    long readId = 0;
+    long lastAckTime = 0;
+
+    // Set when an acknowledgement arrives, cleared by every heartbeat round
+    boolean ackedSinceLastRound = false;
+
+    FollowerProgress(int peerId, long nextIndex, int window) {
+        this.peerId = peerId;
+        this.nextIndex = nextIndex;
+        this.inflight = new long[Math.max(1, window)];
+    }
+
+    boolean canSend() {
+        return probing ? inflightCount == 0 : inflightCount < inflight.length;
+    }
+
+    boolean isWindowFull() {
+        return inflightCount >= inflight.length;
+    }
+
+    int getInflightCount() {
+        return inflightCount;
+    }
+
+    void onSent(long lastIndex) {
+        inflight[(inflightStart + inflightCount) % inflight.length] = lastIndex;
+        inflightCount++;
+        if (!probing) {
+            nextIndex = lastIndex + 1;
+        }
+    }
+
+    void onAck(long match) {
+        matchIndex = Math.max(matchIndex, match);
+        if (probing) {
+            if (match >= nextIndex - 1) {
+                // The probe confirmed where the logs match, continue at full speed
+                probing = false;
+                nextIndex = match + 1;
+            }
+        } else {
+            nextIndex = Math.max(nextIndex, match + 1);
+        }
+        // Free all in-flight messages covered by this acknowledgement
+        while (inflightCount > 0 && inflight[inflightStart] <= match) {
+            inflightStart = (inflightStart + 1) % inflight.length;
+            inflightCount--;
+            ackedSinceLastRound = true; // Heartbeat acks alone do not prove in-flight messages arrived
+        }
+    }
+
+    /**
+     * @param rejectedIndex prevLogIndex of the rejected AppendEntries.
+     * @param matchHint     Highest index at which the logs may match, from the follower's last index
+     *                      or the conflicting term it reported.
+     * @return false if the rejection was stale and ignored.
+     */
+    boolean onReject(long rejectedIndex, long matchHint) {
+        ackedSinceLastRound = true;
+        if (probing ? rejectedIndex != nextIndex - 1 : rejectedIndex <= matchIndex) {
+            return false; // Answer to an older message
+        }
+        startProbe();
+        nextIndex = Math.max(matchIndex + 1, Math.min(rejectedIndex, matchHint + 1));
+        return true;
+    }
+
+    /**
+     * Forgets all in-flight messages and continues with one message at a time.
+     */
+    void startProbe() {
+        probing = true;
+        inflightStart = 0;
+        inflightCount = 0;
+    }
+
+    /**
+     * Called once per heartbeat round. If messages are outstanding but nothing came back
+     * since the last round, they are assumed lost and replication restarts in probe mode.
+     * A lost probe is sent again at the same index; going back to matchIndex would resend the
+     * whole log to a follower that has not answered yet, and rejections find the match point faster.
+     */
+    void onHeartbeatRound() {
+        if (inflightCount > 0 && !ackedSinceLastRound) {
+            if (!probing) {
+                nextIndex = matchIndex + 1; // Everything not acknowledged
+            }
+            startProbe();
+        }
+        ackedSinceLastRound = false;
+    }
+}
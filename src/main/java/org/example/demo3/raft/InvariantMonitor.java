@@ -0,0 +1,139 @@
+package org.example.demo3.raft;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks Raft safety properties online while a cluster runs, shared by all hosts of a cluster:
+ * election safety (at most one leader per group and term) and log matching of the applied logs
+ * (every replica applies the same entry at the same index). Applied entries are compared in a
+ * window of recent indexes per group, so a replica that is further behind than the window is
+ * not checked until it catches up; leaders likewise in a window of recent terms per group.
+ * Memory stays constant however long the run is.
+ */
+public class InvariantMonitor {
+    private static final int MAX_MESSAGES = 100;
+    private static final int TERM_WINDOW = 1024; // Recent terms per group whose leaders are compared
+
+    private final int windowSize;
+
+    private final Map<Integer, Terms> leaders = new ConcurrentHashMap<>();
+    private final Map<Integer, Window> windows = new ConcurrentHashMap<>();
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder violations = new LongAdder();
+    private final List<String> messages = new ArrayList<>(); // First violations, guarded by itself
+
+    // Term and data hash of the entry first applied at each recent index of one group
+    private static class Window {
+        final long[] indexes;
+        final int[] terms;
+        final int[] hashes;
+
+        Window(int size) {
+            indexes = new long[size];
+            terms = new int[size];
+            hashes = new int[size];
+        }
+    }
+
+    // Leader of each recent term of one group
+    private static class Terms {
+        final int[] terms = new int[TERM_WINDOW];
+        final int[] leaders = new int[TERM_WINDOW];
+    }
+
+    public InvariantMonitor() {
+        this(4096);
+    }
+
+    /**
+     * @param windowSize Number of recent indexes per group whose applied entries are compared.
+     */
+    public InvariantMonitor(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return False if another replica already became leader of the group in this term.
+     */
+    public boolean leaderElected(int groupId, int term, int leaderId) {
+        checks.increment();
+        Terms terms = leaders.computeIfAbsent(groupId, id -> new Terms());
+        int slot = Math.floorMod(term, TERM_WINDOW);
+        synchronized (terms) {
+            if (terms.terms[slot] < term) {
+                terms.terms[slot] = term; // First leader of this term, replaces one of an older term
+                terms.leaders[slot] = leaderId;
+                return true;
+            }
+            if (terms.terms[slot] > term || terms.leaders[slot] == leaderId) {
+                return true; // Too old to compare, or the same leader
+            }
+            violation("Election safety: group " + groupId + " has leaders " + terms.leaders[slot] + " and " + leaderId
+                    + " in term " + term);
+            return false;
+        }
+    }
+
+    /**
+     * @return False if another replica applied a different entry at the same index.
+     */
+    public boolean entryApplied(int groupId, int replicaId, LogEntry entry) {
+        checks.increment();
+        Window window = windows.computeIfAbsent(groupId, id -> new Window(windowSize));
+        int slot = (int) (entry.getIndex() % windowSize);
+        int hash = Arrays.hashCode(entry.getData()) * 31 + entry.getType().hashCode();
+        synchronized (window) {
+            if (window.indexes[slot] < entry.getIndex()) {
+                window.indexes[slot] = entry.getIndex(); // First replica to apply this index
+                window.terms[slot] = entry.getTerm();
+                window.hashes[slot] = hash;
+                return true;
+            }
+            if (window.indexes[slot] > entry.getIndex()
+                    || (window.terms[slot] == entry.getTerm() && window.hashes[slot] == hash)) {
+                return true; // Too far behind to compare, or the same entry
+            }
+            violation("Log matching: replica " + replicaId + " of group " + groupId + " applied term "
+                    + entry.getTerm() + " at index " + entry.getIndex() + ", another replica term " + window.terms[slot]
+                    + (window.terms[slot] == entry.getTerm() ? " with different data" : ""));
+            return false;
+        }
+    }
+
+    private void violation(String message) {
+        violations.increment();
+        synchronized (messages) {
+            if (messages.size() < MAX_MESSAGES) {
+                messages.add(message);
+            }
+        }
+    }
+
+    public long getChecks() {
+        return checks.sum();
+    }
+
+    public long getViolations() {
+        return violations.sum();
+    }
+
+    /**
+     * The first violations found, at most 100.
+     */
+    public List<String> getViolationMessages() {
+        synchronized (messages) {
+            return new ArrayList<>(messages);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("invariant checks=%d, violations=%d", getChecks(), getViolations());
+    }
+}
@@ -0,0 +1,294 @@
+package org.example.demo3.raft;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replicated key-value map. Commands are encoded puts, deletes and multi-key puts; reads run on the
+ * thread that applies the entries, through {@link RaftHost#read} or {@link RaftHost#staleRead}.
+ *
+ * With more than one partition, the keys are spread over the partitions by hash and each batch from
+ * {@link #applyBatch} is applied by one thread per partition: the calling thread and a worker for each
+ * other partition. All commands on a key are in the same partition in index order, so their order is
+ * kept. A multi-key put is a barrier: the commands before it are applied in all partitions, then it
+ * is applied alone. A batch is complete when applyBatch returns, so snapshots and reads between
+ * batches see one consistent state.
+ */
+public class KeyValueStore implements StateMachine, AutoCloseable {
+    private static final byte PUT = 'P';
+    private static final byte DELETE = 'D';
+    private static final byte PUT_ALL = 'M';
+    private static final int MIN_PARALLEL_COMMANDS = 64; // Fewer are applied on the calling thread
+
+    private final Map<String, String>[] partitions;
+    private final ExecutorService workers; // Null with a single partition
+
+    // Positions of the commands of the current batch per partition (calling thread, read by the workers)
+    private final int[][] routed;
+    private final int[] routedCount;
+
+    public KeyValueStore() {
+        this(1);
+    }
+
+    /**
+     * @param partitionCount Partitions applied in parallel; 1 applies every command on the calling thread.
+     */
+    @SuppressWarnings("unchecked")
+    public KeyValueStore(int partitionCount) {
+        partitions = (Map<String, String>[]) new Map<?, ?>[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new HashMap<>();
+        }
+        routed = new int[partitionCount][64];
+        routedCount = new int[partitionCount];
+        workers = partitionCount > 1 ? Executors.newFixedThreadPool(partitionCount - 1, runnable -> {
+            Thread thread = new Thread(runnable, "kv-apply");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    public static byte[] encodePut(String key, String value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(5 + keyBytes.length + valueBytes.length)
+                .put(PUT).putInt(keyBytes.length).put(keyBytes).put(valueBytes).array();
+    }
+
+    public static byte[] encodeDelete(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(5 + keyBytes.length).put(DELETE).putInt(keyBytes.length).put(keyBytes).array();
+    }
+
+    /**
+     * Puts all given values in one command, so no read sees only some of them.
+     */
+    public static byte[] encodePutAll(Map<String, String> values) {
+        List<byte[]> parts = new ArrayList<>();
+        int size = 5;
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            byte[] keyBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] valueBytes = entry.getValue().getBytes(StandardCharsets.UTF_8);
+            parts.add(keyBytes);
+            parts.add(valueBytes);
+            size += 8 + keyBytes.length + valueBytes.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).put(PUT_ALL).putInt(values.size());
+        for (byte[] part : parts) {
+            buffer.putInt(part.length).put(part);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Key a single-key command refers to.
+     */
+    public static String keyOf(byte[] command) {
+        ByteBuffer buffer = ByteBuffer.wrap(command);
+        buffer.get();
+        int keyLength = buffer.getInt();
+        return new String(command, 5, keyLength, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void apply(LogEntry entry) {
+        byte[] command = entry.getData();
+        if (command[0] != PUT_ALL) {
+            applyTo(partitions[partitionOf(command, 5, ByteBuffer.wrap(command, 1, 4).getInt())], command);
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(command, 1, command.length - 1);
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            int keyLength = buffer.getInt();
+            int keyStart = buffer.position();
+            String key = new String(command, keyStart, keyLength, StandardCharsets.UTF_8);
+            buffer.position(keyStart + keyLength);
+            int valueLength = buffer.getInt();
+            partitions[partitionOf(command, keyStart, keyLength)].put(key,
+                    new String(command, buffer.position(), valueLength, StandardCharsets.UTF_8));
+            buffer.position(buffer.position() + valueLength);
+        }
+    }
+
+    @Override
+    public void applyBatch(List<LogEntry> commands) {
+        if (workers == null) {
+            StateMachine.super.applyBatch(commands);
+            return;
+        }
+        int from = 0;
+        for (int i = 0; i < commands.size(); i++) {
+            if (commands.get(i).getData()[0] == PUT_ALL) {
+                applyParallel(commands, from, i);
+                apply(commands.get(i)); // Touches several partitions, nothing runs beside it
+                from = i + 1;
+            }
+        }
+        applyParallel(commands, from, commands.size());
+    }
+
+    // Applies the single-key commands in [from, to) partition by partition and waits for all partitions
+    private void applyParallel(List<LogEntry> commands, int from, int to) {
+        if (to - from < MIN_PARALLEL_COMMANDS) {
+            for (int i = from; i < to; i++) {
+                apply(commands.get(i));
+            }
+            return;
+        }
+        Arrays.fill(routedCount, 0);
+        for (int i = from; i < to; i++) {
+            byte[] command = commands.get(i).getData();
+            int partition = partitionOf(command, 5, ByteBuffer.wrap(command, 1, 4).getInt());
+            if (routedCount[partition] == routed[partition].length) {
+                routed[partition] = Arrays.copyOf(routed[partition], routedCount[partition] * 2);
+            }
+            routed[partition][routedCount[partition]++] = i;
+        }
+
+        List<Future<?>> running = new ArrayList<>();
+        for (int partition = 1; partition < partitions.length; partition++) {
+            if (routedCount[partition] > 0) {
+                int worker = partition;
+                running.add(workers.submit(() -> applyRouted(commands, worker)));
+            }
+        }
+        applyRouted(commands, 0);
+        try {
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Apply interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Apply failed", e.getCause());
+        }
+    }
+
+    private void applyRouted(List<LogEntry> commands, int partition) {
+        Map<String, String> values = partitions[partition];
+        int[] positions = routed[partition];
+        for (int i = 0; i < routedCount[partition]; i++) {
+            applyTo(values, commands.get(positions[i]).getData());
+        }
+    }
+
+    private static void applyTo(Map<String, String> values, byte[] command) {
+        String key = keyOf(command);
+        int valueStart = 5 + ByteBuffer.wrap(command, 1, 4).getInt();
+        if (command[0] == PUT) {
+            values.put(key, new String(command, valueStart, command.length - valueStart, StandardCharsets.UTF_8));
+        } else if (command[0] == DELETE) {
+            values.remove(key);
+        }
+    }
+
+    // Hash of the key's bytes, so commands are routed without decoding the key
+    private int partitionOf(byte[] bytes, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return Math.floorMod(hash, partitions.length);
+    }
+
+    private Map<String, String> partitionOf(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        return partitions[partitionOf(keyBytes, 0, keyBytes.length)];
+    }
+
+    public String get(String key) {
+        return partitionOf(key).get(key);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Map<String, String> values : partitions) {
+            size += values.size();
+        }
+        return size;
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    @Override
+    public byte[] takeSnapshot() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(size());
+            for (Map<String, String> values : partitions) {
+                for (Map.Entry<String, String> entry : values.entrySet()) {
+                    writeString(out, entry.getKey());
+                    writeString(out, entry.getValue());
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void restoreSnapshot(byte[] snapshot) {
+        for (Map<String, String> values : partitions) {
+            values.clear();
+        }
+        if (snapshot.length == 0) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString(in);
+                partitionOf(key).put(key, readString(in));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Length-prefixed UTF-8; writeUTF is limited to 64 KB per string
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Stops the partition workers.
+     */
+    @Override
+    public void close() {
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.demo3.raft;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process transport that hands messages directly to the inbox of the target host.
+ */
+public class LocalTransport implements Transport {
+    private final Map<Integer, RaftHost> hosts = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+    private volatile double lossRate = 0.0;
+    private volatile long latency = 0;
+    private final Set<Integer> isolated = ConcurrentHashMap.newKeySet(); // Hosts cut off from all others
+
+    // Delivers delayed messages; a single thread keeps them in send order at constant latency
+    private ScheduledExecutorService delayer;
+
+    // Statistics: physical messages on the wire and the group messages they carry
+    private final LongAdder sentMessages = new LongAdder();
+    private final LongAdder sentGroupMessages = new LongAdder();
+
+    public void register(RaftHost host) {
+        hosts.put(host.getId(), host);
+    }
+
+    public void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    /**
+     * Partitions the host from all others: messages from and to it are dropped until {@link #heal()}.
+     */
+    public void isolate(int hostId) {
+        isolated.add(hostId);
+    }
+
+    public void heal() {
+        isolated.clear();
+    }
+
+    /**
+     * Sets a one-way delivery delay in milliseconds for all messages sent from now on.
+     */
+    public synchronized void setLatency(long latency) {
+        if (latency > 0 && delayer == null) {
+            delayer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "transport-delay");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.latency = latency;
+    }
+
+    @Override
+    public void send(RaftMessage message) {
+        sentMessages.increment();
+        sentGroupMessages.add(message.getBatch() != null ? message.getBatch().size() : 1);
+
+        if (lossRate > 0 && random.nextDouble() < lossRate) {
+            return; // Simulated message loss
+        }
+        if (!isolated.isEmpty() && (isolated.contains(message.getFromId()) || isolated.contains(message.getToId()))) {
+            return;
+        }
+        RaftHost target = hosts.get(message.getToId());
+        if (target == null) {
+            return;
+        }
+        long delay = latency;
+        if (delay > 0) {
+            delayer.schedule(() -> target.receive(message), delay, TimeUnit.MILLISECONDS);
+        } else {
+            target.receive(message);
+        }
+    }
+
+    public long getSentMessages() {
+        return sentMessages.sum();
+    }
+
+    public long getSentGroupMessages() {
+        return sentGroupMessages.sum();
+    }
+}
@@ -0,0 +1,227 @@
+package org.example.demo3.raft;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Off-heap cache of the most recent log entries, serialized into one direct buffer used as a ring.
+ * It holds a contiguous range of indexes: appends go to the end, and the oldest entries are evicted
+ * when space runs out or once they are below the watermark that no follower and no apply needs any
+ * more. Only the offsets and lengths of the cached entries live on the heap, in primitive arrays, so
+ * a long log tail does not become millions of long-lived objects the garbage collector has to trace.
+ * An entry is deserialized on every read; the copy is short-lived.
+ *
+ * Each cached entry is the term, the length of the type, the type and the data.
+ */
+public class LogCache {
+    private final ByteBuffer buffer;
+
+    // Cached range and where each entry is in the buffer, ring buffers starting at slot start
+    private long firstIndex = 1;
+    private int count = 0;
+    private int[] offsets = new int[1024];
+    private int[] lengths = new int[1024];
+    private int start = 0;
+    private int head = 0; // Where the next entry is written
+    private long usedBytes = 0;
+
+    // Statistics
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param capacity Size of the direct buffer in bytes.
+     */
+    public LogCache(int capacity) {
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Caches an entry. An entry that does not follow the cached range starts a new range.
+     */
+    public void put(long index, int term, String type, byte[] data) {
+        byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+        int length = 4 + 1 + typeBytes.length + data.length;
+        if (count > 0 && index != firstIndex + count) {
+            clear();
+        }
+        if (length > buffer.capacity()) {
+            clear(); // Can never be cached; the range continues after it
+            firstIndex = index + 1;
+            return;
+        }
+        if (count == 0) {
+            firstIndex = index;
+        }
+        int offset = reserve(length);
+        buffer.putInt(offset, term);
+        buffer.put(offset + 4, (byte) typeBytes.length);
+        buffer.put(offset + 5, typeBytes);
+        buffer.put(offset + 5 + typeBytes.length, data);
+
+        if (count == offsets.length) {
+            grow();
+        }
+        int slot = (start + count) % offsets.length;
+        offsets[slot] = offset;
+        lengths[slot] = length;
+        count++;
+        head = offset + length;
+        usedBytes += length;
+    }
+
+    // Offset at which the given number of bytes fits, evicting the oldest entries until they do
+    private int reserve(int length) {
+        while (true) {
+            if (count == 0) {
+                head = 0;
+                return 0;
+            }
+            int tail = offsets[start];
+            if (head > tail) {
+                // Entries are in [tail, head): space after head, or from the start of the buffer up to tail
+                if (buffer.capacity() - head >= length) {
+                    return head;
+                }
+                if (tail >= length) {
+                    return 0;
+                }
+            } else if (tail - head >= length) {
+                return head; // Wrapped: entries are in [tail, capacity) and [0, head)
+            }
+            evictOldest();
+        }
+    }
+
+    /**
+     * @return The entry, or null if it is not cached.
+     */
+    public LogEntry get(long index) {
+        if (index < firstIndex || index >= firstIndex + count) {
+            misses++;
+            return null;
+        }
+        hits++;
+        int slot = slot(index);
+        int offset = offsets[slot];
+        int typeLength = buffer.get(offset + 4);
+        byte[] type = new byte[typeLength];
+        buffer.get(offset + 5, type);
+        byte[] data = new byte[lengths[slot] - 5 - typeLength];
+        buffer.get(offset + 5 + typeLength, data);
+        return new LogEntry(index, buffer.getInt(offset), new String(type, StandardCharsets.UTF_8), data);
+    }
+
+    /**
+     * @return The term of the entry, or -1 if it is not cached.
+     */
+    public int termAt(long index) {
+        if (index < firstIndex || index >= firstIndex + count) {
+            return -1;
+        }
+        return buffer.getInt(offsets[slot(index)]);
+    }
+
+    /**
+     * Removes the entry at the given index and all entries after it.
+     */
+    public void truncateFrom(long index) {
+        if (index <= firstIndex) {
+            clear();
+            firstIndex = index;
+            return;
+        }
+        while (firstIndex + count > index) {
+            int slot = slot(firstIndex + count - 1);
+            usedBytes -= lengths[slot];
+            count--;
+        }
+        if (count > 0) {
+            int last = slot(firstIndex + count - 1);
+            head = offsets[last] + lengths[last];
+        }
+    }
+
+    /**
+     * Evicts the entries below the watermark, which nobody reads any more.
+     */
+    public void evictBelow(long watermark) {
+        while (count > 0 && firstIndex < watermark) {
+            evictOldest();
+        }
+    }
+
+    public void clear() {
+        firstIndex += count;
+        count = 0;
+        start = 0;
+        head = 0;
+        usedBytes = 0;
+    }
+
+    private void evictOldest() {
+        usedBytes -= lengths[start];
+        start = (start + 1) % offsets.length;
+        firstIndex++;
+        count--;
+        evictions++;
+    }
+
+    private int slot(long index) {
+        return (int) ((start + (index - firstIndex)) % offsets.length);
+    }
+
+    private void grow() {
+        int[] newOffsets = new int[offsets.length * 2];
+        int[] newLengths = new int[lengths.length * 2];
+        for (int i = 0; i < count; i++) {
+            newOffsets[i] = offsets[(start + i) % offsets.length];
+            newLengths[i] = lengths[(start + i) % lengths.length];
+        }
+        offsets = newOffsets;
+        lengths = newLengths;
+        start = 0;
+    }
+
+    public long getFirstIndex() {
+        return firstIndex;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Bytes of the cached entries, at most the capacity.
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public int getCapacity() {
+        return buffer.capacity();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("entries=%d, bytes=%d/%d, hit rate=%.3f, evictions=%d",
+                count, usedBytes, buffer.capacity(), getHitRate(), evictions);
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.demo3.raft;
+
+/**
+ * Entry of the replicated log.
+ */
+public class LogEntry {
+    private final long index;
+    private final int term;
+    private final String type; // "Command", "NoOp" (appended by a new leader) or "Config" (encoded Membership)
+    private final byte[] data;
+
+    public LogEntry(long index, int term, byte[] data) {
+        this(index, term, "Command", data);
+    }
+
+    public LogEntry(long index, int term, String type, byte[] data) {
+        this.index = index;
+        this.term = term;
+        this.type = type;
+        this.data = data;
+    }
+
+    public long getIndex() {
+        return index;
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,106 @@
+package org.example.demo3.raft;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Members of a Raft group: voters elect the leader and count toward commit, learners only
+ * receive the log. Changes are replicated as "Config" log entries and take effect as soon as
+ * a replica appends them.
+ */
+public class Membership {
+    private final int[] voters;
+    private final int[] learners;
+
+    public Membership(int[] voters, int[] learners) {
+        this.voters = voters.clone();
+        this.learners = learners.clone();
+    }
+
+    public int[] getVoters() {
+        return voters.clone();
+    }
+
+    public int[] getLearners() {
+        return learners.clone();
+    }
+
+    public boolean isVoter(int hostId) {
+        return indexOf(voters, hostId) >= 0;
+    }
+
+    public boolean isLearner(int hostId) {
+        return indexOf(learners, hostId) >= 0;
+    }
+
+    public boolean contains(int hostId) {
+        return isVoter(hostId) || isLearner(hostId);
+    }
+
+    public int quorum() {
+        return voters.length / 2 + 1;
+    }
+
+    public Membership withLearner(int hostId) {
+        if (contains(hostId)) {
+            return this;
+        }
+        int[] newLearners = Arrays.copyOf(learners, learners.length + 1);
+        newLearners[learners.length] = hostId;
+        return new Membership(voters, newLearners);
+    }
+
+    /**
+     * Turns the learner into a voter. Only one voter is added per change, so the old and the new
+     * majority always overlap.
+     */
+    public Membership withPromoted(int hostId) {
+        if (!isLearner(hostId)) {
+            return this;
+        }
+        int[] newVoters = Arrays.copyOf(voters, voters.length + 1);
+        newVoters[voters.length] = hostId;
+        int[] newLearners = Arrays.stream(learners).filter(learner -> learner != hostId).toArray();
+        return new Membership(newVoters, newLearners);
+    }
+
+    public byte[] encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 4 * (voters.length + learners.length));
+        buffer.putInt(voters.length);
+        for (int voter : voters) {
+            buffer.putInt(voter);
+        }
+        buffer.putInt(learners.length);
+        for (int learner : learners) {
+            buffer.putInt(learner);
+        }
+        return buffer.array();
+    }
+
+    public static Membership decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int[] voters = new int[buffer.getInt()];
+        for (int i = 0; i < voters.length; i++) {
+            voters[i] = buffer.getInt();
+        }
+        int[] learners = new int[buffer.getInt()];
+        for (int i = 0; i < learners.length; i++) {
+            learners[i] = buffer.getInt();
+        }
+        return new Membership(voters, learners);
+    }
+
+    private static int indexOf(int[] ids, int hostId) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == hostId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "voters=" + Arrays.toString(voters) + ", learners=" + Arrays.toString(learners);
+    }
+}
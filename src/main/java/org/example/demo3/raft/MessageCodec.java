@@ -0,0 +1,110 @@
+package org.example.demo3.raft;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary wire format of {@link RaftMessage} for transports between processes. Every field is written,
+ * so all message types share one layout; a batch contains its group messages recursively.
+ */
+public class MessageCodec {
+    private MessageCodec() {
+    }
+
+    public static void write(RaftMessage message, DataOutputStream out) throws IOException {
+        out.writeUTF(message.getType());
+        out.writeInt(message.getGroupId());
+        out.writeInt(message.getFromId());
+        out.writeInt(message.getToId());
+        out.writeInt(message.getTerm());
+        out.writeLong(message.getLastLogIndex());
+        out.writeInt(message.getLastLogTerm());
+        out.writeLong(message.getPrevLogIndex());
+        out.writeInt(message.getPrevLogTerm());
+        out.writeLong(message.getLeaderCommit());
+        out.writeBoolean(message.isSuccess());
+        out.writeLong(message.getMatchIndex());
+        out.writeInt(message.getConflictTerm());
+        out.writeLong(message.getConflictIndex());
+        out.writeLong(message.getReadId());
+        out.writeLong(message.getReadIndex());
+
+        List<LogEntry> entries = message.getEntries();
+        out.writeInt(entries.size());
+        for (LogEntry entry : entries) {
+            out.writeLong(entry.getIndex());
+            out.writeInt(entry.getTerm());
+            out.writeUTF(entry.getType());
+            writeBytes(entry.getData(), out);
+        }
+        writeBytes(message.getSnapshot(), out);
+        writeBytes(message.getMembership() == null ? null : message.getMembership().encode(), out);
+
+        List<RaftMessage> batch = message.getBatch();
+        out.writeInt(batch == null ? -1 : batch.size());
+        if (batch != null) {
+            for (RaftMessage groupMessage : batch) {
+                write(groupMessage, out);
+            }
+        }
+    }
+
+    public static RaftMessage read(DataInputStream in) throws IOException {
+        RaftMessage message = new RaftMessage(in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        message.setLastLogIndex(in.readLong());
+        message.setLastLogTerm(in.readInt());
+        message.setPrevLogIndex(in.readLong());
+        message.setPrevLogTerm(in.readInt());
+        message.setLeaderCommit(in.readLong());
+        message.setSuccess(in.readBoolean());
+        message.setMatchIndex(in.readLong());
+        message.setConflictTerm(in.readInt());
+        message.setConflictIndex(in.readLong());
+        message.setReadId(in.readLong());
+        message.setReadIndex(in.readLong());
+
+        int entryCount = in.readInt();
+        if (entryCount > 0) {
+            List<LogEntry> entries = new ArrayList<>(entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                entries.add(new LogEntry(in.readLong(), in.readInt(), in.readUTF(), readBytes(in)));
+            }
+            message.setEntries(entries);
+        }
+        message.setSnapshot(readBytes(in));
+        byte[] membership = readBytes(in);
+        if (membership != null) {
+            message.setMembership(Membership.decode(membership));
+        }
+
+        int batchSize = in.readInt();
+        if (batchSize < 0) {
+            return message;
+        }
+        List<RaftMessage> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(read(in));
+        }
+        return RaftMessage.batch(message.getFromId(), message.getToId(), batch);
+    }
+
+    private static void writeBytes(byte[] bytes, DataOutputStream out) throws IOException {
+        out.writeInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
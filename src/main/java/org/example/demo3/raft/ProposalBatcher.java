@@ -0,0 +1,227 @@
+package org.example.demo3.raft;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.example.demo3.timer.Timeout;
+
+/**
+ * Client entry point for proposals to one Raft group on one host.
+ * Any number of threads submit into a pre-allocated ring; submitters claim a slot with a single
+ * atomic increment and never take a lock. The host's event loop is the only consumer: it drains
+ * everything published so far into the log in one go, so all proposals of one loop iteration are
+ * replicated in the same AppendEntries messages. The future of a proposal completes with its log
+ * index once the entry is applied, on the event loop thread, also when an {@link ApplyStage} applies it.
+ *
+ * The batcher wraps the group's state machine to learn about applied entries; set the state
+ * machine through the batcher, not on the node. Create it before the host is started.
+ */
+public class ProposalBatcher implements StateMachine {
+    private final RaftHost host;
+    private final RaftNode node;
+    private StateMachine stateMachine = new EmptyStateMachine();
+
+    // The ring: slot contents plus the sequence published in each slot (-1 while empty)
+    private final int capacity;
+    private final int mask;
+    private final byte[][] data;
+    private final CompletableFuture<Long>[] futures;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong(); // Next sequence a submitter claims
+    private volatile long consumed = 0; // Next sequence the event loop takes
+
+    // Set while a drain task is queued on the event loop, so submitters queue at most one
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Runnable drainTask = this::drain;
+    private final Timeout retryTimer; // Drains again while the leader applies backpressure
+
+    // Proposals appended to the log and waiting to be applied, in index order (event loop only)
+    private long[] pendingIndexes = new long[1024];
+    private int[] pendingTerms = new int[1024];
+    private CompletableFuture<?>[] pendingFutures = new CompletableFuture<?>[1024];
+    private int pendingStart = 0;
+    private int pendingCount = 0;
+
+    @SuppressWarnings("unchecked")
+    public ProposalBatcher(RaftHost host, RaftNode node, int capacity) {
+        this.host = host;
+        this.node = node;
+
+        // Round up to a power of two so the slot can be computed with a mask
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        data = new byte[size][];
+        futures = (CompletableFuture<Long>[]) new CompletableFuture<?>[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+
+        retryTimer = host.timer().newTimeout(this::drain);
+        node.setStateMachine(this);
+        node.setBatcher(this);
+    }
+
+    public void setStateMachine(StateMachine stateMachine) {
+        this.stateMachine = stateMachine;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Submits a proposal from any thread. Waits while the ring is full.
+     *
+     * @return Completes with the log index of the entry once it is applied, or exceptionally
+     *         if this host is not the leader, loses leadership before the entry is applied or the
+     *         entry was replaced by another leader.
+     */
+    public CompletableFuture<Long> submit(byte[] proposal) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        long sequence = claimed.getAndIncrement();
+
+        // Backpressure: wait until the event loop freed the slot one lap ago
+        int spins = 0;
+        while (sequence - consumed >= capacity) {
+            if (++spins < 100) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(10_000);
+            }
+        }
+
+        int slot = (int) (sequence & mask);
+        data[slot] = proposal;
+        futures[slot] = future;
+        published.set(slot, sequence); // Publish
+
+        if (drainScheduled.compareAndSet(false, true)) {
+            host.execute(drainTask);
+        }
+        return future;
+    }
+
+    /**
+     * Moves all published proposals into the log. Runs on the event loop thread.
+     */
+    private void drain() {
+        drainScheduled.set(false); // Proposals published from now on schedule another drain
+        long sequence = consumed;
+        while (true) {
+            int slot = (int) (sequence & mask);
+            if (published.get(slot) != sequence) {
+                break; // Not published yet
+            }
+            if (!node.canPropose()) {
+                if (node.isLeader()) {
+                    // Too many uncommitted entries or a leadership transfer, try again shortly
+                    retryTimer.reschedule(1);
+                    break;
+                }
+                futures[slot].completeExceptionally(new IllegalStateException(
+                        "Host " + host.getId() + " is not the leader of group " + node.getGroupId()
+                                + ", leader is " + node.getLeaderId()));
+            } else {
+                long index = node.propose(data[slot]);
+                if (index <= node.getLastApplied()) {
+                    futures[slot].complete(index); // Single replica group, applied within propose
+                } else {
+                    addPending(index, node.getTerm(), futures[slot]);
+                }
+            }
+            data[slot] = null;
+            futures[slot] = null;
+            sequence++;
+            consumed = sequence; // Frees the slot for submitters
+        }
+    }
+
+    private void addPending(long index, int term, CompletableFuture<?> future) {
+        if (pendingCount == pendingIndexes.length) {
+            growPending();
+        }
+        int position = (pendingStart + pendingCount) & (pendingIndexes.length - 1);
+        pendingIndexes[position] = index;
+        pendingTerms[position] = term;
+        pendingFutures[position] = future;
+        pendingCount++;
+    }
+
+    private void growPending() {
+        int size = pendingIndexes.length;
+        long[] newIndexes = new long[size * 2];
+        int[] newTerms = new int[size * 2];
+        CompletableFuture<?>[] newFutures = new CompletableFuture<?>[size * 2];
+        for (int i = 0; i < pendingCount; i++) {
+            int position = (pendingStart + i) & (size - 1);
+            newIndexes[i] = pendingIndexes[position];
+            newTerms[i] = pendingTerms[position];
+            newFutures[i] = pendingFutures[position];
+        }
+        pendingIndexes = newIndexes;
+        pendingTerms = newTerms;
+        pendingFutures = newFutures;
+        pendingStart = 0;
+    }
+
+    @Override
+    public void apply(LogEntry entry) {
+        stateMachine.apply(entry);
+    }
+
+    @Override
+    public void applyBatch(List<LogEntry> commands) {
+        stateMachine.applyBatch(commands);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void applied(long index) {
+        stateMachine.applied(index);
+
+        // The log still holds the applied entries; the snapshot covering them is taken after this call
+        while (pendingCount > 0 && pendingIndexes[pendingStart] <= index) {
+            CompletableFuture<Long> future = (CompletableFuture<Long>) pendingFutures[pendingStart];
+            long pendingIndex = pendingIndexes[pendingStart];
+            if (node.getLog().termAt(pendingIndex) == pendingTerms[pendingStart]) {
+                future.complete(pendingIndex);
+            } else {
+                // Another leader overwrote the entry, or a snapshot skipped it
+                future.completeExceptionally(new IllegalStateException(
+                        "Proposal at index " + pendingIndex + " was not committed by this leader"));
+            }
+            pendingFutures[pendingStart] = null;
+            pendingStart = (pendingStart + 1) & (pendingIndexes.length - 1);
+            pendingCount--;
+        }
+    }
+
+    /**
+     * Fails the proposals appended to the log and not applied yet. Runs on the event loop thread.
+     */
+    void failPending(String reason) {
+        while (pendingCount > 0) {
+            pendingFutures[pendingStart].completeExceptionally(new IllegalStateException(
+                    reason + ", proposal at index " + pendingIndexes[pendingStart] + " may or may not be applied"));
+            pendingFutures[pendingStart] = null;
+            pendingStart = (pendingStart + 1) & (pendingIndexes.length - 1);
+            pendingCount--;
+        }
+    }
+
+    @Override
+    public byte[] takeSnapshot() {
+        return stateMachine.takeSnapshot();
+    }
+
+    @Override
+    public void restoreSnapshot(byte[] snapshot) {
+        stateMachine.restoreSnapshot(snapshot);
+    }
+}
@@ -0,0 +1,156 @@
+package org.example.demo3.raft;
+
+/**
+ * Timing parameters of the headless Raft implementation.
+ * Defaults match the interactive simulation (5-6.5 s election timeout, 3 s heartbeat).
+ */
+public class RaftConfig {
+    private long electionTimeoutMin = 5000;
+    private long electionTimeoutMax = 6500;
+    private long heartbeatInterval = 3000;
+    private long tickInterval = 10; // Granularity of the host event loop and its timing wheel
+
+    // Replication
+    private int maxEntriesPerMessage = 64;
+    private int maxInflightMessages = 8; // Pipelining window per follower, 1 = stop-and-wait
+    private int maxUncommittedEntries = 4096; // Proposals are rejected beyond this
+    private boolean conflictHints = true; // Back off nextIndex by whole terms after a rejection, not by one entry
+
+    // Log compaction and membership
+    private int snapshotThreshold = 10000; // Applied entries kept in the log before a snapshot replaces them
+    private int learnerPromotionLag = 64; // A learner becomes a voter once it is at most this many entries behind
+
+    // State machine
+    private boolean asyncApply = false; // Apply committed entries on a thread of their own, not on the event loop
+    private int maxApplyLag = 16384; // Proposals are rejected while the state machine trails the log by this many entries
+
+    // Persistence
+    private long logSegmentSize = 16 * 1024 * 1024; // Bytes per log segment file
+    private boolean logCompression = false; // Deflate the entries of each sync into one record
+    private int logCacheBytes = 0; // Off-heap cache of recent entries instead of keeping all on the heap, 0 = off
+
+    public long getElectionTimeoutMin() {
+        return electionTimeoutMin;
+    }
+
+    public void setElectionTimeoutMin(long electionTimeoutMin) {
+        this.electionTimeoutMin = electionTimeoutMin;
+    }
+
+    public long getElectionTimeoutMax() {
+        return electionTimeoutMax;
+    }
+
+    public void setElectionTimeoutMax(long electionTimeoutMax) {
+        this.electionTimeoutMax = electionTimeoutMax;
+    }
+
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public long getTickInterval() {
+        return tickInterval;
+    }
+
+    public void setTickInterval(long tickInterval) {
+        this.tickInterval = tickInterval;
+    }
+
+    public int getMaxEntriesPerMessage() {
+        return maxEntriesPerMessage;
+    }
+
+    public void setMaxEntriesPerMessage(int maxEntriesPerMessage) {
+        this.maxEntriesPerMessage = maxEntriesPerMessage;
+    }
+
+    public int getMaxInflightMessages() {
+        return maxInflightMessages;
+    }
+
+    public void setMaxInflightMessages(int maxInflightMessages) {
+        this.maxInflightMessages = maxInflightMessages;
+    }
+
+    public int getMaxUncommittedEntries() {
+        return maxUncommittedEntries;
+    }
+
+    public void setMaxUncommittedEntries(int maxUncommittedEntries) {
+        this.maxUncommittedEntries = maxUncommittedEntries;
+    }
+
+    public boolean isConflictHints() {
+        return conflictHints;
+    }
+
+    public void setConflictHints(boolean conflictHints) {
+        this.conflictHints = conflictHints;
+    }
+
+    public int getSnapshotThreshold() {
+        return snapshotThreshold;
+    }
+
+    public void setSnapshotThreshold(int snapshotThreshold) {
+        this.snapshotThreshold = snapshotThreshold;
+    }
+
+    public int getLearnerPromotionLag() {
+        return learnerPromotionLag;
+    }
+
+    public void setLearnerPromotionLag(int learnerPromotionLag) {
+        this.learnerPromotionLag = learnerPromotionLag;
+    }
+
+    public boolean isAsyncApply() {
+        return asyncApply;
+    }
+
+    public void setAsyncApply(boolean asyncApply) {
+        this.asyncApply = asyncApply;
+    }
+
+    public int getMaxApplyLag() {
+        return maxApplyLag;
+    }
+
+    public void setMaxApplyLag(int maxApplyLag) {
+        this.maxApplyLag = maxApplyLag;
+    }
+
+    public long getLogSegmentSize() {
+        return logSegmentSize;
+    }
+
+    public void setLogSegmentSize(long logSegmentSize) {
+        this.logSegmentSize = logSegmentSize;
+    }
+
+    public boolean isLogCompression() {
+        return logCompression;
+    }
+
+    public void setLogCompression(boolean logCompression) {
+        this.logCompression = logCompression;
+    }
+
+    public int getLogCacheBytes() {
+        return logCacheBytes;
+    }
+
+    /**
+     * Only used by replicas with a data directory, which can read evicted entries back from their log files.
+     * Should hold at least {@link #getMaxUncommittedEntries()} entries, or the leader reads entries it has
+     * just proposed back from disk to replicate them.
+     */
+    public void setLogCacheBytes(int logCacheBytes) {
+        this.logCacheBytes = logCacheBytes;
+    }
+}
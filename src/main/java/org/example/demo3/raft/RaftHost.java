@@ -0,0 +1,422 @@
+package org.example.demo3.raft;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.example.demo3.storage.HardStateStore;
+import org.example.demo3.storage.SegmentedLog;
+import org.example.demo3.storage.SnapshotFile;
+import org.example.demo3.timer.HashedTimingWheel;
+import org.example.demo3.timer.Timeout;
+
+/**
+ * A physical node hosting replicas of many Raft groups.
+ * All groups share one event loop thread, one clock and one transport. Messages produced while
+ * handling one loop iteration are collected per destination host and leave as a single batch,
+ * and leaders send their heartbeats in one round for all groups, so a host sends at most one
+ * heartbeat message per follower host and round no matter how many groups it leads.
+ */
+public class RaftHost implements Runnable {
+    private final int id;
+    private final Transport transport;
+    private final RaftConfig config;
+    private final LongSupplier clock;
+    private final Random random;
+
+    // Groups are only touched by the event loop thread once the host is started
+    private final Map<Integer, RaftNode> groups = new HashMap<>();
+
+    // Message queue for incoming messages and tasks to run on the event loop
+    private final BlockingQueue<Object> inbox = new LinkedBlockingQueue<>();
+
+    // Leaders with new entries, replicated once at the end of the loop iteration
+    private final List<RaftNode> pendingReplication = new ArrayList<>();
+
+    // Groups whose term or vote changed; written to disk before the outbox is flushed
+    private final List<RaftNode> pendingSync = new ArrayList<>();
+
+    // Hard state files of the groups, in memory only if null
+    private Path dataDirectory;
+
+    // Outgoing messages of the current loop iteration, per destination host
+    private final Map<Integer, List<RaftMessage>> outbox = new HashMap<>();
+
+    // All election timers of the hosted groups and the shared heartbeat round
+    private final HashedTimingWheel timer;
+    private final Timeout heartbeatTimer;
+
+    private long now;
+
+    private RaftMetrics metrics = new RaftMetrics();
+    private InvariantMonitor monitor; // Null if safety is not checked
+    private ApplyStage applyStage; // Null to apply committed entries on the event loop thread
+
+    private volatile boolean stopFlag = false;
+    private Thread thread;
+
+    public RaftHost(int id, Transport transport, RaftConfig config) {
+        this(id, transport, config, System::currentTimeMillis, new Random());
+    }
+
+    public RaftHost(int id, Transport transport, RaftConfig config, LongSupplier clock, Random random) {
+        this.id = id;
+        this.transport = transport;
+        this.config = config;
+        this.clock = clock;
+        this.random = random;
+        this.now = clock.getAsLong();
+        this.timer = new HashedTimingWheel(config.getTickInterval(), now);
+        this.heartbeatTimer = timer.schedule(this::heartbeatRound, config.getHeartbeatInterval());
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public RaftConfig getConfig() {
+        return config;
+    }
+
+    public RaftMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Replaces the metrics of this host, e.g. with one instance shared by all hosts of a cluster.
+     * Must be called before the host is started.
+     */
+    public void setMetrics(RaftMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The stage applying committed entries of all groups, or null if they are applied on the
+     *         event loop. Exists once the host is started with {@link RaftConfig#isAsyncApply()}.
+     */
+    public ApplyStage getApplyStage() {
+        return applyStage;
+    }
+
+    public InvariantMonitor getMonitor() {
+        return monitor;
+    }
+
+    /**
+     * Checks the safety of all groups on this host with the given monitor, usually one instance shared
+     * by all hosts of a cluster. Must be called before the host is started.
+     */
+    public void setMonitor(InvariantMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Persists term, vote, commit index, log and snapshot of every group added from now on in this directory.
+     * A crashed host is restarted by stopping it, waiting for its thread and adding the same groups
+     * to a new host with the same id and directory, which recovers them from disk.
+     */
+    public void setDataDirectory(Path dataDirectory) {
+        this.dataDirectory = dataDirectory;
+    }
+
+    /**
+     * Adds a replica of the given group. Must be called before the host is started.
+     *
+     * @param groupId Id of the Raft group.
+     * @param members Host ids of all voting replicas of the group. If this host is not among them,
+     *                the replica joins as a learner once the leader adds it with {@link #addLearner}.
+     */
+    public RaftNode addGroup(int groupId, int[] members) {
+        RaftNode node = new RaftNode(groupId, id, members, this, config);
+        if (dataDirectory != null) {
+            try {
+                node.recover(new HardStateStore(dataDirectory.resolve("group-" + groupId + ".state")),
+                        new SnapshotFile(dataDirectory.resolve("group-" + groupId + ".snapshot")),
+                        new SegmentedLog(dataDirectory.resolve("group-" + groupId + ".log"), config.getLogSegmentSize(),
+                                config.isLogCompression()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        groups.put(groupId, node);
+        return node;
+    }
+
+    public RaftNode getGroup(int groupId) {
+        return groups.get(groupId);
+    }
+
+    public Collection<RaftNode> getGroups() {
+        return groups.values();
+    }
+
+    RaftMetrics metrics() {
+        return metrics;
+    }
+
+    InvariantMonitor monitor() {
+        return monitor;
+    }
+
+    long now() {
+        return now;
+    }
+
+    Random random() {
+        return random;
+    }
+
+    HashedTimingWheel timer() {
+        return timer;
+    }
+
+    /**
+     * Called by the transport from any thread.
+     */
+    public void receive(RaftMessage message) {
+        inbox.offer(message);
+    }
+
+    /**
+     * Runs the task on the event loop thread, e.g. to propose entries. Can be called from any thread.
+     */
+    public void execute(Runnable task) {
+        inbox.offer(task);
+    }
+
+    /**
+     * Fails what waits for the state machines and stops the event loop with the error of the apply stage,
+     * like an error on the event loop itself does. Runs on the event loop thread.
+     */
+    void applyFailed(Throwable error) {
+        String reason = "State machine failed on host " + id + ": " + error;
+        for (RaftNode node : groups.values()) {
+            node.applyFailed(reason);
+        }
+        throw new IllegalStateException("Apply stage of host " + id + " failed", error);
+    }
+
+    /**
+     * Hands leadership of the group to the given host if this host is its leader. Can be called from any thread.
+     */
+    public void transferLeadership(int groupId, int targetId) {
+        execute(() -> {
+            RaftNode node = groups.get(groupId);
+            if (node != null) {
+                node.transferLeadership(targetId);
+            }
+        });
+    }
+
+    /**
+     * Adds the given host as a learner of the group if this host is its leader. Can be called from any thread.
+     */
+    public void addLearner(int groupId, int hostId) {
+        execute(() -> {
+            RaftNode node = groups.get(groupId);
+            if (node != null) {
+                node.addLearner(hostId);
+            }
+        });
+    }
+
+    /**
+     * Linearizable read from the local replica of the group, which may be a follower.
+     * The query runs once the replica has applied the leader's read index, on the event loop thread
+     * or, if there is one, on the apply stage.
+     * Can be called from any thread.
+     */
+    public <T> CompletableFuture<T> read(int groupId, Supplier<T> query) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        execute(() -> {
+            RaftNode node = groups.get(groupId);
+            if (node == null) {
+                result.completeExceptionally(new IllegalArgumentException("Unknown group " + groupId));
+                return;
+            }
+            node.readIndex().whenComplete((index, error) -> {
+                if (error == null) {
+                    node.query(query, result);
+                } else {
+                    result.completeExceptionally(error);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Read from the local replica of the group without contacting the leader, if its state is at
+     * most maxStaleness milliseconds old; fails otherwise. Runs the query like {@link #read}.
+     * Can be called from any thread.
+     */
+    public <T> CompletableFuture<T> staleRead(int groupId, long maxStaleness, Supplier<T> query) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        execute(() -> {
+            RaftNode node = groups.get(groupId);
+            if (node == null) {
+                result.completeExceptionally(new IllegalArgumentException("Unknown group " + groupId));
+            } else if (!node.isReadableWithin(maxStaleness)) {
+                result.completeExceptionally(new IllegalStateException(
+                        "Replica of group " + groupId + " on host " + id + " is more than " + maxStaleness + " ms stale"));
+            } else {
+                node.query(query, result);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Queues a message of one of the hosted groups; it is sent at the end of the loop iteration.
+     */
+    void send(RaftMessage message) {
+        outbox.computeIfAbsent(message.getToId(), k -> new ArrayList<>()).add(message);
+    }
+
+    void replicateLater(RaftNode node) {
+        pendingReplication.add(node);
+    }
+
+    void syncLater(RaftNode node) {
+        pendingSync.add(node);
+    }
+
+    public void start() {
+        if (config.isAsyncApply()) {
+            applyStage = new ApplyStage(this);
+            applyStage.start();
+        }
+        // Recovered groups rebuild their state machines before the first message is handled
+        for (RaftNode node : groups.values()) {
+            node.restoreStateMachine();
+        }
+        thread = new Thread(this, "raft-host-" + id);
+        thread.setDaemon(true); // Allow JVM to exit if main thread terminates
+        thread.start();
+    }
+
+    public void stop() {
+        // Group state belongs to the event loop, so the loop itself records the groups it leaves leaderless
+        inbox.offer((Runnable) () -> {
+            // Without a transfer the groups led by this host are leaderless until their next election
+            for (RaftNode node : groups.values()) {
+                if (node.isLeader()) {
+                    metrics.leaderLost(node.getGroupId(), now);
+                }
+            }
+            stopFlag = true;
+        });
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!stopFlag) {
+                try {
+                    Object first = inbox.poll(config.getTickInterval(), TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        dispatch(first);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                runOnce(clock.getAsLong());
+            }
+        } finally {
+            if (applyStage != null) {
+                applyStage.stop();
+            }
+            for (RaftNode node : groups.values()) {
+                node.closeStorage();
+            }
+        }
+    }
+
+    /**
+     * Runs one iteration of the event loop: handles all queued messages, fires due timers
+     * of the timing wheel and sends the resulting messages. Can be driven directly with a simulated clock.
+     */
+    public void runOnce(long time) {
+        now = time;
+
+        // Only what is queued now, so a task that queues itself again cannot starve the timers
+        for (int pending = inbox.size(); pending > 0; pending--) {
+            dispatch(inbox.poll());
+        }
+
+        timer.advance(now);
+
+        // Entries proposed during this iteration leave together
+        for (int i = 0; i < pendingReplication.size(); i++) {
+            pendingReplication.get(i).replicate();
+        }
+        pendingReplication.clear();
+
+        // Votes and terms must be durable before any message that depends on them leaves
+        for (int i = 0; i < pendingSync.size(); i++) {
+            pendingSync.get(i).syncStorage();
+        }
+        pendingSync.clear();
+
+        flushOutbox();
+    }
+
+    private void heartbeatRound() {
+        for (RaftNode node : groups.values()) {
+            node.sendHeartbeats();
+            node.syncStorage(); // Commit index changes are only written once per round
+        }
+        heartbeatTimer.reschedule(config.getHeartbeatInterval());
+    }
+
+    private void dispatch(Object item) {
+        if (item instanceof Runnable task) {
+            task.run();
+            return;
+        }
+        RaftMessage message = (RaftMessage) item;
+        if (message.getBatch() != null) {
+            for (RaftMessage groupMessage : message.getBatch()) {
+                dispatch(groupMessage);
+            }
+            return;
+        }
+        RaftNode node = groups.get(message.getGroupId());
+        if (node != null) {
+            node.handleMessage(message);
+        }
+    }
+
+    private void flushOutbox() {
+        for (Map.Entry<Integer, List<RaftMessage>> entry : outbox.entrySet()) {
+            List<RaftMessage> messages = entry.getValue();
+            if (messages.isEmpty()) {
+                continue;
+            }
+            if (messages.size() == 1) {
+                transport.send(messages.get(0));
+                messages.clear();
+            } else {
+                // The batch keeps the list, a new one is created for the next iteration
+                transport.send(RaftMessage.batch(id, entry.getKey(), messages));
+                entry.setValue(new ArrayList<>());
+            }
+        }
+    }
+}
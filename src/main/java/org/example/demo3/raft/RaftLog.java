@@ -0,0 +1,318 @@
+package org.example.demo3.raft;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.example.demo3.storage.SegmentedLog;
+
+/**
+ * Replicated log, kept in memory and optionally mirrored to a {@link SegmentedLog} on disk.
+ * Indexes start at 1; index 0 with term 0 is the empty log.
+ * Entries up to the snapshot index have been compacted into a snapshot and are no longer available.
+ *
+ * With a {@link LogCache}, a persistent log keeps no entries on the heap: recent entries are read from
+ * the off-heap cache, older ones from the segment files, and terms from the store's term table.
+ */
+public class RaftLog {
+    private final List<LogEntry> entries = new ArrayList<>(); // Empty while the log has a cache
+
+    // Last entry covered by the snapshot, entries holds everything after it
+    private long snapshotIndex = 0;
+    private int snapshotTerm = 0;
+
+    // Copy of the entries on disk, null to keep the log in memory only
+    private SegmentedLog store;
+
+    // Recent entries off the heap, null to keep all entries in the list
+    private LogCache cache;
+    private long lastIndex = 0; // Only maintained with a cache
+    private ByteBuffer readBuffer; // Records read from the store on a cache miss
+
+    /**
+     * Mirrors every following change to the given store, which must already hold the current entries.
+     */
+    void setStore(SegmentedLog store) {
+        this.store = store;
+    }
+
+    /**
+     * Moves the entries from the heap to the store and the given cache, which keeps the most recent
+     * of them, and serves all reads from there from now on. Requires a store.
+     */
+    void setCache(LogCache cache) {
+        this.cache = cache;
+        lastIndex = snapshotIndex + entries.size();
+        for (LogEntry entry : entries) {
+            cache.put(entry.getIndex(), entry.getTerm(), entry.getType(), entry.getData());
+        }
+        entries.clear();
+        readBuffer = ByteBuffer.allocate(64 * 1024);
+    }
+
+    /**
+     * @return The off-heap cache, or null if the entries are kept on the heap.
+     */
+    public LogCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Lets the cache drop entries below the given index, which neither replication nor apply reads any more.
+     */
+    void releaseBelow(long index) {
+        if (cache != null) {
+            cache.evictBelow(index);
+        }
+    }
+
+    boolean isPersistent() {
+        return store != null;
+    }
+
+    /**
+     * Forces appended entries to disk.
+     */
+    void sync() throws IOException {
+        if (store != null) {
+            store.sync();
+        }
+    }
+
+    void close() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    public long lastIndex() {
+        return cache != null ? lastIndex : snapshotIndex + entries.size();
+    }
+
+    public int lastTerm() {
+        return termAt(lastIndex());
+    }
+
+    public long getSnapshotIndex() {
+        return snapshotIndex;
+    }
+
+    public int getSnapshotTerm() {
+        return snapshotTerm;
+    }
+
+    /**
+     * Term of the entry at the given index, 0 for index 0, -1 if the log has no such entry
+     * or it was compacted.
+     */
+    public int termAt(long index) {
+        if (index == 0) {
+            return 0;
+        }
+        if (index == snapshotIndex) {
+            return snapshotTerm;
+        }
+        if (index < snapshotIndex || index > lastIndex()) {
+            return -1;
+        }
+        if (cache != null) {
+            int term = cache.termAt(index);
+            return term >= 0 ? term : store.termAt(index);
+        }
+        return entries.get((int) (index - snapshotIndex - 1)).getTerm();
+    }
+
+    /**
+     * First index of the term the entry at the given index belongs to, or the first index after the
+     * snapshot if the term starts before it. Terms never decrease along the log, so this is a binary search.
+     */
+    public long firstIndexOfTerm(long index) {
+        int term = termAt(index);
+        long low = snapshotIndex + 1;
+        long high = index;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (termAt(middle) < term) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Last index up to the given one whose entry has the given term, 0 if there is none.
+     * The snapshot's last entry counts if no later one has the term.
+     */
+    public long lastIndexOfTerm(int term, long upTo) {
+        long low = snapshotIndex;
+        long high = Math.min(upTo, lastIndex());
+        if (high < low || termAt(low) > term) {
+            return 0;
+        }
+        // The last index whose term is at most the given one
+        while (low < high) {
+            long middle = (low + high + 1) >>> 1;
+            if (termAt(middle) <= term) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return termAt(low) == term ? low : 0;
+    }
+
+    public LogEntry get(long index) {
+        if (cache != null) {
+            LogEntry entry = cache.get(index);
+            return entry != null ? entry : readStored(index, 1).get(0);
+        }
+        return entries.get((int) (index - snapshotIndex - 1));
+    }
+
+    // Entries from the index on that are no longer cached, read in one go from the segment files
+    private List<LogEntry> readStored(long index, int maxCount) {
+        List<LogEntry> stored = new ArrayList<>();
+        try {
+            readBuffer.clear();
+            int maxBytes = maxCount == 1 ? 0 : readBuffer.capacity(); // Only the first record for a single entry
+            int read = store.read(index, maxBytes, readBuffer);
+            if (read < 0) {
+                readBuffer = ByteBuffer.allocate(-read); // The entry is larger than the buffer
+                read = store.read(index, maxBytes, readBuffer);
+            }
+            if (read == 0) {
+                throw new IllegalStateException("Entry " + index + " is neither cached nor stored");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        readBuffer.flip();
+        while (stored.size() < maxCount && SegmentedLog.readEntry(readBuffer,
+                (entryIndex, term, type, data) -> stored.add(new LogEntry(entryIndex, term, type, data)))) {
+            // Until maxCount or the end of what was read
+        }
+        return stored;
+    }
+
+    public LogEntry append(int term, byte[] data) {
+        return append(term, "Command", data);
+    }
+
+    public LogEntry append(int term, String type, byte[] data) {
+        LogEntry entry = new LogEntry(lastIndex() + 1, term, type, data);
+        if (cache != null) {
+            cache.put(entry.getIndex(), term, type, data);
+            lastIndex++;
+        } else {
+            entries.add(entry);
+        }
+        if (store != null) {
+            try {
+                store.append(entry.getIndex(), term, type, data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Removes the entry at the given index and all entries after it.
+     */
+    public void truncateFrom(long index) {
+        while (lastIndex() >= index && !entries.isEmpty()) {
+            entries.remove(entries.size() - 1);
+        }
+        if (cache != null) {
+            cache.truncateFrom(index);
+            lastIndex = Math.min(lastIndex, Math.max(index - 1, snapshotIndex));
+        }
+        if (store != null) {
+            try {
+                store.truncateFrom(Math.max(index, snapshotIndex + 1));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns up to maxCount entries starting at the given index.
+     */
+    public List<LogEntry> entriesFrom(long index, int maxCount) {
+        if (cache != null) {
+            List<LogEntry> result = new ArrayList<>();
+            long end = Math.min(lastIndex, index + (long) maxCount - 1);
+            for (long next = index; next <= end && next > snapshotIndex; next++) {
+                LogEntry entry = cache.get(next);
+                if (entry == null) {
+                    List<LogEntry> stored = readStored(next, (int) (end - next + 1));
+                    result.addAll(stored);
+                    next += stored.size() - 1;
+                } else {
+                    result.add(entry);
+                }
+            }
+            return result;
+        }
+        int from = (int) (index - snapshotIndex - 1);
+        int to = (int) Math.min(entries.size(), from + (long) maxCount);
+        if (from < 0 || from >= to) {
+            return List.of();
+        }
+        return new ArrayList<>(entries.subList(from, to));
+    }
+
+    /**
+     * Discards all entries up to and including the given index, which a snapshot now covers.
+     */
+    public void compact(long index) {
+        if (index <= snapshotIndex || index > lastIndex()) {
+            return;
+        }
+        int term = termAt(index);
+        if (cache != null) {
+            cache.evictBelow(index + 1);
+        } else {
+            entries.subList(0, (int) (index - snapshotIndex)).clear();
+        }
+        snapshotIndex = index;
+        snapshotTerm = term;
+        if (store != null) {
+            try {
+                store.compact(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Replaces the log with an installed snapshot. Entries after the snapshot are kept if the log
+     * contains the snapshot's last entry, otherwise the whole log is discarded.
+     */
+    public void installSnapshot(long index, int term) {
+        if (termAt(index) == term && index >= snapshotIndex) {
+            compact(index);
+            return;
+        }
+        entries.clear();
+        snapshotIndex = index;
+        snapshotTerm = term;
+        if (cache != null) {
+            cache.clear();
+            lastIndex = index;
+        }
+        if (store != null) {
+            try {
+                store.truncateFrom(0); // Nothing of the old log is kept
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.example.demo3.raft;
+
+import java.util.List;
+
+/**
+ * Message exchanged between Raft replicas of one group, or a batch of such messages
+ * exchanged between two hosts.
+ * Node ids are host ids: every host runs at most one replica of a group.
+ */
+public class RaftMessage {
+    private String type; // "RequestVote", "Vote", "AppendEntries", "InstallSnapshot", "Ack", "TimeoutNow",
+                         // "ReadIndex", "ReadIndexResponse" or "Batch"
+    private int groupId;
+    private int fromId;
+    private int toId;
+    private int term;
+
+    // RequestVote: how up to date the candidate's log is
+    private long lastLogIndex;
+    private int lastLogTerm;
+
+    // AppendEntries; the Ack echoes prevLogIndex so the leader can match it to the request
+    private long prevLogIndex;
+    private int prevLogTerm;
+    private List<LogEntry> entries = List.of();
+    private long leaderCommit;
+
+    // InstallSnapshot: prevLogIndex and prevLogTerm are the last entry covered by the snapshot
+    private byte[] snapshot;
+    private Membership membership;
+
+    // Ack: on success the last index known to match, otherwise the follower's last index
+    private boolean success;
+    private long matchIndex;
+
+    // Rejecting Ack: the follower's term at prevLogIndex and the first index it has of that term,
+    // so the leader can skip the whole term; 0 if the follower's log ends before prevLogIndex
+    private int conflictTerm;
+    private long conflictIndex;
+
+    // Linearizable reads: the leader's heartbeat round echoed in the Ack, or the follower's request id
+    // in ReadIndex and ReadIndexResponse; the response carries the read index and success
+    private long readId;
+    private long readIndex;
+
+    // Batch: messages for several groups sent between the same two hosts
+    private List<RaftMessage> batch;
+
+    public RaftMessage(String type, int groupId, int fromId, int toId, int term) {
+        this.type = type;
+        this.groupId = groupId;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.term = term;
+    }
+
+    public static RaftMessage batch(int fromId, int toId, List<RaftMessage> messages) {
+        RaftMessage message = new RaftMessage("Batch", -1, fromId, toId, 0);
+        message.batch = messages;
+        return message;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public int getFromId() {
+        return fromId;
+    }
+
+    public int getToId() {
+        return toId;
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public long getLastLogIndex() {
+        return lastLogIndex;
+    }
+
+    public void setLastLogIndex(long lastLogIndex) {
+        this.lastLogIndex = lastLogIndex;
+    }
+
+    public int getLastLogTerm() {
+        return lastLogTerm;
+    }
+
+    public void setLastLogTerm(int lastLogTerm) {
+        this.lastLogTerm = lastLogTerm;
+    }
+
+    public long getPrevLogIndex() {
+        return prevLogIndex;
+    }
+
+    public void setPrevLogIndex(long prevLogIndex) {
+        this.prevLogIndex = prevLogIndex;
+    }
+
+    public int getPrevLogTerm() {
+        return prevLogTerm;
+    }
+
+    public void setPrevLogTerm(int prevLogTerm) {
+        this.prevLogTerm = prevLogTerm;
+    }
+
+    public List<LogEntry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<LogEntry> entries) {
+        this.entries = entries;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public long getMatchIndex() {
+        return matchIndex;
+    }
+
+    public void setMatchIndex(long matchIndex) {
+        this.matchIndex = matchIndex;
+    }
+
+    public int getConflictTerm() {
+        return conflictTerm;
+    }
+
+    public void setConflictTerm(int conflictTerm) {
+        this.conflictTerm = conflictTerm;
+    }
+
+    public long getConflictIndex() {
+        return conflictIndex;
+    }
+
+    public void setConflictIndex(long conflictIndex) {
+        this.conflictIndex = conflictIndex;
+    }
+
+    public long getLeaderCommit() {
+        return leaderCommit;
+    }
+
+    public void setLeaderCommit(long leaderCommit) {
+        this.leaderCommit = leaderCommit;
+    }
+
+    public byte[] getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(byte[] snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public Membership getMembership() {
+        return membership;
+    }
+
+    public void setMembership(Membership membership) {
+        this.membership = membership;
+    }
+
+    public long getReadId() {
+        return readId;
+    }
+
+    public void setReadId(long readId) {
+        this.readId = readId;
+    }
+
+    public long getReadIndex() {
+        return readIndex;
+    }
+
+    public void setReadIndex(long readIndex) {
+        this.readIndex = readIndex;
+    }
+
+    public List<RaftMessage> getBatch() {
+        return batch;
+    }
+}
@@ -0,0 +1,143 @@
+package org.example.demo3.raft;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of elections and leadership transfers, and the leaderless gap of each change of leader.
+ * A gap starts when the leader of a group stops accepting proposals (transfer started, leader stepped
+ * down or its host stopped) and ends when the next leader of the group is elected. Hosts in the same
+ * process can share one instance, so the gap is measured across hosts.
+ */
+public class RaftMetrics {
+    private final LongAdder electionsStarted = new LongAdder();
+    private final LongAdder leadersElected = new LongAdder();
+    private final LongAdder transfersStarted = new LongAdder();
+    private final LongAdder transfersCompleted = new LongAdder();
+    private final LongAdder transfersAborted = new LongAdder();
+
+    // Start of the current leaderless gap per group
+    private final Map<Integer, Long> leaderlessSince = new ConcurrentHashMap<>();
+    private final LongAdder gapCount = new LongAdder();
+    private final LongAdder gapTotal = new LongAdder();
+    private final AtomicLong gapMax = new AtomicLong();
+    private volatile long lastGap = -1;
+
+    // Writes of a changed term or vote to disk, including the fsync
+    private final LongAdder hardStateSyncs = new LongAdder();
+    private final LongAdder hardStateSyncNanos = new LongAdder();
+    private final AtomicLong hardStateSyncMaxNanos = new AtomicLong();
+
+    void electionStarted() {
+        electionsStarted.increment();
+    }
+
+    void leaderLost(int groupId, long time) {
+        leaderlessSince.putIfAbsent(groupId, time); // Keep the earliest start if several replicas report it
+    }
+
+    void leaderElected(int groupId, long time) {
+        leadersElected.increment();
+        endGap(groupId, time);
+    }
+
+    private void endGap(int groupId, long time) {
+        Long since = leaderlessSince.remove(groupId);
+        if (since != null) {
+            long gap = Math.max(0, time - since);
+            gapCount.increment();
+            gapTotal.add(gap);
+            gapMax.accumulateAndGet(gap, Math::max);
+            lastGap = gap;
+        }
+    }
+
+    void transferStarted() {
+        transfersStarted.increment();
+    }
+
+    void transferCompleted() {
+        transfersCompleted.increment();
+    }
+
+    void transferAborted(int groupId, long time) {
+        transfersAborted.increment();
+        endGap(groupId, time); // The old leader accepts proposals again
+    }
+
+    void hardStateSynced(long nanos) {
+        hardStateSyncs.increment();
+        hardStateSyncNanos.add(nanos);
+        hardStateSyncMaxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getElectionsStarted() {
+        return electionsStarted.sum();
+    }
+
+    public long getLeadersElected() {
+        return leadersElected.sum();
+    }
+
+    public long getTransfersStarted() {
+        return transfersStarted.sum();
+    }
+
+    public long getTransfersCompleted() {
+        return transfersCompleted.sum();
+    }
+
+    public long getTransfersAborted() {
+        return transfersAborted.sum();
+    }
+
+    public long getGapCount() {
+        return gapCount.sum();
+    }
+
+    /**
+     * Average leaderless gap in milliseconds, 0 if no change of leader was measured.
+     */
+    public double getAverageGap() {
+        long count = gapCount.sum();
+        return count == 0 ? 0.0 : gapTotal.sum() / (double) count;
+    }
+
+    public long getMaxGap() {
+        return gapMax.get();
+    }
+
+    /**
+     * Leaderless gap of the most recent change of leader in milliseconds, -1 if none was measured.
+     */
+    public long getLastGap() {
+        return lastGap;
+    }
+
+    public long getHardStateSyncs() {
+        return hardStateSyncs.sum();
+    }
+
+    /**
+     * Average time of one hard state write including fsync in microseconds, 0 if none happened.
+     */
+    public double getAverageHardStateSync() {
+        long count = hardStateSyncs.sum();
+        return count == 0 ? 0.0 : hardStateSyncNanos.sum() / 1000.0 / count;
+    }
+
+    public double getMaxHardStateSync() {
+        return hardStateSyncMaxNanos.get() / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("elections=%d, leaders=%d, transfers=%d/%d (aborted %d), gap avg=%.1f ms, max=%d ms, "
+                        + "hard state syncs=%d (avg %.0f us, max %.0f us)",
+                getElectionsStarted(), getLeadersElected(), getTransfersCompleted(), getTransfersStarted(),
+                getTransfersAborted(), getAverageGap(), getMaxGap(),
+                getHardStateSyncs(), getAverageHardStateSync(), getMaxHardStateSync());
+    }
+}
@@ -0,0 +1,1144 @@
+package org.example.demo3.raft;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.example.demo3.storage.HardStateStore;
+import org.example.demo3.storage.SegmentedLog;
+import org.example.demo3.storage.SnapshotFile;
+import org.example.demo3.timer.Timeout;
+
+/**
+ * Replica of one Raft group, hosted by a {@link RaftHost}.
+ * A RaftNode has no thread of its own: the host delivers messages to it from its event loop
+ * and its election timer lives in the host's timing wheel, so a host can run many groups
+ * without one thread or polling loop per group.
+ */
+public class RaftNode {
+    private static final byte[] NO_OP = new byte[0];
+
+    private final int groupId;
+    private final int id; // Id of the hosting RaftHost
+    private final RaftHost host;
+    private final RaftConfig config;
+
+    private String state = "follower";
+    private int term = 0;
+    private Integer votedFor = null;
+    private int leaderId = -1;
+    private long lastLeaderContact = 0; // Last AppendEntries or InstallSnapshot from the leader
+
+    // Durable copies of term, vote and commit index, and of the latest snapshot; null to keep them in memory only
+    private HardStateStore hardState;
+    private SnapshotFile snapshotFile;
+    private boolean syncPending = false;
+
+    // Latest membership in the log and the index of its Config entry (0 = initial or from the snapshot)
+    private Membership membership;
+    private long membershipIndex = 0;
+
+    // Replicated log and its progress
+    private final RaftLog log = new RaftLog();
+    private long commitIndex = 0;
+    private long lastApplied = 0;
+    private StateMachine stateMachine = new EmptyStateMachine();
+    private Membership appliedMembership; // Membership as of applyQueued
+    private ProposalBatcher batcher; // Its proposals wait for the state machine too
+
+    // Applies the entries on another thread if set; lastApplied then trails applyQueued
+    private ApplyStage applyStage;
+    private long applyQueued = 0; // Last entry handed to the state machine or the apply stage
+    private boolean snapshotPending = false; // The apply stage takes a snapshot
+
+    // Latest snapshot, covering the log up to log.getSnapshotIndex()
+    private byte[] snapshot = new byte[0];
+    private Membership snapshotMembership;
+
+    // Leader only: replication state per follower and learner
+    private final List<FollowerProgress> progress = new ArrayList<>();
+
+    // Leader only: host id of the follower leadership is handed to, -1 if no transfer is running
+    private int transferTarget = -1;
+    private Timeout transferTimer; // Aborts a transfer that does not finish in time, created on first use
+
+    // Linearizable reads waiting for confirmation of their read index (in id order), and reads
+    // waiting for the state machine to apply it. Reads arriving in one loop iteration share one
+    // heartbeat round (leader) or ReadIndex request (follower).
+    private final ArrayDeque<ReadRequest> readRequests = new ArrayDeque<>();
+    private final ArrayDeque<ReadRequest> readsAwaitingApply = new ArrayDeque<>();
+    private long readIdSent = 0;
+    private boolean readPending = false;
+
+    // Set while the host has this node queued for replication at the end of the loop iteration
+    private boolean replicationPending = false;
+
+    // Re-armed on every heartbeat, cancelled while leader and while a learner
+    private final Timeout electionTimer;
+
+    // For tracking votes
+    private final Set<Integer> votesReceived = new HashSet<>();
+
+    /**
+     * @param voters Host ids of the voting replicas. If this host is not among them,
+     *               the replica is a learner until the leader promotes it.
+     */
+    public RaftNode(int groupId, int id, int[] voters, RaftHost host, RaftConfig config) {
+        this.groupId = groupId;
+        this.id = id;
+        this.host = host;
+        this.config = config;
+        this.membership = new Membership(voters, new int[0]);
+        this.appliedMembership = membership;
+        this.snapshotMembership = membership;
+        this.electionTimer = host.timer().newTimeout(this::startElection);
+        resetElectionTimeout();
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public boolean isLeader() {
+        return state.equals("leader");
+    }
+
+    public boolean isVoter() {
+        return membership.isVoter(id);
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public Integer getVotedFor() {
+        return votedFor;
+    }
+
+    public int getLeaderId() {
+        return leaderId;
+    }
+
+    public Membership getMembership() {
+        return membership;
+    }
+
+    public long getCommitIndex() {
+        return commitIndex;
+    }
+
+    public long getLastApplied() {
+        return lastApplied;
+    }
+
+    /**
+     * Committed entries the state machine has not applied yet; only above 0 with an {@link ApplyStage}.
+     */
+    public long getApplyLag() {
+        return commitIndex - lastApplied;
+    }
+
+    public RaftLog getLog() {
+        return log;
+    }
+
+    public int getTransferTarget() {
+        return transferTarget;
+    }
+
+    public void setStateMachine(StateMachine stateMachine) {
+        this.stateMachine = stateMachine;
+    }
+
+    void setBatcher(ProposalBatcher batcher) {
+        this.batcher = batcher;
+    }
+
+    /**
+     * Rebuilds the replica from its files and keeps them up to date from now on: term and vote,
+     * the snapshot, the log after it and the commit index as far as it was written. Called by the
+     * host before it starts; the state machine catches up in {@link #restoreStateMachine()}.
+     */
+    void recover(HardStateStore store, SnapshotFile snapshotStore, SegmentedLog logStore) throws IOException {
+        hardState = store;
+        snapshotFile = snapshotStore;
+        term = store.getTerm();
+        votedFor = store.getVotedFor();
+
+        if (snapshotStore.load()) {
+            log.installSnapshot(snapshotStore.getIndex(), snapshotStore.getTerm());
+            snapshot = snapshotStore.getData();
+            snapshotMembership = Membership.decode(snapshotStore.getMembership());
+            appliedMembership = snapshotMembership;
+            commitIndex = snapshotStore.getIndex();
+            lastApplied = snapshotStore.getIndex();
+            applyQueued = lastApplied;
+        }
+        // Segments can still hold entries the snapshot covers; whole segments of them are skipped
+        boolean[] disagrees = {false};
+        logStore.load(log.getSnapshotIndex(), (index, entryTerm, type, data) -> {
+            if (index == log.getSnapshotIndex() && index > 0 && entryTerm != log.getSnapshotTerm()) {
+                disagrees[0] = true;
+            } else if (index == log.lastIndex() + 1 && !disagrees[0]) {
+                log.append(entryTerm, type, data);
+            }
+        });
+        if (disagrees[0] || logStore.lastIndex() != log.lastIndex()) {
+            // A crash after a snapshot from the leader was saved left the old log behind, which ends
+            // before the snapshot or does not lead up to it; the snapshot replaces all of it
+            logStore.truncateFrom(0);
+        }
+        log.setStore(logStore);
+        if (config.getLogCacheBytes() > 0) {
+            log.setCache(new LogCache(config.getLogCacheBytes()));
+        }
+        recoverMembership();
+        commitIndex = Math.max(commitIndex, Math.min(store.getCommitIndex(), log.lastIndex()));
+    }
+
+    /**
+     * Loads the snapshot into the state machine and applies the committed entries after it.
+     * Called by the host when it starts, after the state machine was set and the apply stage, if any, started.
+     */
+    void restoreStateMachine() {
+        applyStage = host.getApplyStage();
+        if (log.getSnapshotIndex() > 0) {
+            restoreSnapshot(snapshot);
+        }
+        applyCommitted();
+    }
+
+    private void restoreSnapshot(byte[] data) {
+        if (applyStage != null) {
+            applyStage.restore(stateMachine, data);
+        } else {
+            stateMachine.restoreSnapshot(data);
+        }
+    }
+
+    /**
+     * Answers a query of the state machine: on the apply stage once it applied everything handed to it
+     * so far, or right away on the event loop.
+     */
+    <T> void query(Supplier<T> query, CompletableFuture<T> result) {
+        if (applyStage != null) {
+            applyStage.query(query, result);
+        } else {
+            result.complete(query.get());
+        }
+    }
+
+    /**
+     * Records the hard state; a changed term or vote is written before the host sends the
+     * messages of this loop iteration.
+     */
+    private void saveHardState() {
+        if (hardState == null) {
+            return;
+        }
+        hardState.update(term, votedFor, commitIndex);
+        if (hardState.isDirty()) {
+            syncLater();
+        }
+    }
+
+    /**
+     * Appended entries are forced to disk before the host sends the messages of this loop iteration.
+     */
+    private void syncLater() {
+        if (!syncPending && hardState != null) {
+            syncPending = true;
+            host.syncLater(this);
+        }
+    }
+
+    void syncStorage() {
+        syncPending = false;
+        if (hardState == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean write = hardState.isDirty();
+        try {
+            log.sync();
+            hardState.sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Continuing could break a promise made in a vote
+        }
+        if (write) {
+            host.metrics().hardStateSynced(System.nanoTime() - start);
+        }
+    }
+
+    void closeStorage() {
+        if (hardState == null) {
+            return;
+        }
+        try {
+            log.close();
+            hardState.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void resetElectionTimeout() {
+        if (!isVoter()) {
+            electionTimer.cancel(); // Learners never start elections
+            return;
+        }
+        long range = config.getElectionTimeoutMax() - config.getElectionTimeoutMin();
+        electionTimer.reschedule(config.getElectionTimeoutMin() + (range > 0 ? host.random().nextInt((int) range) : 0));
+    }
+
+    private void startElection() {
+        if (!isVoter()) {
+            return;
+        }
+        term += 1;
+        state = "candidate";
+        votedFor = id;
+        leaderId = -1;
+        votesReceived.clear();
+        votesReceived.add(id);
+        saveHardState();
+        host.metrics().electionStarted();
+        resetElectionTimeout(); // Retry with a new election if this one splits the vote
+
+        for (int voter : membership.getVoters()) {
+            if (voter == id) {
+                continue;
+            }
+            RaftMessage request = new RaftMessage("RequestVote", groupId, id, voter, term);
+            request.setLastLogIndex(log.lastIndex());
+            request.setLastLogTerm(log.lastTerm());
+            host.send(request);
+        }
+        if (votesReceived.size() >= membership.quorum()) {
+            becomeLeader(); // Single replica group
+        }
+    }
+
+    private void becomeLeader() {
+        state = "leader";
+        leaderId = id;
+        host.metrics().leaderElected(groupId, host.now());
+        if (host.monitor() != null) {
+            host.monitor().leaderElected(groupId, term, id);
+        }
+        electionTimer.cancel(); // Heartbeats prevent timeouts of the followers instead
+
+        progress.clear();
+        updateProgress();
+
+        // A no-op entry lets the leader commit entries of earlier terms
+        log.append(term, "NoOp", NO_OP);
+        syncLater();
+        advanceCommitIndex();
+
+        // Announce leadership right away instead of waiting for the next heartbeat round
+        sendHeartbeats();
+    }
+
+    private void stepDown(int newTerm) {
+        if (isLeader()) {
+            if (transferTarget != -1) {
+                host.metrics().transferCompleted(); // The target (or another node) started its election
+            } else {
+                host.metrics().leaderLost(groupId, host.now());
+            }
+            if (batcher != null) {
+                // Their entries may still be committed by the next leader or overwritten; this host will not know
+                batcher.failPending("Host " + host.getId() + " lost leadership of group " + groupId);
+            }
+        }
+        endTransfer();
+        failReads("Term changed while the read was pending");
+        term = newTerm;
+        votedFor = null;
+        saveHardState();
+        state = "follower";
+        leaderId = -1;
+        progress.clear();
+        resetElectionTimeout();
+    }
+
+    /**
+     * Appends a new entry if this node is the leader and the uncommitted tail of the log is below
+     * the configured limit. Must be called on the host's event loop thread.
+     *
+     * @return Index of the new entry, or -1 if the proposal was rejected.
+     */
+    public long propose(byte[] data) {
+        if (!canPropose()) {
+            return -1;
+        }
+        LogEntry entry = log.append(term, data);
+        syncLater();
+        advanceCommitIndex(); // Single replica group
+        scheduleReplication();
+        return entry.getIndex();
+    }
+
+    /**
+     * False if this node is not the leader, hands leadership to another node, or too many
+     * proposed entries are not committed or not applied yet.
+     */
+    public boolean canPropose() {
+        return isLeader() && transferTarget == -1 && log.lastIndex() - commitIndex < config.getMaxUncommittedEntries()
+                && log.lastIndex() - lastApplied < config.getMaxApplyLag();
+    }
+
+    /**
+     * Adds a learner that receives the log but neither votes nor counts toward commit. It is
+     * promoted to a voter once it is at most {@link RaftConfig#getLearnerPromotionLag()} entries behind.
+     * Must be called on the host's event loop thread.
+     *
+     * @return false if this node is not the leader, the host is already a member or another
+     *         membership change is not committed yet.
+     */
+    public boolean addLearner(int hostId) {
+        if (!canChangeMembership() || membership.contains(hostId)) {
+            return false;
+        }
+        appendMembership(membership.withLearner(hostId));
+        return true;
+    }
+
+    private boolean canChangeMembership() {
+        // One change at a time, and only after an entry of this term committed
+        return isLeader() && membershipIndex <= commitIndex && log.termAt(commitIndex) == term;
+    }
+
+    private void appendMembership(Membership newMembership) {
+        // New members start at the Config entry itself, so it is their first probe
+        setMembership(newMembership, log.lastIndex() + 1);
+        log.append(term, "Config", newMembership.encode());
+        syncLater();
+        advanceCommitIndex();
+        scheduleReplication();
+    }
+
+    /**
+     * A replica uses the latest membership in its log, committed or not.
+     */
+    private void setMembership(Membership newMembership, long index) {
+        boolean wasVoter = isVoter();
+        membership = newMembership;
+        membershipIndex = index;
+        if (isLeader()) {
+            updateProgress();
+        } else if (wasVoter != isVoter()) {
+            resetElectionTimeout(); // Arms the timer of a promoted learner
+        }
+    }
+
+    /**
+     * Restores the latest membership after the log was truncated or replaced by a snapshot.
+     */
+    private void recoverMembership() {
+        for (long index = log.lastIndex(); index > log.getSnapshotIndex(); index--) {
+            LogEntry entry = log.get(index);
+            if (entry.getType().equals("Config")) {
+                setMembership(Membership.decode(entry.getData()), index);
+                return;
+            }
+        }
+        setMembership(snapshotMembership, 0);
+    }
+
+    private void updateProgress() {
+        List<FollowerProgress> updated = new ArrayList<>();
+        addProgress(updated, membership.getVoters());
+        addProgress(updated, membership.getLearners());
+        progress.clear();
+        progress.addAll(updated);
+    }
+
+    private void addProgress(List<FollowerProgress> updated, int[] members) {
+        for (int member : members) {
+            if (member == id) {
+                continue;
+            }
+            FollowerProgress follower = findProgress(member);
+            if (follower == null) {
+                follower = new FollowerProgress(member, log.lastIndex() + 1, config.getMaxInflightMessages());
+            }
+            updated.add(follower);
+        }
+    }
+
+    private void maybePromote(FollowerProgress follower) {
+        if (membership.isLearner(follower.peerId) && canChangeMembership()
+                && log.lastIndex() - follower.matchIndex <= config.getLearnerPromotionLag()) {
+            appendMembership(membership.withPromoted(follower.peerId));
+        }
+    }
+
+    /**
+     * Hands leadership to the given peer: stops accepting proposals, brings the peer's log up to date
+     * and then tells it to start an election right away instead of waiting for its election timeout.
+     * The transfer is abandoned if the peer is not leader within one maximum election timeout.
+     * Must be called on the host's event loop thread.
+     *
+     * @return false if this node is not the leader or the target is not a voting peer.
+     */
+    public boolean transferLeadership(int targetId) {
+        if (!isLeader() || targetId == id || !membership.isVoter(targetId)) {
+            return false;
+        }
+        if (transferTarget == -1) {
+            host.metrics().transferStarted();
+            host.metrics().leaderLost(groupId, host.now()); // No proposals are accepted from now on
+        }
+        transferTarget = targetId;
+        if (transferTimer == null) {
+            transferTimer = host.timer().newTimeout(this::abortTransfer);
+        }
+        transferTimer.reschedule(config.getElectionTimeoutMax());
+
+        FollowerProgress target = findProgress(targetId);
+        sendAppendEntries(target);
+        sendTimeoutNowIfCaughtUp(target);
+        return true;
+    }
+
+    private void sendTimeoutNowIfCaughtUp(FollowerProgress follower) {
+        if (follower.peerId == transferTarget && follower.matchIndex == log.lastIndex()) {
+            host.send(new RaftMessage("TimeoutNow", groupId, id, follower.peerId, term));
+        }
+    }
+
+    private void abortTransfer() {
+        if (transferTarget != -1 && isLeader()) {
+            host.metrics().transferAborted(groupId, host.now()); // Accepting proposals again
+        }
+        endTransfer();
+    }
+
+    private void endTransfer() {
+        transferTarget = -1;
+        if (transferTimer != null) {
+            transferTimer.cancel();
+        }
+    }
+
+    private void scheduleReplication() {
+        if (!replicationPending) {
+            replicationPending = true;
+            host.replicateLater(this);
+        }
+    }
+
+    /**
+     * Sends new entries to all followers as far as their windows allow.
+     * Called by the host at the end of a loop iteration so proposals of one iteration share messages.
+     */
+    void replicate() {
+        replicationPending = false;
+        if (readPending) {
+            sendReadRound();
+        }
+        if (!isLeader()) {
+            return;
+        }
+        for (FollowerProgress follower : progress) {
+            sendAppendEntries(follower);
+        }
+    }
+
+    private void sendAppendEntries(FollowerProgress follower) {
+        // Keep sending while the follower's window has room and there are entries it has not received
+        while (follower.canSend()) {
+            if (follower.nextIndex <= log.getSnapshotIndex()) {
+                sendSnapshot(follower); // The entries it needs were compacted
+                return;
+            }
+            if (follower.nextIndex > log.lastIndex()) {
+                return;
+            }
+            long prevLogIndex = follower.nextIndex - 1;
+            List<LogEntry> entries = log.entriesFrom(follower.nextIndex, config.getMaxEntriesPerMessage());
+            RaftMessage append = new RaftMessage("AppendEntries", groupId, id, follower.peerId, term);
+            append.setPrevLogIndex(prevLogIndex);
+            append.setPrevLogTerm(log.termAt(prevLogIndex));
+            append.setEntries(entries);
+            append.setLeaderCommit(commitIndex);
+            host.send(append);
+            follower.onSent(prevLogIndex + entries.size());
+        }
+    }
+
+    private void sendSnapshot(FollowerProgress follower) {
+        if (!follower.probing) {
+            follower.startProbe(); // One snapshot at a time, entries follow once it is installed
+        }
+        RaftMessage install = new RaftMessage("InstallSnapshot", groupId, id, follower.peerId, term);
+        install.setPrevLogIndex(log.getSnapshotIndex());
+        install.setPrevLogTerm(log.getSnapshotTerm());
+        install.setSnapshot(snapshot);
+        install.setMembership(snapshotMembership);
+        install.setLeaderCommit(commitIndex);
+        host.send(install);
+        follower.onSent(log.getSnapshotIndex());
+    }
+
+    /**
+     * Sends an empty AppendEntries to every peer. Called by the host once per heartbeat round
+     * for all groups it leads, so heartbeats to the same host leave in one batch.
+     */
+    public void sendHeartbeats() {
+        if (!isLeader()) {
+            return;
+        }
+        expireReads();
+        for (FollowerProgress follower : progress) {
+            follower.onHeartbeatRound();
+            sendHeartbeat(follower);
+            sendAppendEntries(follower);
+        }
+    }
+
+    private void sendHeartbeat(FollowerProgress follower) {
+        // The heartbeat only refers to the part of the log known to match, so it cannot be
+        // rejected because of entries that are still in flight. If that part was compacted,
+        // it refers to the empty log, which matches everywhere.
+        long prevLogIndex = follower.matchIndex >= log.getSnapshotIndex() ? follower.matchIndex : 0;
+        RaftMessage heartbeat = new RaftMessage("AppendEntries", groupId, id, follower.peerId, term);
+        heartbeat.setPrevLogIndex(prevLogIndex);
+        heartbeat.setPrevLogTerm(log.termAt(prevLogIndex));
+        heartbeat.setLeaderCommit(Math.min(commitIndex, prevLogIndex));
+        heartbeat.setReadId(readIdSent);
+        host.send(heartbeat);
+    }
+
+    /**
+     * Starts a linearizable read. Must be called on the host's event loop thread.
+     * The leader confirms with a round of heartbeats that it is still the leader, and the read
+     * index is its commit index at that point. A follower asks the leader for the read index.
+     *
+     * @return Completes with the read index on the event loop thread once this replica has
+     *         applied it, so the state machine can be read in the callback; fails if no leader
+     *         is known or leadership changed.
+     */
+    public CompletableFuture<Long> readIndex() {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        if (!isLeader() && leaderId == -1) {
+            future.completeExceptionally(new IllegalStateException("No leader known for group " + groupId));
+            return future;
+        }
+        readRequests.add(new ReadRequest(readIdSent + 1, future, -1, 0, host.now()));
+        requestReadRound();
+        return future;
+    }
+
+    /**
+     * True if the state of this replica is at most the given number of milliseconds old: a
+     * follower heard from the leader within that time, a leader from a majority of the voters.
+     * Must be called on the host's event loop thread.
+     */
+    public boolean isReadableWithin(long maxStaleness) {
+        if (isLeader()) {
+            int[] voters = membership.getVoters();
+            long[] ackTimes = new long[voters.length];
+            for (int i = 0; i < voters.length; i++) {
+                ackTimes[i] = voters[i] == id ? host.now() : findProgress(voters[i]).lastAckTime;
+            }
+            Arrays.sort(ackTimes);
+            return host.now() - ackTimes[ackTimes.length - membership.quorum()] <= maxStaleness;
+        }
+        return leaderId != -1 && host.now() - lastLeaderContact <= maxStaleness;
+    }
+
+    private void requestReadRound() {
+        readPending = true;
+        scheduleReplication();
+    }
+
+    private void sendReadRound() {
+        readPending = false;
+        readIdSent++;
+        if (isLeader()) {
+            for (FollowerProgress follower : progress) {
+                if (membership.isVoter(follower.peerId)) {
+                    sendHeartbeat(follower);
+                }
+            }
+            confirmReads(); // Single voter
+        } else if (leaderId != -1) {
+            RaftMessage request = new RaftMessage("ReadIndex", groupId, id, leaderId, term);
+            request.setReadId(readIdSent);
+            host.send(request);
+        } else {
+            failReads("No leader known for group " + groupId);
+        }
+    }
+
+    /**
+     * Leader: answers the reads whose heartbeat round a majority acknowledged.
+     */
+    private void confirmReads() {
+        // The commit index is only known to be up to date once an entry of this term committed
+        if (readRequests.isEmpty() || log.termAt(commitIndex) != term) {
+            return;
+        }
+        int[] voters = membership.getVoters();
+        long[] acked = new long[voters.length];
+        for (int i = 0; i < voters.length; i++) {
+            acked[i] = voters[i] == id ? readIdSent : findProgress(voters[i]).readId;
+        }
+        Arrays.sort(acked);
+        long confirmed = acked[acked.length - membership.quorum()];
+
+        while (!readRequests.isEmpty() && readRequests.peek().id <= confirmed) {
+            ReadRequest read = readRequests.poll();
+            read.readIndex = commitIndex;
+            if (read.future != null) {
+                awaitApply(read);
+            } else {
+                RaftMessage response = new RaftMessage("ReadIndexResponse", groupId, id, read.fromId, term);
+                response.setReadId(read.requestId);
+                response.setReadIndex(commitIndex);
+                response.setSuccess(true);
+                host.send(response);
+            }
+        }
+    }
+
+    private void awaitApply(ReadRequest read) {
+        if (read.readIndex <= lastApplied) {
+            read.future.complete(read.readIndex);
+        } else {
+            readsAwaitingApply.add(read);
+        }
+    }
+
+    private void completeAppliedReads() {
+        while (!readsAwaitingApply.isEmpty() && readsAwaitingApply.peek().readIndex <= lastApplied) {
+            ReadRequest read = readsAwaitingApply.poll();
+            read.future.complete(read.readIndex);
+        }
+    }
+
+    /**
+     * Fails everything waiting for entries to be applied, after the state machine threw.
+     */
+    void applyFailed(String reason) {
+        failReads(reason);
+        while (!readsAwaitingApply.isEmpty()) {
+            failRead(readsAwaitingApply.poll(), reason);
+        }
+        if (batcher != null) {
+            batcher.failPending(reason);
+        }
+    }
+
+    private void failReads(String reason) {
+        while (!readRequests.isEmpty()) {
+            failRead(readRequests.poll(), reason);
+        }
+    }
+
+    /**
+     * Fails reads that waited longer than an election timeout, e.g. because a message was lost.
+     */
+    private void expireReads() {
+        while (!readRequests.isEmpty() && host.now() - readRequests.peek().createdAt > config.getElectionTimeoutMax()) {
+            failRead(readRequests.poll(), "Read index not confirmed in time");
+        }
+    }
+
+    private void failRead(ReadRequest read, String reason) {
+        if (read.future != null) {
+            read.future.completeExceptionally(new IllegalStateException(reason));
+        } else {
+            RaftMessage response = new RaftMessage("ReadIndexResponse", groupId, id, read.fromId, term);
+            response.setReadId(read.requestId);
+            response.setSuccess(false);
+            host.send(response);
+        }
+    }
+
+    private void handleReadIndex(RaftMessage message) {
+        ReadRequest read = new ReadRequest(readIdSent + 1, null, message.getFromId(), message.getReadId(), host.now());
+        if (!isLeader()) {
+            failRead(read, "Not the leader");
+            return;
+        }
+        readRequests.add(read);
+        requestReadRound();
+    }
+
+    private void handleReadIndexResponse(RaftMessage message) {
+        while (!readRequests.isEmpty() && readRequests.peek().id <= message.getReadId()) {
+            ReadRequest read = readRequests.poll();
+            if (message.isSuccess()) {
+                read.readIndex = message.getReadIndex();
+                awaitApply(read);
+            } else {
+                failRead(read, "Leader could not confirm the read index");
+            }
+        }
+    }
+
+    public void handleMessage(RaftMessage message) {
+        if (message.getTerm() < term) {
+            return; // Ignore messages from past terms
+        }
+        if (message.getTerm() > term) {
+            stepDown(message.getTerm());
+        }
+
+        switch (message.getType()) {
+            case "RequestVote":
+                handleRequestVote(message);
+                break;
+            case "Vote":
+                handleVote(message);
+                break;
+            case "AppendEntries":
+                handleAppendEntries(message);
+                break;
+            case "InstallSnapshot":
+                handleInstallSnapshot(message);
+                break;
+            case "Ack":
+                handleAck(message);
+                break;
+            case "TimeoutNow":
+                handleTimeoutNow(message);
+                break;
+            case "ReadIndex":
+                handleReadIndex(message);
+                break;
+            case "ReadIndexResponse":
+                handleReadIndexResponse(message);
+                break;
+        }
+    }
+
+    private void handleRequestVote(RaftMessage message) {
+        if (!isVoter()) {
+            return; // Learners do not vote
+        }
+        // Only vote for candidates whose log is at least as up to date as ours
+        boolean logOk = message.getLastLogTerm() > log.lastTerm()
+                || (message.getLastLogTerm() == log.lastTerm() && message.getLastLogIndex() >= log.lastIndex());
+        if ((votedFor == null || votedFor == message.getFromId()) && logOk) {
+            votedFor = message.getFromId();
+            saveHardState();
+            resetElectionTimeout();
+            host.send(new RaftMessage("Vote", groupId, id, message.getFromId(), term));
+        }
+    }
+
+    private void handleVote(RaftMessage message) {
+        if (state.equals("candidate") && membership.isVoter(message.getFromId())) {
+            votesReceived.add(message.getFromId());
+            if (votesReceived.size() >= membership.quorum()) {
+                becomeLeader();
+            }
+        }
+    }
+
+    private void followLeader(RaftMessage message) {
+        if (!state.equals("follower")) {
+            state = "follower"; // A candidate learns about the leader of its term
+        }
+        if (leaderId != message.getFromId()) {
+            failReads("Leader changed while the read was pending");
+        }
+        leaderId = message.getFromId();
+        lastLeaderContact = host.now();
+        resetElectionTimeout();
+        expireReads();
+    }
+
+    private void handleAppendEntries(RaftMessage message) {
+        followLeader(message);
+
+        RaftMessage ack = new RaftMessage("Ack", groupId, id, message.getFromId(), term);
+        ack.setPrevLogIndex(message.getPrevLogIndex());
+        ack.setReadId(message.getReadId()); // Any answer in this term confirms the leader's round
+
+        // Entries up to the snapshot are committed and therefore match the leader's log
+        long prevLogIndex = message.getPrevLogIndex();
+        if (prevLogIndex > log.lastIndex()
+                || (prevLogIndex >= log.getSnapshotIndex() && log.termAt(prevLogIndex) != message.getPrevLogTerm())) {
+            // Logs do not match at prevLogIndex, the leader has to go back, past our whole term if it has a different one
+            ack.setSuccess(false);
+            ack.setMatchIndex(Math.min(log.lastIndex(), prevLogIndex - 1));
+            if (prevLogIndex <= log.lastIndex()) {
+                ack.setConflictTerm(log.termAt(prevLogIndex));
+                ack.setConflictIndex(log.firstIndexOfTerm(prevLogIndex));
+            }
+            host.send(ack);
+            return;
+        }
+
+        for (LogEntry entry : message.getEntries()) {
+            if (entry.getIndex() <= log.getSnapshotIndex()) {
+                continue;
+            }
+            if (entry.getIndex() <= log.lastIndex()) {
+                if (log.termAt(entry.getIndex()) == entry.getTerm()) {
+                    continue; // Already have it
+                }
+                log.truncateFrom(entry.getIndex()); // Conflicting suffix
+                if (membershipIndex >= entry.getIndex()) {
+                    recoverMembership();
+                }
+            }
+            log.append(entry.getTerm(), entry.getType(), entry.getData());
+            syncLater(); // Before the Ack
+            if (entry.getType().equals("Config")) {
+                setMembership(Membership.decode(entry.getData()), entry.getIndex());
+            }
+        }
+
+        long lastNewIndex = prevLogIndex + message.getEntries().size();
+        long newCommitIndex = Math.min(message.getLeaderCommit(), lastNewIndex);
+        if (newCommitIndex > commitIndex) {
+            commitIndex = newCommitIndex;
+            applyCommitted();
+        }
+
+        ack.setSuccess(true);
+        ack.setMatchIndex(lastNewIndex);
+        host.send(ack);
+    }
+
+    private void handleInstallSnapshot(RaftMessage message) {
+        followLeader(message);
+
+        long snapshotIndex = message.getPrevLogIndex();
+        if (snapshotIndex > commitIndex) {
+            saveSnapshot(snapshotIndex, message.getPrevLogTerm(), message.getMembership(), message.getSnapshot());
+            log.installSnapshot(snapshotIndex, message.getPrevLogTerm());
+            snapshot = message.getSnapshot();
+            snapshotMembership = message.getMembership();
+            appliedMembership = snapshotMembership;
+            restoreSnapshot(snapshot);
+            commitIndex = snapshotIndex;
+            lastApplied = snapshotIndex;
+            applyQueued = snapshotIndex;
+            recoverMembership();
+            completeAppliedReads();
+        }
+
+        // Everything up to the snapshot is committed here now, so it matches the leader's log
+        RaftMessage ack = new RaftMessage("Ack", groupId, id, message.getFromId(), term);
+        ack.setPrevLogIndex(snapshotIndex);
+        ack.setSuccess(true);
+        ack.setMatchIndex(snapshotIndex);
+        host.send(ack);
+    }
+
+    private void handleTimeoutNow(RaftMessage message) {
+        // Only the leader of this term sends it, also before its first AppendEntries told us who leads;
+        // it asks us to take over, and its log is known to be ours
+        if (state.equals("follower") && (leaderId == -1 || message.getFromId() == leaderId)) {
+            startElection();
+        }
+    }
+
+    private void handleAck(RaftMessage message) {
+        if (!isLeader()) {
+            return;
+        }
+        FollowerProgress follower = findProgress(message.getFromId());
+        if (follower == null) {
+            return;
+        }
+        follower.lastAckTime = host.now();
+        if (message.getReadId() > follower.readId) {
+            follower.readId = message.getReadId();
+            confirmReads();
+        }
+        if (message.isSuccess()) {
+            follower.onAck(message.getMatchIndex());
+            advanceCommitIndex();
+            maybePromote(follower);
+        } else {
+            follower.onReject(message.getPrevLogIndex(), matchHint(message));
+        }
+        sendAppendEntries(follower);
+        if (transferTarget != -1) {
+            sendTimeoutNowIfCaughtUp(follower);
+        }
+    }
+
+    /**
+     * Highest index at which the follower's log may match ours after a rejection. If the follower reported
+     * the term of its conflicting entry, it can only match up to our last entry of that term, or, if we
+     * have none, before the follower's first entry of it; so a diverged term costs one round trip.
+     */
+    private long matchHint(RaftMessage reject) {
+        if (reject.getConflictTerm() <= 0 || !config.isConflictHints()) {
+            return reject.getMatchIndex(); // The follower's log is shorter
+        }
+        long lastOfTerm = log.lastIndexOfTerm(reject.getConflictTerm(), reject.getPrevLogIndex());
+        return lastOfTerm > 0 ? lastOfTerm : reject.getConflictIndex() - 1;
+    }
+
+    private FollowerProgress findProgress(int peerId) {
+        for (FollowerProgress follower : progress) {
+            if (follower.peerId == peerId) {
+                return follower;
+            }
+        }
+        return null;
+    }
+
+    private void advanceCommitIndex() {
+        // The highest index stored on a majority of the voters (the leader counts with its whole log)
+        int[] voters = membership.getVoters();
+        long[] matches = new long[voters.length];
+        for (int i = 0; i < voters.length; i++) {
+            matches[i] = voters[i] == id ? log.lastIndex() : findProgress(voters[i]).matchIndex;
+        }
+        Arrays.sort(matches);
+        long majorityIndex = matches[matches.length - membership.quorum()];
+
+        // Only entries of the current term are committed by counting replicas
+        if (majorityIndex > commitIndex && log.termAt(majorityIndex) == term) {
+            boolean firstCommitOfTerm = log.termAt(commitIndex) != term;
+            commitIndex = majorityIndex;
+            applyCommitted();
+            if (firstCommitOfTerm) {
+                confirmReads(); // Reads waited for the commit index to catch up with this term
+            }
+        }
+    }
+
+    private void applyCommitted() {
+        saveHardState(); // Every commit index change ends up here
+        if (applyStage != null) {
+            dispatchCommitted();
+            return;
+        }
+        while (lastApplied < commitIndex) {
+            lastApplied++;
+            LogEntry entry = log.get(lastApplied);
+            if (host.monitor() != null) {
+                host.monitor().entryApplied(groupId, id, entry);
+            }
+            switch (entry.getType()) {
+                case "Command":
+                    stateMachine.apply(entry);
+                    break;
+                case "Config":
+                    appliedMembership = Membership.decode(entry.getData());
+                    break;
+            }
+        }
+        applyQueued = lastApplied;
+        stateMachine.applied(lastApplied);
+        completeAppliedReads();
+        if (lastApplied - log.getSnapshotIndex() >= config.getSnapshotThreshold()) {
+            takeSnapshot();
+        }
+        releaseLog();
+    }
+
+    /**
+     * Hands the newly committed entries to the apply stage as one batch. Membership changes are
+     * applied here; lastApplied follows once the stage reports back.
+     */
+    private void dispatchCommitted() {
+        if (applyQueued >= commitIndex) {
+            return;
+        }
+        List<LogEntry> batch = new ArrayList<>((int) (commitIndex - applyQueued));
+        while (applyQueued < commitIndex) {
+            applyQueued++;
+            LogEntry entry = log.get(applyQueued);
+            if (host.monitor() != null) {
+                host.monitor().entryApplied(groupId, id, entry);
+            }
+            if (entry.getType().equals("Config")) {
+                appliedMembership = Membership.decode(entry.getData());
+            }
+            batch.add(entry);
+        }
+        applyStage.apply(this, stateMachine, batch);
+        if (!snapshotPending && applyQueued - log.getSnapshotIndex() >= config.getSnapshotThreshold()) {
+            snapshotPending = true;
+            applyStage.snapshot(this, stateMachine, applyQueued, appliedMembership);
+        }
+        releaseLog();
+    }
+
+    /**
+     * Called by the apply stage on the event loop thread once the entries up to the given index are applied.
+     */
+    void onApplied(long index) {
+        if (index <= lastApplied) {
+            return; // A snapshot from the leader got ahead of the stage
+        }
+        lastApplied = index;
+        stateMachine.applied(index);
+        completeAppliedReads();
+    }
+
+    /**
+     * Lets the log cache drop entries that are handed to the state machine here and, on the leader, stored on every follower.
+     */
+    private void releaseLog() {
+        long watermark = applyQueued + 1;
+        if (isLeader()) {
+            for (FollowerProgress follower : progress) {
+                watermark = Math.min(watermark, follower.matchIndex + 1);
+            }
+        }
+        log.releaseBelow(watermark);
+    }
+
+    private void takeSnapshot() {
+        snapshotTaken(lastApplied, appliedMembership, stateMachine.takeSnapshot());
+    }
+
+    /**
+     * Replaces the log up to the index with a snapshot of the state machine taken right after applying it.
+     * Runs on the event loop thread; with an apply stage once the stage took the snapshot.
+     */
+    void snapshotTaken(long index, Membership snapshotMembership, byte[] data) {
+        snapshotPending = false;
+        if (index <= log.getSnapshotIndex()) {
+            return; // Replaced by a snapshot from the leader in the meantime
+        }
+        snapshot = data;
+        this.snapshotMembership = snapshotMembership;
+        saveSnapshot(index, log.termAt(index), snapshotMembership, snapshot);
+        log.compact(index);
+    }
+
+    /**
+     * Writes the snapshot to disk; must happen before the log entries it covers are deleted.
+     */
+    private void saveSnapshot(long index, int snapshotTerm, Membership snapshotMembership, byte[] data) {
+        if (snapshotFile == null) {
+            return;
+        }
+        try {
+            snapshotFile.save(index, snapshotTerm, snapshotMembership.encode(), data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
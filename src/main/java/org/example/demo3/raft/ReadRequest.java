@@ -0,0 +1,24 @@
+package org.example.demo3.raft;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A linearizable read waiting for its read index, or for the state machine to reach it.
+ * Local reads complete a future; reads the leader serves for a follower are answered with a message.
+ */
+class ReadRequest {
+    final long id; // Heartbeat round (leader) or ReadIndex request (follower) that confirms this read
+    final CompletableFuture<Long> future; // Null for a follower's request served by the leader
+    final int fromId; // Follower that asked, -1 for a local read
+    final long requestId; // The follower's request id
+    final long createdAt;
+    long readIndex;
+
+    ReadRequest(long id, CompletableFuture<Long> future, int fromId, long requestId, long createdAt) {
+        this.id = id;
+        this.future = future;
+        this.fromId = fromId;
+        this.requestId = requestId;
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.demo3.raft;
+
+import java.util.List;
+
+/**
+ * Receives committed log entries in index order.
+ */
+public interface StateMachine {
+    void apply(LogEntry entry);
+
+    /**
+     * Applies a batch of commands in index order. The {@link ApplyStage} hands over each batch in one
+     * call, so a state machine can spread it over threads; all commands are applied when it returns.
+     */
+    default void applyBatch(List<LogEntry> commands) {
+        for (LogEntry command : commands) {
+            apply(command);
+        }
+    }
+
+    /**
+     * Called on the host's event loop thread once the entries up to the given index are applied.
+     * With an {@link ApplyStage}, {@link #apply} runs on the stage's thread and this call follows later.
+     */
+    default void applied(long index) {
+    }
+
+    /**
+     * Serializes the state after the last applied entry, so the log up to it can be discarded.
+     * There is no default: a snapshot that leaves out state loses it at the first compaction.
+     */
+    byte[] takeSnapshot();
+
+    /**
+     * Replaces the state with a snapshot taken by {@link #takeSnapshot()}, possibly on another replica.
+     */
+    void restoreSnapshot(byte[] snapshot);
+}
@@ -0,0 +1,304 @@
+package org.example.demo3.raft;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.example.demo3.MessageInbox;
+
+/**
+ * Transport between hosts in different processes over TCP. Every message is one length-prefixed frame
+ * in the format of {@link MessageCodec}. Each peer has its own sender thread, connection and bounded
+ * queue, so a peer that is slow, stopped or gone never blocks the host's event loop: once its queue is
+ * full, further messages to it are dropped like messages lost in the network. A broken connection is
+ * re-established on the next message after a short delay; messages in between are dropped as well.
+ *
+ * With compression, frames of at least {@value #MIN_COMPRESSED_FRAME} bytes, in practice those carrying
+ * log entries, are deflated as a whole and sent with a negative length followed by the raw length.
+ * Small frames such as heartbeats and votes stay uncompressed. Receivers accept both kinds.
+ */
+public class TcpTransport implements Transport {
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int CONNECT_TIMEOUT = 200; // Milliseconds
+    private static final long RECONNECT_DELAY = 100; // Milliseconds
+    private static final int MIN_COMPRESSED_FRAME = 512; // Bytes
+
+    private final int id;
+    private final Map<Integer, InetSocketAddress> addresses;
+    private final Map<Integer, Peer> peers = new ConcurrentHashMap<>();
+    private RaftHost host;
+    private ServerSocket serverSocket;
+    private volatile boolean closed = false;
+    private volatile boolean compression = false;
+
+    // Statistics; bytes include the length prefix of each frame
+    private final LongAdder sentMessages = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder sentRawBytes = new LongAdder(); // What the sent frames take uncompressed
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder receivedMessages = new LongAdder();
+    private final LongAdder receivedBytes = new LongAdder();
+
+    /**
+     * @param id        Id of the local host.
+     * @param addresses Address of every host including the local one, which is the one to listen on.
+     */
+    public TcpTransport(int id, Map<Integer, InetSocketAddress> addresses) {
+        this.id = id;
+        this.addresses = addresses;
+    }
+
+    /**
+     * Deflates large frames from now on.
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Listens for connections of the other hosts and hands their messages to the given host.
+     */
+    public void start(RaftHost host) throws IOException {
+        this.host = host;
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true); // A restarted process binds again while old connections linger
+        serverSocket.bind(addresses.get(id));
+        Thread acceptor = new Thread(this::acceptConnections, "tcp-accept-" + id);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void close() {
+        closed = true;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        for (Peer peer : peers.values()) {
+            peer.disconnect();
+            peer.thread.interrupt();
+        }
+    }
+
+    @Override
+    public void send(RaftMessage message) {
+        if (closed || !addresses.containsKey(message.getToId())) {
+            return;
+        }
+        Peer peer = peers.computeIfAbsent(message.getToId(), Peer::new);
+        if (!peer.queue.offer(message)) {
+            droppedMessages.increment();
+        }
+    }
+
+    public long getSentMessages() {
+        return sentMessages.sum();
+    }
+
+    public long getSentBytes() {
+        return sentBytes.sum();
+    }
+
+    /**
+     * Bytes the sent frames would have taken without compression; equal to the sent bytes if it is off.
+     */
+    public long getSentRawBytes() {
+        return sentRawBytes.sum();
+    }
+
+    /**
+     * Messages dropped because the peer's queue was full or it could not be reached.
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.sum();
+    }
+
+    public long getReceivedMessages() {
+        return receivedMessages.sum();
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread reader = new Thread(() -> readMessages(socket), "tcp-read-" + id);
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Host " + id + ": accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readMessages(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            Inflater inflater = new Inflater();
+            while (!closed) {
+                int length = in.readInt();
+                byte[] frame;
+                if (length < 0) {
+                    frame = new byte[in.readInt()];
+                    byte[] deflated = new byte[-length];
+                    in.readFully(deflated);
+                    inflater.reset();
+                    inflater.setInput(deflated);
+                    if (inflater.inflate(frame) != frame.length) {
+                        throw new IOException("Compressed frame is shorter than its raw length");
+                    }
+                    receivedBytes.add(8 - length);
+                } else {
+                    frame = new byte[length];
+                    in.readFully(frame);
+                    receivedBytes.add(4 + length);
+                }
+                receivedMessages.increment();
+                host.receive(MessageCodec.read(new DataInputStream(new ByteArrayInputStream(frame))));
+            }
+        } catch (IOException | DataFormatException e) {
+            // The sender closed the connection or its process died; it reconnects when it sends again
+        }
+    }
+
+    // Connection to one other host, written only by its own sender thread
+    private class Peer implements Runnable {
+        private final int peerId;
+        private final MessageInbox<RaftMessage> queue = new MessageInbox<>(QUEUE_CAPACITY);
+        private final Thread thread;
+        private final FrameBuffer frame = new FrameBuffer();
+        private final DataOutputStream frameOut = new DataOutputStream(frame);
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private byte[] deflated = new byte[0];
+        private Socket socket;
+        private DataOutputStream out;
+        private long retryAt = 0;
+
+        Peer(int peerId) {
+            this.peerId = peerId;
+            thread = new Thread(this, "tcp-send-" + id + "-" + peerId);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                RaftMessage message;
+                try {
+                    message = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!connect()) {
+                    droppedMessages.increment();
+                    continue;
+                }
+                try {
+                    frame.reset();
+                    MessageCodec.write(message, frameOut);
+                    int rawLength = frame.size();
+                    int deflatedLength = compression && rawLength >= MIN_COMPRESSED_FRAME ? deflate(rawLength) : -1;
+                    if (deflatedLength >= 0) {
+                        out.writeInt(-deflatedLength);
+                        out.writeInt(rawLength);
+                        out.write(deflated, 0, deflatedLength);
+                        sentBytes.add(8 + deflatedLength);
+                    } else {
+                        out.writeInt(rawLength);
+                        frame.writeTo(out);
+                        sentBytes.add(4 + rawLength);
+                    }
+                    sentMessages.increment();
+                    sentRawBytes.add(4 + rawLength);
+                    if (queue.isEmpty()) {
+                        out.flush(); // Messages queued meanwhile share the write
+                    }
+                } catch (IOException e) {
+                    droppedMessages.increment();
+                    disconnect();
+                    retryAt = System.currentTimeMillis() + RECONNECT_DELAY;
+                }
+            }
+        }
+
+        // Deflates the frame; returns the compressed length, or -1 if it would not get smaller
+        private int deflate(int rawLength) {
+            if (deflated.length < rawLength) {
+                deflated = new byte[rawLength];
+            }
+            deflater.reset();
+            deflater.setInput(frame.array(), 0, rawLength);
+            deflater.finish();
+            int length = deflater.deflate(deflated);
+            return deflater.finished() && length + 4 < rawLength ? length : -1;
+        }
+
+        private boolean connect() {
+            if (socket != null) {
+                return true;
+            }
+            if (System.currentTimeMillis() < retryAt) {
+                return false;
+            }
+            Socket candidate = new Socket();
+            try {
+                candidate.setTcpNoDelay(true);
+                candidate.connect(addresses.get(peerId), CONNECT_TIMEOUT);
+                socket = candidate;
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+                return true;
+            } catch (IOException e) {
+                try {
+                    candidate.close();
+                } catch (IOException ignored) {
+                    // Not connected
+                }
+                retryAt = System.currentTimeMillis() + RECONNECT_DELAY;
+                return false;
+            }
+        }
+
+        private void disconnect() {
+            Socket current = socket;
+            socket = null;
+            out = null;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    // Already broken
+                }
+            }
+        }
+    }
+
+    // Frame under construction, whose bytes the deflater reads without a copy
+    private static class FrameBuffer extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+}
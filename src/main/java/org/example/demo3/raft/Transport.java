@@ -0,0 +1,11 @@
+package org.example.demo3.raft;
+
+/**
+ * Delivers messages between hosts.
+ */
+public interface Transport {
+    /**
+     * Sends the message to the host given by {@link RaftMessage#getToId()}. Delivery is not guaranteed.
+     */
+    void send(RaftMessage message);
+}
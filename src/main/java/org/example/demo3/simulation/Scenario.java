@@ -0,0 +1,104 @@
+package org.example.demo3.simulation;
+
+/**
+ * Parameters of one headless simulation run: cluster size, Raft timing, network and faults.
+ * Times are milliseconds of virtual time.
+ */
+public class Scenario {
+    private int nodes = 5;
+    private long electionTimeoutMin = 5000;
+    private long electionTimeoutMax = 6500;
+    private long heartbeatInterval = 3000;
+    private long latency = 1000; // An animated message of the interactive simulation takes 1 s
+    private long jitter = 0; // Mean of the exponential delay added to the latency
+    private double lossRate = 0.0;
+    private long duration = 60000;
+    private long crashInterval = 0; // The leader is cut off this often and reconnects after half of it, 0 = never
+    private long seed = 1;
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(int nodes) {
+        this.nodes = nodes;
+    }
+
+    public long getElectionTimeoutMin() {
+        return electionTimeoutMin;
+    }
+
+    public void setElectionTimeoutMin(long electionTimeoutMin) {
+        this.electionTimeoutMin = electionTimeoutMin;
+    }
+
+    public long getElectionTimeoutMax() {
+        return electionTimeoutMax;
+    }
+
+    public void setElectionTimeoutMax(long electionTimeoutMax) {
+        this.electionTimeoutMax = electionTimeoutMax;
+    }
+
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    public long getJitter() {
+        return jitter;
+    }
+
+    public void setJitter(long jitter) {
+        this.jitter = jitter;
+    }
+
+    public double getLossRate() {
+        return lossRate;
+    }
+
+    public void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public long getCrashInterval() {
+        return crashInterval;
+    }
+
+    public void setCrashInterval(long crashInterval) {
+        this.crashInterval = crashInterval;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("nodes=%d, timeout=%d-%d ms, heartbeat=%d ms, latency=%d+%d ms, loss=%.3f, crash=%d ms, seed=%d",
+                nodes, electionTimeoutMin, electionTimeoutMax, heartbeatInterval, latency, jitter, lossRate, crashInterval, seed);
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.demo3.simulation;
+
+import java.util.Locale;
+
+/**
+ * Outcome of one simulation run. Times are milliseconds of virtual time; failover times are measured
+ * from the moment the leader is cut off until a leader of a newer term is elected.
+ */
+public class ScenarioResult {
+    private final Scenario scenario;
+    private final long firstLeader; // -1 if no leader was ever elected
+    private final long elections;
+    private final long leadersElected;
+    private final long falseElections; // Started while a reachable leader existed, outside of failovers
+    private final long[] failovers; // Sorted
+    private final long unfinishedFailovers; // Leader cut off but no new leader before the next fault or the end
+    private final double availability; // Fraction of the run with a reachable leader
+    private final long messages;
+    private final long lostMessages;
+    private final long violations;
+    private final long wallMillis;
+
+    ScenarioResult(Scenario scenario, long firstLeader, long elections, long leadersElected, long falseElections,
+                   long[] failovers, long unfinishedFailovers, double availability, long messages, long lostMessages,
+                   long violations, long wallMillis) {
+        this.scenario = scenario;
+        this.firstLeader = firstLeader;
+        this.elections = elections;
+        this.leadersElected = leadersElected;
+        this.falseElections = falseElections;
+        this.failovers = failovers;
+        this.unfinishedFailovers = unfinishedFailovers;
+        this.availability = availability;
+        this.messages = messages;
+        this.lostMessages = lostMessages;
+        this.violations = violations;
+        this.wallMillis = wallMillis;
+    }
+
+    public Scenario getScenario() {
+        return scenario;
+    }
+
+    public long getFirstLeader() {
+        return firstLeader;
+    }
+
+    public long getElections() {
+        return elections;
+    }
+
+    public long getLeadersElected() {
+        return leadersElected;
+    }
+
+    public long getFalseElections() {
+        return falseElections;
+    }
+
+    /**
+     * Elections started while a reachable leader existed, per minute of virtual time. Elections within one
+     * maximum election timeout after a failover are stragglers of that failover and not counted.
+     */
+    public double getFalseElectionRate() {
+        return falseElections * 60000.0 / scenario.getDuration();
+    }
+
+    public int getFailovers() {
+        return failovers.length;
+    }
+
+    /**
+     * Failover times of the run in milliseconds, sorted.
+     */
+    public long[] getFailoverTimes() {
+        return failovers.clone();
+    }
+
+    public long getUnfinishedFailovers() {
+        return unfinishedFailovers;
+    }
+
+    /**
+     * Failover time at the given percentile (0-100), -1 if no failover completed.
+     */
+    public long getFailoverPercentile(double percentile) {
+        if (failovers.length == 0) {
+            return -1;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * failovers.length) - 1;
+        return failovers[Math.max(0, Math.min(failovers.length - 1, index))];
+    }
+
+    public double getAverageFailover() {
+        if (failovers.length == 0) {
+            return -1;
+        }
+        long total = 0;
+        for (long failover : failovers) {
+            total += failover;
+        }
+        return total / (double) failovers.length;
+    }
+
+    public double getAvailability() {
+        return availability;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public long getLostMessages() {
+        return lostMessages;
+    }
+
+    public long getViolations() {
+        return violations;
+    }
+
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    public static String csvHeader() {
+        return "nodes,timeout_min,timeout_max,heartbeat,latency,jitter,loss,duration,crash_interval,seed,"
+                + "first_leader,elections,leaders,false_elections,false_elections_per_min,failovers,unfinished_failovers,"
+                + "failover_avg,failover_p50,failover_p99,failover_max,availability,messages,lost_messages,violations,wall_ms";
+    }
+
+    public String toCsv() {
+        return String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%d,%.4f,%d,%d,%d,%d,%d,%d,%d,%.3f,%d,%d,%.1f,%d,%d,%d,%.5f,%d,%d,%d,%d",
+                scenario.getNodes(), scenario.getElectionTimeoutMin(), scenario.getElectionTimeoutMax(),
+                scenario.getHeartbeatInterval(), scenario.getLatency(), scenario.getJitter(), scenario.getLossRate(), scenario.getDuration(),
+                scenario.getCrashInterval(), scenario.getSeed(),
+                firstLeader, elections, leadersElected, falseElections, getFalseElectionRate(), failovers.length,
+                unfinishedFailovers, getAverageFailover(), getFailoverPercentile(50), getFailoverPercentile(99),
+                getFailoverPercentile(100), availability, messages, lostMessages, violations, wallMillis);
+    }
+
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"nodes\":%d,\"timeoutMin\":%d,\"timeoutMax\":%d,\"heartbeat\":%d,"
+                        + "\"latency\":%d,\"jitter\":%d,\"loss\":%.4f,\"duration\":%d,\"crashInterval\":%d,\"seed\":%d,"
+                        + "\"firstLeader\":%d,\"elections\":%d,\"leaders\":%d,\"falseElections\":%d,"
+                        + "\"falseElectionsPerMinute\":%.3f,\"failovers\":%d,\"unfinishedFailovers\":%d,"
+                        + "\"failoverAvg\":%.1f,\"failoverP50\":%d,\"failoverP99\":%d,\"failoverMax\":%d,"
+                        + "\"availability\":%.5f,\"messages\":%d,\"lostMessages\":%d,\"violations\":%d,\"wallMillis\":%d}",
+                scenario.getNodes(), scenario.getElectionTimeoutMin(), scenario.getElectionTimeoutMax(),
+                scenario.getHeartbeatInterval(), scenario.getLatency(), scenario.getJitter(), scenario.getLossRate(), scenario.getDuration(),
+                scenario.getCrashInterval(), scenario.getSeed(),
+                firstLeader, elections, leadersElected, falseElections, getFalseElectionRate(), failovers.length,
+                unfinishedFailovers, getAverageFailover(), getFailoverPercentile(50), getFailoverPercentile(99),
+                getFailoverPercentile(100), availability, messages, lostMessages, violations, wallMillis);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: first leader %d ms, elections=%d (false %d), failovers=%d p50=%d ms p99=%d ms, "
+                        + "availability=%.2f%%, violations=%d",
+                scenario, firstLeader, elections, falseElections, failovers.length, getFailoverPercentile(50),
+                getFailoverPercentile(99), availability * 100, violations);
+    }
+}
@@ -0,0 +1,127 @@
+package org.example.demo3.simulation;
+
+import org.example.demo3.raft.RaftHost;
+import org.example.demo3.raft.RaftMessage;
+import org.example.demo3.raft.Transport;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Transport on virtual time for hosts driven by {@link RaftHost#runOnce}. Messages are held until
+ * their delivery time and handed to the target host by {@link #deliver}; loss and latency come from
+ * a seeded random generator, so a run is reproducible. Not thread-safe: one simulation drives it from one thread.
+ */
+public class SimulatedNetwork implements Transport {
+    private final Map<Integer, RaftHost> hosts = new HashMap<>();
+    private final Set<Integer> down = new HashSet<>();
+    private final Random random;
+    private long latency = 0;
+    private long jitter = 0;
+    private double lossRate = 0.0;
+    private long now;
+
+    // Messages on the wire by delivery time; the sequence keeps messages of the same time in send order
+    private final PriorityQueue<InFlight> inFlight = new PriorityQueue<>((a, b) -> a.time != b.time
+            ? Long.compare(a.time, b.time) : Long.compare(a.sequence, b.sequence));
+    private long nextSequence;
+
+    private long sentMessages;
+    private long lostMessages;
+
+    private static class InFlight {
+        final long time;
+        final long sequence;
+        final RaftMessage message;
+
+        InFlight(long time, long sequence, RaftMessage message) {
+            this.time = time;
+            this.sequence = sequence;
+            this.message = message;
+        }
+    }
+
+    public SimulatedNetwork(Random random) {
+        this.random = random;
+    }
+
+    public void register(RaftHost host) {
+        hosts.put(host.getId(), host);
+    }
+
+    /**
+     * Sets the one-way delivery delay in milliseconds of virtual time.
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Sets the mean of an exponentially distributed delay added to the latency of every message,
+     * which gives the long tail of a real network and reorders messages.
+     */
+    public void setJitter(long jitter) {
+        this.jitter = jitter;
+    }
+
+    public void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    /**
+     * Cuts a host off the network or reconnects it. Messages to or from a host that is down are dropped.
+     */
+    public void setDown(int hostId, boolean isDown) {
+        if (isDown) {
+            down.add(hostId);
+        } else {
+            down.remove(hostId);
+        }
+    }
+
+    public boolean isDown(int hostId) {
+        return down.contains(hostId);
+    }
+
+    @Override
+    public void send(RaftMessage message) {
+        sentMessages++;
+        if (down.contains(message.getFromId()) || (lossRate > 0 && random.nextDouble() < lossRate)) {
+            lostMessages++;
+            return;
+        }
+        long delay = latency + (jitter > 0 ? (long) (-jitter * Math.log(1 - random.nextDouble())) : 0);
+        inFlight.add(new InFlight(now + delay, nextSequence++, message));
+    }
+
+    /**
+     * Advances the network to the given time and hands every message due by then to its target host.
+     */
+    public void deliver(long time) {
+        now = time;
+        while (!inFlight.isEmpty() && inFlight.peek().time <= time) {
+            RaftMessage message = inFlight.poll().message;
+            RaftHost target = hosts.get(message.getToId());
+            if (target == null || down.contains(message.getToId())) {
+                lostMessages++;
+                continue;
+            }
+            target.receive(message);
+        }
+    }
+
+    public long getSentMessages() {
+        return sentMessages;
+    }
+
+    /**
+     * Messages dropped by loss or because the sender or target was down.
+     */
+    public long getLostMessages() {
+        return lostMessages;
+    }
+}
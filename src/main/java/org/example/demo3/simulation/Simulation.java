@@ -0,0 +1,147 @@
+package org.example.demo3.simulation;
+
+import org.example.demo3.raft.InvariantMonitor;
+import org.example.demo3.raft.RaftConfig;
+import org.example.demo3.raft.RaftHost;
+import org.example.demo3.raft.RaftMetrics;
+import org.example.demo3.raft.RaftNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs one scenario on virtual time: the hosts of a single Raft group are driven by {@link RaftHost#runOnce}
+ * in small steps on the calling thread, so a minute of cluster time takes milliseconds and runs of different
+ * scenarios can execute in parallel. Needs neither JavaFX nor real threads or sleeps.
+ */
+public class Simulation {
+    private final Scenario scenario;
+    private final long step; // 1 ms, or a fiftieth of the shortest timer for slow configurations
+    private long now = 0;
+
+    public Simulation(Scenario scenario) {
+        this.scenario = scenario;
+        this.step = Math.max(1, Math.min(scenario.getHeartbeatInterval(), scenario.getElectionTimeoutMin()) / 50);
+    }
+
+    public ScenarioResult run() {
+        long start = System.nanoTime();
+
+        RaftConfig config = new RaftConfig();
+        config.setElectionTimeoutMin(scenario.getElectionTimeoutMin());
+        config.setElectionTimeoutMax(scenario.getElectionTimeoutMax());
+        config.setHeartbeatInterval(scenario.getHeartbeatInterval());
+        config.setTickInterval(step);
+
+        SimulatedNetwork network = new SimulatedNetwork(new Random(scenario.getSeed()));
+        network.setLatency(scenario.getLatency());
+        network.setJitter(scenario.getJitter());
+        network.setLossRate(scenario.getLossRate());
+        RaftMetrics metrics = new RaftMetrics();
+        InvariantMonitor monitor = new InvariantMonitor();
+
+        int[] members = new int[scenario.getNodes()];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = i + 1;
+        }
+        List<RaftHost> hosts = new ArrayList<>();
+        for (int id : members) {
+            RaftHost host = new RaftHost(id, network, config, () -> now, new Random(scenario.getSeed() * 1_000_003L + id));
+            host.setMetrics(metrics);
+            host.setMonitor(monitor);
+            network.register(host);
+            host.addGroup(0, members);
+            hosts.add(host);
+        }
+
+        long firstLeader = -1;
+        long falseElections = 0;
+        long leaderTime = 0;
+        List<Long> failovers = new ArrayList<>();
+        long unfinishedFailovers = 0;
+
+        long crashInterval = scenario.getCrashInterval();
+        long nextCrash = crashInterval > 0 ? crashInterval : Long.MAX_VALUE;
+        int crashedHost = -1;
+        long reconnectAt = Long.MAX_VALUE;
+        int crashedTerm = 0;
+        long failoverStart = -1; // -1 while no failover is in progress
+        long settledAt = 0; // Candidates of a failover may still time out until one maximum timeout after it
+        long elections = 0;
+        boolean hadLeader = false;
+
+        for (now = 0; now <= scenario.getDuration(); now += step) {
+            // Faults: cut the leader off, reconnect it half an interval later as a follower of the new term
+            if (now >= reconnectAt) {
+                network.setDown(crashedHost, false);
+                crashedHost = -1;
+                reconnectAt = Long.MAX_VALUE;
+            }
+            if (now >= nextCrash) {
+                nextCrash += crashInterval;
+                RaftNode leader = findLeader(hosts, network);
+                // Not in the last half interval, where the failover could not be measured
+                if (leader != null && crashedHost == -1 && now + crashInterval / 2 <= scenario.getDuration()) {
+                    if (failoverStart >= 0) {
+                        unfinishedFailovers++;
+                    }
+                    crashedHost = leader.getId();
+                    crashedTerm = leader.getTerm();
+                    network.setDown(crashedHost, true);
+                    reconnectAt = now + crashInterval / 2;
+                    failoverStart = now;
+                }
+            }
+
+            network.deliver(now);
+            for (RaftHost host : hosts) {
+                if (!network.isDown(host.getId())) {
+                    host.runOnce(now); // A host that is cut off is paused, like a process that hangs
+                }
+            }
+
+            RaftNode leader = findLeader(hosts, network);
+            long started = metrics.getElectionsStarted() - elections;
+            elections += started;
+            if (hadLeader && failoverStart < 0 && now >= settledAt) {
+                falseElections += started; // Nothing was wrong with the leader
+            }
+            if (leader != null) {
+                leaderTime += step;
+                if (firstLeader < 0) {
+                    firstLeader = now;
+                }
+                if (failoverStart >= 0 && leader.getTerm() > crashedTerm) {
+                    failovers.add(now - failoverStart);
+                    failoverStart = -1;
+                    settledAt = now + scenario.getElectionTimeoutMax();
+                }
+            }
+            hadLeader = leader != null;
+        }
+        if (failoverStart >= 0) {
+            unfinishedFailovers++;
+        }
+
+        long[] sorted = failovers.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return new ScenarioResult(scenario, firstLeader, elections, metrics.getLeadersElected(), falseElections,
+                sorted, unfinishedFailovers, leaderTime / (double) (scenario.getDuration() + step),
+                network.getSentMessages(), network.getLostMessages(), monitor.getViolations(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Leader of the newest term among the reachable hosts, null if there is none
+    private static RaftNode findLeader(List<RaftHost> hosts, SimulatedNetwork network) {
+        RaftNode leader = null;
+        for (RaftHost host : hosts) {
+            RaftNode node = host.getGroup(0);
+            if (!network.isDown(host.getId()) && node.isLeader() && (leader == null || node.getTerm() > leader.getTerm())) {
+                leader = node;
+            }
+        }
+        return leader;
+    }
+}
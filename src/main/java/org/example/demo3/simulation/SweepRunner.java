@@ -0,0 +1,160 @@
+package org.example.demo3.simulation;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command-line runner for parameter sweeps without JavaFX. Every combination of the given values is
+ * simulated with {@link Simulation}, once per seed, in parallel on all cores; results are written as
+ * CSV or JSON in grid order, so the output of two commits can be compared line by line.
+ *
+ * Usage: SweepRunner [key=value,value,...] ...
+ *   nodes=3,5          cluster sizes
+ *   timeout=150-300    election timeout ranges in ms (min-max)
+ *   heartbeat=50       heartbeat intervals in ms
+ *   latency=0,10       one-way message latencies in ms
+ *   jitter=0,5         mean of an exponential delay added to the latency, in ms
+ *   loss=0,0.05        message loss rates
+ *   crash=0,10000      the leader is cut off every so many ms, 0 = never
+ *   duration=60000     simulated time per run in ms
+ *   runs=1             seeds per combination, starting at seed=1
+ *   format=csv|json    output format, out=file to write to a file instead of stdout
+ *   threads=N          parallel runs, all cores by default
+ * Defaults match the interactive simulation (5 nodes, 5-6.5 s timeout, 3 s heartbeat, 1 s per message).
+ */
+public class SweepRunner {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> spec = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            spec.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        String format = spec.getOrDefault("format", "csv");
+        if (!format.equals("csv") && !format.equals("json")) {
+            throw new IllegalArgumentException("Unknown format " + format);
+        }
+        int threads = Integer.parseInt(spec.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        List<Scenario> scenarios = grid(spec);
+        long start = System.nanoTime();
+        List<ScenarioResult> results = runAll(scenarios, threads);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        PrintStream out = spec.containsKey("out") ? new PrintStream(Files.newOutputStream(Path.of(spec.get("out")))) : System.out;
+        write(results, format, out);
+        if (out != System.out) {
+            out.close();
+        }
+        System.err.printf("%d runs on %d threads in %d ms%n", results.size(), threads, millis);
+    }
+
+    /**
+     * All combinations of the swept values, in the order nodes, timeout, heartbeat, latency, jitter, loss, crash, seed.
+     */
+    public static List<Scenario> grid(Map<String, String> spec) {
+        for (String key : spec.keySet()) {
+            if (!List.of("nodes", "timeout", "heartbeat", "latency", "jitter", "loss", "crash", "duration", "runs", "seed",
+                    "format", "out", "threads").contains(key)) {
+                throw new IllegalArgumentException("Unknown parameter " + key);
+            }
+        }
+        Scenario defaults = new Scenario();
+        List<String> nodes = values(spec, "nodes", String.valueOf(defaults.getNodes()));
+        List<String> timeouts = values(spec, "timeout", defaults.getElectionTimeoutMin() + "-" + defaults.getElectionTimeoutMax());
+        List<String> heartbeats = values(spec, "heartbeat", String.valueOf(defaults.getHeartbeatInterval()));
+        List<String> latencies = values(spec, "latency", String.valueOf(defaults.getLatency()));
+        List<String> jitters = values(spec, "jitter", String.valueOf(defaults.getJitter()));
+        List<String> losses = values(spec, "loss", String.valueOf(defaults.getLossRate()));
+        List<String> crashes = values(spec, "crash", String.valueOf(defaults.getCrashInterval()));
+        long duration = Long.parseLong(spec.getOrDefault("duration", String.valueOf(defaults.getDuration())));
+        int runs = Integer.parseInt(spec.getOrDefault("runs", "1"));
+        long firstSeed = Long.parseLong(spec.getOrDefault("seed", String.valueOf(defaults.getSeed())));
+
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String n : nodes) {
+            for (String timeout : timeouts) {
+                String[] range = timeout.split("-");
+                for (String heartbeat : heartbeats) {
+                    for (String latency : latencies) {
+                        for (String jitter : jitters) {
+                            for (String loss : losses) {
+                                for (String crash : crashes) {
+                                    for (int run = 0; run < runs; run++) {
+                                        Scenario scenario = new Scenario();
+                                        scenario.setNodes(Integer.parseInt(n));
+                                        scenario.setElectionTimeoutMin(Long.parseLong(range[0]));
+                                        scenario.setElectionTimeoutMax(Long.parseLong(range.length > 1 ? range[1] : range[0]));
+                                        scenario.setHeartbeatInterval(Long.parseLong(heartbeat));
+                                        scenario.setLatency(Long.parseLong(latency));
+                                        scenario.setJitter(Long.parseLong(jitter));
+                                        scenario.setLossRate(Double.parseDouble(loss));
+                                        scenario.setCrashInterval(Long.parseLong(crash));
+                                        scenario.setDuration(duration);
+                                        scenario.setSeed(firstSeed + run);
+                                        scenarios.add(scenario);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return scenarios;
+    }
+
+    private static List<String> values(Map<String, String> spec, String key, String defaultValue) {
+        return List.of(spec.getOrDefault(key, defaultValue).split(","));
+    }
+
+    /**
+     * Runs the scenarios on a pool of the given size and returns their results in the same order.
+     */
+    public static List<ScenarioResult> runAll(List<Scenario> scenarios, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<ScenarioResult>> futures = new ArrayList<>();
+            for (Scenario scenario : scenarios) {
+                futures.add(pool.submit(() -> new Simulation(scenario).run()));
+            }
+            List<ScenarioResult> results = new ArrayList<>();
+            for (Future<ScenarioResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void write(List<ScenarioResult> results, String format, PrintStream out) {
+        if (format.equals("csv")) {
+            out.println(ScenarioResult.csvHeader());
+            for (ScenarioResult result : results) {
+                out.println(result.toCsv());
+            }
+            return;
+        }
+        out.println("[");
+        for (int i = 0; i < results.size(); i++) {
+            out.println("  " + results.get(i).toJson() + (i < results.size() - 1 ? "," : ""));
+        }
+        out.println("]");
+    }
+}
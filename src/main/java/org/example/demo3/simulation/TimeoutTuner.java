@@ -0,0 +1,168 @@
+package org.example.demo3.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Searches election timeout and heartbeat settings for a network profile and recommends the one with the
+ * lowest p99 failover time among those whose false-election rate stays under the target.
+ *
+ * Candidates are a grid scaled to the network's one-way delay: heartbeat intervals of 1/2 to 4 delays,
+ * minimum election timeouts of 2 to 8 heartbeats and ranges of 1/4 to 1 times the minimum. Every candidate
+ * runs with the leader cut off every ten maximum timeouts. The search is a successive halving: all
+ * candidates run on a few seeds in parallel, the best third survives and runs again on twice as many seeds,
+ * until three are left. A failover that does not finish before the next fault counts as the whole interval.
+ *
+ * Usage: TimeoutTuner [key=value] ...
+ *   nodes=5 latency=1000 jitter=0 loss=0   network profile, defaults match the interactive simulation
+ *   target=0.1                              allowed false elections per minute
+ *   failovers=10 runs=2 threads=N           leader faults per run, seeds in the first round, parallel runs
+ */
+public class TimeoutTuner {
+    private static final double[] HEARTBEATS = {0.5, 1, 2, 4}; // Times the one-way delay
+    private static final double[] TIMEOUTS = {2, 3, 5, 8}; // Times the heartbeat interval
+    private static final double[] SPREADS = {0.25, 0.5, 1}; // Times the minimum timeout
+
+    // One setting and everything measured for it so far
+    private static class Candidate {
+        final long heartbeat;
+        final long timeoutMin;
+        final long timeoutMax;
+        final List<Long> failovers = new ArrayList<>();
+        long falseElections;
+        long simulatedTime;
+        int runs;
+        long p99;
+
+        Candidate(long heartbeat, long timeoutMin, long timeoutMax) {
+            this.heartbeat = heartbeat;
+            this.timeoutMin = timeoutMin;
+            this.timeoutMax = timeoutMax;
+        }
+
+        long crashInterval() {
+            return 10 * timeoutMax;
+        }
+
+        void add(ScenarioResult result) {
+            for (long failover : result.getFailoverTimes()) {
+                failovers.add(failover);
+            }
+            for (long i = 0; i < result.getUnfinishedFailovers(); i++) {
+                failovers.add(crashInterval());
+            }
+            falseElections += result.getFalseElections();
+            simulatedTime += result.getScenario().getDuration();
+            runs++;
+            long[] sorted = failovers.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            p99 = sorted.length == 0 ? Long.MAX_VALUE : sorted[Math.max(0, (int) Math.ceil(0.99 * sorted.length) - 1)];
+        }
+
+        double falseElectionRate() {
+            return simulatedTime == 0 ? 0.0 : falseElections * 60000.0 / simulatedTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "heartbeat=%d ms, timeout=%d-%d ms: p99 failover=%d ms, false elections=%.3f/min (%d runs)",
+                    heartbeat, timeoutMin, timeoutMax, p99, falseElectionRate(), runs);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> spec = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            spec.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        Scenario profile = new Scenario();
+        profile.setNodes(Integer.parseInt(spec.getOrDefault("nodes", String.valueOf(profile.getNodes()))));
+        profile.setLatency(Long.parseLong(spec.getOrDefault("latency", String.valueOf(profile.getLatency()))));
+        profile.setJitter(Long.parseLong(spec.getOrDefault("jitter", String.valueOf(profile.getJitter()))));
+        profile.setLossRate(Double.parseDouble(spec.getOrDefault("loss", String.valueOf(profile.getLossRate()))));
+        double target = Double.parseDouble(spec.getOrDefault("target", "0.1"));
+        int failovers = Integer.parseInt(spec.getOrDefault("failovers", "10"));
+        int runs = Integer.parseInt(spec.getOrDefault("runs", "2"));
+        int threads = Integer.parseInt(spec.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        long start = System.nanoTime();
+        List<Candidate> finalists = tune(profile, target, failovers, runs, threads);
+        System.out.printf("Network: %d nodes, latency %d+%d ms, loss %.3f; target %.3f false elections/min; %.1f s%n",
+                profile.getNodes(), profile.getLatency(), profile.getJitter(), profile.getLossRate(), target,
+                (System.nanoTime() - start) / 1e9);
+        for (Candidate candidate : finalists) {
+            System.out.println("  " + candidate);
+        }
+        Candidate best = finalists.get(0);
+        if (best.falseElectionRate() > target) {
+            System.out.println("No setting meets the target; the closest is listed first.");
+        }
+        System.out.printf("Recommended: heartbeat %d ms, election timeout %d + random.nextInt(%d) ms%n",
+                best.heartbeat, best.timeoutMin, best.timeoutMax - best.timeoutMin);
+    }
+
+    /**
+     * Runs the search and returns the last candidates, best first.
+     */
+    static List<Candidate> tune(Scenario profile, double target, int failovers, int runs, int threads) throws InterruptedException {
+        long delay = Math.max(5, profile.getLatency() + 2 * profile.getJitter());
+        List<Candidate> candidates = new ArrayList<>();
+        for (double h : HEARTBEATS) {
+            long heartbeat = Math.max(1, Math.round(h * delay));
+            for (double t : TIMEOUTS) {
+                long timeoutMin = Math.round(t * heartbeat);
+                for (double s : SPREADS) {
+                    candidates.add(new Candidate(heartbeat, timeoutMin, timeoutMin + Math.max(1, Math.round(s * timeoutMin))));
+                }
+            }
+        }
+
+        // Feasible candidates first, then by p99 failover; infeasible ones by how far they miss the target
+        Comparator<Candidate> ranking = Comparator.comparing((Candidate c) -> c.falseElectionRate() > target)
+                .thenComparingDouble(c -> c.falseElectionRate() > target ? c.falseElectionRate() : 0)
+                .thenComparingLong(c -> c.p99);
+
+        long nextSeed = 1;
+        int seeds = runs;
+        while (true) {
+            List<Scenario> scenarios = new ArrayList<>();
+            List<Candidate> owners = new ArrayList<>();
+            for (Candidate candidate : candidates) {
+                for (int run = 0; run < seeds - candidate.runs; run++) {
+                    Scenario scenario = new Scenario();
+                    scenario.setNodes(profile.getNodes());
+                    scenario.setLatency(profile.getLatency());
+                    scenario.setJitter(profile.getJitter());
+                    scenario.setLossRate(profile.getLossRate());
+                    scenario.setHeartbeatInterval(candidate.heartbeat);
+                    scenario.setElectionTimeoutMin(candidate.timeoutMin);
+                    scenario.setElectionTimeoutMax(candidate.timeoutMax);
+                    scenario.setCrashInterval(candidate.crashInterval());
+                    scenario.setDuration(candidate.crashInterval() * (failovers + 1));
+                    scenario.setSeed(nextSeed + candidate.runs + run);
+                    scenarios.add(scenario);
+                    owners.add(candidate);
+                }
+            }
+            List<ScenarioResult> results = SweepRunner.runAll(scenarios, threads);
+            for (int i = 0; i < results.size(); i++) {
+                owners.get(i).add(results.get(i));
+            }
+            candidates.sort(ranking);
+            if (candidates.size() <= 3) {
+                return candidates;
+            }
+            candidates = new ArrayList<>(candidates.subList(0, Math.max(3, candidates.size() / 3)));
+            seeds *= 2;
+        }
+    }
+}
@@ -1,33 +1,73 @@
 package org.example.demo3.splitvote;
 
-import javafx.animation.KeyFrame;
 import javafx.animation.PathTransition;
-import javafx.animation.Timeline;
-import javafx.application.Platform;
 import javafx.scene.Group;
 import javafx.scene.control.Label;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.*;
 import javafx.util.Duration;
-
+import org.example.demo3.EventLog;
+import org.example.demo3.EventType;
+import org.example.demo3.ViewRefreshPulse;
+import org.example.demo3.raft.InvariantMonitor;
+import org.example.demo3.timer.SimulationClock;
+import org.example.demo3.timer.Timeout;
+import org.example.demo3.timer.WheelTimer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.stream.Stream;
 
 public class SplitVoteCluster {
     private List<SplitVoteNode> nodes = new ArrayList<>();
     private Pane pane;
 
-    private SplitVoteNode leaderNode;
+    // Checks that no two nodes lead in the same term
+    private final InvariantMonitor monitor = new InvariantMonitor();
+
+    // Simulated time of the cluster; its speed scales every timer, message and countdown alike
+    private final SimulationClock clock = new SimulationClock();
+
+    // One timing wheel for all election timeouts, heartbeats and message deliveries of this cluster
+    private WheelTimer timer = new WheelTimer(10, clock);
+
+    // Every node keeps its term and vote in a file here, so it never votes twice in one term.
+    // Created for each run and deleted when the cluster stops, so no simulation inherits an earlier term.
+    private final Path dataDirectory;
+    private final List<Thread> nodeThreads = new ArrayList<>();
+    private boolean stopped = false; // FX thread only
+    private Timeout heartbeatTimer = timer.newTimeout(this::heartbeatRound);
+    private static final long HEARTBEAT_INTERVAL = 3000;
+    private static final long MESSAGE_LATENCY = 1000; // Simulated travel time of a message
 
-    private List<Timeline> timelines = new ArrayList<>();
+    // Message animations are skipped when they would last only a frame or two, or too many are on screen
+    private static final long MIN_ANIMATION_MILLIS = 40;
+    private static final int MAX_ANIMATIONS = 100;
+    private final List<PathTransition> animations = new ArrayList<>(); // FX thread only
 
     private Label messageLabel; // For global messages
 
+    // Bounded history of everything that happened in this cluster
+    private EventLog eventLog = new EventLog(EventLog.DEFAULT_CAPACITY, clock);
+
+    // Applies all pending view changes once per frame instead of one Platform.runLater per update
+    private ViewRefreshPulse pulse;
+
     public SplitVoteCluster(int numNodes, Pane pane, Label messageLabel) {
         this.pane = pane;
         this.messageLabel = messageLabel;
+        try {
+            this.dataDirectory = Files.createTempDirectory("raft-split-vote");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.pulse = new ViewRefreshPulse(messageLabel, clock);
 
         // Arrange nodes in a circle
         double centerX = pane.getPrefWidth() / 2;
@@ -43,6 +83,10 @@ public class SplitVoteCluster {
 
             // Add node to the pane
             pane.getChildren().addAll(node.getCircle(), node.getLabel(), node.getDownText());
+            pulse.register(node.getView());
+
+            // Clicking a node crashes it, clicking it again restarts it from disk
+            node.getCircle().setOnMouseClicked(event -> toggleCrash(node));
         }
 
         // Draw network lines (dashed lines)
@@ -59,6 +103,8 @@ public class SplitVoteCluster {
             }
         }
 
+        pulse.start();
+
         // Prepare the split vote scenario
         prepareSplitVoteScenario();
     }
@@ -69,12 +115,11 @@ public class SplitVoteCluster {
             Random rand = new Random();
             SplitVoteNode downNode = nodes.get(rand.nextInt(nodes.size()));
             downNode.setDown(true);
-            log("Node n" + downNode.getId() + " has been randomly set to 'down'.");
+            log(downNode.getId(), downNode.getTerm(), EventType.INFO, "Node n" + downNode.getId() + " has been randomly set to 'down'.");
         }
 
-        // All active nodes start in Term 1 as followers
+        // All active nodes start as followers; their state files are new, so they are in Term 1 already
         for (SplitVoteNode node : getActiveNodes()) {
-            node.setTerm(1);
             node.setState("follower");
             node.resetElectionTimeout();
         }
@@ -93,7 +138,7 @@ public class SplitVoteCluster {
             // Set candidates to "candidate" state and have them vote for themselves
             for (SplitVoteNode candidate : candidateNodes) {
                 candidate.becomeCandidate();
-                log("Node n" + candidate.getId() + " becomes a candidate in Term " + candidate.getTerm() + ".");
+                log(candidate.getId(), candidate.getTerm(), EventType.ELECTION, "Node n" + candidate.getId() + " becomes a candidate in Term " + candidate.getTerm() + ".");
             }
 
             // Distribute votes equally among candidates (each candidate votes for itself)
@@ -120,7 +165,7 @@ public class SplitVoteCluster {
         // For simplicity, each candidate receives one vote from itself
         for (SplitVoteNode candidate : candidates) {
             candidate.receiveVote(candidate.getId()); // Each candidate votes for itself
-            log("Node n" + candidate.getId() + " receives a vote from itself.");
+            log(candidate.getId(), candidate.getTerm(), EventType.VOTE, "Node n" + candidate.getId() + " receives a vote from itself.");
         }
     }
 
@@ -129,17 +174,9 @@ public class SplitVoteCluster {
         Random rand = new Random();
         SplitVoteNode selectedFollower = followers.get(rand.nextInt(followers.size()));
         selectedFollower.setElectionTimeout(1000); // 1 second for quick timeout
-        log("Node n" + selectedFollower.getId() + " has a faster election timeout.");
+        log(selectedFollower.getId(), selectedFollower.getTerm(), EventType.INFO, "Node n" + selectedFollower.getId() + " has a faster election timeout.");
 
-        // Start a timeline to check for election timeouts
-        Timeline electionTimeline = new Timeline(new KeyFrame(Duration.millis(100), e -> {
-            for (SplitVoteNode follower : followers) {
-                follower.checkElectionTimeout();
-            }
-        }));
-        electionTimeline.setCycleCount(Timeline.INDEFINITE);
-        electionTimeline.play();
-        timelines.add(electionTimeline);
+        // The follower's own election timer in the timing wheel fires the election
     }
 
     public List<SplitVoteNode> getNodes() {
@@ -160,55 +197,79 @@ public class SplitVoteCluster {
         node.nodeTimeoutExpired(); // Delegate to node method
     }
 
+    public InvariantMonitor getMonitor() {
+        return monitor;
+    }
+
     /**
-     * Synchronized method to set the Leader.
-     * Returns true if the Leader was successfully set, false if a Leader already exists.
+     * Sends AppendEntries (heartbeats) from the Leader to Followers.
      */
-    public synchronized boolean attemptToSetLeader(SplitVoteNode node) {
-        if (leaderNode == null) {
-            leaderNode = node;
-            return true;
+    public void sendHeartbeats() {
+        // The same timer is re-armed for every new leader instead of creating a Timeline
+        timer.reschedule(heartbeatTimer, HEARTBEAT_INTERVAL);
+    }
+
+    private void heartbeatRound() {
+        // Every node that believes it leads sends; a stale leader steps down once it sees a newer term
+        for (SplitVoteNode leader : getActiveNodes()) {
+            if (!leader.getState().equals("leader")) {
+                continue;
+            }
+            leader.log(EventType.HEARTBEAT, "Leader n" + leader.getId() + " sends AppendEntries (heartbeats) to Followers.");
+            for (SplitVoteNode node : getActiveNodes()) {
+                if (node != leader) {
+                    leader.sendHeartbeat(node);
+                }
+            }
         }
-        return false;
+        timer.reschedule(heartbeatTimer, HEARTBEAT_INTERVAL);
     }
 
     /**
-     * Synchronized method to get the current Leader.
+     * Crashes a running node or restarts a crashed one.
      */
-    public synchronized SplitVoteNode getLeaderNode() {
-        return leaderNode;
+    public void toggleCrash(SplitVoteNode node) {
+        if (stopped) {
+            return; // The state files are deleted
+        }
+        if (node.isDown()) {
+            node.restart();
+            updateMessage("Node n" + node.getId() + " restarts from its persisted state.");
+            return;
+        }
+        node.crash();
+        updateMessage("Node n" + node.getId() + " crashed.");
+    }
+
+    public WheelTimer getTimer() {
+        return timer;
     }
 
     /**
-     * Synchronized method to set the Leader node.
+     * Current simulated time in milliseconds.
      */
-    public synchronized void setLeaderNode(SplitVoteNode node) {
-        this.leaderNode = node;
+    public long now() {
+        return clock.getAsLong();
+    }
+
+    public double getSpeed() {
+        return clock.getSpeed();
     }
 
     /**
-     * Sends AppendEntries (heartbeats) from the Leader to Followers.
+     * Runs the simulation at the given multiple of real time, from 0.1 to 100.
      */
-    public void sendHeartbeats() {
-        Timeline timeline = new Timeline(new KeyFrame(Duration.seconds(3), e -> {
-            SplitVoteNode currentLeader;
-            synchronized (this) {
-                currentLeader = leaderNode;
+    public void setSpeed(double speed) {
+        clock.setSpeed(speed);
+        pulse.post(() -> {
+            for (PathTransition animation : animations) {
+                animation.setRate(clock.getSpeed());
             }
-            if (currentLeader != null) {
-                currentLeader.log("Leader n" + currentLeader.getId() + " sends AppendEntries (heartbeats) to Followers.");
-                for (SplitVoteNode node : getActiveNodes()) {
-                    if (node != currentLeader) {
-                        sendMessage(currentLeader, node, "AppendEntries", Color.PINK);
-                    }
-                }
-            }
-        }));
-        timeline.setCycleCount(Timeline.INDEFINITE);
-        timeline.play();
+        });
+    }
 
-        // Track timelines to allow pausing/resuming
-        timelines.add(timeline);
+    public Path getDataDirectory() {
+        return dataDirectory;
     }
 
     public void start() {
@@ -217,48 +278,106 @@ public class SplitVoteCluster {
             t.setDaemon(true); // JVM can exit if the main thread ends
             t.start();
         }
+        timer.start();
     }
 
     public void pause() {
         for (SplitVoteNode node : nodes) {
             node.pause();
         }
-        for (Timeline timeline : timelines) {
-            timeline.pause();
-        }
+        timer.pause();
+        clock.pause();
+        pulse.post(() -> animations.forEach(PathTransition::pause));
     }
 
     public void resume() {
         for (SplitVoteNode node : nodes) {
             node.resume();
         }
-        for (Timeline timeline : timelines) {
-            timeline.play();
-        }
+        clock.resume();
+        timer.resume();
+        pulse.post(() -> animations.forEach(PathTransition::play));
     }
 
     public void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
         for (SplitVoteNode node : nodes) {
             node.stop();
         }
-        for (Timeline timeline : timelines) {
-            timeline.stop();
+        timer.stop();
+        pulse.flushAndStop();
+
+        // The node threads may still be syncing their state files; close them only once the threads are gone
+        for (Thread t : nodeThreads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return; // Closing a file under a running node thread could kill it; leave them in the temp directory
+            }
+        }
+        nodeThreads.clear();
+        for (SplitVoteNode node : nodes) {
+            node.closeHardState();
+        }
+        deleteDataDirectory();
+    }
+
+    private void deleteDataDirectory() {
+        try (Stream<Path> files = Files.list(dataDirectory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+            Files.delete(dataDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        timelines.clear();
     }
 
     public void log(String message) {
-        // Append global messages to the GUI label
-        Platform.runLater(() -> {
-            messageLabel.setText(message);
-        });
+        log(-1, 0, EventType.INFO, message);
+    }
+
+    public void log(int nodeId, int term, EventType type, String message) {
+        // Keep the history in the event log, the GUI label only shows the latest message
+        eventLog.append(nodeId, term, type, message);
+        pulse.postMessage(message);
+    }
+
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    public long getMessageLatency() {
+        return MESSAGE_LATENCY;
+    }
+
+    public long getHeartbeatInterval() {
+        return HEARTBEAT_INTERVAL;
     }
 
-    public void sendMessage(SplitVoteNode fromNode, SplitVoteNode toNode, String messageType, Color color) {
+    /**
+     * Sends a request or response of a call in the given term; see {@link org.example.demo3.RpcCalls}.
+     */
+    public void sendMessage(SplitVoteNode fromNode, SplitVoteNode toNode, String messageType, Color color, int term, long correlationId) {
         if (fromNode.isDown() || toNode.isDown()) {
             return; // Do not send messages to or from failed nodes
         }
-        Platform.runLater(() -> {
+        // Messages arrive after the latency in simulated time
+        SplitVoteMessage message = new SplitVoteMessage(messageType, fromNode.getId(), fromNode, term, correlationId);
+        timer.schedule(() -> toNode.receiveMessage(message), MESSAGE_LATENCY);
+
+        // The animation only shows the delivery; at high speeds it is skipped rather than falling behind
+        if (MESSAGE_LATENCY / clock.getSpeed() < MIN_ANIMATION_MILLIS) {
+            return;
+        }
+        pulse.post(() -> {
+            if (animations.size() >= MAX_ANIMATIONS) {
+                return;
+            }
             // Create message representation
             Circle messageCircle = new Circle(10, color);
             Label messageLabelText = new Label(messageType);
@@ -271,50 +390,33 @@ public class SplitVoteCluster {
             pane.getChildren().add(messageGroup);
 
             // Create path for the message to move along
-            Path path = new Path();
+            javafx.scene.shape.Path path = new javafx.scene.shape.Path();
             MoveTo moveTo = new MoveTo(fromNode.getCircle().getCenterX(), fromNode.getCircle().getCenterY());
             LineTo lineTo = new LineTo(toNode.getCircle().getCenterX(), toNode.getCircle().getCenterY());
             path.getElements().addAll(moveTo, lineTo);
 
-            // Animate the message along the path
+            // Animate the message along the path, at the current speed of the simulation
             PathTransition pt = new PathTransition();
-            pt.setDuration(Duration.seconds(1));
+            pt.setDuration(Duration.millis(MESSAGE_LATENCY));
+            pt.setRate(clock.getSpeed());
             pt.setPath(path);
             pt.setNode(messageGroup);
             pt.setOnFinished(e -> {
                 pane.getChildren().remove(messageGroup);
-                // Process the message upon arrival
-                SplitVoteMessage message = new SplitVoteMessage(messageType, fromNode.getId(), fromNode, fromNode.getTerm());
-                toNode.receiveMessage(message);
+                animations.remove(pt);
             });
+            animations.add(pt);
             pt.play();
         });
     }
 
     // Method to update global messages
     public void updateMessage(String message) {
-        Platform.runLater(() -> {
-            messageLabel.setText(message);
-        });
+        pulse.postMessage(message);
     }
 
     // Helper method for logging
     private void clusterLog(String message) {
         log(message);
     }
-
-    // Method to finalize leader election
-    public void finalizeLeader(SplitVoteNode newLeader) {
-        synchronized (this) {
-            if (leaderNode == null) {
-                leaderNode = newLeader;
-                leaderNode.setState("leader");
-                log("Node n" + leaderNode.getId() + " has been elected as the Leader in Term " + leaderNode.getTerm() + ".");
-                messageLabel.setText("Node n" + leaderNode.getId() + " is elected as Leader in Term " + leaderNode.getTerm() + ".");
-
-                // Start sending heartbeats
-                sendHeartbeats();
-            }
-        }
-    }
 }
@@ -8,6 +8,7 @@ public class SplitVoteMessage {
     private int fromId; // ID of the sending node
     private SplitVoteNode fromNode; // Reference to the sending node
     private int term; // Current term of the message
+    private long correlationId; // Id of the call a request belongs to or a response answers, 0 if none
 
     /**
      * Constructor for SplitVoteMessage.
@@ -18,10 +19,20 @@ public class SplitVoteMessage {
      * @param term     Current term.
      */
     public SplitVoteMessage(String type, int fromId, SplitVoteNode fromNode, int term) {
+        this(type, fromId, fromNode, term, 0);
+    }
+
+    /**
+     * Constructor for a request or response of a call.
+     *
+     * @param correlationId Id of the call, see {@link org.example.demo3.RpcCalls}.
+     */
+    public SplitVoteMessage(String type, int fromId, SplitVoteNode fromNode, int term, long correlationId) {
         this.type = type;
         this.fromId = fromId;
         this.fromNode = fromNode;
         this.term = term;
+        this.correlationId = correlationId;
     }
 
     // Getter methods
@@ -40,4 +51,8 @@ public class SplitVoteMessage {
     public int getTerm() {
         return term;
     }
+
+    public long getCorrelationId() {
+        return correlationId;
+    }
 }
@@ -1,37 +1,45 @@
 package org.example.demo3.splitvote;
 
-import javafx.application.Platform;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import javafx.scene.text.Text;
 
-import java.text.DecimalFormat;
+import org.example.demo3.EventType;
+import org.example.demo3.MessageInbox;
+import org.example.demo3.RpcCalls;
+import org.example.demo3.NodeViewModel;
+import org.example.demo3.VoteCount;
+import org.example.demo3.storage.HardStateStore;
+import org.example.demo3.timer.Timeout;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 public class SplitVoteNode implements Runnable {
+    // A RequestVote is sent again if no Vote came back within two message latencies and some slack
+    private static final long VOTE_RETRY_INTERVAL = 2500;
+    private static final int VOTE_ATTEMPTS = 3;
+
     private int id;
     private String state = "follower";
     private int term = 1; // Start with Term 1
     private Integer votedFor = null;
     private SplitVoteCluster cluster;
     private long electionTimeout = 5000 + new Random().nextInt(1500); // Default timeout between 5-6.5s
-    private long lastHeartbeat = System.currentTimeMillis();
-    private boolean stopFlag = false;
+    private long lastHeartbeat; // Simulated time of the cluster
+    private volatile boolean stopFlag = false;
 
-    // Visualization components
-    private Circle circle;
-    private Text label;
-    private Text downText; // 'X' text to indicate node failure
+    // Visualization state, rendered by the cluster's refresh pulse
+    private final NodeViewModel view;
 
     private Random random = new Random();
 
-    // Message queue for incoming messages
-    private BlockingQueue<SplitVoteMessage> messageQueue = new LinkedBlockingQueue<>();
+    // Lock-free inbox for incoming messages; a full inbox drops messages like a lossy network
+    private final MessageInbox<SplitVoteMessage> messageQueue = new MessageInbox<>(1024);
 
     // To track received votes
-    private Set<Integer> votesReceived = new HashSet<>();
+    private final VoteCount votesReceived = new VoteCount();
 
     private boolean isPaused = false;
 
@@ -40,44 +48,54 @@ public class SplitVoteNode implements Runnable {
     // Control for the election timer
     private boolean electionTimerRunning = true; // Indicates if the election timer is active
 
+    // Fires the election timeout through the cluster's timing wheel instead of polling
+    private final Timeout electionTimer;
+
+    // Pending RequestVote and AppendEntries calls, answered by Vote and Ack with the same correlation id
+    private final RpcCalls<SplitVoteNode> calls;
+
+    // Durable term and vote, forced to disk before any message sent in the new term or after the new vote
+    private HardStateStore hardState;
+    private final Object hardStateLock = new Object(); // Guards the store and the outbox, synced outside the state lock
+
+    // Messages sent while the term or vote was not on disk yet, sent by the next sync
+    private final List<Runnable> outbox = new ArrayList<>();
+
     // Synchronization lock for state transitions
     private final Object stateLock = new Object();
 
     public SplitVoteNode(int id, SplitVoteCluster cluster, double x, double y) {
         this.id = id;
         this.cluster = cluster;
+        this.lastHeartbeat = cluster.now();
 
         // Initialize visualization components
-        circle = new Circle(30, Color.LIGHTBLUE);
-        circle.setCenterX(x);
-        circle.setCenterY(y);
+        view = new NodeViewModel(id, x, y, "Heartbeats sent.");
+        electionTimer = cluster.getTimer().newTimeout(this::electionTimerExpired);
+        calls = new RpcCalls<>(cluster.getTimer(), cluster::now, this::sendCall);
 
-        label = new Text();
-        label.setX(x - 40);
-        label.setY(y + 50);
+        // Create the state file of this node in the directory of the run; a restart reads it back
+        openHardState();
 
-        // Text to display that the node has failed
-        downText = new Text("X");
-        downText.setStyle("-fx-font-size: 40px; -fx-font-weight: bold; -fx-fill: red;");
-        downText.setX(x - 10);
-        downText.setY(y + 15);
-        downText.setVisible(false);
-
-        // Initial label update
-        updateLabel(electionTimeout);
+        // Arm the election timer and show the initial label
+        updateElectionTimer();
     }
 
     // Getters for visualization
+    public NodeViewModel getView() {
+        return view;
+    }
+
     public Circle getCircle() {
-        return circle;
+        return view.getCircle();
     }
 
     public Text getLabel() {
-        return label;
+        return view.getLabel();
     }
 
     public Text getDownText() {
-        return downText;
+        return view.getDownText();
     }
 
     public int getId() {
@@ -86,13 +104,7 @@ public class SplitVoteNode implements Runnable {
 
     public void setDown(boolean down) {
         isDown = down;
-        Platform.runLater(() -> {
-            downText.setVisible(isDown);
-            if (isDown) {
-                circle.setFill(Color.GRAY);
-                label.setText("ID: n" + id + "\nDOWN");
-            }
-        });
+        view.setDown(down);
     }
 
     public boolean isDown() {
@@ -102,7 +114,7 @@ public class SplitVoteNode implements Runnable {
     public void setElectionTimeout(long timeout) {
         synchronized (stateLock) {
             this.electionTimeout = timeout;
-            updateLabel(electionTimeout);
+            updateElectionTimer();
         }
     }
 
@@ -115,6 +127,7 @@ public class SplitVoteNode implements Runnable {
     public void setLastHeartbeat(long time) {
         synchronized (stateLock) {
             this.lastHeartbeat = time;
+            updateElectionTimer();
         }
     }
 
@@ -124,8 +137,15 @@ public class SplitVoteNode implements Runnable {
 
     public void run() {
         while (!stopFlag) {
+            SplitVoteMessage message;
+            try {
+                message = messageQueue.take(); // Wait for messages and election timeouts instead of polling
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                continue;
+            }
             synchronized (this) {
-                if (isPaused || isDown) {
+                while ((isPaused || isDown) && !stopFlag) {
                     try {
                         wait();
                     } catch (InterruptedException e) {
@@ -133,57 +153,52 @@ public class SplitVoteNode implements Runnable {
                     }
                 }
             }
-            if (isDown) {
-                continue; // Skip processing if node is down
-            }
-
-            if (electionTimerRunning) {
-                long elapsedTime;
-                long remainingTime;
-                synchronized (stateLock) {
-                    elapsedTime = System.currentTimeMillis() - lastHeartbeat;
-                    remainingTime = electionTimeout - elapsedTime;
-                }
-
-                if (remainingTime <= 0) {
-                    cluster.nodeTimeoutExpired(this);
-                } else if (state.equals("follower")) {
-                    updateLabel(remainingTime);
-                }
+            if (stopFlag) {
+                break;
             }
+            processMessage(message);
+            syncHardState();
+        }
+    }
 
-            // Process incoming messages
-            processIncomingMessages();
+    private void processMessage(SplitVoteMessage message) {
+        switch (message.getType()) {
+            case "ElectionTimeout":
+                handleElectionTimeout();
+                break;
+            case "RequestVote":
+                handleRequestVote(message);
+                break;
+            case "Vote":
+                handleVote(message);
+                break;
+            case "AppendEntries":
+                handleAppendEntries(message);
+                break;
+            case "Ack":
+                handleAck(message);
+                break;
+        }
+    }
 
-            try {
-                Thread.sleep(100); // Frequent updates for smoother countdown display
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+    // Runs on the timer thread. A timeout dropped by a full inbox would leave the node without one, so retry a tick later
+    private void electionTimerExpired() {
+        if (!messageQueue.offer(new SplitVoteMessage("ElectionTimeout", id, this, 0))) {
+            cluster.getTimer().reschedule(electionTimer, 1);
         }
     }
 
-    private void processIncomingMessages() {
-        if (isDown) {
-            return; // Do not process messages if node is down
-        }
-        SplitVoteMessage message;
-        while ((message = messageQueue.poll()) != null) {
-            switch (message.getType()) {
-                case "RequestVote":
-                    handleRequestVote(message);
-                    break;
-                case "Vote":
-                    handleVote(message);
-                    break;
-                case "AppendEntries":
-                    handleAppendEntries(message);
-                    break;
-                case "Ack":
-                    handleAck(message);
-                    break;
+    private void handleElectionTimeout() {
+        synchronized (stateLock) {
+            if (!electionTimerRunning) {
+                return; // Timer was stopped after it fired
+            }
+            if (cluster.now() - lastHeartbeat < electionTimeout) {
+                updateElectionTimer(); // Timer was re-armed after it fired, or fired a tick early
+                return;
             }
         }
+        cluster.nodeTimeoutExpired(this);
     }
 
     private void handleRequestVote(SplitVoteMessage message) {
@@ -191,6 +206,7 @@ public class SplitVoteNode implements Runnable {
             if (message.getTerm() > term) {
                 term = message.getTerm();
                 votedFor = null;
+                persistHardState();
                 setState("follower");
 
                 // Reset election timer
@@ -198,28 +214,32 @@ public class SplitVoteNode implements Runnable {
                 resetElectionTimeout();
 
                 updateVisualization();
-                cluster.log("Node n" + id + " reverts to Follower in Term " + term + ".");
+                log(EventType.STATE, "Node n" + id + " reverts to Follower in Term " + term + ".");
             }
 
             if ((votedFor == null || votedFor.equals(message.getFromId())) && message.getTerm() == term) {
                 votedFor = message.getFromId();
-                lastHeartbeat = System.currentTimeMillis(); // Reset election timeout
-                updateLabel(electionTimeout);
-                cluster.sendMessage(this, message.getFromNode(), "Vote", Color.LIGHTGREEN);
-                log("Node n" + id + " votes for Node n" + message.getFromId() + " in Term " + term + ".");
+                persistHardState();
+                lastHeartbeat = cluster.now(); // Reset election timeout
+                updateElectionTimer();
+                send(message.getFromNode(), "Vote", Color.LIGHTGREEN, term, message.getCorrelationId());
+                log(EventType.VOTE, "Node n" + id + " votes for Node n" + message.getFromId() + " in Term " + term + ".");
             } else {
                 // Already voted in this term
-                log("Node n" + id + " has already voted in Term " + term + ".");
+                log(EventType.VOTE, "Node n" + id + " has already voted in Term " + term + ".");
             }
         }
     }
 
     private void handleVote(SplitVoteMessage message) {
+        if (!calls.complete(message.getCorrelationId())) {
+            return; // Answer to a retried request that was already counted, or to a call of an earlier election
+        }
         synchronized (stateLock) {
             if (state.equals("candidate") && message.getTerm() == term) {
                 votesReceived.add(message.getFromId());
-                log("Node n" + id + " receives a vote from Node n" + message.getFromId() + " in Term " + term + ".");
-                if (votesReceived.size() >= (cluster.getActiveNodes().size() / 2 + 1)) {
+                log(EventType.VOTE, "Node n" + id + " receives a vote from Node n" + message.getFromId() + " in Term " + term + ".");
+                if (votesReceived.isMajority(cluster.getNodes().size())) {
                     becomeLeader();
                 }
             }
@@ -231,6 +251,7 @@ public class SplitVoteNode implements Runnable {
             if (message.getTerm() > term) {
                 term = message.getTerm();
                 votedFor = null;
+                persistHardState();
                 setState("follower");
 
                 // Reset election timer
@@ -238,13 +259,14 @@ public class SplitVoteNode implements Runnable {
                 resetElectionTimeout();
 
                 updateVisualization();
-                cluster.log("Node n" + id + " reverts to Follower in Term " + term + ".");
+                log(EventType.STATE, "Node n" + id + " reverts to Follower in Term " + term + ".");
             }
 
             if (message.getTerm() >= term) {
                 if (message.getTerm() > term) {
                     term = message.getTerm();
                     votedFor = null;
+                    persistHardState();
                     setState("follower");
 
                     // Reset election timer
@@ -252,17 +274,26 @@ public class SplitVoteNode implements Runnable {
                     resetElectionTimeout();
 
                     updateVisualization();
-                    cluster.log("Node n" + id + " reverts to Follower in Term " + term + ".");
+                    log(EventType.STATE, "Node n" + id + " reverts to Follower in Term " + term + ".");
+                }
+                if (state.equals("candidate")) {
+                    // Another node won the election of this term
+                    setState("follower");
+                    electionTimerRunning = true;
+                    updateVisualization();
+                    log(EventType.STATE, "Node n" + id + " reverts to Follower in Term " + term + ".");
                 }
-                lastHeartbeat = System.currentTimeMillis();
-                cluster.sendMessage(this, message.getFromNode(), "Ack", Color.PINK);
-                log("Node n" + id + " acknowledges AppendEntries from Leader n" + message.getFromId() + " in Term " + term + ".");
+                lastHeartbeat = cluster.now();
+                updateElectionTimer();
+                send(message.getFromNode(), "Ack", Color.PINK, term, message.getCorrelationId());
+                log(EventType.HEARTBEAT, "Node n" + id + " acknowledges AppendEntries from Leader n" + message.getFromId() + " in Term " + term + ".");
             }
         }
     }
 
     private void handleAck(SplitVoteMessage message) {
-        // For this simulation, the Leader does not require Acks
+        // For this simulation, the Leader does not require Acks; matching the Ack to its call discards duplicates and stale ones
+        calls.complete(message.getCorrelationId());
     }
 
     public void receiveMessage(SplitVoteMessage message) {
@@ -289,6 +320,8 @@ public class SplitVoteNode implements Runnable {
 
     public void stop() {
         stopFlag = true;
+        // Wake up the thread if it waits for messages; if the inbox is full, it does not wait and sees the flag
+        messageQueue.offer(new SplitVoteMessage("Stop", id, this, 0));
         resume(); // Ensure the thread ends if it's waiting
     }
 
@@ -305,11 +338,126 @@ public class SplitVoteNode implements Runnable {
         }
     }
 
+    private void openHardState() {
+        try {
+            HardStateStore store = new HardStateStore(cluster.getDataDirectory().resolve("node-" + id + ".state"));
+            synchronized (hardStateLock) {
+                hardState = store;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        term = Math.max(1, hardState.getTerm());
+        votedFor = hardState.getVotedFor();
+    }
+
+    /**
+     * Simulates a crash: the node stops answering and loses everything it does not keep on disk.
+     */
+    public void crash() {
+        synchronized (stateLock) {
+            setDown(true);
+            messageQueue.clear();
+            electionTimerRunning = false;
+            updateElectionTimer();
+            state = "follower";
+            term = 1;
+            votedFor = null;
+            votesReceived.clear();
+            calls.cancelAll(term);
+            synchronized (hardStateLock) {
+                try {
+                    hardState.sync(); // Keeps the last term and vote
+                    hardState.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                outbox.clear(); // The messages that waited for the sync are lost with the node
+            }
+            updateVisualization();
+            log(EventType.STATE, "Node n" + id + " crashed and lost its volatile state.");
+        }
+    }
+
+    /**
+     * Restarts a crashed node from its persisted term and vote. It rejoins the cluster as a follower.
+     */
+    public void restart() {
+        synchronized (stateLock) {
+            closeHardState(); // Still open if the node was only set down
+            openHardState();
+            state = "follower";
+            electionTimerRunning = true;
+            setDown(false);
+            resetElectionTimeout();
+            updateVisualization();
+            log(EventType.STATE, "Node n" + id + " restarted in term " + term + (votedFor != null ? " having voted for n" + votedFor : "") + ".");
+        }
+        synchronized (this) {
+            notify(); // The message loop waits while the node is down
+        }
+    }
+
+    // Closes the state file under the store lock, so it never closes in the middle of a sync of the node
+    // thread; later syncs do nothing. The cluster calls it when it stops, once the node thread has ended.
+    public void closeHardState() {
+        synchronized (hardStateLock) {
+            try {
+                hardState.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Called with the state lock held, after every change of term or vote; syncHardState writes it to disk
+    private void persistHardState() {
+        calls.enterTerm(term); // Requests of an earlier term can no longer succeed
+        synchronized (hardStateLock) {
+            hardState.update(term, votedFor, 0);
+        }
+    }
+
+    // Forces a changed term or vote to disk without the state lock, so the view does not wait for the disk,
+    // then sends the messages that waited for it. The node thread calls it after every message.
+    private void syncHardState() {
+        List<Runnable> ready;
+        synchronized (hardStateLock) {
+            try {
+                hardState.sync();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ready = new ArrayList<>(outbox);
+            outbox.clear();
+        }
+        for (Runnable message : ready) {
+            message.run();
+        }
+    }
+
+    // Sends a message right away if the term and vote are on disk, otherwise with the next sync: a vote or
+    // a request of a new term must not leave before a crash could forget it
+    private void send(SplitVoteNode to, String type, Color color, int messageTerm, long correlationId) {
+        synchronized (hardStateLock) {
+            if (hardState.isClosed()) {
+                return; // Crashed: nothing leaves the node until it restarts
+            }
+            if (hardState.isDirty()) {
+                outbox.add(() -> cluster.sendMessage(this, to, type, color, messageTerm, correlationId));
+                return;
+            }
+        }
+        cluster.sendMessage(this, to, type, color, messageTerm, correlationId);
+    }
+
     public void setTerm(int newTerm) {
         synchronized (stateLock) {
             term = newTerm;
-            updateLabel(electionTimeout); // Update label with current term
+            persistHardState();
+            updateLabel(); // Update label with current term
         }
+        syncHardState();
     }
 
     public int getTerm() {
@@ -321,8 +469,10 @@ public class SplitVoteNode implements Runnable {
     public void setVotedFor(Integer votedForId) {
         synchronized (stateLock) {
             votedFor = votedForId;
-            updateLabel(electionTimeout); // Update label with current vote
+            persistHardState();
+            updateLabel(); // Update label with current vote
         }
+        syncHardState();
     }
 
     public Integer getVotedFor() {
@@ -340,99 +490,104 @@ public class SplitVoteNode implements Runnable {
     public void resetElectionTimeout() {
         synchronized (stateLock) {
             electionTimeout = 5000 + random.nextInt(1500); // Randomized timeout between 5-6.5s
-            lastHeartbeat = System.currentTimeMillis();
-            updateLabel(electionTimeout);
+            lastHeartbeat = cluster.now();
+            updateElectionTimer();
         }
     }
 
     private void updateVisualization() {
-        Platform.runLater(() -> {
-            if (isDown) {
-                return; // Do not update visualization if node is down
-            }
-            switch (state) {
-                case "follower":
-                    circle.setFill(Color.LIGHTBLUE);
-                    break;
-                case "candidate":
-                    circle.setFill(Color.LIGHTGREEN);
-                    break;
-                case "leader":
-                    circle.setFill(Color.RED);
-                    break;
-            }
-            updateLabel(electionTimeout); // Update label on state change
-        });
+        updateLabel(); // Circle color and label are both derived from the view model
     }
 
-    private void updateLabel(long remainingTime) {
+    private void updateLabel() {
         if (isDown) {
             return; // Do not update label if node is down
         }
-        String votedForText = (votedFor != null) ? "n" + votedFor : "None";
-        String timeoutText = "";
+        // The countdown itself is computed by the view from the deadline on every frame
+        view.update(state, term, votedFor, lastHeartbeat + electionTimeout, electionTimerRunning);
+    }
 
-        if (state.equals("follower") && electionTimerRunning) {
-            double remainingSeconds = remainingTime / 1000.0;
-            DecimalFormat df = new DecimalFormat("#0.0");
-            timeoutText = "\nTimeout: " + df.format(remainingSeconds) + "s";
-        } else if (state.equals("candidate")) {
-            timeoutText = "\nWaiting for votes...";
-        } else if (state.equals("leader")) {
-            timeoutText = "\nHeartbeats sent.";
+    private void updateElectionTimer() {
+        synchronized (stateLock) {
+            if (electionTimerRunning) {
+                long remainingTime = lastHeartbeat + electionTimeout - cluster.now();
+                cluster.getTimer().reschedule(electionTimer, Math.max(0, remainingTime));
+            } else {
+                cluster.getTimer().cancel(electionTimer);
+            }
+            updateLabel();
         }
-
-        final String labelText = "ID: n" + id +
-                "\nTerm: " + term +
-                "\nVotedFor: " + votedForText +
-                "\nState: " + state +
-                timeoutText;
-
-        Platform.runLater(() -> label.setText(labelText));
     }
 
     public void becomeCandidate() {
         synchronized (stateLock) {
             setState("candidate");
             votedFor = id;
-            resetVotesReceived();
-            log("Node n" + id + " becomes a candidate for Term " + term + " and requests votes.");
+            persistHardState();
+            votesReceived.startElection(id);
+            log(EventType.ELECTION, "Node n" + id + " becomes a candidate for Term " + term + " and requests votes.");
 
-            // Send RequestVote messages
-            for (SplitVoteNode otherNode : cluster.getActiveNodes()) {
-                if (otherNode != this) {
-                    cluster.sendMessage(this, otherNode, "RequestVote", Color.YELLOW);
-                }
-            }
+            requestVotes();
 
             // Stop the election timer as the candidate does not need it
             electionTimerRunning = false;
+            updateElectionTimer();
         }
+        syncHardState();
     }
 
     private void becomeLeader() {
-        // Attempt to set self as Leader in the cluster
-        boolean success = cluster.attemptToSetLeader(this);
-        if (success) {
-            setState("leader");
-            cluster.log("Node n" + id + " has been elected as Leader in Term " + term + ".");
-            cluster.updateMessage("Node n" + id + " is elected as Leader in Term " + term + ".");
-
-            // Stop election timer as Leader does not need it
-            electionTimerRunning = false;
+        // A majority voted for this node in its term; no other node can have one in the same term
+        setState("leader");
+        log(EventType.LEADER, "Node n" + id + " has been elected as Leader in Term " + term + ".");
+        cluster.updateMessage("Node n" + id + " is elected as Leader in Term " + term + ".");
+        if (!cluster.getMonitor().leaderElected(0, term, id)) {
+            log(EventType.INFO, "Invariant violated: a second Leader in Term " + term + ".");
+        }
 
-            // Start sending heartbeats
-            cluster.sendHeartbeats();
-        } else {
-            log("Node n" + id + " recognizes an existing Leader. Does not attempt to take leadership.");
-            setState("follower");
-            electionTimerRunning = true;
-            resetElectionTimeout();
+        // Stop election timer as Leader does not need it
+        electionTimerRunning = false;
+        updateElectionTimer();
+
+        // Start sending heartbeats
+        cluster.sendHeartbeats();
+    }
+
+    // Called with the state lock held
+    private void requestVotes() {
+        // Ask every other node, also failed ones: a retry reaches them if they recover in time
+        long deadline = cluster.now() + electionTimeout;
+        for (SplitVoteNode otherNode : cluster.getNodes()) {
+            if (otherNode != this) {
+                calls.call(otherNode, "RequestVote", term, VOTE_RETRY_INTERVAL, deadline, VOTE_ATTEMPTS);
+            }
+        }
+    }
+
+    /**
+     * Sends one AppendEntries heartbeat to the follower if this node is the leader. Called by the
+     * cluster's heartbeat round; the Ack completes the call, the next round takes the place of a retry.
+     */
+    public void sendHeartbeat(SplitVoteNode follower) {
+        synchronized (stateLock) {
+            if (state.equals("leader")) {
+                long interval = cluster.getHeartbeatInterval();
+                calls.call(follower, "AppendEntries", term, interval, cluster.now() + interval, 1);
+            }
+        }
+    }
+
+    // Sends one attempt of a call; runs on the timer thread for retries, so it must not take the state lock
+    private void sendCall(SplitVoteNode peer, String type, int callTerm, long correlationId, int attempt) {
+        Color color = type.equals("RequestVote") ? Color.YELLOW : Color.PINK;
+        send(peer, type, color, callTerm, correlationId);
+        if (attempt > 1) {
+            cluster.log(id, callTerm, EventType.VOTE, "Node n" + id + " resends " + type + " to Node n" + peer.getId() + " (attempt " + attempt + ").");
         }
     }
 
-    public void log(String message) {
-        cluster.log(message);
+    public void log(EventType type, String message) {
+        cluster.log(id, term, type, message);
     }
 
     public void nodeTimeoutExpired() {
@@ -445,46 +600,35 @@ public class SplitVoteNode implements Runnable {
                 return;
             }
 
-            // Before becoming a candidate, check if a Leader exists
-            if (cluster.getLeaderNode() != null) {
-                log("Node n" + id + " recognizes an existing Leader. Remains as Follower.");
-                setState("follower");
-                electionTimerRunning = true;
-                resetElectionTimeout();
-                return;
-            }
-
             // Increment term before becoming a candidate
             term += 1;
 
             // Stop the election timer
             electionTimerRunning = false;
+            updateElectionTimer();
 
             // Update global message
             cluster.updateMessage("Node n" + id + " starts a new election for Term " + term + ".");
 
             setState("candidate");
             votedFor = id;
-            resetVotesReceived();
-            log("Node n" + id + " becomes a candidate for Term " + term + " and requests votes.");
+            persistHardState();
+            votesReceived.startElection(id);
+            log(EventType.ELECTION, "Node n" + id + " becomes a candidate for Term " + term + " and requests votes.");
 
-            // Send RequestVote messages
-            for (SplitVoteNode otherNode : cluster.getActiveNodes()) {
-                if (otherNode != this) {
-                    cluster.sendMessage(this, otherNode, "RequestVote", Color.YELLOW);
-                }
-            }
+            requestVotes();
 
             // Election timer not reset here as the candidate does not need it
         }
+        syncHardState();
     }
 
     // Method to receive a vote (used during initial split vote setup)
     public void receiveVote(int voterId) {
         synchronized (stateLock) {
             votesReceived.add(voterId);
-            log("Node n" + id + " receives a vote from Node n" + voterId + " in Term " + term + ".");
-            if (votesReceived.size() >= (cluster.getActiveNodes().size() / 2 + 1)) {
+            log(EventType.VOTE, "Node n" + id + " receives a vote from Node n" + voterId + " in Term " + term + ".");
+            if (votesReceived.isMajority(cluster.getNodes().size())) {
                 becomeLeader();
             }
         }
@@ -494,18 +638,11 @@ public class SplitVoteNode implements Runnable {
     public void votedForSelf() {
         synchronized (stateLock) {
             votedFor = id;
+            persistHardState();
             votesReceived.add(id);
-            updateLabel(electionTimeout);
-            log("Node n" + id + " votes for itself in Term " + term + ".");
-        }
-    }
-
-    // Method to check and handle election timeout
-    public void checkElectionTimeout() {
-        synchronized (stateLock) {
-            if (System.currentTimeMillis() - lastHeartbeat >= electionTimeout) {
-                cluster.nodeTimeoutExpired(this);
-            }
+            updateLabel();
+            log(EventType.VOTE, "Node n" + id + " votes for itself in Term " + term + ".");
         }
+        syncHardState();
     }
 }
@@ -17,6 +17,7 @@ import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import javafx.util.Duration;
+import org.example.demo3.EventLogViewer;
 
 public class SplitVoteSimulation extends Application {
 
@@ -27,8 +28,11 @@ public class SplitVoteSimulation extends Application {
     private Button stopContinueButton;
     private Button restartButton;
     private Button quitButton;
+    private Button eventLogButton;
     private Slider nodeSlider;
     private Slider durationSlider;
+    private Slider speedSlider; // log10 of the speed factor
+    private Label speedLabel;
     private Button startSimulationButton;
     private Label messageLabel; // For global messages
     private Label disclaimerLabel; // Disclaimer label
@@ -44,7 +48,7 @@ public class SplitVoteSimulation extends Application {
         nodeSlider.setShowTickMarks(true);
         nodeSlider.setShowTickLabels(true);
 
-        Label durationSliderLabel = new Label("Simulation Duration (Seconds):");
+        Label durationSliderLabel = new Label("Simulation Duration (Simulated Seconds):");
         durationSlider = new Slider(30, 300, 60); // Default: 60 seconds
         durationSlider.setMajorTickUnit(30);
         durationSlider.setMinorTickCount(2);
@@ -86,10 +90,25 @@ public class SplitVoteSimulation extends Application {
             Platform.exit();
         });
 
+        eventLogButton = new Button("Event Log");
+        eventLogButton.setOnAction(e -> {
+            if (cluster != null) {
+                new EventLogViewer(cluster.getEventLog(), cluster.getNodes().size()).show();
+            }
+        });
+
+        // Simulation speed on a logarithmic scale from 0.1x to 100x, adjustable while the simulation runs
+        speedLabel = new Label("Speed: 1.0x");
+        speedSlider = new Slider(-1, 2, 0);
+        speedSlider.setMajorTickUnit(1);
+        speedSlider.setMinorTickCount(0);
+        speedSlider.setShowTickMarks(true);
+        speedSlider.valueProperty().addListener((observable, oldValue, newValue) -> applySpeed());
+
         HBox simulationControlBox = new HBox(10);
         simulationControlBox.setAlignment(Pos.CENTER);
         simulationControlBox.setPadding(new Insets(10));
-        simulationControlBox.getChildren().addAll(stopContinueButton, restartButton, quitButton);
+        simulationControlBox.getChildren().addAll(speedLabel, speedSlider, stopContinueButton, restartButton, eventLogButton, quitButton);
         simulationControlBox.setVisible(false); // Hide until simulation starts
 
         // Create the simulation area
@@ -147,6 +166,7 @@ public class SplitVoteSimulation extends Application {
             stopSimulation();
         }));
         simulationTimer.setCycleCount(1);
+        applySpeed();
         simulationTimer.play();
 
         // Update UI elements
@@ -200,6 +220,17 @@ public class SplitVoteSimulation extends Application {
         Platform.runLater(() -> messageLabel.setText(""));
     }
 
+    private void applySpeed() {
+        double speed = Math.pow(10, speedSlider.getValue());
+        speedLabel.setText(String.format("Speed: %.1fx", speed));
+        if (cluster != null) {
+            cluster.setSpeed(speed);
+        }
+        if (simulationTimer != null) {
+            simulationTimer.setRate(speed); // The duration is simulated time as well
+        }
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -0,0 +1,132 @@
+package org.example.demo3.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Durable Raft hard state (term, vote and commit index) in a small fixed-size file.
+ * The file holds two copies in separate sectors and writes alternate between them, so a write
+ * torn by a crash only damages the copy being written; on load the valid copy with the higher
+ * sequence number wins. Updates are only recorded in memory until {@link #sync()}, so several
+ * changes within one event loop iteration cost a single write and fsync.
+ */
+public class HardStateStore implements Closeable {
+    private static final int SLOT_SIZE = 512; // One sector per copy
+    private static final int RECORD_SIZE = 8 + 4 + 4 + 8; // sequence, term, votedFor, commitIndex
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE + 4);
+    private final CRC32 crc = new CRC32();
+
+    private long sequence = 0;
+    private int term = 0;
+    private Integer votedFor = null;
+    private long commitIndex = 0;
+
+    // Term or vote changed: must be on disk before the next message leaves
+    private boolean dirty = false;
+    // Only the commit index changed: written with the next sync, but does not require one
+    private boolean commitChanged = false;
+
+    // Closed stores ignore syncs, so a node thread racing a simulated crash does not fail on the channel
+    private boolean closed = false;
+
+    public HardStateStore(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        load();
+    }
+
+    private void load() throws IOException {
+        for (int slot = 0; slot < 2; slot++) {
+            buffer.clear();
+            if (channel.read(buffer, (long) slot * SLOT_SIZE) < buffer.capacity()) {
+                continue; // Never written
+            }
+            buffer.flip();
+            crc.reset();
+            crc.update(buffer.slice(0, RECORD_SIZE));
+            long recordSequence = buffer.getLong();
+            int recordTerm = buffer.getInt();
+            int recordVote = buffer.getInt();
+            long recordCommit = buffer.getLong();
+            if (buffer.getInt() != (int) crc.getValue() || recordSequence <= sequence) {
+                continue; // Torn write or older copy
+            }
+            sequence = recordSequence;
+            term = recordTerm;
+            votedFor = recordVote < 0 ? null : recordVote;
+            commitIndex = recordCommit;
+        }
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public Integer getVotedFor() {
+        return votedFor;
+    }
+
+    public long getCommitIndex() {
+        return commitIndex;
+    }
+
+    public void update(int term, Integer votedFor, long commitIndex) {
+        if (term != this.term || !Objects.equals(votedFor, this.votedFor)) {
+            dirty = true;
+        }
+        if (commitIndex != this.commitIndex) {
+            commitChanged = true;
+        }
+        this.term = term;
+        this.votedFor = votedFor;
+        this.commitIndex = commitIndex;
+    }
+
+    /**
+     * True if the term or vote changed since the last sync.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Writes the current state to the older copy and forces it to disk, if anything changed.
+     * Does nothing once the store is closed.
+     */
+    public void sync() throws IOException {
+        if (closed || (!dirty && !commitChanged)) {
+            return;
+        }
+        sequence++;
+        buffer.clear();
+        buffer.putLong(sequence);
+        buffer.putInt(term);
+        buffer.putInt(votedFor == null ? -1 : votedFor);
+        buffer.putLong(commitIndex);
+        crc.reset();
+        crc.update(buffer.slice(0, RECORD_SIZE));
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        channel.write(buffer, (sequence % 2) * SLOT_SIZE);
+        channel.force(false);
+        dirty = false;
+        commitChanged = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+}
@@ -0,0 +1,964 @@
+package org.example.demo3.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only log on disk, split into segment files named after the index of their first entry.
+ * Each record is length, index, term, type and data, followed by a CRC32 of everything but the length.
+ * Compaction deletes whole segments, so entries the snapshot covers may stay on disk until their
+ * segment is completely covered. Appends are buffered until {@link #sync()}; a record torn by a
+ * crash fails its checksum on {@link #load} and is cut off together with everything after it.
+ *
+ * With compression, the records appended between two syncs are deflated together into one batch record:
+ * a negative length, the first index, the entry count, the raw length and the compressed records, followed
+ * by a CRC32. Repetitive payloads compress far better as a batch than one by one. A batch that does not
+ * get smaller is written as plain records. Both kinds can be read regardless of the setting.
+ *
+ * Every segment has an index file with the position of each of its entries, 8 bytes per entry at
+ * offset 8 * (index - first index), mapped into memory when the segment is first used. Together with
+ * an in-memory table of the indexes where the term changes, {@link #termAt} and {@link #read} find an
+ * entry without scanning. The index is not forced to disk; {@link #load} trusts it only where it points
+ * to a valid record of the expected index and otherwise rebuilds it from the segment.
+ */
+public class SegmentedLog implements Closeable {
+    private static final int HEADER_SIZE = 4 + 8 + 4 + 1; // length, index, term, type length
+    private static final int BATCH_HEADER_SIZE = 4 + 8 + 4 + 4; // -length, first index, count, raw length
+    private static final int MAX_BATCH_SIZE = 1024 * 1024; // Raw bytes after which a batch is written before the next sync
+    private static final String SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int MIN_INDEX_SLOTS = 1024;
+    private static final MethodHandle INVOKE_CLEANER = findCleaner(); // Unmaps index files, null if not available
+
+    /**
+     * Receives the entries found by {@link #load}, in index order.
+     */
+    public interface EntryVisitor {
+        void entry(long index, int term, String type, byte[] data);
+    }
+
+    private final Path directory;
+    private final long segmentSize;
+    private final List<Segment> segments = new ArrayList<>();
+    private long firstReadable = 1; // Entries before it were skipped by load and cannot be read
+
+    // Indexes at which the term changes and the term from there on, ascending
+    private long[] termStarts = new long[16];
+    private int[] terms = new int[16];
+    private int termCount = 0;
+
+    // Reused by read so it does not allocate per call
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+    private ByteBuffer batchRecord = ByteBuffer.allocate(0);
+    private byte[] batchRaw = new byte[0];
+    private ByteBuffer batchRawRecords = ByteBuffer.wrap(batchRaw);
+    private long batchRecordSegment = -1; // First index and position of the batch held in batchRaw
+    private long batchRecordPosition = -1;
+
+    // Appends not written to the active segment yet
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(64 * 1024);
+    private final CRC32 crc = new CRC32();
+    private boolean dirty = false;
+
+    // Compression: raw records of the batch not written yet and their offsets; null if compression is off
+    private final Deflater deflater;
+    private ByteBuffer batch;
+    private int[] batchOffsets = new int[1024];
+    private int batchCount = 0;
+    private byte[] compressed = new byte[0];
+    private final Inflater inflater = new Inflater();
+
+    private static class Segment {
+        final long firstIndex;
+        final Path path;
+        final Path indexPath;
+        FileChannel channel; // Replaced when the tail of the segment is rewritten
+        final int initialSlots;
+        MappedByteBuffer index; // File position of every entry, written or buffered; mapped on first use
+        int indexedFrom = 0; // Slots before it are unknown, load skipped them
+        int count = 0;
+        long written = 0; // Bytes in the file
+        long size = 0; // Including buffered bytes
+
+        Segment(long firstIndex, Path path, FileChannel channel, int initialSlots) {
+            this.firstIndex = firstIndex;
+            this.path = path;
+            this.indexPath = path.resolveSibling(path.getFileName().toString().replace(SUFFIX, INDEX_SUFFIX));
+            this.channel = channel;
+            this.initialSlots = initialSlots;
+        }
+
+        long lastIndex() {
+            return firstIndex + count - 1;
+        }
+
+        long position(int slot) throws IOException {
+            return index(slot).getLong(slot * 8);
+        }
+
+        void setPosition(int slot, long position) throws IOException {
+            index(slot).putLong(slot * 8, position);
+        }
+
+        void add(long position) throws IOException {
+            setPosition(count++, position);
+        }
+
+        // Maps the index file so that it covers the slot, growing it by doubling
+        private MappedByteBuffer index(int slot) throws IOException {
+            if (index == null || (long) slot * 8 >= index.capacity()) {
+                long slots = index == null ? initialSlots : index.capacity() / 8;
+                while (slots <= slot) {
+                    slots *= 2;
+                }
+                try (FileChannel file = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+                    MappedByteBuffer smaller = index;
+                    index = file.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(slots * 8, file.size()));
+                    unmap(smaller);
+                }
+            }
+            return index;
+        }
+
+        // Position stored in the index file for the slot, -1 if the file does not reach it
+        long storedPosition(int slot) throws IOException {
+            if (!Files.exists(indexPath) || Files.size(indexPath) < (slot + 1L) * 8) {
+                return -1;
+            }
+            return position(slot);
+        }
+
+        void close() throws IOException {
+            channel.close();
+            unmap(index);
+            index = null;
+        }
+
+        void delete() throws IOException {
+            close();
+            Files.delete(path);
+            Files.deleteIfExists(indexPath);
+        }
+    }
+
+    // Releases a mapping right away instead of when the garbage collector finds the buffer, which can take
+    // long enough to pile up mappings and keeps a deleted index file's disk space in use. The buffer must
+    // not be used afterwards. Without jdk.unsupported the mapping is only dropped.
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null || INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot unmap index buffer", e);
+        }
+    }
+
+    // Unsafe.invokeCleaner, looked up reflectively so the log also works where jdk.unsupported is missing
+    private static MethodHandle findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Entry of a batch that survives a truncation inside the batch
+    private static class KeptEntry {
+        final long index;
+        final int term;
+        final String type;
+        final byte[] data;
+
+        KeptEntry(long index, int term, String type, byte[] data) {
+            this.index = index;
+            this.term = term;
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    /**
+     * @param segmentSize Size in bytes after which a new segment is started.
+     */
+    public SegmentedLog(Path directory, long segmentSize) throws IOException {
+        this(directory, segmentSize, false);
+    }
+
+    /**
+     * @param segmentSize Size in bytes after which a new segment is started.
+     * @param compress    Deflate the entries of each sync into one batch record.
+     */
+    public SegmentedLog(Path directory, long segmentSize, boolean compress) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        this.batch = compress ? ByteBuffer.allocate(64 * 1024) : null;
+    }
+
+    /**
+     * Reads all segments and passes their entries to the visitor. Must be called once before anything is appended.
+     */
+    public void load(EntryVisitor visitor) throws IOException {
+        load(0, visitor);
+    }
+
+    /**
+     * Passes the entries from the given index on to the visitor, e.g. those after a snapshot, and possibly
+     * a few before it. Segments that end before the index are not read at all and the segment containing
+     * it is read from the position in its index file, so the time this takes depends on the number of
+     * entries after the index, not on the size of the log. Skipped entries cannot be read later.
+     * Must be called once before anything is appended.
+     */
+    public void load(long fromIndex, EntryVisitor visitor) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        try (Stream<Path> list = Files.list(directory)) {
+            for (Path index : list.filter(path -> path.getFileName().toString().endsWith(INDEX_SUFFIX)).toList()) {
+                if (!files.contains(index.resolveSibling(index.getFileName().toString().replace(INDEX_SUFFIX, SUFFIX)))) {
+                    Files.delete(index); // Its segment was deleted before the index
+                }
+            }
+        }
+        try (Stream<Path> list = Files.list(directory)) {
+            for (Path temporary : list.filter(path -> path.getFileName().toString().endsWith(SUFFIX + TEMPORARY_SUFFIX)).toList()) {
+                Files.delete(temporary); // A rewrite of a segment's tail that was not renamed into place
+            }
+        }
+        long[] firstVisited = {-1};
+        EntryVisitor loaded = (index, term, type, data) -> {
+            if (firstVisited[0] < 0) {
+                firstVisited[0] = index;
+            }
+            addTerm(index, term);
+            visitor.entry(index, term, type, data);
+        };
+
+        boolean broken = false;
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            if (broken) {
+                delete(file); // Follows a gap or a torn record
+                continue;
+            }
+            long firstIndex = firstIndexOf(file);
+            if (!segments.isEmpty() && firstIndex != lastIndex() + 1) {
+                broken = true;
+                delete(file);
+                continue;
+            }
+            Segment segment = new Segment(firstIndex, file,
+                    FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE), indexSlots());
+            long nextFirstIndex = i + 1 < files.size() ? firstIndexOf(files.get(i + 1)) : -1;
+            if (nextFirstIndex > firstIndex && nextFirstIndex <= fromIndex) {
+                // Ends before the index; the following segment tells how many entries it has
+                segment.count = (int) (nextFirstIndex - firstIndex);
+                segment.indexedFrom = segment.count;
+                segment.size = segment.channel.size();
+                segment.written = segment.size;
+                segments.add(segment);
+                continue;
+            }
+
+            long start = fromIndex > firstIndex ? seek(segment, (int) (fromIndex - firstIndex)) : 0;
+            ByteBuffer bytes = readFrom(segment, start);
+            while (bytes.remaining() >= 4) {
+                int position = bytes.position();
+                int length = bytes.getInt();
+                boolean valid = length < 0
+                        ? readBatch(bytes, -length, start + position, segment, loaded)
+                        : readRecord(bytes, length, start + position, segment, loaded);
+                if (!valid && start > 0 && position == 0) {
+                    // The index pointed to a record that does not check out; read the whole segment instead
+                    start = 0;
+                    segment.count = 0;
+                    segment.indexedFrom = 0;
+                    bytes = readFrom(segment, 0);
+                } else if (!valid) {
+                    bytes.position(position);
+                    break;
+                }
+            }
+            segment.size = start + bytes.position();
+            segment.written = segment.size;
+            if (bytes.hasRemaining()) {
+                segment.channel.truncate(segment.size);
+                broken = true;
+            }
+            if (segment.count == 0) {
+                segment.delete();
+            } else {
+                segments.add(segment);
+            }
+        }
+        firstReadable = firstVisited[0] >= 0 ? firstVisited[0] : lastIndex() + 1;
+    }
+
+    /**
+     * Position of the record holding the entry in the given slot according to the index file, with the
+     * segment's count set to the entries before that record. 0 with an empty count if the index file
+     * does not point to such a record, e.g. because the index was not written before a crash.
+     */
+    private long seek(Segment segment, int slot) throws IOException {
+        long position = segment.storedPosition(slot);
+        if (position < 0 || position + HEADER_SIZE > segment.channel.size()) {
+            return 0;
+        }
+        ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+        segment.channel.read(header, position);
+        header.flip();
+        int length = header.getInt();
+        long index = header.getLong();
+        long first;
+        if (length >= HEADER_SIZE - 4 && index == segment.firstIndex + slot) {
+            first = slot;
+        } else if (length < 0 && header.remaining() >= 4 && index <= segment.firstIndex + slot
+                && index + header.getInt() > segment.firstIndex + slot && index >= segment.firstIndex) {
+            first = index - segment.firstIndex; // The entry is inside a batch, which is read from its start
+        } else {
+            return 0;
+        }
+        // The checksum of the record is verified when it is read
+        segment.count = (int) first;
+        segment.indexedFrom = (int) first;
+        return position;
+    }
+
+    private static ByteBuffer readFrom(Segment segment, long start) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) (segment.channel.size() - start));
+        while (bytes.hasRemaining() && segment.channel.read(bytes, start + bytes.position()) >= 0) {
+            // Until the end of the file
+        }
+        return bytes.flip();
+    }
+
+    private static long firstIndexOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static void delete(Path file) throws IOException {
+        Files.delete(file);
+        Files.deleteIfExists(file.resolveSibling(file.getFileName().toString().replace(SUFFIX, INDEX_SUFFIX)));
+    }
+
+    // Reads the rest of a plain record whose length was just read; false if it is torn or out of order
+    private boolean readRecord(ByteBuffer bytes, int length, long position, Segment segment, EntryVisitor visitor) throws IOException {
+        if (!decodeRecord(bytes, length, segment.firstIndex + segment.count, visitor)) {
+            return false;
+        }
+        segment.add(position);
+        return true;
+    }
+
+    // Reads the rest of a batch record; all of its entries are at the position of the batch
+    private boolean readBatch(ByteBuffer bytes, int length, long position, Segment segment, EntryVisitor visitor) throws IOException {
+        int count = decodeBatch(bytes, length, segment.firstIndex + segment.count, visitor);
+        for (int i = 0; i < count; i++) {
+            segment.add(position);
+        }
+        return count >= 0;
+    }
+
+    private boolean decodeRecord(ByteBuffer bytes, int length, long expectedIndex, EntryVisitor visitor) {
+        if (length < HEADER_SIZE - 4 || bytes.remaining() < length + 4) {
+            return false;
+        }
+        int start = bytes.position();
+        crc.reset();
+        crc.update(bytes.slice(start, length));
+        long index = bytes.getLong();
+        int term = bytes.getInt();
+        byte[] type = new byte[bytes.get()];
+        bytes.get(type);
+        byte[] data = new byte[length - (HEADER_SIZE - 4) - type.length];
+        bytes.get(data);
+        if (bytes.getInt() != (int) crc.getValue() || index != expectedIndex) {
+            return false;
+        }
+        visitor.entry(index, term, new String(type, StandardCharsets.UTF_8), data);
+        return true;
+    }
+
+    // Returns the number of entries in the batch, -1 if it is torn or out of order
+    private int decodeBatch(ByteBuffer bytes, int length, long expectedIndex, EntryVisitor visitor) throws IOException {
+        if (length < BATCH_HEADER_SIZE - 4 || bytes.remaining() < length + 4) {
+            return -1;
+        }
+        int start = bytes.position();
+        crc.reset();
+        crc.update(bytes.slice(start, length));
+        long firstIndex = bytes.getLong();
+        int count = bytes.getInt();
+        byte[] raw = new byte[bytes.getInt()];
+        ByteBuffer deflated = bytes.slice(bytes.position(), length - (BATCH_HEADER_SIZE - 4));
+        bytes.position(start + length);
+        if (bytes.getInt() != (int) crc.getValue() || firstIndex != expectedIndex) {
+            return -1;
+        }
+        inflate(deflated, raw, raw.length);
+        ByteBuffer records = ByteBuffer.wrap(raw);
+        for (int i = 0; i < count; i++) {
+            if (records.remaining() < 4 || !decodeRecord(records, records.getInt(), firstIndex + i, visitor)) {
+                throw new IOException("Corrupt batch of entry " + firstIndex + " in " + directory); // The checksum matched
+            }
+        }
+        return count;
+    }
+
+    private void inflate(ByteBuffer deflated, byte[] raw, int rawLength) throws IOException {
+        inflater.reset();
+        inflater.setInput(deflated);
+        try {
+            if (inflater.inflate(raw, 0, rawLength) != rawLength || !inflater.finished()) {
+                throw new IOException("Batch is shorter than its raw length");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Term of the entry at the given index, -1 if the log does not have it or load skipped it.
+     * A binary search over the term changes, of which there are few; the last term is found at once.
+     */
+    public int termAt(long index) {
+        if (index < firstReadable || index > lastIndex() || termCount == 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = termCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (termStarts[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return terms[low];
+    }
+
+    /**
+     * Copies the records of the entries from the given index on into the target, in the plain record
+     * format, until the target is full, maxBytes are copied or the log ends. The first record is copied
+     * even if it is larger than maxBytes, as long as it fits into the target. Records of a compressed batch
+     * are copied inflated. Reads from the position in the index without allocating; buffered entries are
+     * written to the segment first. Use {@link #readEntry} to decode the copied records.
+     *
+     * @return The number of entries copied, 0 if the log does not have the index or load skipped it,
+     *         or minus the size of the first record if it does not fit into the target.
+     */
+    public int read(long index, int maxBytes, ByteBuffer target) throws IOException {
+        if (index < firstReadable || index > lastIndex()) {
+            return 0;
+        }
+        int copied = 0;
+        int bytes = 0;
+        int segmentNumber = segmentOf(index);
+        while (segmentNumber < segments.size()) {
+            Segment segment = segments.get(segmentNumber);
+            int slot = (int) (index - segment.firstIndex);
+            if (slot >= segment.count) {
+                segmentNumber++;
+                continue;
+            }
+            long position = segment.position(slot);
+            if (position < 0 || position >= segment.written) {
+                flush(); // Still buffered
+                position = segment.position(slot);
+            }
+            lengthBuffer.clear();
+            readAt(segment, lengthBuffer, position);
+            int length = lengthBuffer.getInt(0);
+            if (length >= 0) {
+                int size = length + 8;
+                if (copied == 0 && size > target.remaining()) {
+                    return -size;
+                }
+                if (size > target.remaining() || (copied > 0 && bytes + size > maxBytes)) {
+                    break;
+                }
+                // Plain records follow each other in the file: read as many as may fit in one go and keep
+                // the whole ones up to the next batch
+                int chunk = (int) Math.min(Math.min(target.remaining(), Math.max(size, maxBytes - bytes)),
+                        segment.written - position);
+                int from = target.position();
+                int limit = target.limit();
+                target.limit(from + chunk);
+                readAt(segment, target, position);
+                target.limit(limit);
+                int used = 0;
+                while (true) {
+                    copied++;
+                    bytes += size;
+                    index++;
+                    used += size;
+                    slot++;
+                    if (slot >= segment.count || chunk - used < 4) {
+                        break;
+                    }
+                    int next = target.getInt(from + used);
+                    if (next < 0 || chunk - used < next + 8 || bytes + next + 8 > maxBytes) {
+                        break;
+                    }
+                    size = next + 8;
+                }
+                target.position(from + used);
+                if (bytes >= maxBytes || !target.hasRemaining()) {
+                    break;
+                }
+                continue;
+            }
+
+            // Every entry of the batch from the index on
+            ByteBuffer records = inflateBatch(segment, position, -length);
+            boolean full = false;
+            while (records.hasRemaining()) {
+                int size = records.getInt(records.position()) + 8;
+                long recordIndex = records.getLong(records.position() + 4);
+                if (recordIndex >= index) {
+                    if (copied == 0 && size > target.remaining()) {
+                        return -size;
+                    }
+                    if (size > target.remaining() || (copied > 0 && bytes + size > maxBytes)) {
+                        full = true;
+                        break;
+                    }
+                    target.put(target.position(), records, records.position(), size);
+                    target.position(target.position() + size);
+                    copied++;
+                    bytes += size;
+                    index = recordIndex + 1;
+                }
+                records.position(records.position() + size);
+            }
+            if (full) {
+                break;
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * Decodes the next record copied by {@link #read} and passes its entry to the visitor.
+     *
+     * @return False if there is no record left.
+     */
+    public static boolean readEntry(ByteBuffer records, EntryVisitor visitor) {
+        if (records.remaining() < 4) {
+            return false;
+        }
+        int length = records.getInt();
+        long index = records.getLong();
+        int term = records.getInt();
+        byte[] type = new byte[records.get()];
+        records.get(type);
+        byte[] data = new byte[length - (HEADER_SIZE - 4) - type.length];
+        records.get(data);
+        records.getInt(); // Checksum, verified when the record was loaded
+        visitor.entry(index, term, new String(type, StandardCharsets.UTF_8), data);
+        return true;
+    }
+
+    // Inflated records of the batch at the given position, kept for the next read of the same batch
+    private ByteBuffer inflateBatch(Segment segment, long position, int length) throws IOException {
+        if (batchRecordSegment != segment.firstIndex || batchRecordPosition != position) {
+            if (batchRecord.capacity() < length + 8) {
+                batchRecord = ByteBuffer.allocate(length + 8);
+            }
+            batchRecord.clear().limit(length + 8);
+            readAt(segment, batchRecord, position);
+            int rawLength = batchRecord.getInt(BATCH_HEADER_SIZE - 4);
+            if (batchRaw.length < rawLength) {
+                batchRaw = new byte[rawLength];
+                batchRawRecords = ByteBuffer.wrap(batchRaw);
+            }
+            inflate(batchRecord.slice(BATCH_HEADER_SIZE, length - (BATCH_HEADER_SIZE - 4)), batchRaw, rawLength);
+            batchRawRecords.clear().limit(rawLength);
+            batchRecordSegment = segment.firstIndex;
+            batchRecordPosition = position;
+        }
+        return batchRawRecords.position(0);
+    }
+
+    private void readAt(Segment segment, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (segment.channel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("Record at " + position + " in " + segment.path + " is cut off");
+            }
+        }
+    }
+
+    // Number of the segment holding the index, which must be in the log
+    private int segmentOf(long index) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (segments.get(middle).firstIndex <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void addTerm(long index, int term) {
+        if (termCount > 0 && terms[termCount - 1] == term) {
+            return;
+        }
+        if (termCount == terms.length) {
+            termStarts = Arrays.copyOf(termStarts, termCount * 2);
+            terms = Arrays.copyOf(terms, termCount * 2);
+        }
+        termStarts[termCount] = index;
+        terms[termCount++] = term;
+    }
+
+    private int indexSlots() {
+        return (int) Math.max(MIN_INDEX_SLOTS, Math.min(segmentSize / 64, 1 << 20));
+    }
+
+    /**
+     * Index of the last entry on disk or buffered, 0 if there is none.
+     */
+    public long lastIndex() {
+        return segments.isEmpty() ? 0 : segments.get(segments.size() - 1).lastIndex();
+    }
+
+    /**
+     * Appends an entry. Its index must follow the last entry unless the log is empty.
+     */
+    public void append(long index, int term, String type, byte[] data) throws IOException {
+        if (!segments.isEmpty() && index != lastIndex() + 1) {
+            throw new IllegalArgumentException("Entry " + index + " does not follow " + lastIndex());
+        }
+        Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (active == null || active.size >= segmentSize) {
+            if (active != null) {
+                flush();
+                active.channel.force(false); // Only the active segment is forced by sync()
+            }
+            if (active == null) {
+                firstReadable = index;
+            }
+            active = newSegment(index);
+        }
+        addTerm(index, term);
+
+        byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_SIZE - 4 + typeBytes.length + data.length;
+        if (deflater != null) {
+            addToBatch(index, term, typeBytes, data, length);
+            active.add(-1); // Known once the batch is written
+            dirty = true;
+            return;
+        }
+        if (writeBuffer.remaining() < length + 8) {
+            flushWriteBuffer();
+        }
+        ByteBuffer record = writeBuffer.remaining() >= length + 8 ? writeBuffer : ByteBuffer.allocate(length + 8);
+        putRecord(record, index, term, typeBytes, data, length);
+        if (record != writeBuffer) {
+            record.flip();
+            writeFully(active, record); // Larger than the write buffer
+        }
+        active.add(active.size);
+        active.size += length + 8;
+        dirty = true;
+    }
+
+    private void putRecord(ByteBuffer record, long index, int term, byte[] typeBytes, byte[] data, int length) {
+        int start = record.position();
+        record.putInt(length).putLong(index).putInt(term).put((byte) typeBytes.length).put(typeBytes).put(data);
+        crc.reset();
+        crc.update(record.slice(start + 4, length));
+        record.putInt((int) crc.getValue());
+    }
+
+    private void addToBatch(long index, int term, byte[] typeBytes, byte[] data, int length) throws IOException {
+        if (batch.remaining() < length + 8) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(batch.capacity() * 2, batch.position() + length + 8));
+            batch.flip();
+            batch = larger.put(batch);
+        }
+        if (batchCount == batchOffsets.length) {
+            batchOffsets = Arrays.copyOf(batchOffsets, batchCount * 2);
+        }
+        batchOffsets[batchCount++] = batch.position();
+        putRecord(batch, index, term, typeBytes, data, length);
+        if (batch.position() >= MAX_BATCH_SIZE) {
+            writeBatch();
+        }
+    }
+
+    /**
+     * Compresses the pending batch into one record of the active segment, or writes its plain records
+     * if that is not smaller.
+     */
+    private void writeBatch() throws IOException {
+        if (batchCount == 0) {
+            return;
+        }
+        Segment active = segments.get(segments.size() - 1);
+        int rawLength = batch.position();
+        int bound = rawLength + rawLength / 1000 + 64;
+        if (compressed.length < bound) {
+            compressed = new byte[bound];
+        }
+        deflater.reset();
+        deflater.setInput(batch.array(), 0, rawLength);
+        deflater.finish();
+        int compressedLength = deflater.deflate(compressed);
+        int firstEntry = active.count - batchCount;
+
+        ByteBuffer record;
+        if (deflater.finished() && compressedLength + BATCH_HEADER_SIZE + 4 < rawLength) {
+            int length = BATCH_HEADER_SIZE - 4 + compressedLength;
+            record = ByteBuffer.allocate(length + 8);
+            long firstIndex = active.firstIndex + firstEntry;
+            record.putInt(-length).putLong(firstIndex).putInt(batchCount).putInt(rawLength).put(compressed, 0, compressedLength);
+            crc.reset();
+            crc.update(record.slice(4, length));
+            record.putInt((int) crc.getValue());
+            record.flip();
+            for (int i = 0; i < batchCount; i++) {
+                active.setPosition(firstEntry + i, active.size);
+            }
+        } else {
+            record = ByteBuffer.wrap(batch.array(), 0, rawLength);
+            for (int i = 0; i < batchCount; i++) {
+                active.setPosition(firstEntry + i, active.size + batchOffsets[i]);
+            }
+        }
+        int recordLength = record.remaining();
+        if (writeBuffer.remaining() >= recordLength) {
+            writeBuffer.put(record);
+        } else {
+            flushWriteBuffer();
+            writeFully(active, record);
+        }
+        active.size += recordLength;
+        batch.clear();
+        batchCount = 0;
+    }
+
+    /**
+     * Removes the entry at the given index and all entries after it.
+     */
+    public void truncateFrom(long index) throws IOException {
+        flush();
+        batchRecordPosition = -1;
+        while (termCount > 0 && termStarts[termCount - 1] >= index) {
+            termCount--;
+        }
+        while (!segments.isEmpty() && segments.get(segments.size() - 1).firstIndex >= index) {
+            segments.remove(segments.size() - 1).delete();
+        }
+        if (!segments.isEmpty() && index <= lastIndex()) {
+            Segment last = segments.get(segments.size() - 1);
+            int keep = (int) (index - last.firstIndex);
+            if (keep < last.indexedFrom) {
+                throw new IllegalArgumentException("Entry " + index + " was skipped by load");
+            }
+            long cut = last.position(keep);
+
+            // Entries before the index in the same batch record stay in the log as plain records
+            int first = keep;
+            while (first > last.indexedFrom && last.position(first - 1) == cut) {
+                first--;
+            }
+            if (first < keep) {
+                List<KeptEntry> kept = new ArrayList<>();
+                ByteBuffer record = readFully(last, cut);
+                int length = -record.getInt();
+                decodeBatch(record, length, last.firstIndex + first, (entryIndex, term, type, data) -> {
+                    if (entryIndex < index) {
+                        kept.add(new KeptEntry(entryIndex, term, type, data));
+                    }
+                });
+                rewriteTail(last, cut, first, kept);
+                return;
+            }
+            last.count = keep;
+            last.size = cut;
+            last.written = last.size;
+            last.channel.truncate(last.size);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Replaces the segment by a copy of its bytes before the cut followed by the kept entries, forced before
+     * it is renamed over the segment. Shortening the file in place would lose the kept entries of the batch
+     * at the cut if the system crashed before they were written again. The directory is forced after the
+     * rename, otherwise a crash could bring back the old segment with the entries after the cut.
+     */
+    private void rewriteTail(Segment segment, long cut, int first, List<KeptEntry> kept) throws IOException {
+        Path temporary = segment.path.resolveSibling(segment.path.getFileName() + TEMPORARY_SUFFIX);
+        long[] positions = new long[kept.size()];
+        long size = cut;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long copied = 0;
+            while (copied < cut) {
+                copied += segment.channel.transferTo(copied, cut - copied, channel);
+            }
+            for (int i = 0; i < kept.size(); i++) {
+                KeptEntry entry = kept.get(i);
+                byte[] typeBytes = entry.type.getBytes(StandardCharsets.UTF_8);
+                int length = HEADER_SIZE - 4 + typeBytes.length + entry.data.length;
+                ByteBuffer record = ByteBuffer.allocate(length + 8);
+                putRecord(record, entry.index, entry.term, typeBytes, entry.data, length);
+                record.flip();
+                positions[i] = size;
+                while (record.hasRemaining()) {
+                    size += channel.write(record, size);
+                }
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, segment.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        }
+        segment.channel.close();
+        segment.channel = FileChannel.open(segment.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment.count = first;
+        for (long position : positions) {
+            segment.add(position); // Only after the rename, load checks stale positions against the records
+        }
+        segment.size = size;
+        segment.written = size;
+    }
+
+    // Reads the whole record at the given position of a written segment
+    private ByteBuffer readFully(Segment segment, long position) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        segment.channel.read(length, position);
+        int size = Math.abs(length.getInt(0)) + 8;
+        ByteBuffer record = ByteBuffer.allocate(size);
+        while (record.hasRemaining()) {
+            if (segment.channel.read(record, position + record.position()) < 0) {
+                throw new IOException("Record at " + position + " in " + segment.path + " is cut off");
+            }
+        }
+        return record.flip();
+    }
+
+    /**
+     * Deletes the segments whose entries are all at or below the given index.
+     */
+    public void compact(long index) throws IOException {
+        while (!segments.isEmpty() && segments.get(0).lastIndex() <= index) {
+            if (segments.size() == 1) {
+                flush(); // Buffered bytes belong to this segment
+            }
+            segments.remove(0).delete();
+            batchRecordPosition = -1;
+        }
+        if (segments.isEmpty()) {
+            termCount = 0;
+            return;
+        }
+        firstReadable = Math.max(firstReadable, segments.get(0).firstIndex);
+        // Keep the term change that covers the first readable entry
+        int obsolete = 0;
+        while (obsolete + 1 < termCount && termStarts[obsolete + 1] <= firstReadable) {
+            obsolete++;
+        }
+        if (obsolete > 0) {
+            System.arraycopy(termStarts, obsolete, termStarts, 0, termCount - obsolete);
+            System.arraycopy(terms, obsolete, terms, 0, termCount - obsolete);
+            termCount -= obsolete;
+        }
+    }
+
+    /**
+     * Writes buffered entries and forces the active segment to disk, if anything changed.
+     */
+    public void sync() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        flush();
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).channel.force(false);
+        }
+        dirty = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private Segment newSegment(long firstIndex) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", firstIndex, SUFFIX));
+        Files.deleteIfExists(directory.resolve(String.format("%020d%s", firstIndex, INDEX_SUFFIX))); // Of an earlier segment
+        Segment segment = new Segment(firstIndex, path, FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                StandardOpenOption.WRITE), indexSlots());
+        segments.add(segment);
+        return segment;
+    }
+
+    private void flush() throws IOException {
+        if (deflater != null) {
+            writeBatch();
+        }
+        flushWriteBuffer();
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        if (writeBuffer.position() == 0) {
+            return;
+        }
+        writeBuffer.flip();
+        writeFully(segments.get(segments.size() - 1), writeBuffer);
+        writeBuffer.clear();
+    }
+
+    private void writeFully(Segment segment, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            segment.written += segment.channel.write(bytes, segment.written);
+        }
+    }
+}
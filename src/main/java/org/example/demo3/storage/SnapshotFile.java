@@ -0,0 +1,91 @@
+package org.example.demo3.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Latest snapshot of a replica on disk: last included index and term, membership and state machine data.
+ * A new snapshot is written to a temporary file, forced and then renamed over the old one, so a crash
+ * leaves either the old or the new snapshot.
+ */
+public class SnapshotFile {
+    private final Path file;
+
+    private long index = 0;
+    private int term = 0;
+    private byte[] membership = new byte[0];
+    private byte[] data = new byte[0];
+
+    public SnapshotFile(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the snapshot from disk.
+     * @return False if there is none yet.
+     */
+    public boolean load() throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        CRC32 crc = new CRC32();
+        crc.update(bytes.slice(0, bytes.limit() - 4));
+        if (bytes.getInt(bytes.limit() - 4) != (int) crc.getValue()) {
+            throw new IOException("Corrupt snapshot " + file); // Only complete files are renamed into place
+        }
+        index = bytes.getLong();
+        term = bytes.getInt();
+        membership = new byte[bytes.getInt()];
+        bytes.get(membership);
+        data = new byte[bytes.getInt()];
+        bytes.get(data);
+        return true;
+    }
+
+    public void save(long index, int term, byte[] membership, byte[] data) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(8 + 4 + 4 + membership.length + 4 + data.length + 4);
+        bytes.putLong(index).putInt(term).putInt(membership.length).put(membership).putInt(data.length).put(data);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.slice(0, bytes.position()));
+        bytes.putInt((int) crc.getValue());
+        bytes.flip();
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        this.index = index;
+        this.term = term;
+        this.membership = membership;
+        this.data = data;
+    }
+
+    public long getIndex() {
+        return index;
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public byte[] getMembership() {
+        return membership;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
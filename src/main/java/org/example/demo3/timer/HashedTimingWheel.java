@@ -0,0 +1,181 @@
+package org.example.demo3.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical hashed timing wheel.
+ * Four levels of 256 buckets cover 2^32 ticks. A timer goes into the lowest level whose range
+ * covers its remaining delay; whenever a level wraps around, the next bucket of the level above
+ * is cascaded down. Scheduling, re-arming and cancelling are O(1), and advancing costs O(1) per
+ * tick plus the timers that expire or cascade.
+ *
+ * The wheel is not thread-safe: it is meant to be owned by one event loop, which calls
+ * {@link #advance(long)} regularly. Use {@link WheelTimer} to share a wheel between threads.
+ */
+public class HashedTimingWheel {
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final long MAX_DELAY_TICKS = (1L << (LEVELS * SLOT_BITS)) - 1;
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final Timeout[][] buckets = new Timeout[LEVELS][SLOTS];
+
+    private long currentTick = 0; // Last tick that was processed
+    private int size = 0;
+
+    private final List<Timeout> expired = new ArrayList<>();
+
+    public HashedTimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Number of armed timers.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Creates a timer that is not armed yet.
+     */
+    public Timeout newTimeout(Runnable task) {
+        return new Timeout(this, task);
+    }
+
+    public Timeout schedule(Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(this, task);
+        reschedule(timeout, delayMillis);
+        return timeout;
+    }
+
+    public void reschedule(Timeout timeout, long delayMillis) {
+        if (timeout.status == Timeout.SCHEDULED) {
+            unlink(timeout);
+        }
+        // Round up so a timer never fires early, and never into a tick that was already processed
+        long delayTicks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        timeout.deadlineTick = currentTick + Math.min(delayTicks, MAX_DELAY_TICKS);
+        timeout.status = Timeout.SCHEDULED;
+        link(timeout);
+    }
+
+    public void cancel(Timeout timeout) {
+        if (timeout.status == Timeout.SCHEDULED) {
+            unlink(timeout);
+        }
+        timeout.status = Timeout.IDLE;
+    }
+
+    /**
+     * Processes all ticks up to the given time and runs the tasks of expired timers.
+     * Tasks may schedule, re-arm or cancel timers, including their own.
+     *
+     * @return Number of tasks that were run.
+     */
+    public int advance(long nowMillis) {
+        collectExpired(nowMillis, expired);
+        int count = runExpired(expired);
+        expired.clear();
+        return count;
+    }
+
+    /**
+     * Processes all ticks up to the given time and adds expired timers to the list without
+     * running them, so a caller holding a lock can run them after releasing it.
+     */
+    public void collectExpired(long nowMillis, List<Timeout> out) {
+        long targetTick = (nowMillis - startMillis) / tickMillis;
+        while (currentTick < targetTick) {
+            if (size == 0) {
+                currentTick = targetTick; // Nothing to cascade or expire
+                break;
+            }
+            currentTick++;
+            cascade();
+
+            // All timers in this bucket expire in exactly this tick
+            int slot = (int) (currentTick & SLOT_MASK);
+            Timeout timeout;
+            while ((timeout = buckets[0][slot]) != null) {
+                unlink(timeout);
+                timeout.status = Timeout.EXPIRING;
+                out.add(timeout);
+            }
+        }
+    }
+
+    /**
+     * Runs the tasks of collected timers that were not cancelled or re-armed in the meantime.
+     */
+    public static int runExpired(List<Timeout> timeouts) {
+        int count = 0;
+        for (Timeout timeout : timeouts) {
+            if (timeout.status == Timeout.EXPIRING) {
+                timeout.status = Timeout.IDLE;
+                timeout.task.run();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void cascade() {
+        // Whenever a level wraps around, move the next bucket of the level above down
+        for (int level = 1; level < LEVELS; level++) {
+            long shift = (long) level * SLOT_BITS;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                return;
+            }
+            int slot = (int) ((currentTick >>> shift) & SLOT_MASK);
+            Timeout timeout;
+            while ((timeout = buckets[level][slot]) != null) {
+                unlink(timeout);
+                link(timeout);
+            }
+        }
+    }
+
+    private void link(Timeout timeout) {
+        long delta = timeout.deadlineTick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << ((level + 1) * SLOT_BITS))) {
+            level++;
+        }
+        int slot = (int) ((timeout.deadlineTick >>> (level * SLOT_BITS)) & SLOT_MASK);
+
+        Timeout head = buckets[level][slot];
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        buckets[level][slot] = timeout;
+        timeout.level = level;
+        timeout.slot = slot;
+        size++;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        size--;
+    }
+}
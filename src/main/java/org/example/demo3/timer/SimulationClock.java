@@ -0,0 +1,55 @@
+package org.example.demo3.timer;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Millisecond clock of an interactive simulation that runs at an adjustable multiple of real time
+ * and stands still while paused. Timers, timeouts and countdowns read this clock instead of the system
+ * clock, so changing the speed scales all of them consistently. Thread-safe.
+ */
+public class SimulationClock implements LongSupplier {
+    public static final double MIN_SPEED = 0.1;
+    public static final double MAX_SPEED = 100;
+
+    // Simulated time at the last speed change or pause, and the real time it was taken at
+    private double baseMillis = System.currentTimeMillis();
+    private long baseNanos = System.nanoTime();
+    private double speed = 1.0;
+    private boolean isPaused = false;
+
+    @Override
+    public synchronized long getAsLong() {
+        return (long) current();
+    }
+
+    private double current() {
+        return isPaused ? baseMillis : baseMillis + (System.nanoTime() - baseNanos) / 1e6 * speed;
+    }
+
+    private void rebase() {
+        baseMillis = current();
+        baseNanos = System.nanoTime();
+    }
+
+    public synchronized double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Sets the speed factor, limited to 0.1 to 100 times real time.
+     */
+    public synchronized void setSpeed(double speed) {
+        rebase();
+        this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+    }
+
+    public synchronized void pause() {
+        rebase();
+        isPaused = true;
+    }
+
+    public synchronized void resume() {
+        rebase();
+        isPaused = false;
+    }
+}
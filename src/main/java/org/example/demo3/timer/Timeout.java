@@ -0,0 +1,44 @@
+package org.example.demo3.timer;
+
+/**
+ * Handle of a timer in a {@link HashedTimingWheel}.
+ * A Timeout is linked directly into its wheel bucket, so cancelling and re-arming it is O(1)
+ * and does not allocate. The same handle can be re-armed any number of times.
+ */
+public class Timeout {
+    static final int IDLE = 0;
+    static final int SCHEDULED = 1;
+    static final int EXPIRING = 2; // Collected by advance(), task not yet run
+
+    final HashedTimingWheel wheel;
+    final Runnable task;
+
+    // Intrusive bucket list
+    Timeout prev;
+    Timeout next;
+    int level;
+    int slot;
+
+    long deadlineTick;
+    int status = IDLE;
+
+    Timeout(HashedTimingWheel wheel, Runnable task) {
+        this.wheel = wheel;
+        this.task = task;
+    }
+
+    /**
+     * (Re-)arms the timer to fire after the given delay, replacing any earlier deadline.
+     */
+    public void reschedule(long delayMillis) {
+        wheel.reschedule(this, delayMillis);
+    }
+
+    public void cancel() {
+        wheel.cancel(this);
+    }
+
+    public boolean isScheduled() {
+        return status == SCHEDULED;
+    }
+}
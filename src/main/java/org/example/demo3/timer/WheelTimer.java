@@ -0,0 +1,120 @@
+package org.example.demo3.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread-safe front end for a {@link HashedTimingWheel} that is advanced by its own daemon thread.
+ * Timers may be armed and cancelled from any thread. Expired tasks run on the timer thread,
+ * outside the wheel lock, so they can take other locks and re-arm timers without deadlocking.
+ */
+public class WheelTimer implements Runnable {
+    private final HashedTimingWheel wheel;
+    private final LongSupplier clock;
+    private final List<Timeout> expired = new ArrayList<>();
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private volatile boolean stopFlag = false;
+    private boolean isPaused = false;
+    private Thread thread;
+
+    public WheelTimer(long tickMillis) {
+        this(tickMillis, System::currentTimeMillis);
+    }
+
+    public WheelTimer(long tickMillis, LongSupplier clock) {
+        this.clock = clock;
+        this.wheel = new HashedTimingWheel(tickMillis, clock.getAsLong());
+    }
+
+    public long now() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Creates a timer that is not armed yet.
+     */
+    public Timeout newTimeout(Runnable task) {
+        synchronized (wheel) {
+            return wheel.newTimeout(task);
+        }
+    }
+
+    public Timeout schedule(Runnable task, long delayMillis) {
+        synchronized (wheel) {
+            return wheel.schedule(task, delayMillis);
+        }
+    }
+
+    public void reschedule(Timeout timeout, long delayMillis) {
+        synchronized (wheel) {
+            wheel.reschedule(timeout, delayMillis);
+        }
+    }
+
+    public void cancel(Timeout timeout) {
+        synchronized (wheel) {
+            wheel.cancel(timeout);
+        }
+    }
+
+    public void start() {
+        thread = new Thread(this, "wheel-timer");
+        thread.setDaemon(true); // Allow JVM to exit if main thread terminates
+        thread.start();
+    }
+
+    public synchronized void pause() {
+        isPaused = true;
+    }
+
+    public synchronized void resume() {
+        isPaused = false;
+        notify();
+    }
+
+    public void stop() {
+        stopFlag = true;
+        resume(); // Ensure thread exits if waiting
+    }
+
+    @Override
+    public void run() {
+        while (!stopFlag) {
+            synchronized (this) {
+                while (isPaused && !stopFlag) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+
+            synchronized (wheel) {
+                wheel.collectExpired(clock.getAsLong(), expired);
+                for (Timeout timeout : expired) {
+                    if (timeout.status == Timeout.EXPIRING) {
+                        timeout.status = Timeout.IDLE;
+                        tasks.add(timeout.task);
+                    }
+                }
+                expired.clear();
+            }
+            // Run outside the lock; a timer cancelled concurrently with its expiry may still fire once
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            tasks.clear();
+
+            try {
+                // A tick of simulated time passes sooner in real time when the simulation runs faster
+                double speed = clock instanceof SimulationClock simulationClock ? simulationClock.getSpeed() : 1.0;
+                Thread.sleep(Math.max(1, (long) (wheel.getTickMillis() / speed)));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.demo3;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VoteCountTest {
+
+    @Test
+    void twoOfThreeLiveNodesElectALeader() {
+        VoteCount votes = new VoteCount();
+        votes.startElection(0);
+        assertFalse(votes.isMajority(3));
+        votes.add(1); // Node 2 is down
+        assertTrue(votes.isMajority(3));
+    }
+
+    @Test
+    void newElectionDropsTheVotesOfTheLastOne() {
+        VoteCount votes = new VoteCount();
+        votes.startElection(0);
+        votes.add(1);
+        votes.add(2);
+        votes.startElection(0);
+        assertEquals(1, votes.size());
+        assertFalse(votes.isMajority(5));
+    }
+
+    @Test
+    void repeatedVotesCountOnce() {
+        VoteCount votes = new VoteCount();
+        votes.startElection(0);
+        votes.add(0);
+        votes.add(1);
+        votes.add(1);
+        assertFalse(votes.isMajority(5));
+        votes.add(2);
+        assertTrue(votes.isMajority(5));
+    }
+}